@@ -0,0 +1,139 @@
+package org.esa.snap.idepix.benchmarks;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.Tile;
+import org.esa.snap.core.gpf.internal.TileImpl;
+import org.esa.snap.core.image.ImageManager;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+/**
+ * Creates reproducible synthetic input data for the benchmarks, so they run without any product file
+ * or auxiliary data.
+ */
+public class SyntheticScene {
+
+    private SyntheticScene() {
+    }
+
+    /**
+     * Creates a cloud mask made of randomly placed discs, similar to the compact cloud fields of real scenes.
+     *
+     * @param width         - the mask width
+     * @param height        - the mask height
+     * @param cloudFraction - the approximate fraction of cloudy pixels, between 0 and 1
+     * @param seed          - the seed of the random generator
+     * @return the cloud mask, line by line
+     */
+    public static boolean[] createCloudMask(int width, int height, double cloudFraction, long seed) {
+        final boolean[] mask = new boolean[width * height];
+        final Random random = new Random(seed);
+        final int numCloudPixels = (int) (cloudFraction * width * height);
+        int count = 0;
+        while (count < numCloudPixels) {
+            final int centerX = random.nextInt(width);
+            final int centerY = random.nextInt(height);
+            final int radius = 2 + random.nextInt(Math.max(1, Math.min(width, height) / 16));
+            for (int y = Math.max(0, centerY - radius); y <= Math.min(height - 1, centerY + radius); y++) {
+                for (int x = Math.max(0, centerX - radius); x <= Math.min(width - 1, centerX + radius); x++) {
+                    final int dx = x - centerX;
+                    final int dy = y - centerY;
+                    if (dx * dx + dy * dy <= radius * radius && !mask[y * width + x]) {
+                        mask[y * width + x] = true;
+                        count++;
+                    }
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Creates random values in the given range.
+     *
+     * @param length - the number of values
+     * @param min    - the minimum value
+     * @param max    - the maximum value
+     * @param seed   - the seed of the random generator
+     * @return the values
+     */
+    public static float[] createValues(int length, float min, float max, long seed) {
+        final float[] values = new float[length];
+        final Random random = new Random(seed);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = min + (max - min) * random.nextFloat();
+        }
+        return values;
+    }
+
+    /**
+     * Creates a writable in-memory tile of a new band of the given product.
+     *
+     * @param product   - the product the band is added to
+     * @param bandName  - the name of the band
+     * @param dataType  - the product data type of the band, e.g. {@link ProductData#TYPE_INT32}
+     * @param rectangle - the tile rectangle
+     * @return the tile, with all samples set to zero
+     */
+    public static Tile createTile(Product product, String bandName, int dataType, Rectangle rectangle) {
+        final Band band = product.addBand(bandName, dataType);
+        final BandedSampleModel sampleModel = new BandedSampleModel(ImageManager.getDataBufferType(dataType),
+                                                                    rectangle.width, rectangle.height, 1);
+        final WritableRaster raster = Raster.createWritableRaster(sampleModel, new Point(rectangle.x, rectangle.y));
+        return new TileImpl(band, raster);
+    }
+
+    /**
+     * Creates an in-memory tile holding the given values, line by line.
+     *
+     * @param product   - the product the band is added to
+     * @param bandName  - the name of the band
+     * @param rectangle - the tile rectangle
+     * @param values    - the values
+     * @return the tile
+     */
+    public static Tile createTile(Product product, String bandName, Rectangle rectangle, float[] values) {
+        final Tile tile = createTile(product, bandName, ProductData.TYPE_FLOAT32, rectangle);
+        setSamples(tile, values);
+        return tile;
+    }
+
+    /**
+     * Creates an in-memory flag tile with the given flag bit set for all pixels of the mask.
+     *
+     * @param product   - the product the band is added to
+     * @param bandName  - the name of the band
+     * @param rectangle - the tile rectangle
+     * @param mask      - the mask, line by line
+     * @param flagBit   - the flag bit to set
+     * @return the tile
+     */
+    public static Tile createFlagTile(Product product, String bandName, Rectangle rectangle,
+                                      boolean[] mask, int flagBit) {
+        final Tile tile = createTile(product, bandName, ProductData.TYPE_INT32, rectangle);
+        int index = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                tile.setSample(x, y, flagBit, mask[index++]);
+            }
+        }
+        return tile;
+    }
+
+    private static void setSamples(Tile tile, float[] values) {
+        final Rectangle rectangle = tile.getRectangle();
+        int index = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                tile.setSample(x, y, values[index++]);
+            }
+        }
+    }
+}
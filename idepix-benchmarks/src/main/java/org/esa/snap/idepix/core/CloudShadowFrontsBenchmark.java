@@ -0,0 +1,114 @@
+package org.esa.snap.idepix.core;
+
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.gpf.Tile;
+import org.esa.snap.idepix.benchmarks.SyntheticScene;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link CloudShadowFronts#computeCloudShadow()} for a single tile with a geographic
+ * (lat/lon) geo-coding of 300 m pixels and constant sun angles and cloud top pressure.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CloudShadowFrontsBenchmark {
+
+    private static final double PIXEL_SIZE_DEG = 0.003;
+
+    @Param({"256"})
+    public int tileSize;
+
+    @Param({"0.05", "0.3"})
+    public double cloudFraction;
+
+    @Param({"30", "60"})
+    public float sunZenith;
+
+    private CloudShadowFronts cloudShadowFronts;
+    private boolean[] cloudShadow;
+
+    @Setup
+    public void setUp() throws Exception {
+        // the source rectangle is extended by the maximum shadow length, 12 km at sza 60 deg are ~70 pixels
+        final int border = 80;
+        final int sourceSize = tileSize + 2 * border;
+        final Product product = new Product("cloudShadowFronts", "benchmark", sourceSize, sourceSize);
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, sourceSize, sourceSize,
+                                                   10.0, 50.0, PIXEL_SIZE_DEG, PIXEL_SIZE_DEG));
+        final Rectangle sourceRectangle = new Rectangle(sourceSize, sourceSize);
+        final Rectangle targetRectangle = new Rectangle(border, border, tileSize, tileSize);
+
+        final int numPixels = sourceSize * sourceSize;
+        final Tile szaTile = createConstantTile(product, "sza", sourceRectangle, sunZenith);
+        final Tile saaTile = createConstantTile(product, "saa", sourceRectangle, 150.0f);
+        final Tile ctpTile = createConstantTile(product, "ctp", sourceRectangle, 500.0f);
+        final Tile altTile = SyntheticScene.createTile(product, "alt", sourceRectangle,
+                                                       SyntheticScene.createValues(numPixels, 0.0f, 500.0f, 4711L));
+
+        final boolean[] cloudMask = SyntheticScene.createCloudMask(sourceSize, sourceSize, cloudFraction, 42L);
+        cloudShadow = new boolean[numPixels];
+        cloudShadowFronts = new CloudShadowFronts(product.getSceneGeoCoding(), sourceRectangle, targetRectangle,
+                                                  szaTile, saaTile, ctpTile, altTile) {
+            @Override
+            protected boolean isCloudForShadow(int x, int y) {
+                return cloudMask[y * sourceSize + x];
+            }
+
+            @Override
+            protected boolean isCloudFree(int x, int y) {
+                return !cloudMask[y * sourceSize + x];
+            }
+
+            @Override
+            protected boolean isSurroundedByCloud(int x, int y) {
+                int count = 0;
+                for (int j = Math.max(0, y - 1); j <= Math.min(sourceSize - 1, y + 1); j++) {
+                    for (int i = Math.max(0, x - 1); i <= Math.min(sourceSize - 1, x + 1); i++) {
+                        if (cloudMask[j * sourceSize + i]) {
+                            count++;
+                        }
+                    }
+                }
+                return count >= 7;
+            }
+
+            @Override
+            protected void setCloudShadow(int x, int y) {
+                cloudShadow[y * sourceSize + x] = true;
+            }
+        };
+    }
+
+    @Benchmark
+    public boolean[] computeCloudShadow() {
+        Arrays.fill(cloudShadow, false);
+        cloudShadowFronts.computeCloudShadow();
+        return cloudShadow;
+    }
+
+    private static Tile createConstantTile(Product product, String bandName, Rectangle rectangle, float value) {
+        final float[] values = new float[rectangle.width * rectangle.height];
+        Arrays.fill(values, value);
+        return SyntheticScene.createTile(product, bandName, rectangle, values);
+    }
+}
@@ -0,0 +1,82 @@
+package org.esa.snap.idepix.core.operators;
+
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.gpf.Tile;
+import org.esa.snap.idepix.benchmarks.SyntheticScene;
+import org.esa.snap.idepix.core.IdepixConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the cloud buffer of a single tile, both on {@link Tile}s as done by most post-processing
+ * operators and on the flag array as done for the LC cloud buffer.
+ * Both algorithms are idempotent, so the same input is reused by all invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CloudBufferBenchmark {
+
+    @Param({"512"})
+    public int tileSize;
+
+    @Param({"2", "10"})
+    public int cloudBufferWidth;
+
+    @Param({"0.05", "0.3"})
+    public double cloudFraction;
+
+    private Rectangle sourceRectangle;
+    private Tile sourceFlagTile;
+    private Tile targetFlagTile;
+    private int[] flags;
+
+    @Setup
+    public void setUp() {
+        final int sourceSize = tileSize + 2 * cloudBufferWidth;
+        final Product product = new Product("cloudBuffer", "benchmark", sourceSize, sourceSize);
+        sourceRectangle = new Rectangle(sourceSize, sourceSize);
+        final Rectangle targetRectangle = new Rectangle(cloudBufferWidth, cloudBufferWidth, tileSize, tileSize);
+
+        final boolean[] cloudMask = SyntheticScene.createCloudMask(sourceSize, sourceSize, cloudFraction, 42L);
+        sourceFlagTile = SyntheticScene.createFlagTile(product, "source_flags", sourceRectangle, cloudMask,
+                                                       IdepixConstants.IDEPIX_CLOUD);
+        targetFlagTile = SyntheticScene.createFlagTile(product, "target_flags", targetRectangle,
+                                                       new boolean[tileSize * tileSize], IdepixConstants.IDEPIX_CLOUD);
+
+        final boolean[] tileCloudMask = SyntheticScene.createCloudMask(tileSize, tileSize, cloudFraction, 42L);
+        flags = new int[tileSize * tileSize];
+        for (int i = 0; i < flags.length; i++) {
+            if (tileCloudMask[i]) {
+                flags[i] = 1 << IdepixConstants.IDEPIX_CLOUD;
+            }
+        }
+    }
+
+    @Benchmark
+    public Tile setCloudBuffer() {
+        CloudBuffer.setCloudBuffer(targetFlagTile, sourceRectangle, sourceFlagTile, cloudBufferWidth);
+        return targetFlagTile;
+    }
+
+    @Benchmark
+    public int[] computeCloudBufferLC() {
+        CloudBuffer.computeCloudBufferLC(flags, tileSize, tileSize);
+        return flags;
+    }
+}
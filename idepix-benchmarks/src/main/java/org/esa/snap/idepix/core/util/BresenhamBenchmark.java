@@ -0,0 +1,85 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.datamodel.PixelPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the tracing of {@value #NUM_PATHS} shadow paths of the given length in random directions,
+ * with the reusable {@link PathPixels} buffer and with the list of {@link PixelPos}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BresenhamBenchmark {
+
+    private static final int NUM_PATHS = 1024;
+
+    @Param({"16", "128"})
+    public int pathLength;
+
+    private final Rectangle rectangle = new Rectangle(512, 512);
+    private final PathPixels pathPixels = new PathPixels();
+    private int[] startX;
+    private int[] startY;
+    private int[] endX;
+    private int[] endY;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42L);
+        startX = new int[NUM_PATHS];
+        startY = new int[NUM_PATHS];
+        endX = new int[NUM_PATHS];
+        endY = new int[NUM_PATHS];
+        for (int i = 0; i < NUM_PATHS; i++) {
+            final double angle = 2.0 * Math.PI * random.nextDouble();
+            startX[i] = random.nextInt(rectangle.width);
+            startY[i] = random.nextInt(rectangle.height);
+            endX[i] = startX[i] + (int) Math.round(pathLength * Math.cos(angle));
+            endY[i] = startY[i] + (int) Math.round(pathLength * Math.sin(angle));
+        }
+    }
+
+    @Benchmark
+    public int getPathPixels() {
+        int sum = 0;
+        for (int i = 0; i < NUM_PATHS; i++) {
+            final int numPixels = Bresenham.getPathPixels(startX[i], startY[i], endX[i], endY[i], rectangle,
+                                                          pathPixels);
+            for (int j = 0; j < numPixels; j++) {
+                sum += pathPixels.getX(j) + pathPixels.getY(j);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int getPathPixelList() {
+        int sum = 0;
+        for (int i = 0; i < NUM_PATHS; i++) {
+            final List<PixelPos> path = Bresenham.getPathPixels(startX[i], startY[i], endX[i], endY[i], rectangle);
+            for (PixelPos pixelPos : path) {
+                sum += (int) pixelPos.x + (int) pixelPos.y;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,94 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.nn.NNffbpAlphaTabFast;
+import org.esa.snap.core.util.io.FileUtils;
+import org.esa.snap.idepix.landsat8.NNSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the evaluation of a Schiller neural net for all pixels of a tile: pixel by pixel with the
+ * {@link SchillerNeuralNetWrapper} and with {@link NNffbpAlphaTabFast}, and at once with the
+ * {@link SchillerNeuralNetBatch}. The net is the Landsat-8 'ALL' cloud net (8x20x4x2x1).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchillerNeuralNetBenchmark {
+
+    @Param({"256"})
+    public int tileSize;
+
+    private SchillerNeuralNetWrapper wrapper;
+    private SchillerNeuralNetBatch batch;
+    private NNffbpAlphaTabFast referenceNet;
+    private double[] inputs;
+    private int numPixels;
+    private int numInputs;
+
+    @Setup
+    public void setUp() throws Exception {
+        final String netName = NNSelector.ALL.getNnFileName();
+        wrapper = SchillerNeuralNetWrapper.create(NNSelector.class, netName).get();
+        final SchillerNeuralNet neuralNet = wrapper.getNeuralNet();
+        batch = new SchillerNeuralNetBatch(neuralNet);
+        try (InputStream inputStream = NNSelector.class.getResourceAsStream(netName);
+             Reader reader = new InputStreamReader(inputStream)) {
+            referenceNet = new NNffbpAlphaTabFast(FileUtils.readText(reader));
+        }
+
+        numPixels = tileSize * tileSize;
+        numInputs = neuralNet.getNumInputs();
+        inputs = new double[numPixels * numInputs];
+        final Random random = new Random(42L);
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = neuralNet.getInputMin(i % numInputs) + random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public double wrapperPerPixel() {
+        final double[] input = wrapper.getInputVector();
+        double sum = 0.0;
+        for (int p = 0; p < numPixels; p++) {
+            System.arraycopy(inputs, p * numInputs, input, 0, numInputs);
+            sum += wrapper.calc(input)[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double nnffbpAlphaTabFastPerPixel() {
+        final double[] input = new double[numInputs];
+        double sum = 0.0;
+        for (int p = 0; p < numPixels; p++) {
+            System.arraycopy(inputs, p * numInputs, input, 0, numInputs);
+            sum += referenceNet.calc(input)[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double[] batch() {
+        System.arraycopy(inputs, 0, batch.getInputs(numPixels), 0, inputs.length);
+        return batch.calc(numPixels);
+    }
+}
@@ -0,0 +1,60 @@
+package org.esa.snap.idepix.landsat8;
+
+import org.esa.snap.idepix.benchmarks.SyntheticScene;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the Otsu binarisation of an RGB image as done by the Landsat-8 Otsu cloud test.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OtsuBinarizeBenchmark {
+
+    @Param({"512"})
+    public int size;
+
+    private BufferedImage rgbImage;
+    private BufferedImage grayImage;
+
+    @Setup
+    public void setUp() {
+        final boolean[] cloudMask = SyntheticScene.createCloudMask(size, size, 0.3, 42L);
+        final float[] noise = SyntheticScene.createValues(size * size, 0.0f, 60.0f, 4711L);
+        rgbImage = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                final int index = y * size + x;
+                final int value = (cloudMask[index] ? 180 : 40) + (int) noise[index];
+                rgbImage.setRGB(x, y, (value << 16) | (value << 8) | value);
+            }
+        }
+        grayImage = OtsuBinarize.toGray(rgbImage);
+    }
+
+    @Benchmark
+    public BufferedImage toGray() {
+        return OtsuBinarize.toGray(rgbImage);
+    }
+
+    @Benchmark
+    public BufferedImage binarize() {
+        return OtsuBinarize.binarize(grayImage);
+    }
+}
@@ -0,0 +1,107 @@
+package org.esa.snap.idepix.s2msi;
+
+import org.esa.snap.idepix.benchmarks.SyntheticScene;
+import org.esa.snap.idepix.s2msi.util.S2IdepixConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-pixel S2 MSI classification of a tile: an {@link S2IdepixAlgorithm} is set up
+ * for every pixel as in {@link S2IdepixClassificationOp}, and all flags of the classification flag band
+ * are evaluated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class S2IdepixAlgorithmBenchmark {
+
+    // default thresholds of S2IdepixClassificationOp
+    private static final double CW_THRESH = 0.007;
+    private static final double GCL_THRESH = -0.11;
+    private static final double CL_THRESH = 0.007;
+    private static final double RHO_TOA_442_THRESH = 0.03;
+
+    @Param({"256"})
+    public int tileSize;
+
+    private float[][] reflectances;
+    private float[] elevations;
+    private float[] latitudes;
+    private int[] flags;
+
+    @Setup
+    public void setUp() {
+        final int numPixels = tileSize * tileSize;
+        final int numBands = S2IdepixConstants.S2_MSI_REFLECTANCE_BAND_NAMES.length;
+        // bright and dark pixels, so that all branches of the tests are taken
+        final boolean[] cloudMask = SyntheticScene.createCloudMask(tileSize, tileSize, 0.3, 42L);
+        reflectances = new float[numBands][];
+        for (int b = 0; b < numBands; b++) {
+            reflectances[b] = SyntheticScene.createValues(numPixels, 0.0f, 0.3f, 100L + b);
+            for (int p = 0; p < numPixels; p++) {
+                if (cloudMask[p]) {
+                    reflectances[b][p] += 0.5f;
+                }
+            }
+        }
+        elevations = SyntheticScene.createValues(numPixels, 0.0f, 4000.0f, 4711L);
+        latitudes = SyntheticScene.createValues(numPixels, -70.0f, 70.0f, 4712L);
+        flags = new int[numPixels];
+    }
+
+    @Benchmark
+    public int[] classify() {
+        final float[] refl = new float[reflectances.length];
+        for (int p = 0; p < flags.length; p++) {
+            for (int b = 0; b < refl.length; b++) {
+                refl[b] = reflectances[b][p];
+            }
+            final S2IdepixAlgorithm algorithm = new S2IdepixAlgorithm();
+            algorithm.setRefl(refl);
+            algorithm.setIsLand(algorithm.aPrioriLandValue() > S2IdepixAlgorithm.LAND_THRESH);
+            algorithm.setLat(latitudes[p]);
+            algorithm.setElevation(elevations[p]);
+            algorithm.setRhoToa442Thresh(RHO_TOA_442_THRESH);
+            algorithm.setCwThresh(CW_THRESH);
+            algorithm.setGclThresh(GCL_THRESH);
+            algorithm.setClThresh(CL_THRESH);
+            algorithm.setInvalid(false);
+            flags[p] = computeFlags(algorithm);
+        }
+        return flags;
+    }
+
+    private static int computeFlags(S2IdepixAlgorithm algorithm) {
+        int flag = 0;
+        flag |= algorithm.isInvalid() ? 1 << S2IdepixConstants.IDEPIX_INVALID : 0;
+        flag |= algorithm.isCloud() ? 1 << S2IdepixConstants.IDEPIX_CLOUD : 0;
+        flag |= algorithm.isCloudSure() ? 1 << S2IdepixConstants.IDEPIX_CLOUD_SURE : 0;
+        flag |= algorithm.isCloudAmbiguous() ? 1 << S2IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS : 0;
+        flag |= algorithm.isCirrus() ? 1 << S2IdepixConstants.IDEPIX_CIRRUS_SURE : 0;
+        flag |= algorithm.isCirrusAmbiguous() ? 1 << S2IdepixConstants.IDEPIX_CIRRUS_AMBIGUOUS : 0;
+        flag |= algorithm.isClearLand() ? 1 << S2IdepixConstants.IDEPIX_CLEAR_LAND : 0;
+        flag |= algorithm.isClearWater() ? 1 << S2IdepixConstants.IDEPIX_CLEAR_WATER : 0;
+        flag |= algorithm.isClearSnow() ? 1 << S2IdepixConstants.IDEPIX_SNOW_ICE : 0;
+        flag |= algorithm.isLand() ? 1 << S2IdepixConstants.IDEPIX_LAND : 0;
+        flag |= algorithm.isWater() ? 1 << S2IdepixConstants.IDEPIX_WATER : 0;
+        flag |= algorithm.isBright() ? 1 << S2IdepixConstants.IDEPIX_BRIGHT : 0;
+        flag |= algorithm.isWhite() ? 1 << S2IdepixConstants.IDEPIX_WHITE : 0;
+        flag |= algorithm.isBrightWhite() ? 1 << S2IdepixConstants.IDEPIX_BRIGHTWHITE : 0;
+        flag |= algorithm.isVegRisk() ? 1 << S2IdepixConstants.IDEPIX_VEG_RISK : 0;
+        return flag;
+    }
+}
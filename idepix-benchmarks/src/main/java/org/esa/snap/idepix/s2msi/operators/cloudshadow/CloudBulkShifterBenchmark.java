@@ -0,0 +1,97 @@
+package org.esa.snap.idepix.s2msi.operators.cloudshadow;
+
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.util.math.MathUtils;
+import org.esa.snap.idepix.benchmarks.SyntheticScene;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the shifting of the cloud mask along the cloud path of a tile, once for the mean reflectances
+ * of the S2 cloud shadow pre-processing and once for the shifted and potential cloud shadow of the
+ * post-processing. The flags are modified by both, so every invocation starts from a copy of the flags.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CloudBulkShifterBenchmark {
+
+    private static final double SPATIAL_RESOLUTION = 60.0;
+    private static final double MAX_CLOUD_TOP = 10000.0;
+
+    @Param({"256"})
+    public int tileSize;
+
+    @Param({"0.05", "0.3"})
+    public double cloudFraction;
+
+    @Param({"30", "60"})
+    public float sunZenith;
+
+    private final float sunAzimuth = 150.0f;
+
+    private Rectangle sourceRectangle;
+    private Rectangle targetRectangle;
+    private Point2D[] cloudPath;
+    private int[] flags;
+    private int[] flagArray;
+    private float[][] clusterData;
+
+    @Setup
+    public void setUp() {
+        final Product product = new Product("cloudBulkShifter", "benchmark", 3 * tileSize, 3 * tileSize);
+        targetRectangle = new Rectangle(tileSize, tileSize, tileSize, tileSize);
+        cloudPath = CloudShadowUtils.getRelativePath(0.0, sunZenith * MathUtils.DTOR, sunAzimuth * MathUtils.DTOR,
+                                                     MAX_CLOUD_TOP, targetRectangle, targetRectangle,
+                                                     product.getSceneRasterHeight(), product.getSceneRasterWidth(),
+                                                     SPATIAL_RESOLUTION, true, false);
+        sourceRectangle = CloudShadowUtils.getSourceRectangle(product, targetRectangle, cloudPath);
+
+        final int sourceLength = sourceRectangle.width * sourceRectangle.height;
+        final boolean[] cloudMask = SyntheticScene.createCloudMask(sourceRectangle.width, sourceRectangle.height,
+                                                                   cloudFraction, 42L);
+        flags = new int[sourceLength];
+        for (int i = 0; i < sourceLength; i++) {
+            final int surfaceFlag = (i / 7) % 2 == 0 ? PreparationMaskBand.LAND_FLAG : PreparationMaskBand.WATER_FLAG;
+            flags[i] = cloudMask[i] ? PreparationMaskBand.CLOUD_FLAG | surfaceFlag : surfaceFlag;
+        }
+        flagArray = new int[sourceLength];
+        clusterData = new float[][]{
+                SyntheticScene.createValues(sourceLength, 0.0f, 0.4f, 4711L),
+                SyntheticScene.createValues(sourceLength, 0.0f, 0.4f, 4712L)
+        };
+    }
+
+    @Benchmark
+    public double[][] shiftCloudBulkAlongCloudPathType() {
+        System.arraycopy(flags, 0, flagArray, 0, flags.length);
+        final CloudBulkShifter cloudBulkShifter = new CloudBulkShifter();
+        cloudBulkShifter.shiftCloudBulkAlongCloudPathType(sourceRectangle, targetRectangle, sunAzimuth,
+                                                          clusterData, flagArray, cloudPath);
+        return cloudBulkShifter.getMeanReflectanceAlongPath();
+    }
+
+    @Benchmark
+    public int[] setTileShiftedCloudBulk() {
+        System.arraycopy(flags, 0, flagArray, 0, flags.length);
+        CloudBulkShifter.setTileShiftedCloudBulk(sourceRectangle, targetRectangle, sunAzimuth, flagArray, cloudPath,
+                                                 cloudPath.length / 2);
+        return flagArray;
+    }
+}
@@ -0,0 +1,56 @@
+package org.esa.snap.idepix.s2msi.operators.cloudshadow;
+
+import org.esa.snap.idepix.benchmarks.SyntheticScene;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the labelling of the cloud areas of an S2 cloud shadow source rectangle, as done by
+ * the S2 cloud shadow post-processing for every tile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FindContinuousAreasBenchmark {
+
+    @Param({"1024"})
+    public int size;
+
+    @Param({"0.05", "0.3"})
+    public double cloudFraction;
+
+    private FindContinuousAreas findContinuousAreas;
+    private int[] cloudIdArray;
+
+    @Setup
+    public void setUp() {
+        final boolean[] cloudMask = SyntheticScene.createCloudMask(size, size, cloudFraction, 42L);
+        final int[] flagArray = new int[size * size];
+        for (int i = 0; i < flagArray.length; i++) {
+            flagArray[i] = cloudMask[i] ? PreparationMaskBand.CLOUD_FLAG : PreparationMaskBand.LAND_FLAG;
+        }
+        findContinuousAreas = new FindContinuousAreas(flagArray);
+        cloudIdArray = new int[flagArray.length];
+    }
+
+    @Benchmark
+    public ContinuousAreas computeAreaID() {
+        Arrays.fill(cloudIdArray, 0);
+        return findContinuousAreas.computeAreaID(size, size, cloudIdArray, true);
+    }
+}
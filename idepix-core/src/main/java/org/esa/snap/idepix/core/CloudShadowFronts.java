@@ -18,6 +18,7 @@ package org.esa.snap.idepix.core;
 
 
 import org.esa.snap.idepix.core.util.Bresenham;
+import org.esa.snap.idepix.core.util.PathPixels;
 import org.esa.snap.core.datamodel.GeoCoding;
 import org.esa.snap.core.datamodel.GeoPos;
 import org.esa.snap.core.datamodel.PixelPos;
@@ -41,6 +42,8 @@ public abstract class CloudShadowFronts {
     private final Tile ctpTile;
     private final Tile altTile;
 
+    private final PathPixels pathPixels = new PathPixels();
+
     protected CloudShadowFronts(GeoCoding geoCoding,
                                 Rectangle sourceRectangle, Rectangle targetRectangle,
                                 Tile szaTile, Tile saaTile,
@@ -69,12 +72,16 @@ public abstract class CloudShadowFronts {
         final int x0 = targetRectangle.x;
         final int y0 = targetRectangle.y;
         boolean[][] isCloudShadow = new boolean[w][h];
-        for (int y = y0; y < y0 + h; y++) {
-            for (int x = x0; x < x0 + w; x++) {
-                if (isCloudFree(x, y)) {
-                    isCloudShadow[x - x0][y - y0] = getCloudShadow(x, y);
-                    if (isCloudShadow[x - x0][y - y0]) {
-                        setCloudShadow(x, y);
+        // without any cloud in the source rectangle, no shadow path can hit a cloud
+        final boolean hasCloudForShadow = hasCloudForShadow();
+        if (hasCloudForShadow) {
+            for (int y = y0; y < y0 + h; y++) {
+                for (int x = x0; x < x0 + w; x++) {
+                    if (isCloudFree(x, y)) {
+                        isCloudShadow[x - x0][y - y0] = getCloudShadow(x, y);
+                        if (isCloudShadow[x - x0][y - y0]) {
+                            setCloudShadow(x, y);
+                        }
                     }
                 }
             }
@@ -92,16 +99,29 @@ public abstract class CloudShadowFronts {
                 }
             }
         }
-        // second post-correction, called 'belt' (why??): flag a pixel as cloud shadow if neighbour pixel is shadow
-        for (int y = y0; y < y0 + h; y++) {
-            for (int x = x0; x < x0 + w; x++) {
-                if (isCloudFree(x, y)) {
-                    performCloudShadowBeltCorrection(x, y, isCloudShadow);
+        if (hasCloudForShadow) {
+            // second post-correction, called 'belt' (why??): flag a pixel as cloud shadow if neighbour pixel is shadow
+            for (int y = y0; y < y0 + h; y++) {
+                for (int x = x0; x < x0 + w; x++) {
+                    if (isCloudFree(x, y)) {
+                        performCloudShadowBeltCorrection(x, y, isCloudShadow);
+                    }
                 }
             }
         }
     }
 
+    private boolean hasCloudForShadow() {
+        for (int y = sourceRectangle.y; y < sourceRectangle.y + sourceRectangle.height; y++) {
+            for (int x = sourceRectangle.x; x < sourceRectangle.x + sourceRectangle.width; x++) {
+                if (isCloudForShadow(x, y)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private boolean isPixelSurroundedByCloudShadow(int x, int y, boolean[][] isCloudShadow) {
         // check if pixel is surrounded by other cloud shadow pixels
         int surroundingPixelCount = 0;
@@ -171,13 +191,13 @@ public abstract class CloudShadowFronts {
         }
         final int endPointX = (int) Math.round(endPixPoint.x);
         final int endPointY = (int) Math.round(endPixPoint.y);
-        java.util.List<PixelPos> pathPixels = Bresenham.getPathPixels(x, y, endPointX, endPointY, sourceRectangle);
+        final int numPathPixels = Bresenham.getPathPixels(x, y, endPointX, endPointY, sourceRectangle, pathPixels);
 
         GeoPos geoPosCurrent = new GeoPos();
-        for (PixelPos pathPixel : pathPixels) {
+        for (int i = 0; i < numPathPixels; i++) {
 
-            final int xCurrent = (int) pathPixel.getX();
-            final int yCurrent = (int) pathPixel.getY();
+            final int xCurrent = pathPixels.getX(i);
+            final int yCurrent = pathPixels.getY(i);
 
             if (sourceRectangle.contains(xCurrent, yCurrent)) {
                 if (isCloudForShadow(xCurrent, yCurrent)) {
@@ -28,15 +28,47 @@ import java.awt.*;
 public class CloudBuffer {
 
     public static void setCloudBuffer(Tile targetTile, Rectangle srcRectangle, Tile sourceFlagTile, int cloudBufferWidth) {
-        for (int y = srcRectangle.y; y < srcRectangle.y + srcRectangle.height; y++) {
-            for (int x = srcRectangle.x; x < srcRectangle.x + srcRectangle.width; x++) {
-                final boolean isCloud = sourceFlagTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD);
-                if (isCloud) {
-                    computeSimpleCloudBuffer(x, y,
-                                             targetTile,
-                                             srcRectangle,
-                                             cloudBufferWidth,
-                                             IdepixConstants.IDEPIX_CLOUD_BUFFER);
+        setCloudBuffer(targetTile, srcRectangle, sourceFlagTile, cloudBufferWidth,
+                       IdepixConstants.IDEPIX_CLOUD, IdepixConstants.IDEPIX_CLOUD_BUFFER);
+    }
+
+    /**
+     * Sets the given cloud buffer flag in the target tile for all pixels within a square of cloudBufferWidth
+     * around a pixel of the source rectangle which has the given cloud flag set. The cost of the underlying
+     * {@link MaskDilation} does not depend on the buffer width.
+     *
+     * @param targetTile         - the target tile
+     * @param srcRectangle       - the (extended) source rectangle to consider cloud pixels from
+     * @param sourceFlagTile     - the source flag tile, covering srcRectangle
+     * @param cloudBufferWidth   - the buffer width in pixels
+     * @param cloudFlagBit       - the flag bit of the cloud pixels to be buffered
+     * @param cloudBufferFlagBit - the flag bit to set for the buffer pixels
+     */
+    public static void setCloudBuffer(Tile targetTile, Rectangle srcRectangle, Tile sourceFlagTile, int cloudBufferWidth,
+                                      int cloudFlagBit, int cloudBufferFlagBit) {
+        final int width = srcRectangle.width;
+        final int height = srcRectangle.height;
+        final boolean[] cloudMask = new boolean[width * height];
+        boolean hasCloud = false;
+        int index = 0;
+        for (int y = srcRectangle.y; y < srcRectangle.y + height; y++) {
+            for (int x = srcRectangle.x; x < srcRectangle.x + width; x++) {
+                final boolean isCloud = sourceFlagTile.getSampleBit(x, y, cloudFlagBit);
+                cloudMask[index++] = isCloud;
+                hasCloud |= isCloud;
+            }
+        }
+        if (!hasCloud) {
+            return;
+        }
+
+        final boolean[] bufferMask = MaskDilation.dilate(cloudMask, width, height, cloudBufferWidth);
+        final Rectangle bufferRectangle = srcRectangle.intersection(targetTile.getRectangle());
+        for (int y = bufferRectangle.y; y < bufferRectangle.y + bufferRectangle.height; y++) {
+            final int rowOffset = (y - srcRectangle.y) * width - srcRectangle.x;
+            for (int x = bufferRectangle.x; x < bufferRectangle.x + bufferRectangle.width; x++) {
+                if (bufferMask[rowOffset + x]) {
+                    targetTile.setSample(x, y, cloudBufferFlagBit, true);
                 }
             }
         }
@@ -62,83 +94,78 @@ public class CloudBuffer {
         }
     }
 
-    static void computeCloudBufferLC(Tile targetTile) {
-        //  set alternative cloud buffer flag as used in LC-CCI project:
-        // 1. use 2x2 square with reference pixel in upper left
-        // 2. move this square row-by-row over the tile
-        // 3. if reference pixel is not clouds, don't do anything
-        // 4. if reference pixel is cloudy:
-        //    - if 2x2 square only has cloud pixels, then set cloud buffer of two pixels
-        //      in both x and y direction of reference pixel.
-        //    - if 2x2 square also has non-cloudy pixels, do the same but with cloud buffer of only 1
+    /**
+     * Sets the alternative cloud buffer flag as used in LC-CCI project on a row-major flag array.
+     * The cloud flags are only read, so the whole buffer is computed in a single pass over the array:
+     * <ol>
+     * <li>use 2x2 square with reference pixel in upper left</li>
+     * <li>move this square row-by-row over the tile</li>
+     * <li>if reference pixel is not clouds, don't do anything</li>
+     * <li>if reference pixel is cloudy:
+     * <ul>
+     * <li>if 2x2 square only has cloud pixels, then set cloud buffer of two pixels
+     * in both x and y direction of reference pixel.</li>
+     * <li>if 2x2 square also has non-cloudy pixels, do the same but with cloud buffer of only 1</li>
+     * </ul>
+     * </li>
+     * </ol>
+     *
+     * @param flags  - the IdePix flags of the tile, modified in place
+     * @param width  - the tile width
+     * @param height - the tile height
+     */
+    static void computeCloudBufferLC(int[] flags, int width, int height) {
+        final int cloudMask = 1 << IdepixConstants.IDEPIX_CLOUD;
+        final int bufferMask = 1 << IdepixConstants.IDEPIX_CLOUD_BUFFER;
+        final int xMax = width - 1;
+        final int yMax = height - 1;
 
-        Rectangle rectangle = targetTile.getRectangle();
-        for (int y = rectangle.y; y < rectangle.y + rectangle.height - 1; y++) {
-            for (int x = rectangle.x; x < rectangle.x + rectangle.width - 1; x++) {
-                if (targetTile.getSampleBit(x, y, org.esa.snap.idepix.core.IdepixConstants.IDEPIX_CLOUD)) {
-                    // reference pixel is upper left (x, y)
-                    // first set buffer of 1 in each direction
-                    int bufferWidth = 1;
-                    int LEFT_BORDER = Math.max(x - bufferWidth, rectangle.x);
-                    int RIGHT_BORDER = Math.min(x + bufferWidth, rectangle.x + rectangle.width - 1);
-                    int TOP_BORDER = Math.max(y - bufferWidth, rectangle.y);
-                    int BOTTOM_BORDER = Math.min(y + bufferWidth, rectangle.y + rectangle.height - 1);
-                    // now check if whole 2x2 square (x+1,y), (x, y+1), (x+1, y+1) is cloudy
-                    if (targetTile.getSampleBit(x + 1, y, org.esa.snap.idepix.core.IdepixConstants.IDEPIX_CLOUD) &&
-                            targetTile.getSampleBit(x, y + 1, org.esa.snap.idepix.core.IdepixConstants.IDEPIX_CLOUD) &&
-                            targetTile.getSampleBit(x + 1, y + 1, org.esa.snap.idepix.core.IdepixConstants.IDEPIX_CLOUD)) {
+        for (int y = 0; y < yMax; y++) {
+            final int rowOffset = y * width;
+            for (int x = 0; x < xMax; x++) {
+                if ((flags[rowOffset + x] & cloudMask) != 0) {
+                    // reference pixel is upper left (x, y), check if whole 2x2 square is cloudy
+                    if ((flags[rowOffset + x + 1] & cloudMask) != 0 &&
+                            (flags[rowOffset + width + x] & cloudMask) != 0 &&
+                            (flags[rowOffset + width + x + 1] & cloudMask) != 0) {
                         // set buffer of 2 in each direction
-                        bufferWidth = 2;
-                        LEFT_BORDER = Math.max(x - bufferWidth, rectangle.x);
-                        RIGHT_BORDER = Math.min(x + 1 + bufferWidth, rectangle.x + rectangle.width - 1);
-                        TOP_BORDER = Math.max(y - bufferWidth, rectangle.y);
-                        BOTTOM_BORDER = Math.min(y + 1 + bufferWidth, rectangle.y + rectangle.height - 1);
-                    }
-                    for (int i = LEFT_BORDER; i <= RIGHT_BORDER; i++) {
-                        for (int j = TOP_BORDER; j <= BOTTOM_BORDER; j++) {
-                            targetTile.setSample(i, j, org.esa.snap.idepix.core.IdepixConstants.IDEPIX_CLOUD_BUFFER, true);
-                        }
+                        setFlag(flags, width, bufferMask,
+                                Math.max(x - 2, 0), Math.min(x + 3, xMax),
+                                Math.max(y - 2, 0), Math.min(y + 3, yMax));
+                    } else {
+                        setFlag(flags, width, bufferMask,
+                                Math.max(x - 1, 0), Math.min(x + 1, xMax),
+                                Math.max(y - 1, 0), Math.min(y + 1, yMax));
                     }
                 }
             }
         }
-        int bufferWidth = 1;
 
         // south tile boundary...
-        final int ySouth = rectangle.y + rectangle.height - 1;
-        for (int x = rectangle.x; x < rectangle.x + rectangle.width - 1; x++) {
-            int LEFT_BORDER = Math.max(x - bufferWidth, rectangle.x);
-            int RIGHT_BORDER = Math.min(x + bufferWidth, rectangle.x + rectangle.width - 1);
-            int TOP_BORDER = Math.max(rectangle.y, ySouth - bufferWidth);
-            if (targetTile.getSampleBit(x, ySouth, org.esa.snap.idepix.core.IdepixConstants.IDEPIX_CLOUD)) {
-                for (int i = LEFT_BORDER; i <= RIGHT_BORDER; i++) {
-                    for (int j = TOP_BORDER; j <= ySouth; j++) {
-                        targetTile.setSample(i, j, org.esa.snap.idepix.core.IdepixConstants.IDEPIX_CLOUD_BUFFER, true);
-                    }
-                }
+        for (int x = 0; x < xMax; x++) {
+            if ((flags[yMax * width + x] & cloudMask) != 0) {
+                setFlag(flags, width, bufferMask, Math.max(x - 1, 0), Math.min(x + 1, xMax), Math.max(yMax - 1, 0), yMax);
             }
         }
 
         // east tile boundary...
-        final int xEast = rectangle.x + rectangle.width - 1;
-        for (int y = rectangle.y; y < rectangle.y + rectangle.height - 1; y++) {
-            int LEFT_BORDER = Math.max(rectangle.x, xEast - bufferWidth);
-            int TOP_BORDER = Math.max(y - bufferWidth, rectangle.y);
-            int BOTTOM_BORDER = Math.min(y + bufferWidth, rectangle.y + rectangle.height - 1);
-            if (targetTile.getSampleBit(xEast, y, org.esa.snap.idepix.core.IdepixConstants.IDEPIX_CLOUD)) {
-                for (int i = LEFT_BORDER; i <= xEast; i++) {
-                    for (int j = TOP_BORDER; j <= BOTTOM_BORDER; j++) {
-                        targetTile.setSample(i, j, org.esa.snap.idepix.core.IdepixConstants.IDEPIX_CLOUD_BUFFER, true);
-                    }
-                }
+        for (int y = 0; y < yMax; y++) {
+            if ((flags[y * width + xMax] & cloudMask) != 0) {
+                setFlag(flags, width, bufferMask, Math.max(xMax - 1, 0), xMax, Math.max(y - 1, 0), Math.min(y + 1, yMax));
             }
         }
+
         // pixel in lower right corner...
-        if (targetTile.getSampleBit(xEast, ySouth, org.esa.snap.idepix.core.IdepixConstants.IDEPIX_CLOUD)) {
-            for (int i = Math.max(rectangle.x, xEast - 1); i <= xEast; i++) {
-                for (int j = Math.max(rectangle.y, ySouth - 1); j <= ySouth; j++) {
-                    targetTile.setSample(i, j, org.esa.snap.idepix.core.IdepixConstants.IDEPIX_CLOUD_BUFFER, true);
-                }
+        if ((flags[yMax * width + xMax] & cloudMask) != 0) {
+            setFlag(flags, width, bufferMask, Math.max(xMax - 1, 0), xMax, Math.max(yMax - 1, 0), yMax);
+        }
+    }
+
+    private static void setFlag(int[] flags, int width, int flagMask, int xStart, int xEnd, int yStart, int yEnd) {
+        for (int j = yStart; j <= yEnd; j++) {
+            final int rowOffset = j * width;
+            for (int i = xStart; i <= xEnd; i++) {
+                flags[rowOffset + i] |= flagMask;
             }
         }
     }
@@ -3,6 +3,8 @@ package org.esa.snap.idepix.core.operators;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.snap.idepix.core.IdepixConstants;
 import org.esa.snap.idepix.core.util.IdepixUtils;
+import org.esa.snap.idepix.core.util.OperatorTiming;
+import org.esa.snap.idepix.core.util.TileSummary;
 import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.gpf.Operator;
@@ -76,38 +78,65 @@ public class CloudBufferOp extends Operator {
 
     @Override
     public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
+        final long startTime = OperatorTiming.start();
+        try {
+            Rectangle targetRectangle = targetTile.getRectangle();
+            if (useLcCloudBuffer) {
+                computeLcCloudBuffer(targetTile);
+                return;
+            }
+            final Rectangle srcRectangle = rectCalculator.extend(targetRectangle);
 
-        Rectangle targetRectangle = targetTile.getRectangle();
-        final Rectangle srcRectangle = rectCalculator.extend(targetRectangle);
-
-        final Tile sourceFlagTile = getSourceTile(origClassifFlagBand, srcRectangle);
-
-        for (int y = srcRectangle.y; y < srcRectangle.y + srcRectangle.height; y++) {
-            checkForCancellation();
-            for (int x = srcRectangle.x; x < srcRectangle.x + srcRectangle.width; x++) {
+            final Tile sourceFlagTile = getSourceTile(origClassifFlagBand, srcRectangle);
 
-                if (targetRectangle.contains(x, y)) {
+            for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+                checkForCancellation();
+                for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
                     IdepixUtils.combineFlags(x, y, sourceFlagTile, targetTile);
                 }
-                boolean isCloud = sourceFlagTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD);
-                if (isCloud) {
-                    if (useLcCloudBuffer) {
-                        CloudBuffer.computeCloudBufferLC(targetTile);
-                    } else {
-                        CloudBuffer.computeSimpleCloudBuffer(x, y,
-                                                             targetTile,
-                                                             srcRectangle,
-                                                             cloudBufferWidth,
-                                                             IdepixConstants.IDEPIX_CLOUD_BUFFER);
-                    }
+            }
+            if (TileSummary.isCloudFree(sourceFlagTile, srcRectangle)) {
+                // no cloud to buffer, and no cloud flag to consolidate the buffer with
+                return;
+            }
+            CloudBuffer.setCloudBuffer(targetTile, srcRectangle, sourceFlagTile, cloudBufferWidth);
+
+            for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+                checkForCancellation();
+                for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                    IdepixUtils.consolidateCloudAndBuffer(targetTile, x, y);
                 }
             }
+        } finally {
+            OperatorTiming.stop(this, targetTile.getRectangle(), startTime);
         }
+    }
 
+    private void computeLcCloudBuffer(Tile targetTile) {
+        // the LC buffer only looks at the clouds inside the target tile, so no extended source rectangle is needed
+        final Rectangle targetRectangle = targetTile.getRectangle();
+        final Tile sourceFlagTile = getSourceTile(origClassifFlagBand, targetRectangle);
+        final int[] flags = new int[targetRectangle.width * targetRectangle.height];
+        int index = 0;
         for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
             checkForCancellation();
             for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
-                IdepixUtils.consolidateCloudAndBuffer(targetTile, x, y);
+                flags[index++] = sourceFlagTile.getSampleInt(x, y) | targetTile.getSampleInt(x, y);
+            }
+        }
+
+        CloudBuffer.computeCloudBufferLC(flags, targetRectangle.width, targetRectangle.height);
+
+        final int cloudMask = 1 << IdepixConstants.IDEPIX_CLOUD;
+        final int bufferMask = 1 << IdepixConstants.IDEPIX_CLOUD_BUFFER;
+        index = 0;
+        for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+            for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                int flag = flags[index++];
+                if ((flag & cloudMask) != 0) {
+                    flag &= ~bufferMask;
+                }
+                targetTile.setSample(x, y, flag);
             }
         }
     }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.idepix.core.operators;
+
+import java.util.Arrays;
+
+/**
+ * Dilation of binary masks with a square window, as needed for cloud buffers.
+ * <p>
+ * The square window is separable, so the dilation is done as a row-wise max filter followed by
+ * a column-wise max filter. Each filter tracks the distance to the nearest set pixel in both directions,
+ * thus the cost is linear in the number of pixels and does not depend on the window size.
+ * The masks are row-major primitive arrays of size width * height.
+ */
+public class MaskDilation {
+
+    private static final int FAR_AWAY = Integer.MAX_VALUE / 2;
+
+    private MaskDilation() {
+    }
+
+    /**
+     * Dilates the given mask with a square window of size (2 * radius + 1) x (2 * radius + 1).
+     * The window is clipped at the mask borders.
+     *
+     * @param mask   - the mask to dilate
+     * @param width  - the mask width
+     * @param height - the mask height
+     * @param radius - the dilation radius in pixels
+     *
+     * @return the dilated mask
+     */
+    public static boolean[] dilate(boolean[] mask, int width, int height, int radius) {
+        final boolean[] dilated = new boolean[width * height];
+        dilate(mask, width, height, radius, dilated);
+        return dilated;
+    }
+
+    /**
+     * Dilates the given mask with a square window of size (2 * radius + 1) x (2 * radius + 1).
+     * The window is clipped at the mask borders.
+     *
+     * @param mask    - the mask to dilate
+     * @param width   - the mask width
+     * @param height  - the mask height
+     * @param radius  - the dilation radius in pixels
+     * @param dilated - the array receiving the dilated mask, may not be the same as mask
+     */
+    public static void dilate(boolean[] mask, int width, int height, int radius, boolean[] dilated) {
+        if (mask.length != width * height || dilated.length != width * height) {
+            throw new IllegalArgumentException("mask size does not match " + width + " x " + height);
+        }
+        if (mask == dilated) {
+            throw new IllegalArgumentException("dilation cannot be done in place");
+        }
+        if (radius <= 0) {
+            System.arraycopy(mask, 0, dilated, 0, mask.length);
+            return;
+        }
+        final boolean[] rowDilated = new boolean[width * height];
+        dilateRows(mask, width, height, radius, rowDilated);
+        dilateColumns(rowDilated, width, height, radius, dilated);
+    }
+
+    private static void dilateRows(boolean[] mask, int width, int height, int radius, boolean[] dilated) {
+        for (int y = 0; y < height; y++) {
+            final int rowOffset = y * width;
+            int lastSet = -FAR_AWAY;
+            for (int x = 0; x < width; x++) {
+                if (mask[rowOffset + x]) {
+                    lastSet = x;
+                }
+                dilated[rowOffset + x] = x - lastSet <= radius;
+            }
+            int nextSet = FAR_AWAY;
+            for (int x = width - 1; x >= 0; x--) {
+                if (mask[rowOffset + x]) {
+                    nextSet = x;
+                }
+                dilated[rowOffset + x] |= nextSet - x <= radius;
+            }
+        }
+    }
+
+    private static void dilateColumns(boolean[] mask, int width, int height, int radius, boolean[] dilated) {
+        // columns are processed line by line to keep the memory access sequential
+        final int[] lastSet = new int[width];
+        Arrays.fill(lastSet, -FAR_AWAY);
+        for (int y = 0; y < height; y++) {
+            final int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                if (mask[rowOffset + x]) {
+                    lastSet[x] = y;
+                }
+                dilated[rowOffset + x] = y - lastSet[x] <= radius;
+            }
+        }
+        final int[] nextSet = lastSet;
+        Arrays.fill(nextSet, FAR_AWAY);
+        for (int y = height - 1; y >= 0; y--) {
+            final int rowOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                if (mask[rowOffset + x]) {
+                    nextSet[x] = y;
+                }
+                dilated[rowOffset + x] |= nextSet[x] - y <= radius;
+            }
+        }
+    }
+}
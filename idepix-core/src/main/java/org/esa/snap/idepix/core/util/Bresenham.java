@@ -153,6 +153,60 @@ public class Bresenham {
 
     }
 
+    /**
+     * Provides the path pixels between (x1,y1) and (x2,y2) in the same order as
+     * {@link #getPathPixels(int, int, int, int, Rectangle)}, but fills the given reusable buffer
+     * instead of creating a list of pixel positions.
+     *
+     * @param x1         - first x coordinate
+     * @param y1         - first y coordinate
+     * @param x2         - second x coordinate
+     * @param y2         - second y coordinate
+     * @param rect       - rectangle where the pixels need to be inside
+     * @param pathPixels - the buffer to fill, previous content is discarded
+     *
+     * @return the number of path pixels
+     */
+    public static int getPathPixels(final int x1, final int y1, final int x2, final int y2, Rectangle rect,
+                                    PathPixels pathPixels) {
+        pathPixels.clear();
+
+        int dx = x2 - x1;
+        int dy = y2 - y1;
+        final int xInc = dx >= 0 ? 1 : -1;
+        final int yInc = dy >= 0 ? 1 : -1;
+        dx = Math.abs(dx);
+        dy = Math.abs(dy);
+        int error = dx > 0 ? dx >> 1 : dy >> 1;
+        final int length = Math.max(dx, dy) + 1;
+        pathPixels.ensureCapacity(length);
+
+        int xx = x1;
+        int yy = y1;
+        for (int i = 0; i < length; i++) {
+            if (dx > dy) {
+                error += dy;
+                if (error >= dx) {
+                    error -= dx;
+                    yy += yInc;
+                }
+                xx += xInc;
+            } else {
+                error += dx;
+                if (error >= dy) {
+                    error -= dy;
+                    xx += xInc;
+                }
+                yy += yInc;
+            }
+            if (rect.contains(xx, yy)) {
+                pathPixels.add(xx, yy);
+            }
+        }
+
+        return pathPixels.size();
+    }
+
     /**
      * finds the image border pixel if walking from given pixel (x,y) on a straight line
      * under given angle towards image boundary. The angle counts in mathematical sense,
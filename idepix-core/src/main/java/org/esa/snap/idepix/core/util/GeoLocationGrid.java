@@ -0,0 +1,187 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.PixelPos;
+import org.esa.snap.core.datamodel.Product;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+
+/**
+ * Latitudes and longitudes of all pixels of a rectangle, computed once and kept in primitive arrays.
+ * This replaces per pixel calls of {@link GeoCoding#getGeoPos} in the inner loops of the operators,
+ * which create new objects and which are expensive for pixel based geo-codings.
+ * <p>
+ * The grid holds the geo-positions of the pixel centres, i.e. of the image positions (x + 0.5, y + 0.5).
+ * If the product contains latitude and longitude bands, which hold these values, they are read in bulk
+ * for the whole rectangle. Otherwise, the geo-coding is evaluated at the pixel centres.
+ * Geo-positions between the pixel centres are provided by {@link #getGeoPos(double, double, GeoPos)}.
+ * Instances are immutable after creation.
+ */
+public class GeoLocationGrid {
+
+    private static final String[] LAT_BAND_NAMES = {"lat", "latitude"};
+    private static final String[] LON_BAND_NAMES = {"lon", "longitude"};
+
+    private final Rectangle rectangle;
+    private final float[] lat;
+    private final float[] lon;
+
+    private GeoLocationGrid(Rectangle rectangle, float[] lat, float[] lon) {
+        this.rectangle = new Rectangle(rectangle);
+        this.lat = lat;
+        this.lon = lon;
+    }
+
+    /**
+     * Creates the grid for the given rectangle, preferring the latitude and longitude bands of the product
+     * over its scene geo-coding.
+     *
+     * @param product   - the product
+     * @param rectangle - the rectangle, e.g. of a target tile
+     * @return the grid
+     */
+    public static GeoLocationGrid create(Product product, Rectangle rectangle) {
+        final Band latBand = findBand(product, LAT_BAND_NAMES);
+        final Band lonBand = findBand(product, LON_BAND_NAMES);
+        if (latBand != null && lonBand != null) {
+            final int size = rectangle.width * rectangle.height;
+            final float[] lat = readSamples(latBand, rectangle, new float[size]);
+            final float[] lon = readSamples(lonBand, rectangle, new float[size]);
+            return new GeoLocationGrid(rectangle, lat, lon);
+        }
+        return create(product.getSceneGeoCoding(), rectangle);
+    }
+
+    /**
+     * Creates the grid for the given rectangle from the geo-coding, evaluated at the pixel centres.
+     *
+     * @param geoCoding - the geo-coding
+     * @param rectangle - the rectangle, e.g. of a target tile
+     * @return the grid
+     */
+    public static GeoLocationGrid create(GeoCoding geoCoding, Rectangle rectangle) {
+        final int size = rectangle.width * rectangle.height;
+        final float[] lat = new float[size];
+        final float[] lon = new float[size];
+        final PixelPos pixelPos = new PixelPos();
+        final GeoPos geoPos = new GeoPos();
+        int index = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                pixelPos.setLocation(x + 0.5, y + 0.5);
+                geoCoding.getGeoPos(pixelPos, geoPos);
+                lat[index] = (float) geoPos.lat;
+                lon[index] = (float) geoPos.lon;
+                index++;
+            }
+        }
+        return new GeoLocationGrid(rectangle, lat, lon);
+    }
+
+    public Rectangle getRectangle() {
+        return new Rectangle(rectangle);
+    }
+
+    boolean hasRectangle(Rectangle rectangle) {
+        return this.rectangle.equals(rectangle);
+    }
+
+    public boolean contains(int x, int y) {
+        return rectangle.contains(x, y);
+    }
+
+    public float getLat(int x, int y) {
+        return lat[index(x, y)];
+    }
+
+    public float getLon(int x, int y) {
+        return lon[index(x, y)];
+    }
+
+    /**
+     * Interpolates the geo-position at the given image position bilinearly between the centres of the
+     * neighbouring pixels. As for {@link GeoCoding#getGeoPos}, the pixel (x, y) covers the image positions
+     * from x to x + 1. Beyond the centres of the border pixels of the grid, the geo-position is extrapolated
+     * linearly. Longitudes are interpolated across the anti-meridian.
+     *
+     * @param pixelX - the image x coordinate
+     * @param pixelY - the image y coordinate
+     * @param geoPos - receives the geo-position, NaN if one of the neighbouring pixels has no geo-position
+     * @return the geo-position
+     */
+    public GeoPos getGeoPos(double pixelX, double pixelY, GeoPos geoPos) {
+        final double gridX = pixelX - 0.5 - rectangle.x;
+        final double gridY = pixelY - 0.5 - rectangle.y;
+        final int x0 = getLowerIndex(gridX, rectangle.width);
+        final int y0 = getLowerIndex(gridY, rectangle.height);
+        final int x1 = Math.min(x0 + 1, rectangle.width - 1);
+        final int y1 = Math.min(y0 + 1, rectangle.height - 1);
+        final double fx = x1 > x0 ? gridX - x0 : 0.0;
+        final double fy = y1 > y0 ? gridY - y0 : 0.0;
+        final int index00 = y0 * rectangle.width + x0;
+        final int index10 = y0 * rectangle.width + x1;
+        final int index01 = y1 * rectangle.width + x0;
+        final int index11 = y1 * rectangle.width + x1;
+
+        final double lat = interpolate(this.lat[index00], this.lat[index10], this.lat[index01], this.lat[index11],
+                                       fx, fy);
+        final double lon00 = this.lon[index00];
+        final double lon = interpolate(lon00,
+                                       unwrapLon(this.lon[index10], lon00),
+                                       unwrapLon(this.lon[index01], lon00),
+                                       unwrapLon(this.lon[index11], lon00),
+                                       fx, fy);
+        geoPos.setLocation(lat, normalizeLon(lon));
+        return geoPos;
+    }
+
+    private int index(int x, int y) {
+        return (y - rectangle.y) * rectangle.width + (x - rectangle.x);
+    }
+
+    // the index of the left or upper of the two grid points used for the interpolation
+    private static int getLowerIndex(double gridCoordinate, int size) {
+        return Math.max(0, Math.min((int) Math.floor(gridCoordinate), size - 2));
+    }
+
+    private static double interpolate(double v00, double v10, double v01, double v11, double fx, double fy) {
+        return (1.0 - fy) * ((1.0 - fx) * v00 + fx * v10) + fy * ((1.0 - fx) * v01 + fx * v11);
+    }
+
+    // shifts the longitude by 360 degrees if it is on the other side of the anti-meridian than the reference
+    private static double unwrapLon(double lon, double referenceLon) {
+        final double delta = lon - referenceLon;
+        if (delta > 180.0) {
+            return lon - 360.0;
+        } else if (delta < -180.0) {
+            return lon + 360.0;
+        }
+        return lon;
+    }
+
+    private static double normalizeLon(double lon) {
+        if (lon > 180.0) {
+            return lon - 360.0;
+        } else if (lon < -180.0) {
+            return lon + 360.0;
+        }
+        return lon;
+    }
+
+    private static Band findBand(Product product, String[] names) {
+        for (String name : names) {
+            if (product.containsBand(name)) {
+                return product.getBand(name);
+            }
+        }
+        return null;
+    }
+
+    private static float[] readSamples(Band band, Rectangle rectangle, float[] samples) {
+        final Raster data = band.getGeophysicalImage().getData(rectangle);
+        return data.getSamples(rectangle.x, rectangle.y, rectangle.width, rectangle.height, 0, samples);
+    }
+}
@@ -0,0 +1,89 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.gpf.Operator;
+import org.esa.snap.core.image.ImageManager;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+
+/**
+ * Provides {@link GeoLocationGrid}s to an operator which is processing tiles in parallel.
+ * <p>
+ * Each worker thread keeps only the grid of the tile it is currently working on, so the memory
+ * is bounded by the number of threads times the tile size, and no synchronisation is needed.
+ * Pixel based operators (e.g. {@link org.esa.snap.core.gpf.pointop.PixelOperator}) can ask for
+ * single pixels: the grid is computed for the block containing the pixel and reused for all following
+ * pixels of that block. The blocks are the tiles of the target product of the calling operator, so a
+ * grid is computed once per target tile.
+ */
+public class GeoLocationGridCache {
+
+    private final Product product;
+    private final Operator operator;
+    private final ThreadLocal<GeoLocationGrid> currentGrid;
+    private volatile Dimension blockSize;
+
+    /**
+     * @param product  - the product providing the geo-coding or the latitude and longitude bands
+     * @param operator - the calling operator, pixel requests are grouped by the tiles of its target product
+     */
+    public GeoLocationGridCache(Product product, Operator operator) {
+        this.product = product;
+        this.operator = operator;
+        this.currentGrid = new ThreadLocal<>();
+    }
+
+    /**
+     * Provides the grid of the given rectangle, computing it only if the current thread has not
+     * used the same rectangle before.
+     *
+     * @param rectangle - the rectangle, usually the target rectangle of a tile
+     * @return the grid
+     */
+    public GeoLocationGrid getGrid(Rectangle rectangle) {
+        GeoLocationGrid grid = currentGrid.get();
+        if (grid == null || !grid.hasRectangle(rectangle)) {
+            grid = GeoLocationGrid.create(product, rectangle);
+            currentGrid.set(grid);
+        }
+        return grid;
+    }
+
+    /**
+     * Provides a grid containing the given pixel.
+     *
+     * @param x - the pixel x coordinate
+     * @param y - the pixel y coordinate
+     * @return the grid
+     */
+    public GeoLocationGrid getGridForPixel(int x, int y) {
+        GeoLocationGrid grid = currentGrid.get();
+        if (grid == null || !grid.contains(x, y)) {
+            grid = GeoLocationGrid.create(product, getBlockRectangle(x, y));
+            currentGrid.set(grid);
+        }
+        return grid;
+    }
+
+    public float getLat(int x, int y) {
+        return getGridForPixel(x, y).getLat(x, y);
+    }
+
+    public float getLon(int x, int y) {
+        return getGridForPixel(x, y).getLon(x, y);
+    }
+
+    private Rectangle getBlockRectangle(int x, int y) {
+        if (blockSize == null) {
+            // the target product is complete when the first tile is computed
+            final Product targetProduct = operator.getTargetProduct();
+            final Dimension tileSize = targetProduct.getPreferredTileSize();
+            blockSize = tileSize != null ? tileSize : ImageManager.getPreferredTileSize(targetProduct);
+        }
+        final int blockX = (x / blockSize.width) * blockSize.width;
+        final int blockY = (y / blockSize.height) * blockSize.height;
+        final Rectangle block = new Rectangle(blockX, blockY, blockSize.width, blockSize.height);
+        return block.intersection(new Rectangle(product.getSceneRasterWidth(), product.getSceneRasterHeight()));
+    }
+}
@@ -42,14 +42,32 @@ public class IdepixUtils {
         if (isNoReflectanceValid(reflectance)) {
             return reflectance;
         }
+        return correctSaturatedReflectances(reflectance, new float[reflectance.length], 0);
+    }
+
+    /**
+     * Corrects the saturated reflectances like {@link #correctSaturatedReflectances(float[])}, but writes them
+     * into the given array, e.g. a matrix holding the reflectances of all pixels of a tile.
+     *
+     * @param reflectance          - the reflectances of a pixel
+     * @param correctedReflectance - receives the corrected reflectances, must not be the reflectance array
+     * @param offset               - the position of the first corrected reflectance
+     * @return the array of the corrected reflectances
+     */
+    public static float[] correctSaturatedReflectances(float[] reflectance, float[] correctedReflectance, int offset) {
+        final int last = offset + reflectance.length - 1;
 
-        float[] correctedReflectance = new float[reflectance.length];
+        // if all reflectances are NaN, do not correct
+        if (isNoReflectanceValid(reflectance)) {
+            System.arraycopy(reflectance, 0, correctedReflectance, offset, reflectance.length);
+            return correctedReflectance;
+        }
 
         // search for first non-NaN value from end of spectrum...
-        correctedReflectance[reflectance.length - 1] = Float.NaN;
+        correctedReflectance[last] = Float.NaN;
         for (int i = reflectance.length - 1; i >= 0; i--) {
             if (!Float.isNaN(reflectance[i])) {
-                correctedReflectance[reflectance.length - 1] = reflectance[i];
+                correctedReflectance[last] = reflectance[i];
                 break;
             }
         }
@@ -57,9 +75,9 @@ public class IdepixUtils {
         // correct NaN values from end of spectrum, start with first non-NaN value found above...
         for (int i = reflectance.length - 1; i > 0; i--) {
             if (Float.isNaN(reflectance[i - 1])) {
-                correctedReflectance[i - 1] = correctedReflectance[i];
+                correctedReflectance[offset + i - 1] = correctedReflectance[offset + i];
             } else {
-                correctedReflectance[i - 1] = reflectance[i - 1];
+                correctedReflectance[offset + i - 1] = reflectance[i - 1];
             }
         }
         return correctedReflectance;
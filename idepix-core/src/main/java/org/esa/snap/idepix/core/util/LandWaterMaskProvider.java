@@ -0,0 +1,107 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.watermask.operator.WatermaskClassifier;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+
+/**
+ * Provides the SRTM land/water fraction for all pixels of a rectangle at once.
+ * <p>
+ * Like {@link WatermaskClassifier#getWaterMaskFraction}, the fraction of a pixel is the average of the
+ * water mask samples at the sub-pixel positions (x + i / superSamplingX, y + j / superSamplingY),
+ * but the geo-positions are interpolated in a {@link GeoLocationGrid} instead of evaluating the
+ * geo-coding for every sub-pixel. As the grid holds the pixel centres, it covers the rectangle
+ * extended by one pixel on each side, see {@link #getGridRectangle}.
+ * <p>
+ * Instances are thread safe.
+ */
+public class LandWaterMaskProvider {
+
+    private final WatermaskClassifier classifier;
+    private final int superSamplingX;
+    private final int superSamplingY;
+
+    /**
+     * @param resolution     - the resolution of the water mask in metres
+     * @param superSamplingX - the number of sub-pixels in x direction
+     * @param superSamplingY - the number of sub-pixels in y direction
+     * @throws IOException if the water mask cannot be initialised
+     */
+    public LandWaterMaskProvider(int resolution, int superSamplingX, int superSamplingY) throws IOException {
+        this.classifier = new WatermaskClassifier(resolution, superSamplingX, superSamplingY);
+        this.superSamplingX = superSamplingX;
+        this.superSamplingY = superSamplingY;
+    }
+
+    /**
+     * Provides the rectangle of the geo-location grid needed for the water fractions of a rectangle:
+     * the rectangle extended by one pixel on each side, limited to the scene.
+     *
+     * @param product   - the product providing the geo-location
+     * @param rectangle - the rectangle, usually the target rectangle of a tile
+     * @return the rectangle of the grid
+     */
+    public static Rectangle getGridRectangle(Product product, Rectangle rectangle) {
+        final Rectangle sceneRectangle = new Rectangle(product.getSceneRasterWidth(), product.getSceneRasterHeight());
+        return new Rectangle(rectangle.x - 1, rectangle.y - 1, rectangle.width + 2, rectangle.height + 2)
+                .intersection(sceneRectangle);
+    }
+
+    /**
+     * Provides the water fractions of the pixels of the given rectangle.
+     *
+     * @param product   - the product providing the geo-location
+     * @param rectangle - the rectangle, usually the target rectangle of a tile
+     * @return the water fractions in percent, or {@link WatermaskClassifier#INVALID_VALUE},
+     * line by line for the rectangle
+     */
+    public byte[] getWaterFractions(Product product, Rectangle rectangle) {
+        return getWaterFractions(GeoLocationGrid.create(product, getGridRectangle(product, rectangle)), rectangle);
+    }
+
+    /**
+     * Provides the water fractions of the pixels of the given rectangle from an existing geo-location grid.
+     *
+     * @param grid      - the geo-location grid, covering at least {@link #getGridRectangle} of the rectangle
+     * @param rectangle - the rectangle, usually the target rectangle of a tile
+     * @return the water fractions in percent, or {@link WatermaskClassifier#INVALID_VALUE},
+     * line by line for the rectangle
+     */
+    public byte[] getWaterFractions(GeoLocationGrid grid, Rectangle rectangle) {
+        final int numSamples = superSamplingX * superSamplingY;
+        final byte[] fractions = new byte[rectangle.width * rectangle.height];
+        final GeoPos geoPos = new GeoPos();
+        int index = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                int valueSum = 0;
+                int invalidCount = 0;
+                for (int sx = 0; sx < superSamplingX; sx++) {
+                    final double pixelX = x + sx / (double) superSamplingX;
+                    for (int sy = 0; sy < superSamplingY; sy++) {
+                        final double pixelY = y + sy / (double) superSamplingY;
+                        final int value = getWaterMaskSample(grid.getGeoPos(pixelX, pixelY, geoPos));
+                        if (value != WatermaskClassifier.INVALID_VALUE) {
+                            valueSum += value;
+                        } else {
+                            invalidCount++;
+                        }
+                    }
+                }
+                fractions[index++] = invalidCount == numSamples ? WatermaskClassifier.INVALID_VALUE :
+                        (byte) (100 * valueSum / numSamples);
+            }
+        }
+        return fractions;
+    }
+
+    private int getWaterMaskSample(GeoPos geoPos) {
+        if (Double.isNaN(geoPos.lat) || Double.isNaN(geoPos.lon)) {
+            return WatermaskClassifier.INVALID_VALUE;
+        }
+        return classifier.getWaterMaskSample(geoPos);
+    }
+}
@@ -0,0 +1,196 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.gpf.Operator;
+import org.esa.snap.core.util.SystemUtils;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional instrumentation of the tile computations of the IdePix operators, to find the stage of a
+ * processing chain which is responsible for its run time.
+ * <p>
+ * The instrumentation is enabled by the system property {@value #ENABLED_PROPERTY}{@code =true}. Operators
+ * wrap their {@code computeTile} or {@code computeTileStack} implementation as follows:
+ * <pre>
+ *     final long startTime = OperatorTiming.start();
+ *     try {
+ *         ...
+ *     } finally {
+ *         OperatorTiming.stop(this, targetRectangle, startTime);
+ *     }
+ * </pre>
+ * For each operator class, the number of tile computations, the number of pixels and the time spent are
+ * recorded. Source tiles requested within a tile computation are often computed in the same thread, so
+ * besides the total time the self time is recorded, which excludes the time of nested timed computations.
+ * Times are summed up over all threads.
+ * <p>
+ * At JVM shutdown, the summary is written as JSON to the file given by the system property
+ * {@value #FILE_PROPERTY}, or to the log if the property is not set. If the instrumentation is disabled,
+ * it costs a single flag check per tile.
+ */
+public class OperatorTiming {
+
+    public static final String ENABLED_PROPERTY = "snap.idepix.timing";
+    public static final String FILE_PROPERTY = "snap.idepix.timing.file";
+
+    private static final Map<String, Stats> STATS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Frame> CURRENT_FRAME = new ThreadLocal<>();
+    private static final AtomicBoolean SHUTDOWN_HOOK_ADDED = new AtomicBoolean();
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private OperatorTiming() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts the timing of a tile computation.
+     *
+     * @return the start time, to be passed to {@link #stop(Operator, Rectangle, long)}
+     */
+    public static long start() {
+        if (!enabled) {
+            return 0L;
+        }
+        CURRENT_FRAME.set(new Frame(CURRENT_FRAME.get()));
+        return System.nanoTime();
+    }
+
+    /**
+     * Stops the timing of a tile computation and records it for the class of the given operator.
+     *
+     * @param operator  - the operator computing the tile
+     * @param rectangle - the target rectangle of the tile
+     * @param startTime - the start time as returned by {@link #start()}
+     */
+    public static void stop(Operator operator, Rectangle rectangle, long startTime) {
+        if (!enabled) {
+            return;
+        }
+        final Frame frame = CURRENT_FRAME.get();
+        if (frame == null || startTime == 0L) {
+            // enabled while the tile was computed
+            return;
+        }
+        final long elapsed = System.nanoTime() - startTime;
+        if (frame.parent != null) {
+            frame.parent.childNanos += elapsed;
+            CURRENT_FRAME.set(frame.parent);
+        } else {
+            CURRENT_FRAME.remove();
+        }
+        final Stats stats = STATS.computeIfAbsent(operator.getClass().getSimpleName(), name -> new Stats());
+        stats.tiles.increment();
+        stats.pixels.add((long) rectangle.width * rectangle.height);
+        stats.totalNanos.add(elapsed);
+        stats.selfNanos.add(elapsed - frame.childNanos);
+        addShutdownHook();
+    }
+
+    /**
+     * Writes the summary of all recorded tile computations as JSON object, with one entry per operator class.
+     *
+     * @param writer - the writer
+     * @throws IOException if the summary cannot be written
+     */
+    public static void writeSummary(Writer writer) throws IOException {
+        final Map<String, Stats> sortedStats = new TreeMap<>(STATS);
+        writer.write("{\"operators\":[");
+        String separator = "\n";
+        for (Map.Entry<String, Stats> entry : sortedStats.entrySet()) {
+            final Stats stats = entry.getValue();
+            final long pixels = stats.pixels.sum();
+            final double totalMillis = stats.totalNanos.sum() * 1.0e-6;
+            final double selfMillis = stats.selfNanos.sum() * 1.0e-6;
+            final double megaPixelsPerSecond = selfMillis > 0.0 ? pixels * 1.0e-3 / selfMillis : 0.0;
+            writer.write(separator);
+            writer.write(String.format(Locale.ENGLISH,
+                                       "  {\"operator\":\"%s\",\"tiles\":%d,\"pixels\":%d,\"totalTimeMs\":%.3f," +
+                                               "\"selfTimeMs\":%.3f,\"selfMegaPixelsPerSecond\":%.3f}",
+                                       entry.getKey(), stats.tiles.sum(), pixels, totalMillis, selfMillis,
+                                       megaPixelsPerSecond));
+            separator = ",\n";
+        }
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    /**
+     * @return the summary of all recorded tile computations as JSON object
+     */
+    public static String getSummary() {
+        final StringWriter writer = new StringWriter();
+        try {
+            writeSummary(writer);
+        } catch (IOException e) {
+            // cannot happen for a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Discards all recorded tile computations.
+     */
+    public static void reset() {
+        STATS.clear();
+    }
+
+    // for testing
+    static void setEnabled(boolean enabled) {
+        OperatorTiming.enabled = enabled;
+    }
+
+    private static void addShutdownHook() {
+        if (SHUTDOWN_HOOK_ADDED.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(OperatorTiming::writeSummaryAtShutdown,
+                                                            "IdePix operator timing"));
+        }
+    }
+
+    private static void writeSummaryAtShutdown() {
+        final String fileName = System.getProperty(FILE_PROPERTY);
+        if (fileName == null) {
+            SystemUtils.LOG.info("IdePix operator timing:\n" + getSummary());
+            return;
+        }
+        try (Writer writer = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            writeSummary(writer);
+        } catch (IOException e) {
+            SystemUtils.LOG.warning("Cannot write IdePix operator timing to " + fileName + ": " + e.getMessage());
+        }
+    }
+
+    private static class Frame {
+
+        private final Frame parent;
+        private long childNanos;
+
+        private Frame(Frame parent) {
+            this.parent = parent;
+        }
+    }
+
+    private static class Stats {
+
+        private final LongAdder tiles = new LongAdder();
+        private final LongAdder pixels = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder selfNanos = new LongAdder();
+    }
+}
@@ -0,0 +1,69 @@
+package org.esa.snap.idepix.core.util;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffer of pixel coordinates along a path, as filled by
+ * {@link Bresenham#getPathPixels(int, int, int, int, java.awt.Rectangle, PathPixels)}.
+ * The coordinates are kept in primitive arrays which only grow, so a single instance can be
+ * used for all paths of a tile without creating any objects per path.
+ * Instances are not thread safe.
+ */
+public class PathPixels {
+
+    private int[] xs;
+    private int[] ys;
+    private int size;
+
+    public PathPixels() {
+        this(64);
+    }
+
+    public PathPixels(int initialCapacity) {
+        xs = new int[Math.max(initialCapacity, 1)];
+        ys = new int[Math.max(initialCapacity, 1)];
+        size = 0;
+    }
+
+    /**
+     * @return the number of pixels on the path
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index - the index of the path pixel
+     * @return the x coordinate of the path pixel
+     */
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    /**
+     * @param index - the index of the path pixel
+     * @return the y coordinate of the path pixel
+     */
+    public int getY(int index) {
+        return ys[index];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > xs.length) {
+            final int newCapacity = Math.max(capacity, 2 * xs.length);
+            xs = Arrays.copyOf(xs, newCapacity);
+            ys = Arrays.copyOf(ys, newCapacity);
+        }
+    }
+
+    void add(int x, int y) {
+        ensureCapacity(size + 1);
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.gpf.OperatorException;
+import org.esa.snap.core.util.io.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.StringTokenizer;
+
+/**
+ * An immutable 'Schiller' feed-forward back-propagation neural net, as read from a '.net' file.
+ * <p>
+ * The net computes the same function as {@link org.esa.snap.core.nn.NNffbpAlphaTabFast}, including the
+ * tabulated activation function, but it keeps no state during the evaluation. Therefore, a single instance
+ * can be shared by all threads. The evaluation of single input vectors is done by a {@link SchillerNeuralNetWrapper},
+ * the evaluation of many input vectors by a {@link SchillerNeuralNetBatch}. Nets read from resources are
+ * shared via the {@link SchillerNeuralNetCache}.
+ * The weights of each plane are kept in one row-major array (one row per neuron of the next plane),
+ * so the matrix-vector products run over contiguous memory.
+ */
+public class SchillerNeuralNet {
+
+    // the tabulated activation function, see NNffbpAlphaTabFast
+    private static final double ALPHA_START = -10.0;
+    private static final int NUM_ALPHA = 100000;
+    private static final double[] ALPHA_TAB = new double[NUM_ALPHA];
+    private static final double REC_DELTA_ALPHA;
+
+    static {
+        final double delta = -2.0 * ALPHA_START / (NUM_ALPHA - 1.0);
+        double sum = ALPHA_START + 0.5 * delta;
+        for (int i = 0; i < NUM_ALPHA; i++) {
+            ALPHA_TAB[i] = 1.0 / (1.0 + Math.exp(-sum));
+            sum += delta;
+        }
+        REC_DELTA_ALPHA = 1.0 / delta;
+    }
+
+    private final double[] inmin;
+    private final double[] inmax;
+    private final double[] outmin;
+    private final double[] outmax;
+    private final int[] size;
+    private final double[][] bias;
+    private final double[][] wgt;
+
+    private SchillerNeuralNet(double[] inmin, double[] inmax, double[] outmin, double[] outmax,
+                              int[] size, double[][] bias, double[][] wgt) {
+        this.inmin = inmin;
+        this.inmax = inmax;
+        this.outmin = outmin;
+        this.outmax = outmax;
+        this.size = size;
+        this.bias = bias;
+        this.wgt = wgt;
+    }
+
+    /**
+     * Reads the neural net from the given stream. The stream is closed afterwards.
+     *
+     * @param inputStream - the stream providing the content of the '.net' file
+     * @return the neural net
+     */
+    public static SchillerNeuralNet read(InputStream inputStream) {
+        try (Reader reader = new InputStreamReader(inputStream)) {
+            return parse(FileUtils.readText(reader));
+        } catch (IOException e) {
+            throw new OperatorException("Could not initialize neural net", e);
+        }
+    }
+
+    /**
+     * Parses the neural net from the content of a '.net' file.
+     *
+     * @param netAsString - the content of the '.net' file
+     * @return the neural net
+     */
+    public static SchillerNeuralNet parse(String netAsString) {
+        try {
+            final BufferedReader reader = new BufferedReader(new StringReader(netAsString));
+            // the header ends with the line '#', followed by the input and output ranges
+            String line = reader.readLine();
+            while (line != null && !line.trim().equals("#")) {
+                line = reader.readLine();
+            }
+            final int numInputs = Integer.parseInt(nextLine(reader));
+            final double[] inmin = new double[numInputs];
+            final double[] inmax = new double[numInputs];
+            readRanges(reader, inmin, inmax);
+            final int numOutputs = Integer.parseInt(nextLine(reader));
+            final double[] outmin = new double[numOutputs];
+            final double[] outmax = new double[numOutputs];
+            readRanges(reader, outmin, outmax);
+
+            line = nextLine(reader);
+            while (!line.startsWith("#planes=")) {
+                line = nextLine(reader);
+            }
+            final StringTokenizer planes = new StringTokenizer(line.substring("#planes=".length()));
+            final int numPlanes = Integer.parseInt(planes.nextToken());
+            final int[] size = new int[numPlanes];
+            for (int i = 0; i < numPlanes; i++) {
+                size[i] = Integer.parseInt(planes.nextToken());
+            }
+            if (size[0] != numInputs || size[numPlanes - 1] != numOutputs) {
+                throw new OperatorException("Inconsistent plane sizes in neural net");
+            }
+
+            final double[][] bias = new double[numPlanes - 1][];
+            for (int pl = 0; pl < numPlanes - 1; pl++) {
+                nextLine(reader); // 'bias <plane> <size>'
+                bias[pl] = new double[size[pl + 1]];
+                for (int i = 0; i < size[pl + 1]; i++) {
+                    bias[pl][i] = Double.parseDouble(nextLine(reader));
+                }
+            }
+            final double[][] wgt = new double[numPlanes - 1][];
+            for (int pl = 0; pl < numPlanes - 1; pl++) {
+                nextLine(reader); // 'wgt <plane> <size in> <size out>'
+                wgt[pl] = new double[size[pl + 1] * size[pl]];
+                for (int i = 0; i < wgt[pl].length; i++) {
+                    wgt[pl][i] = Double.parseDouble(nextLine(reader));
+                }
+            }
+            return new SchillerNeuralNet(inmin, inmax, outmin, outmax, size, bias, wgt);
+        } catch (IOException | RuntimeException e) {
+            throw new OperatorException("Cannot initialize neural net: " + e.getMessage(), e);
+        }
+    }
+
+    public int getNumInputs() {
+        return size[0];
+    }
+
+    public int getNumOutputs() {
+        return size[size.length - 1];
+    }
+
+    /**
+     * Evaluates the net for a single input vector.
+     *
+     * @param input - the input vector
+     * @return the output vector
+     */
+    public double[] calc(double[] input) {
+        return calc(input, new double[getMaxSize()], new double[getMaxSize()]);
+    }
+
+    /**
+     * @param index - the index of the input
+     * @return the lower bound of the input range
+     */
+    public double getInputMin(int index) {
+        return inmin[index];
+    }
+
+    /**
+     * Evaluates the net for a single input vector, using the given arrays of at least {@link #getMaxSize()}
+     * elements for the activations.
+     */
+    double[] calc(double[] input, double[] activations, double[] nextActivations) {
+        normalizeInputs(input, activations, 1);
+        for (int plane = 0; plane < size.length - 1; plane++) {
+            propagate(plane, activations, nextActivations, 1);
+            final double[] swap = activations;
+            activations = nextActivations;
+            nextActivations = swap;
+        }
+        final double[] output = new double[getNumOutputs()];
+        denormalizeOutputs(activations, output, 1);
+        return output;
+    }
+
+    int getNumPlanes() {
+        return size.length;
+    }
+
+    int getSize(int plane) {
+        return size[plane];
+    }
+
+    int getMaxSize() {
+        int maxSize = 0;
+        for (int planeSize : size) {
+            maxSize = Math.max(maxSize, planeSize);
+        }
+        return maxSize;
+    }
+
+    /**
+     * Normalises the input vectors to the input ranges of the net.
+     */
+    void normalizeInputs(double[] inputs, double[] activations, int numSamples) {
+        final int numInputs = getNumInputs();
+        for (int s = 0; s < numSamples; s++) {
+            final int offset = s * numInputs;
+            for (int i = 0; i < numInputs; i++) {
+                activations[offset + i] = (inputs[offset + i] - inmin[i]) / (inmax[i] - inmin[i]);
+            }
+        }
+    }
+
+    /**
+     * Propagates the activations of all samples from the given plane to the next one.
+     * The activations are stored sample by sample, each with the size of its plane.
+     */
+    void propagate(int plane, double[] activations, double[] nextActivations, int numSamples) {
+        final int sizeIn = size[plane];
+        final int sizeOut = size[plane + 1];
+        final double[] planeBias = bias[plane];
+        final double[] planeWgt = wgt[plane];
+        for (int s = 0; s < numSamples; s++) {
+            final int inOffset = s * sizeIn;
+            final int outOffset = s * sizeOut;
+            for (int i = 0; i < sizeOut; i++) {
+                final int wgtOffset = i * sizeIn;
+                double sum = planeBias[i];
+                for (int j = 0; j < sizeIn; j++) {
+                    sum += planeWgt[wgtOffset + j] * activations[inOffset + j];
+                }
+                nextActivations[outOffset + i] = activation(sum);
+            }
+        }
+    }
+
+    /**
+     * Scales the activations of the last plane to the output ranges of the net.
+     */
+    void denormalizeOutputs(double[] activations, double[] outputs, int numSamples) {
+        final int numOutputs = getNumOutputs();
+        for (int s = 0; s < numSamples; s++) {
+            final int offset = s * numOutputs;
+            for (int i = 0; i < numOutputs; i++) {
+                outputs[offset + i] = activations[offset + i] * (outmax[i] - outmin[i]) + outmin[i];
+            }
+        }
+    }
+
+    private static double activation(double x) {
+        int index = (int) ((x - ALPHA_START) * REC_DELTA_ALPHA);
+        if (index < 0) {
+            index = 0;
+        } else if (index >= NUM_ALPHA) {
+            index = NUM_ALPHA - 1;
+        }
+        return ALPHA_TAB[index];
+    }
+
+    private static void readRanges(BufferedReader reader, double[] min, double[] max) throws IOException {
+        for (int i = 0; i < min.length; i++) {
+            final StringTokenizer range = new StringTokenizer(nextLine(reader));
+            min[i] = Double.parseDouble(range.nextToken());
+            max[i] = Double.parseDouble(range.nextToken());
+        }
+    }
+
+    private static String nextLine(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        while (line != null && line.trim().isEmpty()) {
+            line = reader.readLine();
+        }
+        if (line == null) {
+            throw new IOException("Unexpected end of neural net");
+        }
+        return line.trim();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.idepix.core.util;
+
+/**
+ * Evaluates a shared {@link SchillerNeuralNet} for many input vectors at once, e.g. for all pixels of a tile.
+ * <p>
+ * Usage: fill the input matrix provided by {@link #getInputs(int)} sample by sample (the inputs of sample
+ * {@code s} start at {@code s * numInputs}), then call {@link #calc(int)} and read the outputs of sample
+ * {@code s} starting at {@code s * numOutputs}. The evaluation is done plane by plane for all samples,
+ * so the weights of a plane stay in the cache. The matrices only grow and are reused by following calls.
+ * <p>
+ * Instances are not thread safe, each thread needs its own batch.
+ */
+public class SchillerNeuralNetBatch {
+
+    private final SchillerNeuralNet neuralNet;
+    private double[] inputs;
+    private double[] outputs;
+    private double[] activations;
+    private double[] nextActivations;
+    private int capacity;
+
+    /**
+     * @param neuralNet - the shared neural net
+     */
+    public SchillerNeuralNetBatch(SchillerNeuralNet neuralNet) {
+        this(neuralNet, 1024);
+    }
+
+    /**
+     * @param neuralNet       - the shared neural net
+     * @param initialCapacity - the initial number of samples
+     */
+    public SchillerNeuralNetBatch(SchillerNeuralNet neuralNet, int initialCapacity) {
+        this.neuralNet = neuralNet;
+        allocate(Math.max(initialCapacity, 1));
+    }
+
+    public SchillerNeuralNet getNeuralNet() {
+        return neuralNet;
+    }
+
+    /**
+     * Provides the input matrix for the given number of samples. Its content is undefined before it is filled.
+     *
+     * @param numSamples - the number of samples
+     * @return the input matrix, holding at least {@code numSamples * numInputs} values
+     */
+    public double[] getInputs(int numSamples) {
+        if (numSamples > capacity) {
+            allocate(Math.max(numSamples, 2 * capacity));
+        }
+        return inputs;
+    }
+
+    /**
+     * Evaluates the neural net for the first {@code numSamples} input vectors of the input matrix.
+     *
+     * @param numSamples - the number of samples
+     * @return the output matrix, holding at least {@code numSamples * numOutputs} values
+     */
+    public double[] calc(int numSamples) {
+        if (numSamples > capacity) {
+            throw new IllegalArgumentException("Number of samples exceeds the input matrix: " + numSamples);
+        }
+        neuralNet.normalizeInputs(inputs, activations, numSamples);
+        for (int plane = 0; plane < neuralNet.getNumPlanes() - 1; plane++) {
+            neuralNet.propagate(plane, activations, nextActivations, numSamples);
+            final double[] swap = activations;
+            activations = nextActivations;
+            nextActivations = swap;
+        }
+        neuralNet.denormalizeOutputs(activations, outputs, numSamples);
+        return outputs;
+    }
+
+    private void allocate(int numSamples) {
+        final double[] oldInputs = inputs;
+        inputs = new double[numSamples * neuralNet.getNumInputs()];
+        if (oldInputs != null) {
+            System.arraycopy(oldInputs, 0, inputs, 0, oldInputs.length);
+        }
+        outputs = new double[numSamples * neuralNet.getNumOutputs()];
+        activations = new double[numSamples * neuralNet.getMaxSize()];
+        nextActivations = new double[numSamples * neuralNet.getMaxSize()];
+        capacity = numSamples;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.gpf.OperatorException;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide cache of the {@link SchillerNeuralNet}s read from resources, so that the '.net' files
+ * are parsed only once, regardless of the number of operator instances and threads using them.
+ * The nets are immutable, cheap per thread evaluators are {@link SchillerNeuralNetWrapper} and
+ * {@link SchillerNeuralNetBatch}.
+ * <p>
+ * This class is thread safe.
+ */
+public class SchillerNeuralNetCache {
+
+    private static final Map<String, SchillerNeuralNet> NEURAL_NETS = new ConcurrentHashMap<>();
+
+    private SchillerNeuralNetCache() {
+    }
+
+    /**
+     * Provides the neural net of the given resource, reading it on first use.
+     *
+     * @param resourceOwner - the class used to resolve the resource
+     * @param resourceName  - the name of the '.net' resource, relative to the package of the owner
+     * @return the shared neural net
+     */
+    public static SchillerNeuralNet get(Class<?> resourceOwner, String resourceName) {
+        final URL resource = resourceOwner.getResource(resourceName);
+        if (resource == null) {
+            throw new OperatorException("Cannot find neural net resource '" + resourceName + "'");
+        }
+        return NEURAL_NETS.computeIfAbsent(resource.toExternalForm(), key -> read(resource));
+    }
+
+    static int size() {
+        return NEURAL_NETS.size();
+    }
+
+    static void clear() {
+        NEURAL_NETS.clear();
+    }
+
+    private static SchillerNeuralNet read(URL resource) {
+        try {
+            return SchillerNeuralNet.read(resource.openStream());
+        } catch (IOException e) {
+            throw new OperatorException("Cannot read neural net " + resource, e);
+        }
+    }
+}
@@ -16,30 +16,30 @@
 
 package org.esa.snap.idepix.core.util;
 
-import org.esa.snap.core.nn.NNffbpAlphaTabFast;
-import org.esa.snap.core.gpf.OperatorException;
-import org.esa.snap.core.util.io.FileUtils;
-
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 
 /**
  * A wrapper around a neural net together with its input.
  * This wrapper support 'Schiller' nets.
+ * <p>
+ * The neural net itself is immutable and shared by the wrappers of all threads, the wrapper only
+ * holds the input vector and the activations of a single evaluation.
  */
 public class SchillerNeuralNetWrapper {
 
-    private final NNffbpAlphaTabFast neuralNet;
+    private final SchillerNeuralNet neuralNet;
     private final double[] nnIn;
+    private final double[] activations;
+    private final double[] nextActivations;
 
-    private SchillerNeuralNetWrapper(NNffbpAlphaTabFast neuralNet, int in) {
+    private SchillerNeuralNetWrapper(SchillerNeuralNet neuralNet) {
         this.neuralNet = neuralNet;
-        this.nnIn = new double[in];
+        this.nnIn = new double[neuralNet.getNumInputs()];
+        this.activations = new double[neuralNet.getMaxSize()];
+        this.nextActivations = new double[neuralNet.getMaxSize()];
     }
 
-    public NNffbpAlphaTabFast getNeuralNet() {
+    public SchillerNeuralNet getNeuralNet() {
         return neuralNet;
     }
 
@@ -47,27 +47,45 @@ public class SchillerNeuralNetWrapper {
         return nnIn;
     }
 
+    /**
+     * Evaluates the neural net without allocating intermediate arrays.
+     *
+     * @param input - the input vector, usually the one provided by {@link #getInputVector()}
+     * @return the output vector
+     */
+    public double[] calc(double[] input) {
+        return neuralNet.calc(input, activations, nextActivations);
+    }
+
+    /**
+     * Creates per thread wrappers of the neural net read from the given stream. The net is parsed only once.
+     *
+     * @param inputStream - the stream providing the content of the '.net' file
+     * @return the per thread wrappers
+     */
     public static ThreadLocal<SchillerNeuralNetWrapper> create(InputStream inputStream) {
-        final String netAsString = readNeuralNetFromStream(inputStream);
-        return new ThreadLocal<SchillerNeuralNetWrapper>() {
-            @Override
-            protected SchillerNeuralNetWrapper initialValue() {
-                try {
-                    NNffbpAlphaTabFast nNffbpAlphaTabFast = new NNffbpAlphaTabFast(netAsString);
-                    int numIn = nNffbpAlphaTabFast.getInmin().length;
-                    return new SchillerNeuralNetWrapper(nNffbpAlphaTabFast, numIn);
-                } catch (IOException e) {
-                    throw new OperatorException("Cannot initialize neural nets: " + e.getMessage());
-                }
-            }
-        };
+        return create(SchillerNeuralNet.read(inputStream));
+    }
+
+    /**
+     * Creates per thread wrappers of the neural net read from the given resource. The net is taken
+     * from the {@link SchillerNeuralNetCache}, so it is parsed only once per process.
+     *
+     * @param resourceOwner - the class used to resolve the resource
+     * @param resourceName  - the name of the '.net' resource
+     * @return the per thread wrappers
+     */
+    public static ThreadLocal<SchillerNeuralNetWrapper> create(Class<?> resourceOwner, String resourceName) {
+        return create(SchillerNeuralNetCache.get(resourceOwner, resourceName));
     }
 
-    private static String readNeuralNetFromStream(InputStream neuralNetStream) {
-        try (Reader reader = new InputStreamReader(neuralNetStream)) {
-            return FileUtils.readText(reader);
-        } catch (IOException ioe) {
-            throw new OperatorException("Could not initialize neural net", ioe);
-        }
+    /**
+     * Creates per thread wrappers of the given neural net.
+     *
+     * @param neuralNet - the shared neural net
+     * @return the per thread wrappers
+     */
+    public static ThreadLocal<SchillerNeuralNetWrapper> create(SchillerNeuralNet neuralNet) {
+        return ThreadLocal.withInitial(() -> new SchillerNeuralNetWrapper(neuralNet));
     }
 }
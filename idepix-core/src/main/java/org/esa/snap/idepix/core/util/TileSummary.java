@@ -0,0 +1,139 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.gpf.Tile;
+import org.esa.snap.idepix.core.IdepixConstants;
+
+import java.awt.Rectangle;
+
+/**
+ * Cheap tile-level summaries of flag and mask tiles, used by the operators to skip the per-pixel work for
+ * tiles which are completely invalid, free of coastlines or free of clouds.
+ * <p>
+ * All checks stop at the first pixel which decides the result, so for a tile which does not qualify for an
+ * early exit they usually cost only a few pixel reads.
+ */
+public class TileSummary {
+
+    /**
+     * System property to let the classification operators fill tiles without any valid L1 pixel with
+     * {@link IdepixConstants#IDEPIX_INVALID} only, instead of classifying all pixels. This changes the flags
+     * other than {@code IDEPIX_INVALID} for such tiles, so it is disabled by default.
+     */
+    public static final String SKIP_INVALID_TILES_PROPERTY = "snap.idepix.skipInvalidTiles";
+
+    private static final int WATER_FRACTION_LAND = 0;
+    private static final int WATER_FRACTION_WATER = 100;
+
+    private TileSummary() {
+    }
+
+    /**
+     * @return true if the classification operators shall skip tiles without any valid L1 pixel
+     * @see #SKIP_INVALID_TILES_PROPERTY
+     */
+    public static boolean isSkipInvalidTiles() {
+        return Boolean.getBoolean(SKIP_INVALID_TILES_PROPERTY);
+    }
+
+    /**
+     * @param flagTile  - the flag tile
+     * @param rectangle - the rectangle to check, must be covered by the tile
+     * @param flagMask  - the mask of the flag bits
+     * @return true if every pixel of the rectangle has at least one of the flag bits set
+     */
+    public static boolean isFlagSetEverywhere(Tile flagTile, Rectangle rectangle, int flagMask) {
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                if ((flagTile.getSampleInt(x, y) & flagMask) == 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param flagTile  - the flag tile
+     * @param rectangle - the rectangle to check, must be covered by the tile
+     * @param flagMask  - the mask of the flag bits
+     * @return true if at least one pixel of the rectangle has one of the flag bits set
+     */
+    public static boolean isFlagSetAnywhere(Tile flagTile, Rectangle rectangle, int flagMask) {
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                if ((flagTile.getSampleInt(x, y) & flagMask) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param tile      - the tile
+     * @param rectangle - the rectangle to check, must be covered by the tile
+     * @param value     - the value
+     * @return true if all pixels of the rectangle have the given (integer) value
+     */
+    public static boolean isValueEverywhere(Tile tile, Rectangle rectangle, int value) {
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                if (tile.getSampleInt(x, y) != value) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param classifFlagTile - the IdePix classification flag tile
+     * @param rectangle       - the rectangle to check
+     * @return true if no pixel of the rectangle is flagged as {@link IdepixConstants#IDEPIX_CLOUD}
+     */
+    public static boolean isCloudFree(Tile classifFlagTile, Rectangle rectangle) {
+        return !isFlagSetAnywhere(classifFlagTile, rectangle, 1 << IdepixConstants.IDEPIX_CLOUD);
+    }
+
+    /**
+     * @param waterFractionTile - the tile of the land/water fraction in percent, as provided by the water mask
+     * @param rectangle         - the rectangle to check
+     * @return true if all pixels of the rectangle are completely water or all are completely land, so no pixel
+     * can be at a coastline
+     */
+    public static boolean isWithoutCoastline(Tile waterFractionTile, Rectangle rectangle) {
+        final int firstValue = waterFractionTile.getSampleInt(rectangle.x, rectangle.y);
+        return (firstValue == WATER_FRACTION_WATER || firstValue == WATER_FRACTION_LAND) &&
+                isValueEverywhere(waterFractionTile, rectangle, firstValue);
+    }
+
+    /**
+     * Sets all pixels of the tile to the given value.
+     *
+     * @param tile  - the tile
+     * @param value - the value
+     */
+    public static void fill(Tile tile, int value) {
+        final Rectangle rectangle = tile.getRectangle();
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                tile.setSample(x, y, value);
+            }
+        }
+    }
+
+    /**
+     * Sets all pixels of the tile to the given value.
+     *
+     * @param tile  - the tile
+     * @param value - the value
+     */
+    public static void fill(Tile tile, double value) {
+        final Rectangle rectangle = tile.getRectangle();
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                tile.setSample(x, y, value);
+            }
+        }
+    }
+}
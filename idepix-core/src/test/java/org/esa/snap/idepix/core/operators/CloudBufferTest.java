@@ -0,0 +1,131 @@
+package org.esa.snap.idepix.core.operators;
+
+import org.esa.snap.idepix.core.IdepixConstants;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CloudBufferTest {
+
+    private static final int CLOUD = 1 << IdepixConstants.IDEPIX_CLOUD;
+    private static final int BUFFER = 1 << IdepixConstants.IDEPIX_CLOUD_BUFFER;
+
+    @Test
+    public void testComputeCloudBufferLC_singleCloudPixel() {
+        final int w = 6;
+        final int h = 5;
+        int[] flags = new int[w * h];
+        flags[2 * w + 2] = CLOUD;
+
+        CloudBuffer.computeCloudBufferLC(flags, w, h);
+
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                final boolean expectedBuffer = x >= 1 && x <= 3 && y >= 1 && y <= 3;
+                assertEquals("x=" + x + ", y=" + y, expectedBuffer, (flags[y * w + x] & BUFFER) != 0);
+            }
+        }
+    }
+
+    @Test
+    public void testComputeCloudBufferLC_fullSquare() {
+        final int w = 8;
+        final int h = 8;
+        int[] flags = new int[w * h];
+        flags[3 * w + 3] = CLOUD;
+        flags[3 * w + 4] = CLOUD;
+        flags[4 * w + 3] = CLOUD;
+        flags[4 * w + 4] = CLOUD;
+
+        CloudBuffer.computeCloudBufferLC(flags, w, h);
+
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                final boolean expectedBuffer = x >= 1 && x <= 6 && y >= 1 && y <= 6;
+                assertEquals("x=" + x + ", y=" + y, expectedBuffer, (flags[y * w + x] & BUFFER) != 0);
+            }
+        }
+    }
+
+    @Test
+    public void testComputeCloudBufferLC_matchesPerPixelAlgorithm() {
+        final int[][] sizes = {{1, 1}, {1, 7}, {7, 1}, {2, 2}, {5, 9}, {17, 13}, {64, 64}};
+        final double[] cloudFractions = {0.0, 0.05, 0.3, 0.7, 1.0};
+        final Random random = new Random(4711);
+        for (int[] size : sizes) {
+            for (double cloudFraction : cloudFractions) {
+                final int w = size[0];
+                final int h = size[1];
+                int[] flags = new int[w * h];
+                for (int i = 0; i < flags.length; i++) {
+                    flags[i] = random.nextInt(1 << 12) & ~(CLOUD | BUFFER);
+                    if (random.nextDouble() < cloudFraction) {
+                        flags[i] |= CLOUD;
+                    }
+                }
+                final int[] expected = computeCloudBufferLCPerPixel(flags, w, h);
+
+                CloudBuffer.computeCloudBufferLC(flags, w, h);
+
+                assertArrayEquals("size " + w + "x" + h + ", cloud fraction " + cloudFraction, expected, flags);
+            }
+        }
+    }
+
+    // the former Tile based implementation, applied to a flag array
+    private static int[] computeCloudBufferLCPerPixel(int[] source, int width, int height) {
+        int[] flags = source.clone();
+        for (int y = 0; y < height - 1; y++) {
+            for (int x = 0; x < width - 1; x++) {
+                if (isCloud(flags, width, x, y)) {
+                    int bufferWidth = 1;
+                    int LEFT_BORDER = Math.max(x - bufferWidth, 0);
+                    int RIGHT_BORDER = Math.min(x + bufferWidth, width - 1);
+                    int TOP_BORDER = Math.max(y - bufferWidth, 0);
+                    int BOTTOM_BORDER = Math.min(y + bufferWidth, height - 1);
+                    if (isCloud(flags, width, x + 1, y) &&
+                            isCloud(flags, width, x, y + 1) &&
+                            isCloud(flags, width, x + 1, y + 1)) {
+                        bufferWidth = 2;
+                        LEFT_BORDER = Math.max(x - bufferWidth, 0);
+                        RIGHT_BORDER = Math.min(x + 1 + bufferWidth, width - 1);
+                        TOP_BORDER = Math.max(y - bufferWidth, 0);
+                        BOTTOM_BORDER = Math.min(y + 1 + bufferWidth, height - 1);
+                    }
+                    setBuffer(flags, width, LEFT_BORDER, RIGHT_BORDER, TOP_BORDER, BOTTOM_BORDER);
+                }
+            }
+        }
+        final int ySouth = height - 1;
+        for (int x = 0; x < width - 1; x++) {
+            if (isCloud(flags, width, x, ySouth)) {
+                setBuffer(flags, width, Math.max(x - 1, 0), Math.min(x + 1, width - 1), Math.max(0, ySouth - 1), ySouth);
+            }
+        }
+        final int xEast = width - 1;
+        for (int y = 0; y < height - 1; y++) {
+            if (isCloud(flags, width, xEast, y)) {
+                setBuffer(flags, width, Math.max(0, xEast - 1), xEast, Math.max(y - 1, 0), Math.min(y + 1, height - 1));
+            }
+        }
+        if (isCloud(flags, width, xEast, ySouth)) {
+            setBuffer(flags, width, Math.max(0, xEast - 1), xEast, Math.max(0, ySouth - 1), ySouth);
+        }
+        return flags;
+    }
+
+    private static boolean isCloud(int[] flags, int width, int x, int y) {
+        return (flags[y * width + x] & CLOUD) != 0;
+    }
+
+    private static void setBuffer(int[] flags, int width, int left, int right, int top, int bottom) {
+        for (int i = left; i <= right; i++) {
+            for (int j = top; j <= bottom; j++) {
+                flags[j * width + i] |= BUFFER;
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.esa.snap.idepix.core.operators;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MaskDilationTest {
+
+    @Test
+    public void testDilate_singlePixel() {
+        final int w = 7;
+        final int h = 6;
+        boolean[] mask = new boolean[w * h];
+        mask[w + 5] = true;
+
+        final boolean[] dilated = MaskDilation.dilate(mask, w, h, 2);
+
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                final boolean expected = x >= 3 && y <= 3;
+                assertEquals("x=" + x + ", y=" + y, expected, dilated[y * w + x]);
+            }
+        }
+    }
+
+    @Test
+    public void testDilate_zeroRadius() {
+        boolean[] mask = {true, false, false, true, false, true};
+
+        assertArrayEquals(mask, MaskDilation.dilate(mask, 3, 2, 0));
+    }
+
+    @Test
+    public void testDilate_matchesSquareWindow() {
+        final int[][] sizes = {{1, 1}, {1, 9}, {9, 1}, {13, 7}, {40, 33}};
+        final int[] radii = {1, 2, 3, 10, 50};
+        final double[] fractions = {0.0, 0.01, 0.1, 0.5};
+        final Random random = new Random(1234);
+        for (int[] size : sizes) {
+            for (int radius : radii) {
+                for (double fraction : fractions) {
+                    final int w = size[0];
+                    final int h = size[1];
+                    boolean[] mask = new boolean[w * h];
+                    for (int i = 0; i < mask.length; i++) {
+                        mask[i] = random.nextDouble() < fraction;
+                    }
+
+                    final boolean[] dilated = MaskDilation.dilate(mask, w, h, radius);
+
+                    assertArrayEquals("size " + w + "x" + h + ", radius " + radius,
+                                      dilateBruteForce(mask, w, h, radius), dilated);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDilate_inPlace() {
+        boolean[] mask = new boolean[4];
+        MaskDilation.dilate(mask, 2, 2, 1, mask);
+    }
+
+    private static boolean[] dilateBruteForce(boolean[] mask, int w, int h, int radius) {
+        boolean[] dilated = new boolean[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                if (mask[y * w + x]) {
+                    for (int j = Math.max(y - radius, 0); j <= Math.min(y + radius, h - 1); j++) {
+                        for (int i = Math.max(x - radius, 0); i <= Math.min(x + radius, w - 1); i++) {
+                            dilated[j * w + i] = true;
+                        }
+                    }
+                }
+            }
+        }
+        return dilated;
+    }
+}
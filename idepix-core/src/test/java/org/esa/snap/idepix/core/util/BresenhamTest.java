@@ -290,4 +290,33 @@ public class BresenhamTest {
         assertEquals(7, (int) pathPixels.get(1).getX());
         assertEquals(6, (int) pathPixels.get(1).getY());
     }
+
+    @Test
+    public void testGetPathPixelsIntoBuffer() throws Exception {
+        final PathPixels pathPixels = new PathPixels(1);
+        for (double angle = 0.0; angle < 360.0; angle += 7.5) {
+            for (Rectangle rectangle : new Rectangle[]{rect, rect2}) {
+                final int xStart = rectangle.x + 5;
+                final int yStart = rectangle.y + 4;
+                final PixelPos borderPixel = Bresenham.findBorderPixel(xStart, yStart, rectangle, angle);
+                final List<PixelPos> expected = Bresenham.getPathPixels(xStart, yStart,
+                                                                        (int) borderPixel.getX(), (int) borderPixel.getY(),
+                                                                        rectangle);
+
+                final int numPathPixels = Bresenham.getPathPixels(xStart, yStart,
+                                                                  (int) borderPixel.getX(), (int) borderPixel.getY(),
+                                                                  rectangle, pathPixels);
+
+                assertEquals(expected.size(), numPathPixels);
+                assertEquals(expected.size(), pathPixels.size());
+                for (int i = 0; i < numPathPixels; i++) {
+                    assertEquals((int) expected.get(i).getX(), pathPixels.getX(i));
+                    assertEquals((int) expected.get(i).getY(), pathPixels.getY(i));
+                }
+            }
+        }
+        // paths leaving the rectangle are clipped, the buffer is reused
+        final int numPathPixels = Bresenham.getPathPixels(2, 2, 40, 10, rect, pathPixels);
+        assertEquals(Bresenham.getPathPixels(2, 2, 40, 10, rect).size(), numPathPixels);
+    }
 }
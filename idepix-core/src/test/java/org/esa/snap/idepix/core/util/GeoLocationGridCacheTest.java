@@ -0,0 +1,105 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.gpf.Operator;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class GeoLocationGridCacheTest {
+
+    private Product sourceProduct;
+    private GeoLocationGridCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        sourceProduct = new Product("source", "test", 10, 7);
+        sourceProduct.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, 10, 7, 10.0, 50.0,
+                                                         0.1, 0.1, 0.0, 0.0));
+        // the tiles of the source product differ from the target tiles of the operator
+        sourceProduct.setPreferredTileSize(5, 5);
+        final Product targetProduct = new Product("target", "test", 10, 7);
+        targetProduct.setPreferredTileSize(4, 3);
+        cache = new GeoLocationGridCache(sourceProduct, new TestOp(targetProduct));
+    }
+
+    @Test
+    public void testGetGridForPixel_alignedWithTargetTiles() {
+        final GeoLocationGrid grid = cache.getGridForPixel(5, 4);
+        assertEquals(new Rectangle(4, 3, 4, 3), grid.getRectangle());
+        // all pixels of the target tile use the same grid
+        for (int y = 3; y < 6; y++) {
+            for (int x = 4; x < 8; x++) {
+                assertSame(grid, cache.getGridForPixel(x, y));
+            }
+        }
+
+        final GeoLocationGrid nextGrid = cache.getGridForPixel(8, 4);
+        assertNotSame(grid, nextGrid);
+        // the tile at the scene border is cut
+        assertEquals(new Rectangle(8, 3, 2, 3), nextGrid.getRectangle());
+        assertEquals(new Rectangle(8, 6, 2, 1), cache.getGridForPixel(9, 6).getRectangle());
+    }
+
+    @Test
+    public void testGetLatLon() {
+        final GeoLocationGrid sceneGrid = GeoLocationGrid.create(sourceProduct, new Rectangle(0, 0, 10, 7));
+        for (int y = 0; y < 7; y++) {
+            for (int x = 0; x < 10; x++) {
+                assertEquals(sceneGrid.getLat(x, y), cache.getLat(x, y), 0.0f);
+                assertEquals(sceneGrid.getLon(x, y), cache.getLon(x, y), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testGetGrid() {
+        final Rectangle rectangle = new Rectangle(4, 0, 4, 3);
+        final GeoLocationGrid grid = cache.getGrid(rectangle);
+        assertEquals(rectangle, grid.getRectangle());
+        assertSame(grid, cache.getGrid(new Rectangle(4, 0, 4, 3)));
+        // pixels of the same tile reuse the grid
+        assertSame(grid, cache.getGridForPixel(6, 1));
+
+        assertNotSame(grid, cache.getGrid(new Rectangle(0, 0, 4, 3)));
+    }
+
+    @Test
+    public void testGetGrid_separatePerThread() throws Exception {
+        final Rectangle rectangle = new Rectangle(0, 3, 4, 3);
+        final GeoLocationGrid grid = cache.getGrid(rectangle);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final GeoLocationGrid otherThreadGrid = executor.submit(() -> cache.getGrid(rectangle)).get();
+            assertNotSame(grid, otherThreadGrid);
+            assertSame(otherThreadGrid, executor.submit(() -> cache.getGrid(rectangle)).get());
+        } finally {
+            executor.shutdown();
+        }
+        assertSame(grid, cache.getGrid(rectangle));
+    }
+
+    private static class TestOp extends Operator {
+
+        private final Product product;
+
+        private TestOp(Product product) {
+            this.product = product;
+        }
+
+        @Override
+        public void initialize() {
+            setTargetProduct(product);
+        }
+    }
+}
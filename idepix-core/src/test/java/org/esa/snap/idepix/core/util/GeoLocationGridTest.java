@@ -0,0 +1,112 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.PixelPos;
+import org.esa.snap.core.datamodel.Product;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeoLocationGridTest {
+
+    private static final double PIXEL_SIZE = 0.1;
+
+    private Product product;
+
+    @Before
+    public void setUp() throws Exception {
+        // the upper left corner of the scene is at 10°E, 50°N
+        product = new Product("test", "test", 8, 6);
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, 8, 6, 10.0, 50.0,
+                                                   PIXEL_SIZE, PIXEL_SIZE, 0.0, 0.0));
+    }
+
+    @Test
+    public void testCreateFromGeoCoding() {
+        final Rectangle rectangle = new Rectangle(2, 1, 3, 2);
+        final GeoLocationGrid grid = GeoLocationGrid.create(product, rectangle);
+
+        assertEquals(rectangle, grid.getRectangle());
+        assertTrue(grid.contains(4, 2));
+        assertFalse(grid.contains(5, 2));
+        // the grid holds the geo-positions of the pixel centres
+        assertEquals(49.85f, grid.getLat(2, 1), 1e-5f);
+        assertEquals(10.25f, grid.getLon(2, 1), 1e-5f);
+        assertEquals(49.75f, grid.getLat(4, 2), 1e-5f);
+        assertEquals(10.45f, grid.getLon(4, 2), 1e-5f);
+    }
+
+    @Test
+    public void testCreateFromBands_sameAsFromGeoCoding() {
+        final Rectangle rectangle = new Rectangle(1, 2, 6, 4);
+        final GeoLocationGrid geoCodingGrid = GeoLocationGrid.create(product.getSceneGeoCoding(), rectangle);
+        // X and Y are the coordinates of the pixel centres
+        product.addBand("lat", "50.0 - Y * 0.1");
+        product.addBand("lon", "10.0 + X * 0.1");
+        final GeoLocationGrid bandGrid = GeoLocationGrid.create(product, rectangle);
+
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                assertEquals(geoCodingGrid.getLat(x, y), bandGrid.getLat(x, y), 1e-5f);
+                assertEquals(geoCodingGrid.getLon(x, y), bandGrid.getLon(x, y), 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void testGetGeoPos() {
+        final Rectangle rectangle = new Rectangle(2, 1, 4, 3);
+        final GeoLocationGrid grid = GeoLocationGrid.create(product, rectangle);
+        final GeoPos geoPos = new GeoPos();
+        final GeoPos expected = new GeoPos();
+
+        // pixel corners, positions between the pixel centres and, at the borders, beyond them
+        for (double y = 1.0; y < 4.0; y += 0.25) {
+            for (double x = 2.0; x < 6.0; x += 0.25) {
+                grid.getGeoPos(x, y, geoPos);
+                product.getSceneGeoCoding().getGeoPos(new PixelPos(x, y), expected);
+                assertEquals(expected.lat, geoPos.lat, 1e-5);
+                assertEquals(expected.lon, geoPos.lon, 1e-5);
+            }
+        }
+        // the centre of a pixel
+        grid.getGeoPos(3.5, 2.5, geoPos);
+        assertEquals(grid.getLat(3, 2), geoPos.lat, 1e-5);
+        assertEquals(grid.getLon(3, 2), geoPos.lon, 1e-5);
+    }
+
+    @Test
+    public void testGetGeoPos_singleColumn() {
+        final GeoLocationGrid grid = GeoLocationGrid.create(product, new Rectangle(3, 1, 1, 2));
+        final GeoPos geoPos = new GeoPos();
+
+        // without a neighbour, the longitude of the column is used
+        grid.getGeoPos(3.0, 2.0, geoPos);
+        assertEquals(49.8, geoPos.lat, 1e-5);
+        assertEquals(10.35, geoPos.lon, 1e-5);
+    }
+
+    @Test
+    public void testGetGeoPos_acrossAntiMeridian() {
+        final Product antiMeridianProduct = new Product("test", "test", 4, 2);
+        antiMeridianProduct.addBand("lat", "60.0 - Y * 0.1");
+        antiMeridianProduct.addBand("lon", "179.8 + X * 0.1 > 180.0 ? 179.8 + X * 0.1 - 360.0 : 179.8 + X * 0.1");
+        final GeoLocationGrid grid = GeoLocationGrid.create(antiMeridianProduct, new Rectangle(0, 0, 4, 2));
+        assertEquals(179.95f, grid.getLon(1, 0), 1e-4f);
+        assertEquals(-179.95f, grid.getLon(2, 0), 1e-4f);
+        final GeoPos geoPos = new GeoPos();
+
+        grid.getGeoPos(1.75, 1.0, geoPos);
+        assertEquals(59.9, geoPos.lat, 1e-5);
+        assertEquals(179.975, geoPos.lon, 1e-4);
+        grid.getGeoPos(2.25, 1.0, geoPos);
+        assertEquals(-179.975, geoPos.lon, 1e-4);
+    }
+}
@@ -69,6 +69,20 @@ public class IdepixIOTest {
         assertEquals(9.2f, reflCorr[0], 1.0e-6f);
     }
 
+    @Test
+    public void testCorrectSaturatedReflectances_intoMatrix() {
+        final float[] matrix = new float[12];
+        IdepixUtils.correctSaturatedReflectances(new float[]{Float.NaN, 9.2f, Float.NaN, 12.3f}, matrix, 4);
+        assertArrayEquals(new float[]{0.0f, 0.0f, 0.0f, 0.0f, 9.2f, 9.2f, 12.3f, 12.3f, 0.0f, 0.0f, 0.0f, 0.0f},
+                          matrix, 1.0e-6f);
+
+        IdepixUtils.correctSaturatedReflectances(new float[]{Float.NaN, Float.NaN, Float.NaN, Float.NaN}, matrix, 8);
+        for (int i = 8; i < 12; i++) {
+            assertTrue(Float.isNaN(matrix[i]));
+        }
+        assertEquals(12.3f, matrix[7], 1.0e-6f);
+    }
+
     @Test
     public void testAreAllReflectancesValid() {
         float[] reflOrig = new float[]{12.3f, 12.3f, 12.3f, 12.3f};
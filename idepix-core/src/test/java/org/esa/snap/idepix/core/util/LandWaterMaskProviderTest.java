@@ -0,0 +1,92 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.idepix.core.IdepixConstants;
+import org.esa.snap.watermask.operator.WatermaskClassifier;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LandWaterMaskProviderTest {
+
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 20;
+
+    private Product product;
+
+    @Before
+    public void setUp() throws Exception {
+        // the coast at the mouth of the Elbe, around Cuxhaven
+        product = new Product("test", "test", WIDTH, HEIGHT);
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, WIDTH, HEIGHT, 8.5, 53.9,
+                                                   0.01, 0.01, 0.0, 0.0));
+    }
+
+    @Test
+    public void testGetGridRectangle() {
+        assertEquals(new Rectangle(4, 2, 7, 5),
+                     LandWaterMaskProvider.getGridRectangle(product, new Rectangle(5, 3, 5, 3)));
+        // limited to the scene
+        assertEquals(new Rectangle(0, 0, 20, 6),
+                     LandWaterMaskProvider.getGridRectangle(product, new Rectangle(0, 0, 20, 5)));
+    }
+
+    @Test
+    public void testGetWaterFractions_sameAsWatermaskClassifier() throws Exception {
+        assertSameAsWatermaskClassifier(IdepixConstants.OVERSAMPLING_FACTOR_X, IdepixConstants.OVERSAMPLING_FACTOR_Y);
+        assertSameAsWatermaskClassifier(1, 1);
+    }
+
+    @Test
+    public void testGetWaterFractions_fromLatLonBands() throws Exception {
+        // latitude and longitude bands of the pixel centres, as in OLCI and MERIS products
+        product.addBand("lat", "53.9 - Y * 0.01");
+        product.addBand("lon", "8.5 + X * 0.01");
+        assertSameAsWatermaskClassifier(IdepixConstants.OVERSAMPLING_FACTOR_X, IdepixConstants.OVERSAMPLING_FACTOR_Y);
+    }
+
+    private void assertSameAsWatermaskClassifier(int superSamplingX, int superSamplingY) throws Exception {
+        final LandWaterMaskProvider provider =
+                new LandWaterMaskProvider(IdepixConstants.LAND_WATER_MASK_RESOLUTION, superSamplingX, superSamplingY);
+        final WatermaskClassifier classifier =
+                new WatermaskClassifier(IdepixConstants.LAND_WATER_MASK_RESOLUTION, superSamplingX, superSamplingY);
+        final GeoCoding geoCoding = product.getSceneGeoCoding();
+        // one tile at the scene border and one inside
+        final Rectangle[] rectangles = {new Rectangle(0, 0, 10, 20), new Rectangle(10, 5, 7, 8)};
+        // the geo-positions are interpolated from float values, so a sub-pixel close to the coast may differ
+        final int sampleFraction = 100 / (superSamplingX * superSamplingY) + 1;
+
+        int waterCount = 0;
+        int landCount = 0;
+        int differenceCount = 0;
+        for (Rectangle rectangle : rectangles) {
+            final byte[] fractions = provider.getWaterFractions(product, rectangle);
+            int index = 0;
+            for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                    final int expected = classifier.getWaterMaskFraction(geoCoding, x, y);
+                    final int actual = fractions[index++];
+                    assertTrue("pixel " + x + "," + y + ": " + expected + " != " + actual,
+                               Math.abs(expected - actual) <= sampleFraction);
+                    if (expected != actual) {
+                        differenceCount++;
+                    }
+                    if (expected == 100) {
+                        waterCount++;
+                    } else if (expected == 0) {
+                        landCount++;
+                    }
+                }
+            }
+        }
+        assertTrue(waterCount > 0 && landCount > 0);
+        assertTrue(differenceCount <= 5);
+    }
+}
@@ -0,0 +1,100 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.gpf.Operator;
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OperatorTimingTest {
+
+    @After
+    public void tearDown() {
+        OperatorTiming.setEnabled(false);
+        OperatorTiming.reset();
+    }
+
+    @Test
+    public void testDisabled() {
+        OperatorTiming.setEnabled(false);
+        final long startTime = OperatorTiming.start();
+        assertEquals(0L, startTime);
+        OperatorTiming.stop(new OuterOp(), new Rectangle(10, 10), startTime);
+
+        assertFalse(OperatorTiming.getSummary().contains("OuterOp"));
+    }
+
+    @Test
+    public void testNestedTileComputations() throws Exception {
+        OperatorTiming.setEnabled(true);
+        final OuterOp outerOp = new OuterOp();
+        final InnerOp innerOp = new InnerOp();
+
+        for (int i = 0; i < 2; i++) {
+            final long outerStartTime = OperatorTiming.start();
+            final long innerStartTime = OperatorTiming.start();
+            Thread.sleep(20);
+            OperatorTiming.stop(innerOp, new Rectangle(0, 0, 30, 20), innerStartTime);
+            OperatorTiming.stop(outerOp, new Rectangle(0, 0, 10, 10), outerStartTime);
+        }
+
+        final String summary = OperatorTiming.getSummary();
+        assertEquals(2, getLong(summary, "InnerOp", "tiles"));
+        assertEquals(1200, getLong(summary, "InnerOp", "pixels"));
+        assertEquals(2, getLong(summary, "OuterOp", "tiles"));
+        assertEquals(200, getLong(summary, "OuterOp", "pixels"));
+
+        final double innerTotal = getDouble(summary, "InnerOp", "totalTimeMs");
+        final double outerTotal = getDouble(summary, "OuterOp", "totalTimeMs");
+        final double outerSelf = getDouble(summary, "OuterOp", "selfTimeMs");
+        assertTrue(innerTotal >= 40.0);
+        assertTrue(outerTotal >= innerTotal);
+        // the time of the inner computation is not part of the self time of the outer one
+        assertEquals(outerTotal - innerTotal, outerSelf, 0.01);
+    }
+
+    @Test
+    public void testReset() {
+        OperatorTiming.setEnabled(true);
+        OperatorTiming.stop(new OuterOp(), new Rectangle(10, 10), OperatorTiming.start());
+        assertTrue(OperatorTiming.getSummary().contains("OuterOp"));
+
+        OperatorTiming.reset();
+        assertFalse(OperatorTiming.getSummary().contains("OuterOp"));
+    }
+
+    private static long getLong(String summary, String operator, String key) {
+        return Long.parseLong(getValue(summary, operator, key));
+    }
+
+    private static double getDouble(String summary, String operator, String key) {
+        return Double.parseDouble(getValue(summary, operator, key));
+    }
+
+    private static String getValue(String summary, String operator, String key) {
+        final Pattern pattern = Pattern.compile("\\{\"operator\":\"" + operator + "\"[^}]*\"" + key + "\":([0-9.]+)");
+        final Matcher matcher = pattern.matcher(summary);
+        assertTrue(summary, matcher.find());
+        return matcher.group(1);
+    }
+
+    private static class OuterOp extends Operator {
+
+        @Override
+        public void initialize() {
+        }
+    }
+
+    private static class InnerOp extends Operator {
+
+        @Override
+        public void initialize() {
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.gpf.OperatorException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class SchillerNeuralNetCacheTest {
+
+    private static final String NET_NAME = "6x5x4x3x2_204.8.net";
+
+    @Before
+    public void setUp() {
+        SchillerNeuralNetCache.clear();
+    }
+
+    @Test
+    public void testGet_returnsSameInstance() {
+        final SchillerNeuralNet neuralNet = SchillerNeuralNetCache.get(getClass(), NET_NAME);
+        assertSame(neuralNet, SchillerNeuralNetCache.get(getClass(), NET_NAME));
+        assertSame(neuralNet, SchillerNeuralNetCache.get(SchillerNeuralNet.class, NET_NAME));
+        assertEquals(1, SchillerNeuralNetCache.size());
+    }
+
+    @Test
+    public void testGet_concurrently() throws Exception {
+        final int numThreads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<SchillerNeuralNet>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(executor.submit((Callable<SchillerNeuralNet>) () -> {
+                    start.await();
+                    return SchillerNeuralNetCache.get(getClass(), NET_NAME);
+                }));
+            }
+            start.countDown();
+            final SchillerNeuralNet neuralNet = futures.get(0).get();
+            for (Future<SchillerNeuralNet> future : futures) {
+                assertSame(neuralNet, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, SchillerNeuralNetCache.size());
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testGet_missingResource() {
+        SchillerNeuralNetCache.get(getClass(), "missing.net");
+    }
+
+    @Test
+    public void testWrappersShareCachedNet() throws Exception {
+        final ThreadLocal<SchillerNeuralNetWrapper> wrapper = SchillerNeuralNetWrapper.create(getClass(), NET_NAME);
+        final SchillerNeuralNet neuralNet = wrapper.get().getNeuralNet();
+        assertSame(SchillerNeuralNetCache.get(getClass(), NET_NAME), neuralNet);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final SchillerNeuralNetWrapper otherWrapper = executor.submit(wrapper::get).get();
+            assertNotSame(wrapper.get(), otherWrapper);
+            assertSame(neuralNet, otherWrapper.getNeuralNet());
+        } finally {
+            executor.shutdown();
+        }
+
+        final double[] input = wrapper.get().getInputVector();
+        for (int i = 0; i < input.length; i++) {
+            input[i] = neuralNet.getInputMin(i) + 0.1 * (i + 1);
+        }
+        assertArrayEquals(neuralNet.calc(input), wrapper.get().calc(input), 0.0);
+        assertArrayEquals(neuralNet.calc(input), wrapper.get().calc(input), 0.0);
+    }
+}
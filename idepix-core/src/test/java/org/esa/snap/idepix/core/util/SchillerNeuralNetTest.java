@@ -0,0 +1,105 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.nn.NNffbpAlphaTabFast;
+import org.esa.snap.core.util.io.FileUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SchillerNeuralNetTest {
+
+    private static final String NET_NAME = "6x5x4x3x2_204.8.net";
+
+    private static final String SMALL_NET = "header\n" +
+            "#\n" +
+            "2\n" +
+            "0.0 1.0\n" +
+            "0.0 2.0\n" +
+            "1\n" +
+            "1.0 5.0\n" +
+            "$\n" +
+            "#planes=2 2 1\n" +
+            "bias 1 1\n" +
+            "0.5\n" +
+            "wgt 0 2 1\n" +
+            "2.0\n" +
+            "-1.0\n";
+
+    @Test
+    public void testCalc_smallNet() {
+        final SchillerNeuralNet neuralNet = SchillerNeuralNet.parse(SMALL_NET);
+        assertEquals(2, neuralNet.getNumInputs());
+        assertEquals(1, neuralNet.getNumOutputs());
+
+        final double[] output = neuralNet.calc(new double[]{0.25, 1.0});
+
+        // normalised inputs 0.25 and 0.5, the activation function is tabulated
+        final double sum = 0.5 + 2.0 * 0.25 - 1.0 * 0.5;
+        final double expected = 1.0 + 4.0 / (1.0 + Math.exp(-sum));
+        assertEquals(expected, output[0], 1.0e-3);
+    }
+
+    @Test
+    public void testCalc_matchesNNffbpAlphaTabFast() throws IOException {
+        final String netAsString = readNet();
+        final NNffbpAlphaTabFast referenceNet = new NNffbpAlphaTabFast(netAsString);
+        final SchillerNeuralNet neuralNet = SchillerNeuralNet.parse(netAsString);
+        final int numInputs = neuralNet.getNumInputs();
+        final int numOutputs = neuralNet.getNumOutputs();
+        final int numSamples = 500;
+
+        final SchillerNeuralNetBatch batch = new SchillerNeuralNetBatch(neuralNet, 7);
+        final double[] inputs = batch.getInputs(numSamples);
+        final Random random = new Random(4711);
+        for (int s = 0; s < numSamples; s++) {
+            for (int i = 0; i < numInputs; i++) {
+                final double min = referenceNet.getInmin()[i];
+                final double max = referenceNet.getInmax()[i];
+                // also go beyond the input ranges a bit
+                inputs[s * numInputs + i] = min + (max - min) * (1.2 * random.nextDouble() - 0.1);
+            }
+        }
+        final double[] outputs = batch.calc(numSamples);
+
+        final double[] input = new double[numInputs];
+        for (int s = 0; s < numSamples; s++) {
+            System.arraycopy(inputs, s * numInputs, input, 0, numInputs);
+            final double[] expected = referenceNet.calc(input);
+            final double[] single = neuralNet.calc(input);
+            for (int o = 0; o < numOutputs; o++) {
+                assertEquals("sample " + s, expected[o], outputs[s * numOutputs + o], 1.0e-9);
+                assertEquals("sample " + s, outputs[s * numOutputs + o], single[o], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testBatchReusedWithFewerSamples() {
+        final SchillerNeuralNet neuralNet = SchillerNeuralNet.parse(SMALL_NET);
+        final SchillerNeuralNetBatch batch = new SchillerNeuralNetBatch(neuralNet, 2);
+
+        double[] inputs = batch.getInputs(5);
+        for (int i = 0; i < 10; i++) {
+            inputs[i] = 0.1 * i;
+        }
+        final double lastOfFive = batch.calc(5)[4];
+
+        inputs = batch.getInputs(1);
+        inputs[0] = 0.8;
+        inputs[1] = 0.9;
+        assertEquals(lastOfFive, batch.calc(1)[0], 0.0);
+    }
+
+    private String readNet() throws IOException {
+        try (InputStream inputStream = getClass().getResourceAsStream(NET_NAME);
+             Reader reader = new InputStreamReader(inputStream)) {
+            return FileUtils.readText(reader);
+        }
+    }
+}
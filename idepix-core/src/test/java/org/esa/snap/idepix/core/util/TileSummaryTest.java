@@ -0,0 +1,97 @@
+package org.esa.snap.idepix.core.util;
+
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.Tile;
+import org.esa.snap.core.gpf.internal.TileImpl;
+import org.esa.snap.idepix.core.IdepixConstants;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TileSummaryTest {
+
+    private static final int INVALID = 1 << IdepixConstants.IDEPIX_INVALID;
+    private static final int CLOUD = 1 << IdepixConstants.IDEPIX_CLOUD;
+
+    private Product product;
+    private Rectangle rectangle;
+
+    @Before
+    public void setUp() {
+        product = new Product("test", "test", 20, 20);
+        rectangle = new Rectangle(10, 5, 4, 3);
+    }
+
+    @Test
+    public void testIsFlagSetEverywhere() {
+        final Tile flagTile = createTile("flags", INVALID);
+        assertTrue(TileSummary.isFlagSetEverywhere(flagTile, rectangle, INVALID));
+        assertTrue(TileSummary.isFlagSetEverywhere(flagTile, rectangle, INVALID | CLOUD));
+        assertFalse(TileSummary.isFlagSetEverywhere(flagTile, rectangle, CLOUD));
+
+        flagTile.setSample(13, 7, CLOUD);
+        assertFalse(TileSummary.isFlagSetEverywhere(flagTile, rectangle, INVALID));
+        assertTrue(TileSummary.isFlagSetEverywhere(flagTile, rectangle, INVALID | CLOUD));
+        // the pixel is outside of the checked rectangle
+        assertTrue(TileSummary.isFlagSetEverywhere(flagTile, new Rectangle(10, 5, 3, 3), INVALID));
+    }
+
+    @Test
+    public void testIsFlagSetAnywhere() {
+        final Tile flagTile = createTile("flags", INVALID);
+        assertFalse(TileSummary.isFlagSetAnywhere(flagTile, rectangle, CLOUD));
+        assertTrue(TileSummary.isCloudFree(flagTile, rectangle));
+
+        flagTile.setSample(12, 6, INVALID | CLOUD);
+        assertTrue(TileSummary.isFlagSetAnywhere(flagTile, rectangle, CLOUD));
+        assertFalse(TileSummary.isCloudFree(flagTile, rectangle));
+        assertTrue(TileSummary.isCloudFree(flagTile, new Rectangle(10, 5, 2, 3)));
+    }
+
+    @Test
+    public void testIsWithoutCoastline() {
+        final Tile waterFractionTile = createTile("water_fraction", 100);
+        assertTrue(TileSummary.isWithoutCoastline(waterFractionTile, rectangle));
+
+        TileSummary.fill(waterFractionTile, 0);
+        assertTrue(TileSummary.isWithoutCoastline(waterFractionTile, rectangle));
+
+        waterFractionTile.setSample(11, 7, 100);
+        assertFalse(TileSummary.isWithoutCoastline(waterFractionTile, rectangle));
+
+        // a partly covered pixel may be coastline even if all pixels have the same fraction
+        TileSummary.fill(waterFractionTile, 50);
+        assertFalse(TileSummary.isWithoutCoastline(waterFractionTile, rectangle));
+    }
+
+    @Test
+    public void testFill() {
+        final Tile flagTile = createTile("flags", CLOUD);
+        TileSummary.fill(flagTile, INVALID);
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                assertEquals(INVALID, flagTile.getSampleInt(x, y));
+            }
+        }
+    }
+
+    private Tile createTile(String bandName, int value) {
+        final BandedSampleModel sampleModel = new BandedSampleModel(DataBuffer.TYPE_INT,
+                                                                    rectangle.width, rectangle.height, 1);
+        final WritableRaster raster = Raster.createWritableRaster(sampleModel, new Point(rectangle.x, rectangle.y));
+        final Tile tile = new TileImpl(product.addBand(bandName, ProductData.TYPE_INT32), raster);
+        TileSummary.fill(tile, value);
+        return tile;
+    }
+}
@@ -3,7 +3,10 @@ package org.esa.snap.idepix.landsat8;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.snap.idepix.core.IdepixConstants;
 import org.esa.snap.idepix.core.util.IdepixIO;
-import org.esa.snap.idepix.core.util.SchillerNeuralNetWrapper;
+import org.esa.snap.idepix.core.util.SchillerNeuralNet;
+import org.esa.snap.idepix.core.util.SchillerNeuralNetBatch;
+import org.esa.snap.idepix.core.util.SchillerNeuralNetCache;
+import org.esa.snap.idepix.core.util.TileSummary;
 import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.FlagCoding;
 import org.esa.snap.core.datamodel.GeoCoding;
@@ -22,8 +25,6 @@ import org.esa.snap.core.gpf.annotations.TargetProduct;
 import org.esa.snap.core.util.ProductUtils;
 
 import java.awt.Rectangle;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.Map;
 
 /**
@@ -219,13 +220,17 @@ public class Landsat8ClassificationOp extends Operator {
     private static final int L8_F_WATER_CONFIDENCE_HIGH = 5;  // todo: do we need this?
     private String cloudFlagBandName;
 
-    private ThreadLocal<SchillerNeuralNetWrapper> landsat8CloudNet;
+    private ThreadLocal<SchillerNeuralNetBatch> landsat8CloudNetBatch;
+
+    // hidden parameter, may be set to true for scenes with larger fill areas
+    private boolean skipInvalidTiles;
 
     @Override
     public void initialize() throws OperatorException {
         initCloudNet();
         setBands();
         createTargetProduct();
+        skipInvalidTiles = TileSummary.isSkipInvalidTiles();
 
         if (waterMaskProduct != null) {
             landWaterBand = waterMaskProduct.getBand("land_water_fraction");
@@ -238,6 +243,15 @@ public class Landsat8ClassificationOp extends Operator {
 
     @Override
     public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle rectangle, ProgressMonitor pm) throws OperatorException {
+        final Band l8FlagBand = sourceProduct.getBand(Landsat8Constants.Landsat8_FLAGS_NAME);
+        final Tile l8FlagTile = getSourceTile(l8FlagBand, rectangle);
+        if (skipInvalidTiles && TileSummary.isFlagSetEverywhere(l8FlagTile, rectangle, 1 << L8_F_DESIGNATED_FILL)) {
+            TileSummary.fill(targetTiles.get(targetProduct.getBand(cloudFlagBandName)),
+                             1 << IdepixConstants.IDEPIX_INVALID);
+            TileSummary.fill(targetTiles.get(targetProduct.getBand(IdepixConstants.NN_OUTPUT_BAND_NAME)), Double.NaN);
+            return;
+        }
+
         // MERIS variables
         Tile landWaterTile = null;
         if (waterMaskProduct != null) {
@@ -251,9 +265,6 @@ public class Landsat8ClassificationOp extends Operator {
             otsuTile = getSourceTile(otsuBand, rectangle);
         }
 
-        final Band l8FlagBand = sourceProduct.getBand(Landsat8Constants.Landsat8_FLAGS_NAME);
-        final Tile l8FlagTile = getSourceTile(l8FlagBand, rectangle);
-
         Tile[] l8ReflectanceTiles = new Tile[Landsat8Constants.LANDSAT8_NUM_SPECTRAL_BANDS];
         for (int i = 0; i < Landsat8Constants.LANDSAT8_NUM_SPECTRAL_BANDS; i++) {
             l8ReflectanceTiles[i] = getSourceTile(l8ReflectanceBands[i], rectangle);
@@ -265,9 +276,13 @@ public class Landsat8ClassificationOp extends Operator {
 //        final Tile darkGlintTest2TargetTile = targetTiles.get(targetProduct.getBand(DARK_Glint_TEST_TWO_BAND_NAME));
 
         try {
+            final SchillerNeuralNetBatch nnBatch = landsat8CloudNetBatch.get();
+            final double[] nnOutputs = computeNeuralNetResults(nnBatch, l8ReflectanceTiles, rectangle);
+            final double[] nnResult = new double[nnBatch.getNeuralNet().getNumOutputs()];
+            int pixelIndex = 0;
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
                 checkForCancellation();
-                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, pixelIndex++) {
 
 //                    if ((x == 3461 || x == 3462) && y == 477) {
 //                        System.out.println("x,y = " + x + "," + y);
@@ -278,12 +293,14 @@ public class Landsat8ClassificationOp extends Operator {
 //                    }
 
                     // set up pixel properties for given instruments...
+                    System.arraycopy(nnOutputs, pixelIndex * nnResult.length, nnResult, 0, nnResult.length);
                     Landsat8Algorithm landsat8Algorithm = createLandsat8Algorithm(
                             l8ReflectanceTiles,
                             l8FlagTile,
                             landWaterTile,
                             clostTile,
                             otsuTile,
+                            nnResult,
                             x, y
                     );
 
@@ -386,6 +403,7 @@ public class Landsat8ClassificationOp extends Operator {
                                                       Tile landWaterTile,
                                                       Tile clostTile,
                                                       Tile otsuTile,
+                                                      double[] nnResult,
                                                       int x, int y) {
         Landsat8Algorithm l8Algorithm = new Landsat8Algorithm();
 
@@ -434,13 +452,14 @@ public class Landsat8ClassificationOp extends Operator {
         l8Algorithm.setWhitenessBand2Water(whitenessBand2Water);
         l8Algorithm.setWhitenessThreshWater(whitenessThreshWater);
 
-        double[] netResult = calcNeuralNetResult(l8Reflectance);
-        l8Algorithm.setNnResult(netResult);
+        l8Algorithm.setNnResult(nnResult);
 
         return l8Algorithm;
     }
 
-    private double[] calcNeuralNetResult(float[] l8Reflectance) {
+    // evaluates the neural net at once for all pixels of the tile
+    private double[] computeNeuralNetResults(SchillerNeuralNetBatch nnBatch, Tile[] l8ReflectanceTiles,
+                                             Rectangle rectangle) {
         // NNs and input bands being used:
 //        ALL("ALL", "20x4x2_1012.9.net", [default]: coastal_aerosol, blue, green, red, nir, swir1, swir2, cirrus
 //        LAND("LAND", "16x6x2_735.5.net", : coastal_aerosol, blue, green, red, nir, swir1, swir2, cirrus
@@ -450,30 +469,40 @@ public class Landsat8ClassificationOp extends Operator {
 //        WATER_USE_THERMAL("WATER_USE_THERMAL", "12x4x2_305.0.net", : coastal_aerosol, blue, green, red, nir, swir1, swir2, cirrus, tirs1, tirs2
 //        WATER_NOTIDAL_USE_THERMAL("WATER_NOTIDAL_USE_THERMAL", "12x4x2_307.5.net", : coastal_aerosol, blue, green, red, nir, swir1, swir2, cirrus, tirs1, tirs2
 
-        SchillerNeuralNetWrapper neuralNetWrapper = landsat8CloudNet.get();
-        double[] cloudNetInput = neuralNetWrapper.getInputVector();
-        for (int i = 0; i < 7; i++) {
-            cloudNetInput[i] = Math.sqrt(l8Reflectance[i]);
-        }
-        // cirrus band can have negative values
-        // --> not allowing values lower as the net minimum
-        // note that panchromatic band (l8Reflectance[8]) is not used as NN input and skipped!
-        cloudNetInput[7] = Math.max(Math.sqrt((double) l8Reflectance[8]), neuralNetWrapper.getNeuralNet().getInmin()[7]);
-        if (nnSelector.getLabel().endsWith("_USE_THERMAL")) {
-            cloudNetInput[8] = Math.sqrt(l8Reflectance[9]);
-            cloudNetInput[9] = Math.sqrt(l8Reflectance[10]);
+        final SchillerNeuralNet neuralNet = nnBatch.getNeuralNet();
+        final int numInputs = neuralNet.getNumInputs();
+        final int numPixels = rectangle.width * rectangle.height;
+        final boolean useThermal = nnSelector.getLabel().endsWith("_USE_THERMAL");
+        final double[] cloudNetInputs = nnBatch.getInputs(numPixels);
+        int offset = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, offset += numInputs) {
+                for (int i = 0; i < 7; i++) {
+                    cloudNetInputs[offset + i] = Math.sqrt(l8ReflectanceTiles[i].getSampleFloat(x, y));
+                }
+                // cirrus band can have negative values
+                // --> not allowing values lower as the net minimum
+                // note that panchromatic band (l8Reflectance[8]) is not used as NN input and skipped!
+                cloudNetInputs[offset + 7] = Math.max(Math.sqrt((double) l8ReflectanceTiles[8].getSampleFloat(x, y)),
+                                                      neuralNet.getInputMin(7));
+                if (useThermal) {
+                    cloudNetInputs[offset + 8] = Math.sqrt(l8ReflectanceTiles[9].getSampleFloat(x, y));
+                    cloudNetInputs[offset + 9] = Math.sqrt(l8ReflectanceTiles[10].getSampleFloat(x, y));
+                } else {
+                    for (int i = 8; i < numInputs; i++) {
+                        cloudNetInputs[offset + i] = 0.0;
+                    }
+                }
+            }
         }
-        return neuralNetWrapper.getNeuralNet().calc(cloudNetInput);
+        return nnBatch.calc(numPixels);
     }
 
 
     private void initCloudNet() {
         // use selected new NN (20151119), chosen from 6 different nets:
-        try (InputStream cloudNet = getClass().getResourceAsStream(nnSelector.getNnFileName())) {
-            landsat8CloudNet = SchillerNeuralNetWrapper.create(cloudNet);
-        } catch (IOException e) {
-            throw new OperatorException("Cannot read cloud neural net: " + e.getMessage());
-        }
+        final SchillerNeuralNet landsat8CloudNet = SchillerNeuralNetCache.get(getClass(), nnSelector.getNnFileName());
+        landsat8CloudNetBatch = ThreadLocal.withInitial(() -> new SchillerNeuralNetBatch(landsat8CloudNet));
     }
 
     /**
@@ -16,6 +16,7 @@ import org.esa.snap.idepix.core.IdepixConstants;
 import org.esa.snap.idepix.core.operators.CloudBuffer;
 import org.esa.snap.idepix.core.util.IdepixUtils;
 import org.esa.snap.idepix.core.util.OperatorUtils;
+import org.esa.snap.idepix.core.util.TileSummary;
 
 import java.awt.*;
 
@@ -105,6 +106,10 @@ public class Landsat8PostProcessOp extends Operator {
         Tile waterFractionTile = null;
         if (waterFractionBand != null) {
             waterFractionTile = getSourceTile(waterFractionBand, srcRectangle);
+            // the coastline refinement is expensive, skip it for tiles without any coastline
+            if (TileSummary.isWithoutCoastline(waterFractionTile, srcRectangle)) {
+                waterFractionTile = null;
+            }
         }
 
         for (int y = srcRectangle.y; y < srcRectangle.y + srcRectangle.height; y++) {
@@ -132,55 +137,21 @@ public class Landsat8PostProcessOp extends Operator {
         }
 
         if (computeCloudBuffer) {
-            for (int y = srcRectangle.y; y < srcRectangle.y + srcRectangle.height; y++) {
-                for (int x = srcRectangle.x; x < srcRectangle.x + srcRectangle.width; x++) {
-                    // SHIMEZ
-                    final boolean isCloudShimez = sourceFlagTile.getSampleBit(x, y, Landsat8Constants.IDEPIX_CLOUD_SHIMEZ);
-                    if (isCloudShimez) {
-                        CloudBuffer.computeSimpleCloudBuffer(x, y,
-                                                             targetTile,
-                                                             srcRectangle,
-                                                             cloudBufferWidth,
-                                                             Landsat8Constants.IDEPIX_CLOUD_SHIMEZ_BUFFER);
-                    }
-                    // HOT
-                    final boolean isCloudHot = sourceFlagTile.getSampleBit(x, y, Landsat8Constants.IDEPIX_CLOUD_HOT);
-                    if (isCloudHot) {
-                        CloudBuffer.computeSimpleCloudBuffer(x, y,
-                                                             targetTile,
-                                                             srcRectangle,
-                                                             cloudBufferWidth,
-                                                             Landsat8Constants.IDEPIX_CLOUD_HOT_BUFFER);
-                    }
-                    // OTSU
-                    final boolean isCloudOtsu = sourceFlagTile.getSampleBit(x, y, Landsat8Constants.IDEPIX_CLOUD_OTSU);
-                    if (isCloudOtsu) {
-                        CloudBuffer.computeSimpleCloudBuffer(x, y,
-                                                             targetTile,
-                                                             srcRectangle,
-                                                             cloudBufferWidth,
-                                                             Landsat8Constants.IDEPIX_CLOUD_OTSU_BUFFER);
-                    }
-                    // CLOST
-                    final boolean isCloudClost = sourceFlagTile.getSampleBit(x, y, Landsat8Constants.IDEPIX_CLOUD_CLOST);
-                    if (isCloudClost) {
-                        CloudBuffer.computeSimpleCloudBuffer(x, y,
-                                                             targetTile,
-                                                             srcRectangle,
-                                                             cloudBufferWidth,
-                                                             Landsat8Constants.IDEPIX_CLOUD_CLOST_BUFFER);
-                    }
-                    // overall
-                    final boolean isCloud = sourceFlagTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD);
-                    if (isCloud) {
-                        CloudBuffer.computeSimpleCloudBuffer(x, y,
-                                                             targetTile,
-                                                             srcRectangle,
-                                                             cloudBufferWidth,
-                                                             IdepixConstants.IDEPIX_CLOUD_BUFFER);
-                    }
-                }
-            }
+            CloudBuffer.setCloudBuffer(targetTile, srcRectangle, sourceFlagTile, cloudBufferWidth,
+                                       Landsat8Constants.IDEPIX_CLOUD_SHIMEZ,
+                                       Landsat8Constants.IDEPIX_CLOUD_SHIMEZ_BUFFER);
+            CloudBuffer.setCloudBuffer(targetTile, srcRectangle, sourceFlagTile, cloudBufferWidth,
+                                       Landsat8Constants.IDEPIX_CLOUD_HOT,
+                                       Landsat8Constants.IDEPIX_CLOUD_HOT_BUFFER);
+            CloudBuffer.setCloudBuffer(targetTile, srcRectangle, sourceFlagTile, cloudBufferWidth,
+                                       Landsat8Constants.IDEPIX_CLOUD_OTSU,
+                                       Landsat8Constants.IDEPIX_CLOUD_OTSU_BUFFER);
+            CloudBuffer.setCloudBuffer(targetTile, srcRectangle, sourceFlagTile, cloudBufferWidth,
+                                       Landsat8Constants.IDEPIX_CLOUD_CLOST,
+                                       Landsat8Constants.IDEPIX_CLOUD_CLOST_BUFFER);
+            CloudBuffer.setCloudBuffer(targetTile, srcRectangle, sourceFlagTile, cloudBufferWidth,
+                                       IdepixConstants.IDEPIX_CLOUD,
+                                       IdepixConstants.IDEPIX_CLOUD_BUFFER);
 
             for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
                 checkForCancellation();
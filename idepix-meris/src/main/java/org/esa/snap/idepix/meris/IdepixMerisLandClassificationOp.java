@@ -15,11 +15,14 @@ import org.esa.snap.core.util.ProductUtils;
 import org.esa.snap.dataio.envisat.EnvisatConstants;
 
 import org.esa.snap.idepix.core.IdepixConstants;
+import org.esa.snap.idepix.core.util.GeoLocationGrid;
 import org.esa.snap.idepix.core.util.IdepixIO;
-import org.esa.snap.idepix.core.util.SchillerNeuralNetWrapper;
+import org.esa.snap.idepix.core.util.SchillerNeuralNet;
+import org.esa.snap.idepix.core.util.SchillerNeuralNetBatch;
+import org.esa.snap.idepix.core.util.SchillerNeuralNetCache;
+import org.esa.snap.idepix.core.util.TileSummary;
 
 import java.awt.*;
-import java.io.InputStream;
 import java.util.Map;
 
 /**
@@ -72,7 +75,10 @@ public class IdepixMerisLandClassificationOp extends Operator {
     private Band landWaterBand;
 
     private static final String MERIS_LAND_NET_NAME = "11x8x5x3_1062.5_land.net";
-    private ThreadLocal<SchillerNeuralNetWrapper> merisLandNeuralNet;
+    private ThreadLocal<SchillerNeuralNetBatch> merisLandNeuralNetBatch;
+
+    // hidden parameter, may be set to true for products with larger invalid areas
+    private boolean skipInvalidTiles;
 
     @Override
     public void initialize() throws OperatorException {
@@ -80,13 +86,14 @@ public class IdepixMerisLandClassificationOp extends Operator {
 
         readSchillerNeuralNets();
         createTargetProduct();
+        skipInvalidTiles = TileSummary.isSkipInvalidTiles();
 
         landWaterBand = waterMaskProduct.getBand("land_water_fraction");
     }
 
     private void readSchillerNeuralNets() {
-        InputStream merisLandIS = getClass().getResourceAsStream(MERIS_LAND_NET_NAME);
-        merisLandNeuralNet = SchillerNeuralNetWrapper.create(merisLandIS);
+        final SchillerNeuralNet merisLandNeuralNet = SchillerNeuralNetCache.get(getClass(), MERIS_LAND_NET_NAME);
+        merisLandNeuralNetBatch = ThreadLocal.withInitial(() -> new SchillerNeuralNetBatch(merisLandNeuralNet));
     }
 
     private void setBands() {
@@ -127,10 +134,19 @@ public class IdepixMerisLandClassificationOp extends Operator {
     @Override
     public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle rectangle, ProgressMonitor pm) throws OperatorException {
         // MERIS variables
-        final Tile waterFractionTile = getSourceTile(landWaterBand, rectangle);
-
         final Band merisL1bFlagBand = sourceProduct.getBand(EnvisatConstants.MERIS_L1B_FLAGS_DS_NAME);
         final Tile merisL1bFlagTile = getSourceTile(merisL1bFlagBand, rectangle);
+        if (skipInvalidTiles &&
+                TileSummary.isFlagSetEverywhere(merisL1bFlagTile, rectangle, 1 << IdepixMerisConstants.L1_F_INVALID)) {
+            TileSummary.fill(targetTiles.get(cloudFlagBand), 1 << IdepixConstants.IDEPIX_INVALID);
+            if (outputSchillerNNValue) {
+                TileSummary.fill(targetTiles.get(targetProduct.getBand(IdepixConstants.NN_OUTPUT_BAND_NAME)),
+                                 Double.NaN);
+            }
+            return;
+        }
+
+        final Tile waterFractionTile = getSourceTile(landWaterBand, rectangle);
 
         Tile[] merisReflectanceTiles = new Tile[EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS];
         float[] merisReflectance = new float[EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS];
@@ -148,12 +164,30 @@ public class IdepixMerisLandClassificationOp extends Operator {
             nnTargetTile = targetTiles.get(nnTargetBand);
         }
         try {
+            final GeoLocationGrid geoLocationGrid = GeoLocationGrid.create(sourceProduct, rectangle);
+            final GeoPos geoPos = new GeoPos();
+            final boolean[] isLandPixel = new boolean[rectangle.width * rectangle.height];
+            int pixelIndex = 0;
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
-                checkForCancellation();
-                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, pixelIndex++) {
                     final int waterFraction = waterFractionTile.getSampleInt(x, y);
+                    geoPos.setLocation(geoLocationGrid.getLat(x, y), geoLocationGrid.getLon(x, y));
+                    isLandPixel[pixelIndex] = IdepixMerisUtils.isLandPixel(x, y, geoPos, merisL1bFlagTile,
+                                                                           waterFraction);
+                }
+            }
+            // the outputs of the land pixels, in the order of the pixels
+            final SchillerNeuralNetBatch nnBatch = merisLandNeuralNetBatch.get();
+            final double[] nnOutputs = computeNNOutputs(nnBatch, merisReflectanceTiles, rectangle, isLandPixel);
+            final int numNNOutputs = nnBatch.getNeuralNet().getNumOutputs();
+
+            int landPixelIndex = 0;
+            pixelIndex = 0;
+            for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+                checkForCancellation();
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, pixelIndex++) {
                     initCloudFlag(merisL1bFlagTile, targetTiles.get(cloudFlagTargetBand), merisReflectance, y, x);
-                    if (!IdepixMerisUtils.isLandPixel(x, y, getGeoPos(x, y), merisL1bFlagTile, waterFraction)) {
+                    if (!isLandPixel[pixelIndex]) {
                         cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_LAND, false);
                         cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, false);
                         cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, false);
@@ -162,7 +196,7 @@ public class IdepixMerisLandClassificationOp extends Operator {
                         }
                     } else {
                         classifyPixel(merisReflectanceTiles, merisReflectance,
-                                cloudFlagTargetTile, nnTargetTile, y, x);
+                                nnOutputs[landPixelIndex++ * numNNOutputs], cloudFlagTargetTile, nnTargetTile, y, x);
                     }
                 }
             }
@@ -171,57 +205,61 @@ public class IdepixMerisLandClassificationOp extends Operator {
         }
     }
 
-    private void classifyPixel(Tile[] merisReflectanceTiles, float[] merisReflectance,
+    // evaluates the neural net at once for the land pixels of the tile
+    private static double[] computeNNOutputs(SchillerNeuralNetBatch nnBatch, Tile[] merisReflectanceTiles,
+                                             Rectangle rectangle, boolean[] isLandPixel) {
+        final int numNNInputs = nnBatch.getNeuralNet().getNumInputs();
+        final double[] nnInputs = nnBatch.getInputs(isLandPixel.length);
+        int pixelIndex = 0;
+        int landPixelIndex = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, pixelIndex++) {
+                if (isLandPixel[pixelIndex]) {
+                    final int inputOffset = landPixelIndex++ * numNNInputs;
+                    for (int i = 0; i < numNNInputs; i++) {
+                        nnInputs[inputOffset + i] = Math.sqrt(merisReflectanceTiles[i].getSampleFloat(x, y));
+                    }
+                }
+            }
+        }
+        return nnBatch.calc(landPixelIndex);
+    }
+
+    private void classifyPixel(Tile[] merisReflectanceTiles, float[] merisReflectance, double nnOutput,
                                Tile cloudFlagTargetTile, Tile nnTargetTile, int y, int x) {
         // only use Schiller NN approach...
         for (int i = 0; i < EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS; i++) {
             merisReflectance[i] = merisReflectanceTiles[i].getSampleFloat(x, y);
         }
 
-        SchillerNeuralNetWrapper nnWrapper = merisLandNeuralNet.get();
-        double[] inputVector = nnWrapper.getInputVector();
-        for (int i = 0; i < inputVector.length; i++) {
-            inputVector[i] = Math.sqrt(merisReflectance[i]);
-        }
-
-        final double[] nnOutput = nnWrapper.getNeuralNet().calc(inputVector);
-
         if (!cloudFlagTargetTile.getSampleBit(x, y, IdepixConstants.IDEPIX_INVALID)) {
             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, false);
             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, false);
             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, false);
             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, false);
-            if (nnOutput[0] > schillerNNCloudAmbiguousLowerBoundaryValue &&
-                    nnOutput[0] <= schillerNNCloudAmbiguousSureSeparationValue) {
+            if (nnOutput > schillerNNCloudAmbiguousLowerBoundaryValue &&
+                    nnOutput <= schillerNNCloudAmbiguousSureSeparationValue) {
                 // this would be as 'CLOUD_AMBIGUOUS'...
                 cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, true);
                 cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, true);
             }
-            if (nnOutput[0] > schillerNNCloudAmbiguousSureSeparationValue &&
-                    nnOutput[0] <= schillerNNCloudSureSnowSeparationValue) {
+            if (nnOutput > schillerNNCloudAmbiguousSureSeparationValue &&
+                    nnOutput <= schillerNNCloudSureSnowSeparationValue) {
                 // this would be as 'CLOUD_SURE'...
                 cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, true);
                 cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, true);
             }
-            if (nnOutput[0] > schillerNNCloudSureSnowSeparationValue) {
+            if (nnOutput > schillerNNCloudSureSnowSeparationValue) {
                 // this would be as 'SNOW/ICE'...
                 cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, true);
             }
         }
 
         if (nnTargetTile != null) {
-            nnTargetTile.setSample(x, y, nnOutput[0]);
+            nnTargetTile.setSample(x, y, nnOutput);
         }
     }
 
-    private GeoPos getGeoPos(int x, int y) {
-        final GeoPos geoPos = new GeoPos();
-        final GeoCoding geoCoding = getSourceProduct().getSceneGeoCoding();
-        final PixelPos pixelPos = new PixelPos(x, y);
-        geoCoding.getGeoPos(pixelPos, geoPos);
-        return geoPos;
-    }
-
     private void initCloudFlag(Tile merisL1bFlagTile, Tile targetTile, float[] merisReflectances, int y, int x) {
         // for given instrument, compute boolean pixel properties and write to cloud flag band
         final boolean l1Invalid = merisL1bFlagTile.getSampleBit(x, y, IdepixMerisConstants.L1_F_INVALID);
@@ -13,6 +13,7 @@ import org.esa.snap.idepix.core.CloudShadowFronts;
 import org.esa.snap.idepix.core.IdepixConstants;
 import org.esa.snap.idepix.core.util.IdepixIO;
 import org.esa.snap.idepix.core.util.IdepixUtils;
+import org.esa.snap.idepix.core.util.TileSummary;
 
 import java.awt.*;
 import java.util.HashMap;
@@ -139,11 +140,9 @@ public class IdepixMerisPostProcessOp extends Operator {
         final Rectangle srcRectangle = rectCalculator.extend(targetRectangle);
 
         final Tile sourceFlagTile = getSourceTile(origCloudFlagBand, srcRectangle);
-        Tile szaTile = getSourceTile(szaTpg, srcRectangle);
-        Tile saaTile = getSourceTile(saaTpg, srcRectangle);
-        Tile altTile = getSourceTile(altTpg, targetRectangle);
-        Tile ctpTile =  (ctpBand != null) ? getSourceTile(ctpBand, srcRectangle) : null;
         Tile waterFractionTile = getSourceTile(waterFractionBand, srcRectangle);
+        // the coastline check is expensive, skip it for tiles without any coastline
+        final boolean checkCoastline = !TileSummary.isWithoutCoastline(waterFractionTile, srcRectangle);
 
         for (int y = srcRectangle.y; y < srcRectangle.y + srcRectangle.height; y++) {
             checkForCancellation();
@@ -153,7 +152,7 @@ public class IdepixMerisPostProcessOp extends Operator {
                     boolean isCloud = sourceFlagTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD);
                     combineFlags(x, y, sourceFlagTile, targetTile);
 
-                    if (refineClassificationNearCoastlines) {
+                    if (refineClassificationNearCoastlines && checkCoastline) {
                         if (isNearCoastline(x, y, waterFractionTile, srcRectangle)) {
                             targetTile.setSample(x, y, IdepixConstants.IDEPIX_COASTLINE, true);
                             // this causes problems for 'coastlines' over frozen inland lakes (OD 20200421)
@@ -172,7 +171,12 @@ public class IdepixMerisPostProcessOp extends Operator {
             }
         }
 
-        if (computeCloudShadow) {
+        // without any cloud, there is no shadow and the CTP does not need to be computed
+        if (computeCloudShadow && !TileSummary.isCloudFree(sourceFlagTile, srcRectangle)) {
+            Tile szaTile = getSourceTile(szaTpg, srcRectangle);
+            Tile saaTile = getSourceTile(saaTpg, srcRectangle);
+            Tile altTile = getSourceTile(altTpg, targetRectangle);
+            Tile ctpTile =  (ctpBand != null) ? getSourceTile(ctpBand, srcRectangle) : null;
             CloudShadowFronts cloudShadowFronts = new CloudShadowFronts(
                     geoCoding,
                     srcRectangle,
@@ -188,7 +192,7 @@ public class IdepixMerisPostProcessOp extends Operator {
                         is_cloud_current = targetTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD);
                     }
                     if (is_cloud_current) {
-                        return !isNearCoastline(x, y, waterFractionTile, srcRectangle);
+                        return !checkCoastline || !isNearCoastline(x, y, waterFractionTile, srcRectangle);
                     }
                     return false;
                 }
@@ -9,9 +9,7 @@ import eu.esa.opt.util.math.FractIndex;
 import eu.esa.opt.util.math.Interp;
 import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.FlagCoding;
-import org.esa.snap.core.datamodel.GeoCoding;
 import org.esa.snap.core.datamodel.GeoPos;
-import org.esa.snap.core.datamodel.PixelPos;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
 import org.esa.snap.core.gpf.Operator;
@@ -28,13 +26,16 @@ import org.esa.snap.dataio.envisat.EnvisatConstants;
 import org.esa.snap.idepix.core.IdepixConstants;
 import org.esa.snap.idepix.core.seaice.LakeSeaIceAuxdata;
 import org.esa.snap.idepix.core.seaice.LakeSeaIceClassification;
+import org.esa.snap.idepix.core.util.GeoLocationGrid;
+import org.esa.snap.idepix.core.util.GeoLocationGridCache;
 import org.esa.snap.idepix.core.util.IdepixIO;
 import org.esa.snap.idepix.core.util.IdepixUtils;
-import org.esa.snap.idepix.core.util.SchillerNeuralNetWrapper;
+import org.esa.snap.idepix.core.util.SchillerNeuralNet;
+import org.esa.snap.idepix.core.util.SchillerNeuralNetBatch;
+import org.esa.snap.idepix.core.util.SchillerNeuralNetCache;
+import org.esa.snap.idepix.core.util.TileSummary;
 
 import java.awt.Rectangle;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.Calendar;
 
 /**
@@ -93,7 +94,7 @@ public class IdepixMerisWaterClassificationOp extends Operator {
 
     private static final String MERIS_ALL_NET_NAME = "11x8x5x3_1409.7_all.net";
 
-    private ThreadLocal<SchillerNeuralNetWrapper> merisAllNeuralNet;
+    private ThreadLocal<SchillerNeuralNetBatch> merisAllNeuralNetBatch;
 
     private L2AuxData auxData;
 
@@ -103,6 +104,8 @@ public class IdepixMerisWaterClassificationOp extends Operator {
 
     private LakeSeaIceClassification lakeSeaIceClassification;
 
+    private GeoLocationGridCache geoLocationGridCache;
+
     @Override
     public void initialize() throws OperatorException {
         try {
@@ -120,14 +123,12 @@ public class IdepixMerisWaterClassificationOp extends Operator {
 
         rectExtender = new RectangleExtender(new Rectangle(l1bProduct.getSceneRasterWidth(),
                 l1bProduct.getSceneRasterHeight()), 1, 1);
+        geoLocationGridCache = new GeoLocationGridCache(l1bProduct, this);
     }
 
     private void readSchillerNets() {
-        try (InputStream isAll = getClass().getResourceAsStream(MERIS_ALL_NET_NAME)) {
-            merisAllNeuralNet = SchillerNeuralNetWrapper.create(isAll);
-        } catch (IOException e) {
-            throw new OperatorException("Cannot read Neural Nets: " + e.getMessage());
-        }
+        final SchillerNeuralNet merisAllNeuralNet = SchillerNeuralNetCache.get(getClass(), MERIS_ALL_NET_NAME);
+        merisAllNeuralNetBatch = ThreadLocal.withInitial(() -> new SchillerNeuralNetBatch(merisAllNeuralNet));
     }
 
     private void initLakeSeaIceClassification() {
@@ -156,6 +157,18 @@ public class IdepixMerisWaterClassificationOp extends Operator {
         try {
             final Rectangle sourceRectangle = rectExtender.extend(targetRectangle);
 
+            Tile l1FlagsTile = getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_L1B_FLAGS_DS_NAME),
+                    sourceRectangle);
+            if (TileSummary.isFlagSetEverywhere(l1FlagsTile, targetRectangle, 1 << IdepixMerisConstants.L1_F_INVALID)) {
+                // same result as the pixel loop below for L1 invalid pixels, without requesting the other sources
+                for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+                    for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                        targetTile.setSample(x, y, IdepixConstants.IDEPIX_INVALID, true);
+                    }
+                }
+                return;
+            }
+
             Tile[] rhoToaTiles = new Tile[EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS];
             for (int i = 0; i < EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS; i++) {
                 final int suffixStart = Rad2ReflConstants.MERIS_REFL_BAND_NAMES[i].indexOf("_");
@@ -164,8 +177,6 @@ public class IdepixMerisWaterClassificationOp extends Operator {
                 rhoToaTiles[i] = getSourceTile(rhoToaBand, sourceRectangle);
             }
 
-            Tile l1FlagsTile = getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_L1B_FLAGS_DS_NAME),
-                    sourceRectangle);
             Tile waterFractionTile = getSourceTile(landWaterBand, sourceRectangle);
 
             Tile szaTile = null;
@@ -187,26 +198,49 @@ public class IdepixMerisWaterClassificationOp extends Operator {
                 windVTile = getSourceTile(l1bProduct.getTiePointGrid("merid_wind"), sourceRectangle);
             }
 
+            // the grid is shared by the flag and NN output bands of the same tile
+            final GeoLocationGrid geoLocationGrid = geoLocationGridCache.getGrid(targetRectangle);
+            final GeoPos geoPos = new GeoPos();
+            final boolean[] isWaterPixel = new boolean[targetRectangle.width * targetRectangle.height];
+            int pixelIndex = 0;
+            for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+                for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++, pixelIndex++) {
+                    if (!l1FlagsTile.getSampleBit(x, y, IdepixMerisConstants.L1_F_INVALID)) {
+                        final int waterFraction = waterFractionTile.getSampleInt(x, y);
+                        geoPos.setLocation(geoLocationGrid.getLat(x, y), geoLocationGrid.getLon(x, y));
+                        isWaterPixel[pixelIndex] = !IdepixMerisUtils.isLandPixel(x, y, geoPos, l1FlagsTile,
+                                                                                 waterFraction);
+                    }
+                }
+            }
+            // the outputs of the valid water pixels, in the order of the pixels
+            final SchillerNeuralNetBatch nnBatch = merisAllNeuralNetBatch.get();
+            final double[] nnOutputs = computeMerisNNOutputs(nnBatch, rhoToaTiles, targetRectangle, isWaterPixel);
+            final int numNNOutputs = nnBatch.getNeuralNet().getNumOutputs();
+
+            int waterPixelIndex = 0;
+            pixelIndex = 0;
             for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
                 checkForCancellation();
-                for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++, pixelIndex++) {
                     if (!l1FlagsTile.getSampleBit(x, y, IdepixMerisConstants.L1_F_INVALID)) {
                         final int waterFraction = waterFractionTile.getSampleInt(x, y);
+                        geoPos.setLocation(geoLocationGrid.getLat(x, y), geoLocationGrid.getLon(x, y));
 
-                        if (IdepixMerisUtils.isLandPixel(x, y, getGeoPos(x, y), l1FlagsTile, waterFraction)) {
+                        if (!isWaterPixel[pixelIndex]) {
                             if (band == cloudFlagBand) {
                                 targetTile.setSample(x, y, IdepixMerisConstants.L1_F_LAND, true);
                             } else {
                                 targetTile.setSample(x, y, Float.NaN);
                             }
                         } else {
+                            final double nnOutput = nnOutputs[waterPixelIndex++ * numNNOutputs];
                             if (band == cloudFlagBand) {
-                                classifyCloud(x, y, rhoToaTiles, windUTile, windVTile, szaTile, vzaTile, saaTile, vaaTile,
-                                        targetTile, waterFraction);
+                                classifyCloud(x, y, geoPos, rhoToaTiles, windUTile, windVTile, szaTile, vzaTile, saaTile,
+                                        vaaTile, targetTile, waterFraction, nnOutput);
                             }
                             if (outputSchillerNNValue && band == nnOutputBand) {
-                                final double[] nnOutput = getMerisNNOutput(x, y, rhoToaTiles);
-                                targetTile.setSample(x, y, nnOutput[0]);
+                                targetTile.setSample(x, y, nnOutput);
                             }
                         }
                     } else {
@@ -219,11 +253,10 @@ public class IdepixMerisWaterClassificationOp extends Operator {
         }
     }
 
-    private void classifyCloud(int x, int y, Tile[] rhoToaTiles, Tile winduTile, Tile windvTile,
+    private void classifyCloud(int x, int y, GeoPos geoPos, Tile[] rhoToaTiles, Tile winduTile, Tile windvTile,
                                Tile szaTile, Tile vzaTile, Tile saaTile, Tile vaaTile, Tile targetTile,
-                               int waterFraction) {
+                               int waterFraction, double nnOutput) {
 
-        GeoPos geoPos = getGeoPos(x, y);
         final boolean isCoastline = IdepixMerisUtils.isCoastlinePixel(geoPos, waterFraction);
         targetTile.setSample(x, y, IdepixConstants.IDEPIX_COASTLINE, isCoastline);
 
@@ -236,20 +269,19 @@ public class IdepixMerisWaterClassificationOp extends Operator {
 
         boolean isCloudSure = false;
 
-        double[] nnOutput = getMerisNNOutput(x, y, rhoToaTiles);
         if (!targetTile.getSampleBit(x, y, IdepixConstants.IDEPIX_INVALID)) {
             targetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, false);
             targetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, false);
             targetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, false);
             targetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, false);
-            if (nnOutput[0] > schillerNNCloudAmbiguousLowerBoundaryValue &&
-                    nnOutput[0] <= schillerNNCloudAmbiguousSureSeparationValue) {
+            if (nnOutput > schillerNNCloudAmbiguousLowerBoundaryValue &&
+                    nnOutput <= schillerNNCloudAmbiguousSureSeparationValue) {
                 // this would be as 'CLOUD_AMBIGUOUS'...
                 targetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, true);
                 targetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, true);
             }
             // check for snow_ice separation below if needed, first set all to cloud
-            isCloudSure = nnOutput[0] > schillerNNCloudAmbiguousSureSeparationValue;
+            isCloudSure = nnOutput > schillerNNCloudAmbiguousSureSeparationValue;
             if (isCloudSure) {
                 // this would be as 'CLOUD_SURE'...
                 targetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, true);
@@ -257,7 +289,7 @@ public class IdepixMerisWaterClassificationOp extends Operator {
             }
 
             if (ignoreSeaIceClimatology || classifiedAsLakeSeaIce) {
-                if (nnOutput[0] > schillerNNCloudSureSnowSeparationValue) {
+                if (nnOutput > schillerNNCloudSureSnowSeparationValue) {
                     // this would be as 'SNOW/ICE'...
                     targetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, true);
                     targetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, false);
@@ -269,16 +301,24 @@ public class IdepixMerisWaterClassificationOp extends Operator {
         targetTile.setSample(x, y, IdepixMerisConstants.IDEPIX_GLINT_RISK, is_glint_risk && !isCloudSure);
     }
 
-    private double[] getMerisNNOutput(int x, int y, Tile[] rhoToaTiles) {
-        return getMerisNNOutputImpl(x, y, rhoToaTiles, merisAllNeuralNet.get());
-    }
-
-    private double[] getMerisNNOutputImpl(int x, int y, Tile[] rhoToaTiles, SchillerNeuralNetWrapper nnWrapper) {
-        double[] nnInput = nnWrapper.getInputVector();
-        for (int i = 0; i < nnInput.length; i++) {
-            nnInput[i] = Math.sqrt(rhoToaTiles[i].getSampleFloat(x, y));
+    // evaluates the neural net at once for the valid water pixels of the tile
+    private static double[] computeMerisNNOutputs(SchillerNeuralNetBatch nnBatch, Tile[] rhoToaTiles,
+                                                  Rectangle rectangle, boolean[] isWaterPixel) {
+        final int numNNInputs = nnBatch.getNeuralNet().getNumInputs();
+        final double[] nnInputs = nnBatch.getInputs(isWaterPixel.length);
+        int pixelIndex = 0;
+        int waterPixelIndex = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, pixelIndex++) {
+                if (isWaterPixel[pixelIndex]) {
+                    final int inputOffset = waterPixelIndex++ * numNNInputs;
+                    for (int i = 0; i < numNNInputs; i++) {
+                        nnInputs[inputOffset + i] = Math.sqrt(rhoToaTiles[i].getSampleFloat(x, y));
+                    }
+                }
+            }
         }
-        return nnWrapper.getNeuralNet().calc(nnInput);
+        return nnBatch.calc(waterPixelIndex);
     }
 
     private boolean isGlintRisk(int x, int y, Tile[] rhoToaTiles, Tile winduTile, Tile windvTile,
@@ -327,14 +367,6 @@ public class IdepixMerisWaterClassificationOp extends Operator {
         return monthlyMaskValue >= SEA_ICE_CLIM_THRESHOLD;
     }
 
-    private GeoPos getGeoPos(int x, int y) {
-        final GeoPos geoPos = new GeoPos();
-        final GeoCoding geoCoding = getSourceProduct().getSceneGeoCoding();
-        final PixelPos pixelPos = new PixelPos(x, y);
-        geoCoding.getGeoPos(pixelPos, geoPos);
-        return geoPos;
-    }
-
     public static class Spi extends OperatorSpi {
         public Spi() {
             super(IdepixMerisWaterClassificationOp.class);
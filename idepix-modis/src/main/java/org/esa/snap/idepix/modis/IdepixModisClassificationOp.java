@@ -9,10 +9,9 @@ import org.esa.snap.core.gpf.annotations.SourceProduct;
 import org.esa.snap.core.gpf.pointop.*;
 
 import org.esa.snap.idepix.core.IdepixConstants;
+import org.esa.snap.idepix.core.util.GeoLocationGridCache;
 import org.esa.snap.idepix.core.util.SchillerNeuralNetWrapper;
 
-import java.io.IOException;
-import java.io.InputStream;
 
 /**
  * MODIS pixel classification operator.
@@ -112,6 +111,8 @@ public class IdepixModisClassificationOp extends PixelOperator {
 
     private ThreadLocal<SchillerNeuralNetWrapper> modisAllNeuralNet;
 
+    private GeoLocationGridCache geoLocationGridCache;
+
     @Override
     public Product getSourceProduct() {
         // this is the source product for the ProductConfigurer
@@ -121,6 +122,7 @@ public class IdepixModisClassificationOp extends PixelOperator {
     @Override
     protected void prepareInputs() throws OperatorException {
         readSchillerNets();
+        geoLocationGridCache = new GeoLocationGridCache(reflProduct, this);
     }
 
     @Override
@@ -189,13 +191,7 @@ public class IdepixModisClassificationOp extends PixelOperator {
     }
 
     private void readSchillerNets() {
-        try (
-                InputStream isMA = getClass().getResourceAsStream(MODIS_ALL_NET_NAME)
-        ) {
-            modisAllNeuralNet = SchillerNeuralNetWrapper.create(isMA);
-        } catch (IOException e) {
-            throw new OperatorException("Cannot read Schiller neural nets: " + e.getMessage());
-        }
+        modisAllNeuralNet = SchillerNeuralNetWrapper.create(getClass(), MODIS_ALL_NET_NAME);
     }
 
     private void setClassifFlag(WritableSample[] targetSamples, IdepixModisAlgorithm algorithm) {
@@ -217,7 +213,7 @@ public class IdepixModisClassificationOp extends PixelOperator {
         // we need a check like this as there seem to be scans in MOD021KM with missing lat/lons.
         // e.g. MOD021KM.A2011336.1310.061.2017328034132.hdf
         // OD, 20181009
-        if (!(Math.abs(getGeoPos(x, y).lat) <= 90f && Math.abs(getGeoPos(x, y).lon) <= 180f)) {
+        if (!(Math.abs(geoLocationGridCache.getLat(x, y)) <= 90f && Math.abs(geoLocationGridCache.getLon(x, y)) <= 180f)) {
             throw new OperatorException("Latitude and/or longitude TPGs seem to have missing/corrupt values - cannot proceed.");
         }
 
@@ -233,7 +229,7 @@ public class IdepixModisClassificationOp extends PixelOperator {
         }
         modisAlgorithm.setRefl(reflectance);
         // the water mask ends at 59 Degree south, stop earlier to avoid artefacts
-        if (getGeoPos(x, y).lat > -58f) {
+        if (geoLocationGridCache.getLat(x, y) > -58f) {
             srtmWaterFraction =
                     sourceSamples[IdepixModisConstants.MODIS_SRC_RAD_OFFSET + IdepixModisConstants.MODIS_L1B_NUM_SPECTRAL_BANDS + 1].getFloat();
         }
@@ -263,7 +259,8 @@ public class IdepixModisClassificationOp extends PixelOperator {
         modisAlgorithm.setNnCloudAmbiguousSureSeparationValue(nnCloudAmbiguousSureSeparationValue);
         modisAlgorithm.setNnCloudSureSnowSeparationValue(nnCloudSureSnowSeparationValue);
 
-        double[] modisNeuralNetInput = modisAllNeuralNet.get().getInputVector();
+        final SchillerNeuralNetWrapper modisNeuralNetWrapper = modisAllNeuralNet.get();
+        double[] modisNeuralNetInput = modisNeuralNetWrapper.getInputVector();
         modisNeuralNetInput[0] = Math.sqrt(sourceSamples[0].getFloat());    // EV_250_Aggr1km_RefSB.1 (645nm)
         modisNeuralNetInput[1] = Math.sqrt(sourceSamples[2].getFloat());    // EV_250_Aggr1km_RefSB.3 (469nm)
         modisNeuralNetInput[2] = Math.sqrt(sourceSamples[3].getFloat());    // EV_500_Aggr1km_RefSB.4 (555nm)
@@ -279,7 +276,7 @@ public class IdepixModisClassificationOp extends PixelOperator {
         final float emissive32Rad = sourceSamples[IdepixModisConstants.MODIS_SRC_RAD_OFFSET + 11].getFloat();
         modisNeuralNetInput[9] = Math.sqrt(emissive32Rad);                  // EV_1KM_Emissive.32   (12020nm)
 
-        neuralNetOutput = modisAllNeuralNet.get().getNeuralNet().calc(modisNeuralNetInput);
+        neuralNetOutput = modisNeuralNetWrapper.calc(modisNeuralNetInput);
 
         modisAlgorithm.setNnOutput(neuralNetOutput);
         targetSamples[1].set(neuralNetOutput[0]);
@@ -290,15 +287,6 @@ public class IdepixModisClassificationOp extends PixelOperator {
         return modisAlgorithm;
     }
 
-    private GeoPos getGeoPos(int x, int y) {
-        final GeoPos geoPos = new GeoPos();
-        final GeoCoding geoCoding = reflProduct.getSceneGeoCoding();
-        final PixelPos pixelPos = new PixelPos(x, y);
-        geoCoding.getGeoPos(pixelPos, geoPos);
-        return geoPos;
-    }
-
-
     /**
      * The Service Provider Interface (SPI) for the operator.
      * It provides operator meta-data and is a factory for new operator instances.
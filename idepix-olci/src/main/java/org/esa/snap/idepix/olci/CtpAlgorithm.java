@@ -0,0 +1,213 @@
+package org.esa.snap.idepix.olci;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.gpf.Operator;
+import org.esa.snap.core.gpf.OperatorException;
+import org.esa.snap.core.gpf.Tile;
+import org.esa.snap.core.util.math.MathUtils;
+import org.esa.snap.idepix.core.IdepixConstants;
+
+import javax.media.jai.JAI;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The CTP retrieval for the pixels of a rectangle, as done by {@link CtpOp}. It is shared with the fused mode
+ * of {@link IdepixOlciClassificationOp}, which computes the CTP in the same tile computation as the
+ * classification.
+ */
+class CtpAlgorithm {
+
+    private static final int NUM_NN_INPUTS = 7;
+
+    private final RasterDataNode szaBand;
+    private final RasterDataNode ozaBand;
+    private final RasterDataNode saaBand;
+    private final RasterDataNode oaaBand;
+    private final RasterDataNode rad12Band;
+    private final RasterDataNode solarFlux12Band;
+    private final RasterDataNode tra13Band;
+    private final RasterDataNode tra14Band;
+    private final RasterDataNode tra15Band;
+    private final RasterDataNode l1FlagsBand;
+
+    private final NNCalculator nnCalculator;
+
+    // input buffer of the neural net per computing thread, reused for all tiles
+    private final ThreadLocal<float[]> nnInputBuffer = new ThreadLocal<>();
+
+    /**
+     * @param l1bProduct    - the OLCI L1b product
+     * @param o2CorrProduct - the O2 harmonisation product providing the transmissions of bands 13 to 15
+     * @param nnCalculator  - the CTP neural net, see {@link #createNNCalculator}
+     */
+    CtpAlgorithm(Product l1bProduct, Product o2CorrProduct, NNCalculator nnCalculator) {
+        szaBand = l1bProduct.getTiePointGrid("SZA");
+        ozaBand = l1bProduct.getTiePointGrid("OZA");
+        saaBand = l1bProduct.getTiePointGrid("SAA");
+        oaaBand = l1bProduct.getTiePointGrid("OAA");
+
+        rad12Band = l1bProduct.getBand("Oa12_radiance");
+        solarFlux12Band = l1bProduct.getBand("solar_flux_band_12");
+        l1FlagsBand = l1bProduct.getRasterDataNode("quality_flags");
+
+        tra13Band = o2CorrProduct.getBand("trans_13");
+        tra14Band = o2CorrProduct.getBand("trans_14");
+        tra15Band = o2CorrProduct.getBand("trans_15");
+
+        this.nnCalculator = nnCalculator;
+    }
+
+    /**
+     * Creates the CTP neural net.
+     *
+     * @param alternativeCtpNNDir - the directory of an alternative neural net, or null for the default one
+     * @param evaluateNNInJava    - true to evaluate the neural net in Java instead of the TensorFlow runtime
+     * @param nnSessionPoolSize   - the number of TensorFlow sessions, 0 for the parallelism of the tile computation
+     * @return the neural net, which must be disposed by the caller
+     */
+    static NNCalculator createNNCalculator(String alternativeCtpNNDir, boolean evaluateNNInJava,
+                                           int nnSessionPoolSize) {
+        String auxdataPath;
+        try {
+            auxdataPath = IdepixOlciUtils.installAuxdataNNCtp();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new OperatorException("Cannot install CTP NN auxdata:" + e.getMessage());
+        }
+
+        String modelDir = auxdataPath + File.separator + CtpOp.DEFAULT_TENSORFLOW_NN_DIR_NAME;
+        if (alternativeCtpNNDir != null && !alternativeCtpNNDir.isEmpty()) {
+            final File alternativeNNDir = new File(alternativeCtpNNDir);
+            if (alternativeNNDir.isDirectory()) {
+                modelDir = alternativeCtpNNDir;
+            }
+        }
+
+        if (evaluateNNInJava) {
+            try {
+                return DenseNeuralNet.create(modelDir);
+            } catch (IOException | IllegalStateException e) {
+                throw new OperatorException("Cannot read CTP NN from " + modelDir + ": " + e.getMessage(), e);
+            }
+        } else {
+            final int poolSize = nnSessionPoolSize > 0 ?
+                    nnSessionPoolSize : JAI.getDefaultInstance().getTileScheduler().getParallelism();
+            return new TensorflowNNCalculator(modelDir, "none", poolSize);
+        }
+    }
+
+    /**
+     * Adds the band of the CTP.
+     *
+     * @param targetProduct - the product the band is added to
+     * @return the band
+     */
+    static Band addCtpBand(Product targetProduct) {
+        final Band ctpBand = targetProduct.addBand(IdepixConstants.CTP_OUTPUT_BAND_NAME, ProductData.TYPE_FLOAT32);
+        ctpBand.setNoDataValue(Float.NaN);
+        ctpBand.setNoDataValueUsed(true);
+        ctpBand.setUnit("hPa");
+        ctpBand.setDescription("Cloud Top Pressure");
+        return ctpBand;
+    }
+
+    /**
+     * Computes the CTP of all pixels of a rectangle.
+     *
+     * @param operator          - the operator providing the source tiles
+     * @param rectangle         - the rectangle
+     * @param cancellationCheck - the cancellation check of the operator, called once per row
+     * @return the CTP (hPa), indexed like the pixels of the rectangle, NaN for invalid pixels
+     */
+    float[] computeCtp(Operator operator, Rectangle rectangle, Runnable cancellationCheck) {
+        final Tile szaTile = operator.getSourceTile(szaBand, rectangle);
+        final Tile ozaTile = operator.getSourceTile(ozaBand, rectangle);
+        final Tile saaTile = operator.getSourceTile(saaBand, rectangle);
+        final Tile oaaTile = operator.getSourceTile(oaaBand, rectangle);
+        final Tile rad12Tile = operator.getSourceTile(rad12Band, rectangle);
+        final Tile solarFlux12Tile = operator.getSourceTile(solarFlux12Band, rectangle);
+        final Tile tra13Tile = operator.getSourceTile(tra13Band, rectangle);
+        final Tile tra14Tile = operator.getSourceTile(tra14Band, rectangle);
+        final Tile tra15Tile = operator.getSourceTile(tra15Band, rectangle);
+
+        final Tile l1FlagsTile = operator.getSourceTile(l1FlagsBand, rectangle);
+
+        // pack the inputs of the valid pixels only, invalid pixels are not passed to the neural net
+        final float[] nnInputs = getNNInputBuffer(rectangle.width * rectangle.height * NUM_NN_INPUTS);
+        int numValidPixels = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            cancellationCheck.run();
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+
+                final boolean pixelIsValid = !l1FlagsTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_INVALID);
+                if (pixelIsValid) {
+                    // Preparing input data...
+                    final float sza = szaTile.getSampleFloat(x, y);
+                    final float cosSza = (float) Math.cos(sza * MathUtils.DTOR);
+                    final float oza = ozaTile.getSampleFloat(x, y);
+                    final float cosOza = (float) Math.cos(oza * MathUtils.DTOR);
+                    final float sinOza = (float) Math.sin(oza * MathUtils.DTOR);
+                    final float saa = saaTile.getSampleFloat(x, y);
+                    final float oaa = oaaTile.getSampleFloat(x, y);
+                    final float aziDiff = (float) ((saa - oaa) * MathUtils.DTOR * sinOza);
+
+                    final float rad12 = rad12Tile.getSampleFloat(x, y);
+                    final float solarFlux12 = solarFlux12Tile.getSampleFloat(x, y);
+                    final float refl12 = rad12/solarFlux12;
+                    final float tra13 = tra13Tile.getSampleFloat(x, y);
+                    final float mLogTra13 = (float) -Math.log(tra13);
+                    final float tra14 = tra14Tile.getSampleFloat(x, y);
+                    final float mLogTra14 = (float) -Math.log(tra14);
+                    final float tra15 = tra15Tile.getSampleFloat(x, y);
+                    final float mLogTra15 = (float) -Math.log(tra15);
+
+                    final int offset = numValidPixels * NUM_NN_INPUTS;
+                    nnInputs[offset] = cosSza;
+                    nnInputs[offset + 1] = cosOza;
+                    nnInputs[offset + 2] = aziDiff;
+                    nnInputs[offset + 3] = refl12;
+                    nnInputs[offset + 4] = mLogTra13;
+                    nnInputs[offset + 5] = mLogTra14;
+                    nnInputs[offset + 6] = mLogTra15;
+                    numValidPixels++;
+                }
+            }
+        }
+
+        // call the neural net once with the valid pixels of the tile
+        final float[] nnResult = numValidPixels > 0 ?
+                nnCalculator.calculate(nnInputs, numValidPixels) : new float[0];
+        final int numNNOutputs = numValidPixels > 0 ? nnResult.length / numValidPixels : 0;
+
+        // convert output of the neural net into ctp and scatter it back in the same pixel order
+        final float[] ctp = new float[rectangle.width * rectangle.height];
+        int pixelIndex = 0;
+        int validPixelIndex = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, pixelIndex++) {
+                final boolean pixelIsValid = !l1FlagsTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_INVALID);
+                if (pixelIsValid) {
+                    ctp[pixelIndex] = TensorflowNNCalculator.convertNNResultToCtp(nnResult[validPixelIndex * numNNOutputs]);
+                    validPixelIndex++;
+                } else {
+                    ctp[pixelIndex] = Float.NaN;
+                }
+            }
+        }
+        return ctp;
+    }
+
+    private float[] getNNInputBuffer(int size) {
+        float[] buffer = nnInputBuffer.get();
+        if (buffer == null || buffer.length < size) {
+            buffer = new float[size];
+            nnInputBuffer.set(buffer);
+        }
+        return buffer;
+    }
+}
@@ -3,8 +3,6 @@ package org.esa.snap.idepix.olci;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.Product;
-import org.esa.snap.core.datamodel.ProductData;
-import org.esa.snap.core.datamodel.TiePointGrid;
 import org.esa.snap.core.gpf.GPF;
 import org.esa.snap.core.gpf.OperatorException;
 import org.esa.snap.core.gpf.OperatorSpi;
@@ -14,22 +12,19 @@ import org.esa.snap.core.gpf.annotations.Parameter;
 import org.esa.snap.core.gpf.annotations.SourceProduct;
 import org.esa.snap.core.gpf.annotations.TargetProduct;
 import org.esa.snap.core.util.ProductUtils;
-import org.esa.snap.core.util.math.MathUtils;
 
 import org.esa.snap.idepix.core.AlgorithmSelector;
 import org.esa.snap.idepix.core.IdepixConstants;
 import org.esa.snap.idepix.core.operators.BasisOp;
 import org.esa.snap.idepix.core.util.IdepixIO;
+import org.esa.snap.idepix.core.util.OperatorTiming;
 
-import java.awt.*;
-import java.io.File;
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  *
- * CTP for OLCI based on Tensorflow neural nets.
+ * CTP for OLCI based on Tensorflow neural nets, which are evaluated with the TensorFlow runtime or in Java.
  *
  * @author olafd
  */
@@ -63,20 +58,22 @@ public class CtpOp extends BasisOp {
             label = "Path to alternative NN to use")
     private String alternativeCtpNNDir;
 
-    static final String DEFAULT_TENSORFLOW_NN_DIR_NAME = "nn_training_20190131_I7x30x30x30x10x2xO1";
+    @Parameter(defaultValue = "false",
+            description = "Evaluate the neuronal net in Java instead of the TensorFlow runtime. The results agree " +
+                    "within float precision.",
+            label = "Evaluate NN in Java")
+    private boolean evaluateNNInJava;
 
-    private TiePointGrid szaBand;
-    private TiePointGrid ozaBand;
-    private TiePointGrid saaBand;
-    private TiePointGrid oaaBand;
+    @Parameter(defaultValue = "0",
+            description = "Number of TensorFlow sessions which evaluate the neuronal net in parallel. " +
+                    "If 0, the parallelism of the tile computation is used.",
+            label = "Number of TensorFlow sessions")
+    private int nnSessionPoolSize;
 
-    private Band rad12Band;
-    private Band solarFlux12Band;
-    private Band tra13Band;
-    private Band tra14Band;
-    private Band tra15Band;
+    static final String DEFAULT_TENSORFLOW_NN_DIR_NAME = "nn_training_20190131_I7x30x30x30x10x2xO1";
 
-    private TensorflowNNCalculator nnCalculator;
+    private NNCalculator nnCalculator;
+    private CtpAlgorithm ctpAlgorithm;
 
     @Override
     public void initialize() throws OperatorException {
@@ -86,23 +83,7 @@ public class CtpOp extends BasisOp {
             throw new OperatorException(IdepixConstants.INPUT_INCONSISTENCY_ERROR_MESSAGE);
         }
 
-        String auxdataPath;
-        try {
-            auxdataPath = IdepixOlciUtils.installAuxdataNNCtp();
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new OperatorException("Cannot install CTP NN auxdata:" + e.getMessage());
-        }
-
-        String modelDir = auxdataPath + File.separator + CtpOp.DEFAULT_TENSORFLOW_NN_DIR_NAME;
-        if (alternativeCtpNNDir != null && !alternativeCtpNNDir.isEmpty()) {
-            final File alternativeNNDir = new File(alternativeCtpNNDir);
-            if (alternativeNNDir.isDirectory()) {
-                modelDir = alternativeCtpNNDir;
-            }
-        }
-
-        nnCalculator = new TensorflowNNCalculator(modelDir, "none");
+        nnCalculator = CtpAlgorithm.createNNCalculator(alternativeCtpNNDir, evaluateNNInJava, nnSessionPoolSize);
 
         targetProduct = createTargetProduct();
     }
@@ -110,7 +91,7 @@ public class CtpOp extends BasisOp {
     @Override
     public void dispose() {
         super.dispose();
-        nnCalculator.getModel().close();
+        nnCalculator.dispose();
     }
 
     @Override
@@ -119,17 +100,7 @@ public class CtpOp extends BasisOp {
             pm.beginTask("Executing CTP processing...", 0);
             preProcess();
 
-            szaBand = sourceProduct.getTiePointGrid("SZA");
-            ozaBand = sourceProduct.getTiePointGrid("OZA");
-            saaBand = sourceProduct.getTiePointGrid("SAA");
-            oaaBand = sourceProduct.getTiePointGrid("OAA");
-
-            rad12Band = sourceProduct.getBand("Oa12_radiance");
-            solarFlux12Band = sourceProduct.getBand("solar_flux_band_12");
-
-            tra13Band = o2CorrProduct.getBand("trans_13");
-            tra14Band = o2CorrProduct.getBand("trans_14");
-            tra15Band = o2CorrProduct.getBand("trans_15");
+            ctpAlgorithm = new CtpAlgorithm(sourceProduct, o2CorrProduct, nnCalculator);
         } catch (Exception e) {
             throw new OperatorException(e.getMessage(), e);
         } finally {
@@ -139,71 +110,11 @@ public class CtpOp extends BasisOp {
 
     @Override
     public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
-        final Rectangle targetRectangle = targetTile.getRectangle();
-        final String targetBandName = targetBand.getName();
-
-        final Tile szaTile = getSourceTile(szaBand, targetRectangle);
-        final Tile ozaTile = getSourceTile(ozaBand, targetRectangle);
-        final Tile saaTile = getSourceTile(saaBand, targetRectangle);
-        final Tile oaaTile = getSourceTile(oaaBand, targetRectangle);
-        final Tile rad12Tile = getSourceTile(rad12Band, targetRectangle);
-        final Tile solarFlux12Tile = getSourceTile(solarFlux12Band, targetRectangle);
-        final Tile tra13Tile = getSourceTile(tra13Band, targetRectangle);
-        final Tile tra14Tile = getSourceTile(tra14Band, targetRectangle);
-        final Tile tra15Tile = getSourceTile(tra15Band, targetRectangle);
-
-        final Tile l1FlagsTile = getSourceTile(sourceProduct.getRasterDataNode("quality_flags"), targetRectangle);
-
-        float[][] nnInputs = new float[targetRectangle.height * targetRectangle.width][];
-        float[] dummyNnInput = new float[7];
-        for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
-            checkForCancellation();
-            for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
-
-                final boolean pixelIsValid = !l1FlagsTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_INVALID);
-                if (pixelIsValid) {
-                    // Preparing input data...
-                    final float sza = szaTile.getSampleFloat(x, y);
-                    final float cosSza = (float) Math.cos(sza * MathUtils.DTOR);
-                    final float oza = ozaTile.getSampleFloat(x, y);
-                    final float cosOza = (float) Math.cos(oza * MathUtils.DTOR);
-                    final float sinOza = (float) Math.sin(oza * MathUtils.DTOR);
-                    final float saa = saaTile.getSampleFloat(x, y);
-                    final float oaa = oaaTile.getSampleFloat(x, y);
-                    final float aziDiff = (float) ((saa - oaa) * MathUtils.DTOR * sinOza);
-
-                    final float rad12 = rad12Tile.getSampleFloat(x, y);
-                    final float solarFlux12 = solarFlux12Tile.getSampleFloat(x, y);
-                    final float refl12 = rad12/solarFlux12;
-                    final float tra13 = tra13Tile.getSampleFloat(x, y);
-                    final float mLogTra13 = (float) -Math.log(tra13);
-                    final float tra14 = tra14Tile.getSampleFloat(x, y);
-                    final float mLogTra14 = (float) -Math.log(tra14);
-                    final float tra15 = tra15Tile.getSampleFloat(x, y);
-                    final float mLogTra15 = (float) -Math.log(tra15);
-
-                    float[] nnInput = new float[] {cosSza, cosOza, aziDiff, refl12, mLogTra13, mLogTra14, mLogTra15};
-                    nnInputs[(y-targetRectangle.y) * targetRectangle.width + (x-targetRectangle.x)] = nnInput;
-                } else {
-                    nnInputs[(y-targetRectangle.y) * targetRectangle.width + (x-targetRectangle.x)] = dummyNnInput;
-                }
-            }
-        }
-
-        // call tensorflow once with the complete tile stack
-        final float[][] nnResult = nnCalculator.calculate(nnInputs);
-
-        // convert output of tf into ctp and set value into target tile
-        for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
-            checkForCancellation();
-            for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
-                final boolean pixelIsValid = !l1FlagsTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_INVALID);
-                if (pixelIsValid) {
-                    targetTile.setSample(x, y, TensorflowNNCalculator.convertNNResultToCtp(nnResult[(y-targetRectangle.y) * targetRectangle.width + (x-targetRectangle.x)][0]));
-                } else {
-                    targetTile.setSample(x, y, Float.NaN);
-                }
-            }
+        final long startTime = OperatorTiming.start();
+        try {
+            targetTile.setSamples(ctpAlgorithm.computeCtp(this, targetTile.getRectangle(), this::checkForCancellation));
+        } finally {
+            OperatorTiming.stop(this, targetTile.getRectangle(), startTime);
         }
     }
 
@@ -233,11 +144,7 @@ public class CtpOp extends BasisOp {
         targetProduct.setStartTime(sourceProduct.getStartTime());
         targetProduct.setEndTime(sourceProduct.getEndTime());
 
-        final Band ctpBand = targetProduct.addBand("ctp", ProductData.TYPE_FLOAT32);
-        ctpBand.setNoDataValue(Float.NaN);
-        ctpBand.setNoDataValueUsed(true);
-        ctpBand.setUnit("hPa");
-        ctpBand.setDescription("Cloud Top Pressure");
+        CtpAlgorithm.addCtpBand(targetProduct);
 
         return targetProduct;
     }
@@ -0,0 +1,516 @@
+package org.esa.snap.idepix.olci;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Pure Java evaluation of a neural net of dense layers (Keras 'Dense' with 'relu', 'sigmoid', 'tanh' or linear
+ * activation), as used for the CTP retrieval. This is an alternative to the {@link TensorflowNNCalculator}
+ * which needs neither the native TensorFlow runtime nor a session per net.
+ * <p>
+ * The weights are read from the text protocol buffer ('*.pbtxt') of the TensorFlow model directory, which
+ * contains them as constants for the CTP nets. For models which store their weights as variables, the
+ * weights can be exported from the SavedModel with {@link DenseNeuralNetExporter} into the file
+ * {@value #EXPORT_FILE_NAME} of the model directory, which is then used instead.
+ * <p>
+ * Instances are immutable and can be used by several threads.
+ */
+class DenseNeuralNet implements NNCalculator {
+
+    static final String EXPORT_FILE_NAME = "dense_layers.txt";
+
+    private static final String EXPORT_HEADER = "# dense neural net";
+
+    enum Activation {
+        LINEAR, RELU, SIGMOID, TANH
+    }
+
+    private final Layer[] layers;
+
+    private DenseNeuralNet(List<Layer> layers) {
+        if (layers.isEmpty()) {
+            throw new IllegalStateException("Neural net does not contain any dense layer.");
+        }
+        this.layers = layers.toArray(new Layer[0]);
+    }
+
+    /**
+     * Reads the dense neural net of a TensorFlow model directory.
+     *
+     * @param modelDir - the path of the directory containing the TensorFlow model
+     *                 (e.g. 'nn_training_20190131_I7x30x30x30x10x2xO1')
+     * @return the neural net
+     * @throws IOException if the net cannot be read
+     */
+    static DenseNeuralNet create(String modelDir) throws IOException {
+        final File exportFile = new File(modelDir, EXPORT_FILE_NAME);
+        if (exportFile.isFile()) {
+            try (Reader reader = Files.newBufferedReader(exportFile.toPath(), StandardCharsets.UTF_8)) {
+                return read(reader);
+            }
+        }
+        final File pbtxtFile = getTextProtocolBufferFile(modelDir);
+        try (Reader reader = Files.newBufferedReader(pbtxtFile.toPath(), StandardCharsets.UTF_8)) {
+            return readTextProtocolBuffer(reader);
+        }
+    }
+
+    /**
+     * Reads a dense neural net from a TensorFlow text protocol buffer which contains the weights as constants.
+     *
+     * @param reader - the reader of the '*.pbtxt' file
+     * @return the neural net
+     * @throws IOException if the net cannot be read
+     */
+    static DenseNeuralNet readTextProtocolBuffer(Reader reader) throws IOException {
+        final Map<String, GraphNode> nodes = parseTextProtocolBuffer(reader);
+        return fromGraph(nodes, name -> {
+            final GraphNode node = nodes.get(name);
+            if (node.values == null) {
+                throw new IllegalStateException("No constant value for node '" + name + "' in text protocol " +
+                                                        "buffer, the net must be exported with " +
+                                                        DenseNeuralNetExporter.class.getSimpleName() + ".");
+            }
+            return node.values;
+        });
+    }
+
+    /**
+     * Reads a dense neural net as written by {@link #write(Writer)}.
+     *
+     * @param reader - the reader
+     * @return the neural net
+     * @throws IOException if the net cannot be read
+     */
+    static DenseNeuralNet read(Reader reader) throws IOException {
+        final BufferedReader bufferedReader = new BufferedReader(reader);
+        final List<Layer> layers = new ArrayList<>();
+        for (String line; (line = bufferedReader.readLine()) != null; ) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] layerHeader = line.split("\\s+");
+            if (layerHeader.length != 4 || !layerHeader[0].equals("layer")) {
+                throw new IOException("Invalid dense neural net, expected 'layer <inputs> <outputs> <activation>': "
+                                              + line);
+            }
+            final int numInputs = Integer.parseInt(layerHeader[1]);
+            final int numOutputs = Integer.parseInt(layerHeader[2]);
+            final Activation activation = Activation.valueOf(layerHeader[3].toUpperCase(Locale.ENGLISH));
+            final float[] bias = readValues(bufferedReader, "bias", numOutputs);
+            final float[] kernel = new float[numInputs * numOutputs];
+            for (int i = 0; i < numInputs; i++) {
+                System.arraycopy(readValues(bufferedReader, "kernel", numOutputs), 0, kernel, i * numOutputs,
+                                 numOutputs);
+            }
+            layers.add(new Layer(numInputs, numOutputs, kernel, bias, activation));
+        }
+        return new DenseNeuralNet(layers);
+    }
+
+    /**
+     * Writes the neural net in a plain text format which can be read with {@link #read(Reader)}. The values
+     * are written with full precision, so the net which is read is identical.
+     *
+     * @param writer - the writer
+     */
+    void write(Writer writer) {
+        final PrintWriter printWriter = new PrintWriter(writer);
+        printWriter.println(EXPORT_HEADER);
+        for (Layer layer : layers) {
+            printWriter.printf(Locale.ENGLISH, "layer %d %d %s%n", layer.numInputs, layer.numOutputs,
+                               layer.activation.name().toLowerCase(Locale.ENGLISH));
+            writeValues(printWriter, "bias", layer.bias, 0, layer.numOutputs);
+            for (int i = 0; i < layer.numInputs; i++) {
+                writeValues(printWriter, "kernel", layer.kernel, i * layer.numOutputs, layer.numOutputs);
+            }
+        }
+        printWriter.flush();
+    }
+
+    @Override
+    public int getNumInputs() {
+        return layers[0].numInputs;
+    }
+
+    int getNumOutputs() {
+        return layers[layers.length - 1].numOutputs;
+    }
+
+    /**
+     * Applies the neural net to the input vectors of all pixels of a tile.
+     *
+     * @param nnInput - image vector of band vectors, band vectors are input for neural net
+     * @return float[][] - image vector of output band vector
+     */
+    @Override
+    public float[][] calculate(float[][] nnInput) {
+        float[] in = new float[getMaxLayerSize()];
+        float[] out = new float[in.length];
+        final float[][] result = new float[nnInput.length][];
+        for (int p = 0; p < nnInput.length; p++) {
+            System.arraycopy(nnInput[p], 0, in, 0, getNumInputs());
+            for (Layer layer : layers) {
+                layer.apply(in, out);
+                final float[] tmp = in;
+                in = out;
+                out = tmp;
+            }
+            final float[] pixelResult = new float[getNumOutputs()];
+            System.arraycopy(in, 0, pixelResult, 0, pixelResult.length);
+            result[p] = pixelResult;
+        }
+        return result;
+    }
+
+    /**
+     * Applies the neural net to input vectors which are stored contiguously.
+     *
+     * @param nnInputs   - the input vectors, vector i starts at index i * {@link #getNumInputs()}
+     * @param numVectors - the number of input vectors, the array may be larger
+     * @return float[] - the output vectors, vector i starts at index i * {@link #getNumOutputs()}
+     */
+    @Override
+    public float[] calculate(float[] nnInputs, int numVectors) {
+        final int numInputs = getNumInputs();
+        final int numOutputs = getNumOutputs();
+        float[] in = new float[getMaxLayerSize()];
+        float[] out = new float[in.length];
+        final float[] result = new float[numVectors * numOutputs];
+        for (int v = 0; v < numVectors; v++) {
+            System.arraycopy(nnInputs, v * numInputs, in, 0, numInputs);
+            for (Layer layer : layers) {
+                layer.apply(in, out);
+                final float[] tmp = in;
+                in = out;
+                out = tmp;
+            }
+            System.arraycopy(in, 0, result, v * numOutputs, numOutputs);
+        }
+        return result;
+    }
+
+    @Override
+    public void dispose() {
+        // nothing to release
+    }
+
+    private int getMaxLayerSize() {
+        int maxLayerSize = getNumInputs();
+        for (Layer layer : layers) {
+            maxLayerSize = Math.max(maxLayerSize, layer.numOutputs);
+        }
+        return maxLayerSize;
+    }
+
+    // package local for the export
+    static DenseNeuralNet fromGraph(Map<String, GraphNode> nodes, Function<String, float[]> valueProvider) {
+        // the layers are collected along the chain from the input of the net, not in the order of the nodes
+        final List<Layer> layers = new ArrayList<>();
+        String layerInput = findInputPlaceholder(nodes).name;
+        for (GraphNode matMulNode; (matMulNode = findMatMul(nodes, layerInput)) != null; ) {
+            final GraphNode biasAddNode = findConsumer(nodes, matMulNode.name);
+            if (biasAddNode == null || !biasAddNode.op.equals("BiasAdd")) {
+                throw new IllegalStateException("Missing bias of dense layer '" + matMulNode.name + "'.");
+            }
+            final float[] kernel = valueProvider.apply(resolveIdentity(nodes, matMulNode.inputs.get(1)));
+            final float[] bias = valueProvider.apply(resolveIdentity(nodes, biasAddNode.inputs.get(1)));
+            final GraphNode activationNode = findConsumer(nodes, biasAddNode.name);
+            final Activation activation = getActivation(activationNode);
+            layers.add(new Layer(kernel.length / bias.length, bias.length, kernel, bias, activation));
+            layerInput = activation == Activation.LINEAR ? biasAddNode.name : activationNode.name;
+        }
+        return new DenseNeuralNet(layers);
+    }
+
+    // package local for the export
+    static File getTextProtocolBufferFile(String modelDir) throws IOException {
+        final String pbtxtFileName = new File(modelDir).getName() + ".pbtxt";
+        final File[] files = new File(modelDir).listFiles((dir, name) -> name.equalsIgnoreCase(pbtxtFileName));
+        if (files == null || files.length == 0) {
+            throw new IOException("Cannot access Tensorflow text protocol buffer file in specified folder: "
+                                          + modelDir);
+        }
+        return files[0];
+    }
+
+    // package local for the export
+    static Map<String, GraphNode> parseTextProtocolBuffer(Reader reader) throws IOException {
+        final BufferedReader bufferedReader = new BufferedReader(reader);
+        final Map<String, GraphNode> nodes = new LinkedHashMap<>();
+        GraphNode node = null;
+        List<Integer> dims = null;
+        List<Float> floatValues = null;
+        byte[] tensorContent = null;
+        for (String line; (line = bufferedReader.readLine()) != null; ) {
+            if (line.equals("node {")) {
+                node = new GraphNode();
+                dims = new ArrayList<>();
+                floatValues = new ArrayList<>();
+                tensorContent = null;
+                continue;
+            }
+            if (node == null) {
+                continue;
+            }
+            if (line.equals("}")) {
+                if (node.op.equals("Const")) {
+                    node.values = getConstantValues(dims, floatValues, tensorContent);
+                }
+                nodes.put(node.name, node);
+                node = null;
+                continue;
+            }
+            final String trimmedLine = line.trim();
+            if (line.startsWith("  name: ")) {
+                node.name = unquote(trimmedLine.substring("name: ".length()));
+            } else if (line.startsWith("  op: ")) {
+                node.op = unquote(trimmedLine.substring("op: ".length()));
+            } else if (line.startsWith("  input: ")) {
+                node.inputs.add(unquote(trimmedLine.substring("input: ".length())));
+            } else if (trimmedLine.startsWith("size: ")) {
+                dims.add(Integer.parseInt(trimmedLine.substring("size: ".length())));
+            } else if (trimmedLine.startsWith("float_val: ")) {
+                floatValues.add(Float.parseFloat(trimmedLine.substring("float_val: ".length())));
+            } else if (trimmedLine.startsWith("tensor_content: ")) {
+                tensorContent = unescape(unquote(trimmedLine.substring("tensor_content: ".length())));
+            }
+        }
+        return nodes;
+    }
+
+    // package local for testing
+    static byte[] unescape(String escaped) {
+        // C escaping as used by the protocol buffer text format
+        final byte[] bytes = new byte[escaped.length()];
+        int n = 0;
+        for (int i = 0; i < escaped.length(); i++) {
+            final char c = escaped.charAt(i);
+            if (c != '\\') {
+                bytes[n++] = (byte) c;
+                continue;
+            }
+            final char next = escaped.charAt(++i);
+            if (next >= '0' && next <= '7') {
+                int value = 0;
+                int numDigits = 0;
+                while (numDigits < 3 && i < escaped.length() &&
+                        escaped.charAt(i) >= '0' && escaped.charAt(i) <= '7') {
+                    value = value * 8 + (escaped.charAt(i++) - '0');
+                    numDigits++;
+                }
+                i--;
+                bytes[n++] = (byte) value;
+            } else if (next == 'x') {
+                int value = 0;
+                int numDigits = 0;
+                while (numDigits < 2 && i + 1 < escaped.length() && Character.digit(escaped.charAt(i + 1), 16) >= 0) {
+                    value = value * 16 + Character.digit(escaped.charAt(++i), 16);
+                    numDigits++;
+                }
+                bytes[n++] = (byte) value;
+            } else if (next == 'n') {
+                bytes[n++] = '\n';
+            } else if (next == 'r') {
+                bytes[n++] = '\r';
+            } else if (next == 't') {
+                bytes[n++] = '\t';
+            } else {
+                // \", \' and \\
+                bytes[n++] = (byte) next;
+            }
+        }
+        final byte[] result = new byte[n];
+        System.arraycopy(bytes, 0, result, 0, n);
+        return result;
+    }
+
+    private static float[] getConstantValues(List<Integer> dims, List<Float> floatValues, byte[] tensorContent) {
+        int numElements = 1;
+        for (int dim : dims) {
+            numElements *= dim;
+        }
+        if (tensorContent != null) {
+            final float[] values = new float[tensorContent.length / 4];
+            ByteBuffer.wrap(tensorContent).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(values);
+            return values;
+        }
+        if (floatValues.isEmpty()) {
+            return null;
+        }
+        // the last value is repeated up to the size of the tensor
+        final float[] values = new float[Math.max(numElements, floatValues.size())];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = floatValues.get(Math.min(i, floatValues.size() - 1));
+        }
+        return values;
+    }
+
+    private static String resolveIdentity(Map<String, GraphNode> nodes, String name) {
+        GraphNode node = nodes.get(name);
+        while (node != null && node.op.equals("Identity")) {
+            name = node.inputs.get(0);
+            node = nodes.get(name);
+        }
+        if (node == null) {
+            throw new IllegalStateException("Missing node '" + name + "' in neural net.");
+        }
+        return name;
+    }
+
+    private static GraphNode findInputPlaceholder(Map<String, GraphNode> nodes) {
+        for (GraphNode node : nodes.values()) {
+            if (node.op.equals("Placeholder") && findMatMul(nodes, node.name) != null) {
+                return node;
+            }
+        }
+        throw new IllegalStateException("Missing input placeholder of neural net.");
+    }
+
+    private static GraphNode findMatMul(Map<String, GraphNode> nodes, String inputName) {
+        for (GraphNode node : nodes.values()) {
+            if (node.op.equals("MatMul") && resolveIdentity(nodes, node.inputs.get(0)).equals(inputName)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static GraphNode findConsumer(Map<String, GraphNode> nodes, String name) {
+        for (GraphNode node : nodes.values()) {
+            if (!node.inputs.isEmpty() && node.inputs.get(0).equals(name)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static Activation getActivation(GraphNode consumer) {
+        if (consumer == null || consumer.op.equals("MatMul") || consumer.op.equals("Identity")) {
+            return Activation.LINEAR;
+        }
+        switch (consumer.op) {
+            case "Relu":
+                return Activation.RELU;
+            case "Sigmoid":
+                return Activation.SIGMOID;
+            case "Tanh":
+                return Activation.TANH;
+            default:
+                throw new IllegalStateException("Unsupported operation '" + consumer.op + "' in neural net.");
+        }
+    }
+
+    private static String unquote(String value) {
+        return value.substring(1, value.length() - 1);
+    }
+
+    private static float[] readValues(BufferedReader reader, String key, int numValues) throws IOException {
+        final String line = reader.readLine();
+        if (line == null || !line.startsWith(key + " ")) {
+            throw new IOException("Invalid dense neural net, expected '" + key + "' values: " + line);
+        }
+        final String[] tokens = line.trim().split("\\s+");
+        if (tokens.length != numValues + 1) {
+            throw new IOException("Invalid dense neural net, expected " + numValues + " '" + key + "' values.");
+        }
+        final float[] values = new float[numValues];
+        for (int i = 0; i < numValues; i++) {
+            values[i] = Float.parseFloat(tokens[i + 1]);
+        }
+        return values;
+    }
+
+    private static void writeValues(PrintWriter writer, String key, float[] values, int offset, int numValues) {
+        writer.print(key);
+        for (int i = offset; i < offset + numValues; i++) {
+            writer.print(' ');
+            writer.print(values[i]);
+        }
+        writer.println();
+    }
+
+    // package local for the export
+    static class GraphNode {
+
+        private String name;
+        private String op;
+        private final List<String> inputs = new ArrayList<>();
+        private float[] values;
+
+        String getName() {
+            return name;
+        }
+
+        String getOp() {
+            return op;
+        }
+    }
+
+    private static class Layer {
+
+        private final int numInputs;
+        private final int numOutputs;
+        // row major, numInputs x numOutputs as in TensorFlow
+        private final float[] kernel;
+        private final float[] bias;
+        private final Activation activation;
+
+        private Layer(int numInputs, int numOutputs, float[] kernel, float[] bias, Activation activation) {
+            if (kernel.length != numInputs * numOutputs) {
+                throw new IllegalStateException("Kernel size " + kernel.length + " does not match the layer size " +
+                                                        numInputs + "x" + numOutputs + ".");
+            }
+            this.numInputs = numInputs;
+            this.numOutputs = numOutputs;
+            this.kernel = kernel;
+            this.bias = bias;
+            this.activation = activation;
+        }
+
+        private void apply(float[] in, float[] out) {
+            System.arraycopy(bias, 0, out, 0, numOutputs);
+            for (int i = 0; i < numInputs; i++) {
+                final float input = in[i];
+                final int rowOffset = i * numOutputs;
+                for (int j = 0; j < numOutputs; j++) {
+                    out[j] += input * kernel[rowOffset + j];
+                }
+            }
+            switch (activation) {
+                case RELU:
+                    for (int j = 0; j < numOutputs; j++) {
+                        out[j] = Math.max(out[j], 0.0f);
+                    }
+                    break;
+                case SIGMOID:
+                    for (int j = 0; j < numOutputs; j++) {
+                        out[j] = (float) (1.0 / (1.0 + Math.exp(-out[j])));
+                    }
+                    break;
+                case TANH:
+                    for (int j = 0; j < numOutputs; j++) {
+                        out[j] = (float) Math.tanh(out[j]);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
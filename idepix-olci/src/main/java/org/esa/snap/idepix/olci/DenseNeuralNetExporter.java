@@ -0,0 +1,73 @@
+package org.esa.snap.idepix.olci;
+
+import org.tensorflow.SavedModelBundle;
+import org.tensorflow.Tensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Exports the dense layers of a TensorFlow neural net into the format read by {@link DenseNeuralNet}.
+ * The structure of the net is taken from the text protocol buffer ('*.pbtxt') of the model directory,
+ * the weights are taken from the session of the SavedModel, so this works for weights stored as constants
+ * as well as for weights stored as variables.
+ * <p>
+ * Usage: {@code DenseNeuralNetExporter <modelDir> [<outputFile>]}, the default output file is
+ * {@value DenseNeuralNet#EXPORT_FILE_NAME} in the model directory, where it is found by
+ * {@link DenseNeuralNet#create(String)}.
+ */
+public class DenseNeuralNetExporter {
+
+    private DenseNeuralNetExporter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: " + DenseNeuralNetExporter.class.getSimpleName() + " <modelDir> [<outputFile>]");
+            System.exit(1);
+        }
+        final String modelDir = args[0];
+        final Path outputFile = args.length == 2 ?
+                Paths.get(args[1]) : Paths.get(modelDir, DenseNeuralNet.EXPORT_FILE_NAME);
+        final DenseNeuralNet neuralNet = export(modelDir);
+        try (Writer writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+            neuralNet.write(writer);
+        }
+        System.out.println("Exported " + neuralNet.getNumInputs() + " -> " + neuralNet.getNumOutputs() +
+                                   " neural net to " + outputFile);
+    }
+
+    /**
+     * Reads the dense layers of a TensorFlow model with their weights taken from the SavedModel.
+     *
+     * @param modelDir - the path of the directory containing the TensorFlow model
+     * @return the neural net
+     * @throws IOException if the model cannot be read
+     */
+    static DenseNeuralNet export(String modelDir) throws IOException {
+        final File pbtxtFile = DenseNeuralNet.getTextProtocolBufferFile(modelDir);
+        final Map<String, DenseNeuralNet.GraphNode> nodes;
+        try (Reader reader = Files.newBufferedReader(pbtxtFile.toPath(), StandardCharsets.UTF_8)) {
+            nodes = DenseNeuralNet.parseTextProtocolBuffer(reader);
+        }
+        try (SavedModelBundle model = SavedModelBundle.load(modelDir, "serve")) {
+            return DenseNeuralNet.fromGraph(nodes, name -> fetchValues(model, name));
+        }
+    }
+
+    private static float[] fetchValues(SavedModelBundle model, String name) {
+        try (Tensor<?> tensor = model.session().runner().fetch(name).run().get(0)) {
+            final FloatBuffer buffer = FloatBuffer.allocate(tensor.numElements());
+            tensor.writeTo(buffer);
+            return buffer.array();
+        }
+    }
+}
@@ -1,14 +1,12 @@
 package org.esa.snap.idepix.olci;
 
-import com.bc.ceres.binding.ValueRange;
 import com.bc.ceres.core.ProgressMonitor;
 import eu.esa.opt.processor.rad2refl.Rad2ReflConstants;
 import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.FlagCoding;
-import org.esa.snap.core.datamodel.GeoCoding;
-import org.esa.snap.core.datamodel.GeoPos;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.RasterDataNode;
 import org.esa.snap.core.gpf.Operator;
 import org.esa.snap.core.gpf.OperatorException;
 import org.esa.snap.core.gpf.OperatorSpi;
@@ -18,34 +16,30 @@ import org.esa.snap.core.gpf.annotations.Parameter;
 import org.esa.snap.core.gpf.annotations.SourceProduct;
 import org.esa.snap.core.gpf.annotations.TargetProduct;
 import org.esa.snap.core.util.ProductUtils;
+import org.esa.snap.core.util.math.RsMathUtils;
 import org.esa.snap.idepix.core.IdepixConstants;
 import org.esa.snap.idepix.core.seaice.LakeSeaIceAuxdata;
 import org.esa.snap.idepix.core.seaice.LakeSeaIceClassification;
-import org.esa.snap.idepix.core.util.IdepixIO;
-import org.esa.snap.idepix.core.util.IdepixUtils;
+import org.esa.snap.idepix.core.util.GeoLocationGrid;
+import org.esa.snap.idepix.core.util.LandWaterMaskProvider;
+import org.esa.snap.idepix.core.util.OperatorTiming;
+import org.esa.snap.idepix.core.util.SchillerNeuralNetBatch;
 import org.esa.snap.idepix.core.util.SchillerNeuralNetWrapper;
-import org.esa.snap.watermask.operator.WatermaskClassifier;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.Polygon;
+import org.esa.snap.idepix.core.util.TileSummary;
 
 import java.awt.Rectangle;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Map;
 
 import static org.esa.snap.idepix.core.IdepixConstants.*;
-import static org.esa.snap.idepix.olci.IdepixOlciCloudNNInterpreter.NNThreshold;
 
 /**
  * OLCI pixel classification operator.
@@ -104,6 +98,29 @@ public class IdepixOlciClassificationOp extends Operator {
                     "Slower, but in general more precise.")
     private boolean useSrtmLandWaterMask;
 
+    @Parameter(defaultValue = "false",
+            description = "Compute the TOA reflectances from the L1b radiances within the classification, " +
+                    "instead of reading them from the 'rhotoa' product.",
+            label = " Compute TOA reflectances")
+    private boolean computeReflectances;
+
+    @Parameter(defaultValue = "false",
+            description = "Compute the cloud top pressure within the classification and write it to the band 'ctp'. " +
+                    "Needs the 'ctpO2Corr' product.",
+            label = " Compute CTP")
+    private boolean computeCtp;
+
+    @Parameter(description = "Path to alternative tensorflow neuronal net directory for CTP retrieval, " +
+            "if the CTP is computed.",
+            label = "Path to alternative NN for CTP retrieval")
+    private String alternativeCtpNNDir;
+
+    @Parameter(defaultValue = "false",
+            description = "Evaluate the CTP neural net in Java instead of the TensorFlow runtime, " +
+                    "if the CTP is computed.",
+            label = " Evaluate CTP neural net in Java")
+    private boolean evaluateCtpNNInJava;
+
 
     @SourceProduct(alias = "l1b", description = "The L1b product.")
     private Product l1bProduct;
@@ -113,16 +130,28 @@ public class IdepixOlciClassificationOp extends Operator {
             description = "User defined ice mask product. If not provided, default climatology is used.")
     private Product iceMaskProduct;
 
-    @SourceProduct(alias = "rhotoa")
+    @SourceProduct(alias = "rhotoa", optional = true,
+            description = "The TOA reflectances, needed if they are not computed by the classification.")
     private Product rad2reflProduct;
 
     @SourceProduct(alias = "o2Corr", optional = true)
     private Product o2CorrProduct;
 
+    @SourceProduct(alias = "ctpO2Corr", optional = true,
+            description = "The O2 harmonisation product providing the transmissions for the CTP, " +
+                    "needed if the CTP is computed.")
+    private Product ctpO2CorrProduct;
+
     @TargetProduct(description = "The target product.")
     Product targetProduct;
 
     private Band[] olciReflBands;
+    private Band[] olciRadianceBands;
+    private Band[] olciSolarFluxBands;
+    private RasterDataNode szaGrid;
+
+    private NNCalculator ctpNNCalculator;
+    private CtpAlgorithm ctpAlgorithm;
 
     private Band surface13Band;
     private Band trans13Band;
@@ -139,28 +168,37 @@ public class IdepixOlciClassificationOp extends Operator {
     private static final double THRESH_WATER_MINBRIGHT2 = 0.08; // CB 20170411
 
     private ThreadLocal<SchillerNeuralNetWrapper> olciAllNeuralNet;
+    private ThreadLocal<SchillerNeuralNetBatch> olciNeuralNetBatch;
 
     private IdepixOlciCloudNNInterpreter nnInterpreter;
 
     private static final double SEA_ICE_CLIM_THRESHOLD = 10.0;
-    private GeometryFactory gf;
-    private Polygon arcticPolygon;
-    private Polygon antarcticaPolygon;
-    private WatermaskClassifier watermaskClassifier;
+    private PolarRegions polarRegions;
+    private LandWaterMaskProvider landWaterMaskProvider;
 
     private LakeSeaIceClassification lakeSeaIceClassification;
 
+    // hidden parameter, may be set to true for products with larger invalid areas
+    private boolean skipInvalidTiles;
 
     @Override
     public void initialize() throws OperatorException {
+        if (!computeReflectances && rad2reflProduct == null) {
+            throw new OperatorException("The 'rhotoa' product is needed if the TOA reflectances are not computed.");
+        }
+        if (computeCtp && ctpO2CorrProduct == null) {
+            throw new OperatorException("The 'ctpO2Corr' product is needed for the computation of the CTP.");
+        }
         setBands();
         readSchillerNeuralNets();
-        readNNThresholds();
-        nnInterpreter = IdepixOlciCloudNNInterpreter.create();
+        olciNeuralNetBatch = ThreadLocal.withInitial(
+                () -> new SchillerNeuralNetBatch(olciAllNeuralNet.get().getNeuralNet()));
+        nnInterpreter = IdepixOlciCloudNNInterpreter.create(readNNThresholds());
         createTargetProduct();
+        skipInvalidTiles = TileSummary.isSkipInvalidTiles();
         if (useSrtmLandWaterMask) {
             try {
-                watermaskClassifier = new WatermaskClassifier(LAND_WATER_MASK_RESOLUTION,
+                landWaterMaskProvider = new LandWaterMaskProvider(LAND_WATER_MASK_RESOLUTION,
                         OVERSAMPLING_FACTOR_X,
                         OVERSAMPLING_FACTOR_Y);
             } catch (IOException e) {
@@ -173,42 +211,45 @@ public class IdepixOlciClassificationOp extends Operator {
         if (o2CorrProduct != null) {
             surface13Band = o2CorrProduct.getBand("surface_13");
             trans13Band = o2CorrProduct.getBand("trans_13");
-            gf = new GeometryFactory();
-            arcticPolygon =
-                    IdepixOlciUtils.createPolygonFromCoordinateArray(IdepixOlciConstants.ARCTIC_POLYGON_COORDS);
-            antarcticaPolygon =
-                    IdepixOlciUtils.createPolygonFromCoordinateArray(IdepixOlciConstants.ANTARCTICA_POLYGON_COORDS);
+            polarRegions = PolarRegions.create();
+        }
+
+        if (computeCtp) {
+            ctpNNCalculator = CtpAlgorithm.createNNCalculator(alternativeCtpNNDir, evaluateCtpNNInJava, 0);
+            ctpAlgorithm = new CtpAlgorithm(l1bProduct, ctpO2CorrProduct, ctpNNCalculator);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        if (ctpNNCalculator != null) {
+            ctpNNCalculator.dispose();
         }
     }
 
     private void readSchillerNeuralNets() {
-        InputStream olciAllInputStream;
-        try {
-            olciAllInputStream = getNNInputStream();
-        } catch (IOException e) {
-            throw new OperatorException("Cannot read specified alternative Neural Net - please check!", e);
+        if (alternativeNNFile == null || OLCI_202306_NET_NAME.equals(alternativeNNFile.getName())) {
+            olciAllNeuralNet = SchillerNeuralNetWrapper.create(getClass(), OLCI_202306_NET_NAME);
+        } else if (OLCI_2018_NET_NAME.equals(alternativeNNFile.getName())) {
+            olciAllNeuralNet = SchillerNeuralNetWrapper.create(getClass(), OLCI_2018_NET_NAME);
+        } else {
+            try {
+                olciAllNeuralNet = SchillerNeuralNetWrapper.create(Files.newInputStream(alternativeNNFile.toPath()));
+            } catch (IOException e) {
+                throw new OperatorException("Cannot read specified alternative Neural Net - please check!", e);
+            }
         }
-        olciAllNeuralNet = SchillerNeuralNetWrapper.create(olciAllInputStream);
     }
 
-    void readNNThresholds() {
+    IdepixOlciNNThresholds readNNThresholds() {
         try (Reader r = alternativeNNThresholdsFile == null ||
                 OLCI_202306_NN_THRESHOLDS_FILE.equals(alternativeNNThresholdsFile.getName())
                 ? new InputStreamReader(getClass().getResourceAsStream(OLCI_202306_NN_THRESHOLDS_FILE))
                 : OLCI_2018_NN_THRESHOLDS_FILE.equals(alternativeNNThresholdsFile.getName())
                 ? new InputStreamReader(getClass().getResourceAsStream(OLCI_2018_NN_THRESHOLDS_FILE))
                 : new FileReader(alternativeNNThresholdsFile)) {
-            Map<String, Object> m = (JSONObject) JSONValue.parse(r);
-            for (NNThreshold t : NNThreshold.values()) {
-                if (m.containsKey(t.name())) {
-                    t.range = new ValueRange((Double) ((JSONArray) m.get(t.name())).get(0),
-                                             (Double) ((JSONArray) m.get(t.name())).get(1),
-                                             true,
-                                             false);
-                } else {
-                    t.range = new ValueRange(0.0, 0.0,true, false);
-                }
-            }
+            return IdepixOlciNNThresholds.read(r);
         } catch (FileNotFoundException e) {
             throw new OperatorException("cannot find NN thresholds file " + alternativeNNThresholdsFile, e);
         } catch (Exception e) {
@@ -216,16 +257,6 @@ public class IdepixOlciClassificationOp extends Operator {
         }
     }
 
-    private InputStream getNNInputStream() throws IOException {
-        if (alternativeNNFile == null || OLCI_202306_NET_NAME.equals(alternativeNNFile.getName())) {
-            return getClass().getResourceAsStream(OLCI_202306_NET_NAME);
-        } else if (OLCI_2018_NET_NAME.equals(alternativeNNFile.getName())) {
-            return getClass().getResourceAsStream(OLCI_2018_NET_NAME);
-        } else {
-            return Files.newInputStream(alternativeNNFile.toPath());
-        }
-    }
-
     private void initLakeSeaIceClassification() {
         final ProductData.UTC startTime = l1bProduct.getStartTime();
         final int monthIndex = startTime.getAsCalendar().get(Calendar.MONTH);
@@ -233,11 +264,24 @@ public class IdepixOlciClassificationOp extends Operator {
     }
 
     private void setBands() {
-        olciReflBands = new Band[Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length];
-        for (int i = 0; i < Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length; i++) {
-            final int suffixStart = Rad2ReflConstants.OLCI_REFL_BAND_NAMES[i].indexOf("_");
-            final String reflBandname = Rad2ReflConstants.OLCI_REFL_BAND_NAMES[i].substring(0, suffixStart);
-            olciReflBands[i] = rad2reflProduct.getBand(reflBandname + "_reflectance");
+        final int numBands = Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length;
+        if (computeReflectances) {
+            olciRadianceBands = new Band[numBands];
+            olciSolarFluxBands = new Band[numBands];
+            for (int i = 0; i < numBands; i++) {
+                final int suffixStart = Rad2ReflConstants.OLCI_REFL_BAND_NAMES[i].indexOf("_");
+                final String radianceBandname = Rad2ReflConstants.OLCI_REFL_BAND_NAMES[i].substring(0, suffixStart);
+                olciRadianceBands[i] = l1bProduct.getBand(radianceBandname + "_radiance");
+                olciSolarFluxBands[i] = l1bProduct.getBand("solar_flux_band_" + (i + 1));
+            }
+            szaGrid = l1bProduct.getRasterDataNode("SZA");
+        } else {
+            olciReflBands = new Band[numBands];
+            for (int i = 0; i < numBands; i++) {
+                final int suffixStart = Rad2ReflConstants.OLCI_REFL_BAND_NAMES[i].indexOf("_");
+                final String reflBandname = Rad2ReflConstants.OLCI_REFL_BAND_NAMES[i].substring(0, suffixStart);
+                olciReflBands[i] = rad2reflProduct.getBand(reflBandname + "_reflectance");
+            }
         }
     }
 
@@ -262,299 +306,364 @@ public class IdepixOlciClassificationOp extends Operator {
         if (outputSchillerNNValue) {
             targetProduct.addBand(IdepixConstants.NN_OUTPUT_BAND_NAME, ProductData.TYPE_FLOAT32);
         }
+        if (computeCtp) {
+            CtpAlgorithm.addCtpBand(targetProduct);
+        }
     }
 
     @Override
     public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle rectangle, ProgressMonitor pm) throws OperatorException {
+        final long startTime = OperatorTiming.start();
+        try {
+            final Band olciQualityFlagBand = l1bProduct.getBand(IdepixOlciConstants.OLCI_QUALITY_FLAGS_BAND_NAME);
+            final Tile olciQualityFlagTile = getSourceTile(olciQualityFlagBand, rectangle);
+            if (skipInvalidTiles &&
+                    TileSummary.isFlagSetEverywhere(olciQualityFlagTile, rectangle, 1 << IdepixOlciConstants.L1_F_INVALID)) {
+                setInvalidTile(targetTiles);
+                return;
+            }
 
-        Tile surface13Tile = null;
-        Tile trans13Tile = null;
-        if (surface13Band != null && trans13Band != null) {
-            surface13Tile = getSourceTile(surface13Band, rectangle);
-            trans13Tile = getSourceTile(trans13Band, rectangle);
-        }
+            Tile surface13Tile = null;
+            Tile trans13Tile = null;
+            PolarRegions.TileMask polarRegionsMask = null;
+            if (surface13Band != null && trans13Band != null) {
+                // tiles completely inside or outside the polar regions need no per pixel check
+                polarRegionsMask = polarRegions.createTileMask(l1bProduct.getSceneGeoCoding(), rectangle);
+                if (polarRegionsMask.isUniform() && !polarRegionsMask.isInside(rectangle.x, rectangle.y)) {
+                    polarRegionsMask = null;
+                } else {
+                    surface13Tile = getSourceTile(surface13Band, rectangle);
+                    trans13Tile = getSourceTile(trans13Band, rectangle);
+                }
+            }
 
-        final Band olciQualityFlagBand = l1bProduct.getBand(IdepixOlciConstants.OLCI_QUALITY_FLAGS_BAND_NAME);
-        final Tile olciQualityFlagTile = getSourceTile(olciQualityFlagBand, rectangle);
+            final Band cloudFlagTargetBand = targetProduct.getBand(IdepixConstants.CLASSIF_BAND_NAME);
+            final Tile cloudFlagTargetTile = targetTiles.get(cloudFlagTargetBand);
 
-        Tile[] olciReflectanceTiles = new Tile[Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length];
-        for (int i = 0; i < Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length; i++) {
-            olciReflectanceTiles[i] = getSourceTile(olciReflBands[i], rectangle);
-        }
+            Tile nnTargetTile = null;
+            if (outputSchillerNNValue) {
+                nnTargetTile = targetTiles.get(targetProduct.getBand(IdepixConstants.NN_OUTPUT_BAND_NAME));
+            }
+            try {
+                // all sources of the tile as primitive arrays, indexed like the pixels of the rectangle
+                final int numPixels = rectangle.width * rectangle.height;
+                final int[] l1Flags = olciQualityFlagTile.getSamplesInt();
+                final float[][] reflectances = computeReflectances ?
+                        computeReflectances(rectangle, l1Flags) : getReflectances(rectangle);
+                final float[] surface13 = surface13Tile != null ? surface13Tile.getSamplesFloat() : null;
+                final float[] trans13 = trans13Tile != null ? trans13Tile.getSamplesFloat() : null;
+                final byte[] waterFractions =
+                        useSrtmLandWaterMask ? landWaterMaskProvider.getWaterFractions(l1bProduct, rectangle) : null;
+                // the geo-location is needed for the SRTM mask and the sea ice climatology only
+                final GeoLocationGrid geoLocationGrid = useSrtmLandWaterMask || useLakeAndSeaIceClimatology ?
+                        GeoLocationGrid.create(l1bProduct.getSceneGeoCoding(), rectangle) : null;
+
+                final double[] nnOutputs = computeOlciNNOutputs(reflectances, numPixels);
+                final int[] cloudFlags = new int[numPixels];
+
+                int pixelIndex = 0;
+                for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+                    checkForCancellation();
+                    for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, pixelIndex++) {
+                        final int l1Flag = l1Flags[pixelIndex];
+                        final int waterFraction = useSrtmLandWaterMask ? waterFractions[pixelIndex] : -1;
+                        final float lat = geoLocationGrid != null ? geoLocationGrid.getLat(x, y) : Float.NaN;
+
+                        int cloudFlag = 0;
+                        if (isFlagSet(l1Flag, IdepixOlciConstants.L1_F_INVALID) ||
+                                !areAllReflectancesValid(reflectances, pixelIndex)) {
+                            cloudFlag |= 1 << IDEPIX_INVALID;
+                        }
+                        if (isFlagSet(l1Flag, IdepixOlciConstants.L1_F_BRIGHT)) {
+                            cloudFlag |= 1 << IDEPIX_BRIGHT;
+                        }
+                        final boolean isCoastlineFromAppliedMask = classifyCoastline(l1Flag, waterFraction, lat);
+                        final boolean isLandFromAppliedMask = isOlciLandPixel(l1Flag, waterFraction, lat);
+                        final boolean isInlandWaterFromAppliedMask = isOlciInlandWaterPixel(l1Flag, waterFraction, lat);
+                        if (isCoastlineFromAppliedMask) {
+                            cloudFlag |= 1 << IDEPIX_COASTLINE;
+                        }
+                        //todo: for CGLOPS, coastlines are added to LAND to exclude them from L2 processing
+                        if (isLandFromAppliedMask || isCoastlineFromAppliedMask) {
+                            cloudFlag |= 1 << IDEPIX_LAND;
+                        }
 
-        final Band cloudFlagTargetBand = targetProduct.getBand(IdepixConstants.CLASSIF_BAND_NAME);
-        final Tile cloudFlagTargetTile = targetTiles.get(cloudFlagTargetBand);
+                        // todo: for cglops, coastlines are treated as LAND
+                        if ((isLandFromAppliedMask && !isInlandWaterFromAppliedMask) || isCoastlineFromAppliedMask) {
+                            final boolean isInsidePolarRegions =
+                                    polarRegionsMask != null && polarRegionsMask.isInside(x, y);
+                            cloudFlags[pixelIndex] = classifyOverLand(cloudFlag, nnOutputs[pixelIndex],
+                                    reflectances, pixelIndex,
+                                    isInsidePolarRegions ? surface13[pixelIndex] : Float.NaN,
+                                    isInsidePolarRegions ? trans13[pixelIndex] : Float.NaN,
+                                    isInsidePolarRegions);
+                        } else {
+                            final float lon = geoLocationGrid != null ? geoLocationGrid.getLon(x, y) : Float.NaN;
+                            cloudFlags[pixelIndex] = classifyOverWater(cloudFlag, nnOutputs[pixelIndex],
+                                    reflectances, pixelIndex, l1Flag, isInlandWaterFromAppliedMask, lat, lon);
+                        }
+                    }
+                }
 
+                cloudFlagTargetTile.setSamples(cloudFlags);
+                if (nnTargetTile != null) {
+                    nnTargetTile.setSamples(nnOutputs.length == numPixels ?
+                                                    nnOutputs : Arrays.copyOf(nnOutputs, numPixels));
+                }
+                if (computeCtp) {
+                    final Tile ctpTargetTile = targetTiles.get(targetProduct.getBand(IdepixConstants.CTP_OUTPUT_BAND_NAME));
+                    ctpTargetTile.setSamples(ctpAlgorithm.computeCtp(this, rectangle, this::checkForCancellation));
+                }
+            } catch (Exception e) {
+                throw new OperatorException("Failed to provide GA cloud screening:\n" + e.getMessage(), e);
+            }
+        } finally {
+            OperatorTiming.stop(this, rectangle, startTime);
+        }
+    }
 
-        Tile nnTargetTile = null;
+    private void setInvalidTile(Map<Band, Tile> targetTiles) {
+        TileSummary.fill(targetTiles.get(targetProduct.getBand(IdepixConstants.CLASSIF_BAND_NAME)),
+                         1 << IdepixConstants.IDEPIX_INVALID);
         if (outputSchillerNNValue) {
-            nnTargetTile = targetTiles.get(targetProduct.getBand(IdepixConstants.NN_OUTPUT_BAND_NAME));
+            TileSummary.fill(targetTiles.get(targetProduct.getBand(IdepixConstants.NN_OUTPUT_BAND_NAME)), Double.NaN);
         }
-        try {
-            GeoCoding geoCoding = l1bProduct.getSceneGeoCoding();
-            for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
-                checkForCancellation();
-                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
-                    int waterFraction = -1;
-                    if (useSrtmLandWaterMask) {
-                        waterFraction = watermaskClassifier.getWaterMaskFraction(geoCoding, x, y);
-                    }
+        if (computeCtp) {
+            TileSummary.fill(targetTiles.get(targetProduct.getBand(IdepixConstants.CTP_OUTPUT_BAND_NAME)), Double.NaN);
+        }
+    }
 
-                    initCloudFlag(olciQualityFlagTile, targetTiles.get(cloudFlagTargetBand), olciReflectanceTiles, y, x);
-                    final boolean isBright = olciQualityFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_BRIGHT);
-                    cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_BRIGHT, isBright);
-                    final boolean isCoastlineFromAppliedMask = classifyCoastline(olciQualityFlagTile, x, y, waterFraction);
-                    cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_COASTLINE, isCoastlineFromAppliedMask);
-
-                    final boolean isLandFromAppliedMask = isOlciLandPixel(x, y, olciQualityFlagTile, waterFraction);
-                    final boolean isInlandWaterFromAppliedMask = isOlciInlandWaterPixel(x, y, olciQualityFlagTile, waterFraction);
-                    //todo: for CGLOPS, coastlines are added to LAND to exclude them from L2 processing
-                    cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_LAND, isLandFromAppliedMask ||
-                            isCoastlineFromAppliedMask);
-
-                    // todo: for cglops, coastlines are treated as LAND
-                    if ((isLandFromAppliedMask && !isInlandWaterFromAppliedMask) || isCoastlineFromAppliedMask) {
-                        classifyOverLand(olciReflectanceTiles, cloudFlagTargetTile, nnTargetTile,
-                                surface13Tile, trans13Tile, x, y);
-                    } else {
-                        classifyOverWater(olciQualityFlagTile, olciReflectanceTiles,
-                                          cloudFlagTargetTile, nnTargetTile, x, y, isInlandWaterFromAppliedMask);
-                    }
+    private float[][] getReflectances(Rectangle rectangle) {
+        final float[][] reflectances = new float[olciReflBands.length][];
+        for (int i = 0; i < olciReflBands.length; i++) {
+            reflectances[i] = getSourceTile(olciReflBands[i], rectangle).getSamplesFloat();
+        }
+        return reflectances;
+    }
+
+    // same conversion as done by the Rad2Refl operator for OLCI, package local for testing
+    float[][] computeReflectances(Rectangle rectangle, int[] l1Flags) {
+        final float[] sza = getSourceTile(szaGrid, rectangle).getSamplesFloat();
+        final float[][] reflectances = new float[olciRadianceBands.length][l1Flags.length];
+        for (int i = 0; i < olciRadianceBands.length; i++) {
+            final float[] radiances = getSourceTile(olciRadianceBands[i], rectangle).getSamplesFloat();
+            final float[] solarFluxes = getSourceTile(olciSolarFluxBands[i], rectangle).getSamplesFloat();
+            for (int p = 0; p < l1Flags.length; p++) {
+                if (isFlagSet(l1Flags[p], IdepixOlciConstants.L1_F_INVALID)) {
+                    reflectances[i][p] = Rad2ReflConstants.RAD_TO_REFL_NODATA;
+                } else {
+                    final float reflectance = RsMathUtils.radianceToReflectance(radiances[p], sza[p], solarFluxes[p]);
+                    reflectances[i][p] = Float.isNaN(reflectance) ? Rad2ReflConstants.RAD_TO_REFL_NODATA : reflectance;
                 }
             }
-        } catch (Exception e) {
-            throw new OperatorException("Failed to provide GA cloud screening:\n" + e.getMessage(), e);
         }
+        return reflectances;
     }
 
-    private boolean classifyCoastline(Tile olciQualityFlagTile, int x, int y, int waterFraction) {
+    private boolean classifyCoastline(int l1Flag, int waterFraction, float lat) {
         return waterFraction < 0 ?
-                olciQualityFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_COASTLINE) :
-                isCoastlinePixel(x, y, waterFraction);
+                isFlagSet(l1Flag, IdepixOlciConstants.L1_F_COASTLINE) :
+                isCoastlinePixel(lat, waterFraction);
     }
 
-    private void classifyOverWater(Tile olciQualityFlagTile, Tile[] olciReflectanceTiles,
-                                   Tile cloudFlagTargetTile, Tile nnTargetTile, int x, int y, boolean isInlandWater) {
-
-
-        double nnOutput = getOlciNNOutput(x, y, olciReflectanceTiles);
-        if (!cloudFlagTargetTile.getSampleBit(x, y, IdepixConstants.IDEPIX_INVALID)) {
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, false);
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, false);
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, false);
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, false);
-
-            final boolean isGlint = isGlintPixel(x, y, olciQualityFlagTile);
-            // CB 20170406:
-            final boolean cloudSure = olciReflectanceTiles[16].getSampleFloat(x, y) > THRESH_WATER_MINBRIGHT1 &&
-                    nnInterpreter.isCloudSure(nnOutput);
-            final boolean cloudAmbiguous = olciReflectanceTiles[16].getSampleFloat(x, y) > THRESH_WATER_MINBRIGHT2 &&
-                    nnInterpreter.isCloudAmbiguous(nnOutput, false, isGlint);
-
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, cloudAmbiguous);
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, cloudSure);
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, cloudAmbiguous || cloudSure);
-
-            final GeoPos geoPos = IdepixUtils.getGeoPos(l1bProduct.getSceneGeoCoding(), x, y);
-            final boolean checkForSeaIce = !useLakeAndSeaIceClimatology || isPixelClassifiedAsLakeSeaIce(geoPos);
-            if (checkForSeaIce && nnInterpreter.isSnowIce(nnOutput)) {
-                cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, true);
-                cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, false);
-                cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, false);
-            }
-
-            if (isInlandWater && cloudAmbiguous) {
-                final double NDVI = getNDVI(x, y, olciReflectanceTiles);
-                if (NDVI > 0.07) {
-                    //catches mixed pixels at coast lines.
-                    cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, false);
-                    cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, false);
-                    // todo: for CGLOPS it is OK, if these mixed pixels are classified as LAND!
-                    cloudFlagTargetTile.setSample(x, y, IDEPIX_LAND, true);
+    private int classifyOverWater(int cloudFlag, double nnOutput, float[][] reflectances, int pixelIndex,
+                                  int l1Flag, boolean isInlandWater, float lat, float lon) {
+        if (isFlagSet(cloudFlag, IdepixConstants.IDEPIX_INVALID)) {
+            return cloudFlag;
+        }
+        final boolean isGlint = isFlagSet(l1Flag, IdepixOlciConstants.L1_F_GLINT);
+        // CB 20170406:
+        final float olciReflectance17 = reflectances[16][pixelIndex];
+        final boolean cloudSure = olciReflectance17 > THRESH_WATER_MINBRIGHT1 &&
+                nnInterpreter.isCloudSure(nnOutput);
+        final boolean cloudAmbiguous = olciReflectance17 > THRESH_WATER_MINBRIGHT2 &&
+                nnInterpreter.isCloudAmbiguous(nnOutput, false, isGlint);
+
+        cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, cloudAmbiguous);
+        cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_CLOUD_SURE, cloudSure);
+        cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_CLOUD, cloudAmbiguous || cloudSure);
+
+        final boolean checkForSeaIce = !useLakeAndSeaIceClimatology || isPixelClassifiedAsLakeSeaIce(lat, lon);
+        if (checkForSeaIce && nnInterpreter.isSnowIce(nnOutput)) {
+            cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_SNOW_ICE, true);
+            cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_CLOUD_SURE, false);
+            cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_CLOUD, false);
+        }
 
-                }
-                if (olciQualityFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_BRIGHT)) {
-                    cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, true);
-                    cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, true);
-                }
+        if (isInlandWater && cloudAmbiguous) {
+            final double NDVI = getNDVI(reflectances, pixelIndex);
+            if (NDVI > 0.07) {
+                //catches mixed pixels at coast lines.
+                cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, false);
+                cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_CLOUD, false);
+                // todo: for CGLOPS it is OK, if these mixed pixels are classified as LAND!
+                cloudFlag = setFlag(cloudFlag, IDEPIX_LAND, true);
+            }
+            if (isFlagSet(l1Flag, IdepixOlciConstants.L1_F_BRIGHT)) {
+                cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, true);
+                cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_CLOUD, true);
             }
         }
-        if (outputSchillerNNValue) {
-            nnTargetTile.setSample(x, y, nnOutput);
-        }
+        return cloudFlag;
     }
 
-    private void classifyOverLand(Tile[] olciReflectanceTiles,
-                                  Tile cloudFlagTargetTile, Tile nnTargetTile,
-                                  Tile surface13Tile, Tile trans13Tile,
-                                  int x, int y) {
-
-        final double nnOutput = getOlciNNOutput(x, y, olciReflectanceTiles);
-
-        if (!cloudFlagTargetTile.getSampleBit(x, y, IdepixConstants.IDEPIX_INVALID)) {
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, false);
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, false);
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, false);
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, false);
-            final float olciReflectance3 = olciReflectanceTiles[2].getSampleFloat(x, y);
-
-            // CB 20170406:
-            boolean isCloudSure = olciReflectance3 > THRESH_LAND_MINBRIGHT1 &&
-                    nnInterpreter.isCloudSure(nnOutput);
-            boolean isCloudAmbiguous = olciReflectance3 > THRESH_LAND_MINBRIGHT2 &&
-                    nnInterpreter.isCloudAmbiguous(nnOutput, true, false);
-            boolean isCloud = isCloudAmbiguous || isCloudSure;
-
-            boolean isSnowIce = nnInterpreter.isSnowIce(nnOutput);
-
-            // cloud over snow from harmonisation approach:
-            // pixel_classif_flags.IDEPIX_LAND && ((Oa21_reflectance > 0.5 && surface_13 - trans_13 < 0.01) || Oa21_reflectance > 0.76)
-            double surface13;
-            double trans13;
-            if (surface13Tile != null && trans13Tile != null) {
-                GeoPos geoPos = IdepixUtils.getGeoPos(l1bProduct.getSceneGeoCoding(), x, y);
-                Coordinate coord = new Coordinate(geoPos.getLon(), geoPos.getLat());
-                boolean isInsideGreenland = IdepixOlciUtils.isCoordinateInsideGeometry(coord, arcticPolygon, gf);
-                boolean isInsideAntarctica = IdepixOlciUtils.isCoordinateInsideGeometry(coord, antarcticaPolygon, gf);
-                if (isInsideGreenland || isInsideAntarctica) {
-                    surface13 = surface13Tile.getSampleDouble(x, y);
-                    trans13 = trans13Tile.getSampleDouble(x, y);
-                    float olciReflectance21 = olciReflectanceTiles[Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length - 1].getSampleFloat(x, y);
-                    boolean isCloudOverSnow = (olciReflectance21 > 0.5 && surface13 - trans13 < 0.01) || olciReflectance21 > 0.76f;
-                    if (isCloudOverSnow) {
-                        isCloudSure = true;
-                        isCloud = true;
-                        isSnowIce = false;
-                    } else {
-                        if (isCloud) {
-                            // this overrules the NN which likely classified snow/ice as cloud
-                            isSnowIce = true;
-                            isCloud = false;
-                            isCloudSure = false;
-                            isCloudAmbiguous = false;
-                        }
-                    }
+    private int classifyOverLand(int cloudFlag, double nnOutput, float[][] reflectances, int pixelIndex,
+                                 double surface13, double trans13, boolean isInsidePolarRegions) {
+        if (isFlagSet(cloudFlag, IdepixConstants.IDEPIX_INVALID)) {
+            return cloudFlag;
+        }
+        final float olciReflectance3 = reflectances[2][pixelIndex];
+
+        // CB 20170406:
+        boolean isCloudSure = olciReflectance3 > THRESH_LAND_MINBRIGHT1 &&
+                nnInterpreter.isCloudSure(nnOutput);
+        boolean isCloudAmbiguous = olciReflectance3 > THRESH_LAND_MINBRIGHT2 &&
+                nnInterpreter.isCloudAmbiguous(nnOutput, true, false);
+        boolean isCloud = isCloudAmbiguous || isCloudSure;
+
+        boolean isSnowIce = nnInterpreter.isSnowIce(nnOutput);
+
+        // cloud over snow from harmonisation approach:
+        // pixel_classif_flags.IDEPIX_LAND && ((Oa21_reflectance > 0.5 && surface_13 - trans_13 < 0.01) || Oa21_reflectance > 0.76)
+        // inside Greenland or Antarctica
+        if (isInsidePolarRegions) {
+            float olciReflectance21 = reflectances[Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length - 1][pixelIndex];
+            boolean isCloudOverSnow = (olciReflectance21 > 0.5 && surface13 - trans13 < 0.01) || olciReflectance21 > 0.76f;
+            if (isCloudOverSnow) {
+                isCloudSure = true;
+                isCloud = true;
+                isSnowIce = false;
+            } else {
+                if (isCloud) {
+                    // this overrules the NN which likely classified snow/ice as cloud
+                    isSnowIce = true;
+                    isCloud = false;
+                    isCloudSure = false;
+                    isCloudAmbiguous = false;
                 }
             }
-
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, isCloudAmbiguous);
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, isCloudSure);
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, isCloud);
-            cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, isSnowIce);
         }
 
-        if (nnTargetTile != null) {
-            nnTargetTile.setSample(x, y, nnOutput);
-        }
+        cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, isCloudAmbiguous);
+        cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_CLOUD_SURE, isCloudSure);
+        cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_CLOUD, isCloud);
+        cloudFlag = setFlag(cloudFlag, IdepixConstants.IDEPIX_SNOW_ICE, isSnowIce);
+        return cloudFlag;
     }
 
-    private boolean isOlciLandPixel(int x, int y, Tile olciL1bFlagTile, int waterFraction) {
+    private boolean isOlciLandPixel(int l1Flag, int waterFraction, float lat) {
         if (waterFraction < 0) {
-            boolean landFlag = olciL1bFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_LAND);
-            boolean inlandWaterFlag = olciL1bFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_FRESH_INLAND_WATER);
+            boolean landFlag = isFlagSet(l1Flag, IdepixOlciConstants.L1_F_LAND);
+            boolean inlandWaterFlag = isFlagSet(l1Flag, IdepixOlciConstants.L1_F_FRESH_INLAND_WATER);
             return landFlag && !inlandWaterFlag;
         } else {
             // the water mask ends at 59 Degree south, stop earlier to avoid artefacts
-            if (IdepixUtils.getGeoPos(l1bProduct.getSceneGeoCoding(), x, y).lat > -58f) {
+            if (lat > -58f) {
                 // values bigger than 100 indicate no data
                 if (waterFraction <= 100) {
                     // todo: this does not work if we have a PixelGeocoding. In that case, waterFraction
                     // is always 0 or 100!! (TS, OD, 20140502)
                     return waterFraction == 0;
                 } else {
-                    return olciL1bFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_LAND);
+                    return isFlagSet(l1Flag, IdepixOlciConstants.L1_F_LAND);
                 }
             } else {
-                return olciL1bFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_LAND);
+                return isFlagSet(l1Flag, IdepixOlciConstants.L1_F_LAND);
             }
         }
     }
 
-    private boolean isOlciInlandWaterPixel(int x, int y, Tile olciL1bFlagTile, int waterFraction) {
+    private boolean isOlciInlandWaterPixel(int l1Flag, int waterFraction, float lat) {
+        final boolean isL1InlandWater = isFlagSet(l1Flag, IdepixOlciConstants.L1_F_LAND) &&
+                isFlagSet(l1Flag, IdepixOlciConstants.L1_F_FRESH_INLAND_WATER);
         if (waterFraction < 0) {
             // SRTM has not been used! Rely on OLCI flags!
-            return olciL1bFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_LAND) &&
-                    olciL1bFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_FRESH_INLAND_WATER);
+            return isL1InlandWater;
         } else {
             // SRTM water mask is used.
             // the water mask ends at 59 Degree south, stop earlier to avoid artefacts
-            if (IdepixUtils.getGeoPos(l1bProduct.getSceneGeoCoding(), x, y).lat > -58f) {
+            if (lat > -58f) {
                 // values bigger than 100 indicate no data
                 if (waterFraction <= 100) {
                     // todo: this does not work if we have a PixelGeocoding. In that case, waterFraction
                     // is always 0 or 100!! (TS, OD, 20140502)
-                    return waterFraction > 0 && olciL1bFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_LAND);
+                    return waterFraction > 0 && isFlagSet(l1Flag, IdepixOlciConstants.L1_F_LAND);
                 } else {
-                    return olciL1bFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_LAND) &&
-                            olciL1bFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_FRESH_INLAND_WATER);
+                    return isL1InlandWater;
                 }
             } else {
-                return olciL1bFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_LAND) &&
-                        olciL1bFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_FRESH_INLAND_WATER);
+                return isL1InlandWater;
             }
         }
     }
 
-    private double getOlciNNOutput(int x, int y, Tile[] rhoToaTiles) {
-        SchillerNeuralNetWrapper nnWrapper;
+    // evaluates the neural net for all pixels of the tile with the batch of the computing thread,
+    // the returned array may be larger than the number of pixels
+    private double[] computeOlciNNOutputs(float[][] reflectances, int numPixels) {
+        final SchillerNeuralNetBatch nnBatch;
         try {
-            nnWrapper = olciAllNeuralNet.get();
+            nnBatch = olciNeuralNetBatch.get();
         } catch (Exception e) {
             throw new OperatorException("Cannot get values from Neural Net file - check format! " + e.getMessage());
         }
-        double[] nnInput = nnWrapper.getInputVector();
-        for (int i = 0; i < nnInput.length; i++) {
-            nnInput[i] = Math.sqrt(rhoToaTiles[i].getSampleFloat(x, y));
+        final int numNNInputs = nnBatch.getNeuralNet().getNumInputs();
+        final double[] nnInputs = nnBatch.getInputs(numPixels);
+        for (int p = 0; p < numPixels; p++) {
+            for (int i = 0; i < numNNInputs; i++) {
+                nnInputs[p * numNNInputs + i] = Math.sqrt(reflectances[i][p]);
+            }
+        }
+        final double[] nnOutputs = nnBatch.calc(numPixels);
+        final int numNNOutputs = nnBatch.getNeuralNet().getNumOutputs();
+        if (numNNOutputs == 1) {
+            return nnOutputs;
+        }
+        // only the first output is used
+        final double[] firstNNOutputs = new double[numPixels];
+        for (int p = 0; p < numPixels; p++) {
+            firstNNOutputs[p] = nnOutputs[p * numNNOutputs];
         }
-        return nnWrapper.getNeuralNet().calc(nnInput)[0];
+        return firstNNOutputs;
     }
 
-    private double getNDVI(int x, int y, Tile[] rhoToaTiles) {
-        double rho17 = rhoToaTiles[16].getSampleDouble(x, y);
-        double rho8 = rhoToaTiles[7].getSampleDouble(x, y);
+    private static boolean areAllReflectancesValid(float[][] reflectances, int pixelIndex) {
+        // same as IdepixIO.areAllReflectancesValid for the reflectances of one pixel
+        for (float[] bandReflectances : reflectances) {
+            final float reflectance = bandReflectances[pixelIndex];
+            if (Float.isNaN(reflectance) || reflectance <= 0.0f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double getNDVI(float[][] reflectances, int pixelIndex) {
+        double rho17 = reflectances[16][pixelIndex];
+        double rho8 = reflectances[7][pixelIndex];
         return (rho17 - rho8) / (rho17 + rho8);
     }
 
-    private boolean isPixelClassifiedAsLakeSeaIce(GeoPos geoPos) {
-        final int lakeSeaIceMaskX = (int) (180.0 + geoPos.lon);
-        final int lakeSeaIceMaskY = (int) (90.0 - geoPos.lat);
+    private boolean isPixelClassifiedAsLakeSeaIce(float lat, float lon) {
+        final int lakeSeaIceMaskX = (int) (180.0 + lon);
+        final int lakeSeaIceMaskY = (int) (90.0 - lat);
         final float monthlyMaskValue = lakeSeaIceClassification.getMonthlyMaskValue(lakeSeaIceMaskX, lakeSeaIceMaskY);
         return monthlyMaskValue >= SEA_ICE_CLIM_THRESHOLD;
     }
 
-    private boolean isCoastlinePixel(int x, int y, int waterFraction) {
+    private static boolean isCoastlinePixel(float lat, int waterFraction) {
         // the water mask ends at 59 Degree south, stop earlier to avoid artefacts
         // values bigger than 100 indicate no data
         // todo: this does not work if we have a PixelGeocoding. In that case, waterFraction
         // is always 0 or 100!! (TS, OD, 20140502)
-        return IdepixUtils.getGeoPos(l1bProduct.getSceneGeoCoding(), x, y).lat > -58f &&
-                waterFraction < 100 && waterFraction > 0;
+        return lat > -58f && waterFraction < 100 && waterFraction > 0;
     }
 
-    private boolean isGlintPixel(int x, int y, Tile l1FlagsTile) {
-        return l1FlagsTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_GLINT);
+    private static boolean isFlagSet(int flag, int bitIndex) {
+        return (flag & (1 << bitIndex)) != 0;
     }
 
-    private void initCloudFlag(Tile olciL1bFlagTile, Tile targetTile, Tile[] olciReflectanceTiles, int y, int x) {
-        // for given instrument, compute boolean pixel properties and write to cloud flag band
-        float[] olciReflectances = new float[Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length];
-        for (int i = 0; i < Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length; i++) {
-            olciReflectances[i] = olciReflectanceTiles[i].getSampleFloat(x, y);
-        }
-
-        final boolean l1Invalid = olciL1bFlagTile.getSampleBit(x, y, IdepixOlciConstants.L1_F_INVALID);
-        final boolean reflectancesValid = IdepixIO.areAllReflectancesValid(olciReflectances);
-
-        targetTile.setSample(x, y, IdepixConstants.IDEPIX_INVALID, l1Invalid || !reflectancesValid);
-        targetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, false);
-        targetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, false);
-        targetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, false);
-        targetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, false);
-        targetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_BUFFER, false);
-        targetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SHADOW, false);
-        targetTile.setSample(x, y, IdepixConstants.IDEPIX_COASTLINE, false);
-        targetTile.setSample(x, y, IdepixConstants.IDEPIX_LAND, false);
-        targetTile.setSample(x, y, IdepixConstants.IDEPIX_BRIGHT, false);
+    private static int setFlag(int flag, int bitIndex, boolean value) {
+        return value ? flag | (1 << bitIndex) : flag & ~(1 << bitIndex);
     }
 
     /**
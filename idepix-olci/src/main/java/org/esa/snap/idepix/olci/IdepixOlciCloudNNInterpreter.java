@@ -18,11 +18,28 @@ class IdepixOlciCloudNNInterpreter {
 //    private static final ValueRange CLEAR_LAND_BOUNDS = new ValueRange(3.75, 5.3, true, false);
 //    private static final ValueRange CLEAR_WATER_BOUNDS = new ValueRange(5.3, 6.00, true, true);
 
-    private IdepixOlciCloudNNInterpreter() {}
+    private final ValueRange clearSnowIceBounds;
+    private final ValueRange opaqueCloudBounds;
+    private final ValueRange semiTransCloudBounds;
+    private final ValueRange spatialMixedBoundsLand;
+    private final ValueRange spatialMixedBoundsWaterGlint;
+    private final ValueRange spatialMixedBoundsWaterNoGlint;
 
-    // Here we might add the nn as parameter to decide which valueRanges to load
-    static IdepixOlciCloudNNInterpreter create() {
-        return new IdepixOlciCloudNNInterpreter();
+    private IdepixOlciCloudNNInterpreter(IdepixOlciNNThresholds thresholds) {
+        clearSnowIceBounds = thresholds.getRange(NNThreshold.CLEAR_SNOW_ICE_BOUNDS);
+        opaqueCloudBounds = thresholds.getRange(NNThreshold.OPAQUE_CLOUD_BOUNDS);
+        semiTransCloudBounds = thresholds.getRange(NNThreshold.SEMI_TRANS_CLOUD_BOUNDS);
+        spatialMixedBoundsLand = thresholds.getRange(NNThreshold.SPATIAL_MIXED_BOUNDS_LAND);
+        spatialMixedBoundsWaterGlint = thresholds.getRange(NNThreshold.SPATIAL_MIXED_BOUNDS_WATER_GLINT);
+        spatialMixedBoundsWaterNoGlint = thresholds.getRange(NNThreshold.SPATIAL_MIXED_BOUNDS_WATER_NOGLINT);
+    }
+
+    /**
+     * @param thresholds - the NN thresholds of the neural net in use
+     * @return the interpreter of the NN output for the given thresholds
+     */
+    static IdepixOlciCloudNNInterpreter create(IdepixOlciNNThresholds thresholds) {
+        return new IdepixOlciCloudNNInterpreter(thresholds);
     }
 
     // currently not used
@@ -32,30 +49,27 @@ class IdepixOlciCloudNNInterpreter {
 
     boolean isCloudAmbiguous(double nnValue, boolean isLand, boolean considerGlint) {
         if (isLand) {
-            return NNThreshold.SEMI_TRANS_CLOUD_BOUNDS.range.contains(nnValue) ||
-                    NNThreshold.SPATIAL_MIXED_BOUNDS_LAND.range.contains(nnValue);
+            return semiTransCloudBounds.contains(nnValue) || spatialMixedBoundsLand.contains(nnValue);
         } else {
             if (considerGlint) {
-                return NNThreshold.SEMI_TRANS_CLOUD_BOUNDS.range.contains(nnValue) ||
-                        NNThreshold.SPATIAL_MIXED_BOUNDS_WATER_GLINT.range.contains(nnValue);
+                return semiTransCloudBounds.contains(nnValue) || spatialMixedBoundsWaterGlint.contains(nnValue);
             } else {
-                return NNThreshold.SEMI_TRANS_CLOUD_BOUNDS.range.contains(nnValue) ||
-                        NNThreshold.SPATIAL_MIXED_BOUNDS_WATER_NOGLINT.range.contains(nnValue);
+                return semiTransCloudBounds.contains(nnValue) || spatialMixedBoundsWaterNoGlint.contains(nnValue);
             }
         }
     }
 
     boolean isCloudSure(double nnValue) {
-        return NNThreshold.OPAQUE_CLOUD_BOUNDS.range.contains(nnValue);
+        return opaqueCloudBounds.contains(nnValue);
     }
 
     boolean isSnowIce(double nnValue) {
-        return NNThreshold.CLEAR_SNOW_ICE_BOUNDS.range.contains(nnValue);
+        return clearSnowIceBounds.contains(nnValue);
 
     }
 
-    // Not absolutely elegant as there is one instance of this enum while we could have several interpreters.
-    // But this was the same with the former constants defined in this class.
+    // The names of the NN thresholds as used in the thresholds JSON files, the value ranges are held by
+    // IdepixOlciNNThresholds.
     public enum NNThreshold {
         CLEAR_SNOW_ICE_BOUNDS,
         OPAQUE_CLOUD_BOUNDS,
@@ -64,8 +78,6 @@ class IdepixOlciCloudNNInterpreter {
         SPATIAL_MIXED_BOUNDS_WATER_GLINT,
         SPATIAL_MIXED_BOUNDS_WATER_NOGLINT,
         CLEAR_LAND_BOUNDS,
-        CLEAR_WATER_BOUNDS;
-
-        public ValueRange range;
+        CLEAR_WATER_BOUNDS
     }
 }
@@ -25,9 +25,10 @@ import org.esa.snap.idepix.core.CloudShadowFronts;
 import org.esa.snap.idepix.core.IdepixConstants;
 import org.esa.snap.idepix.core.util.Bresenham;
 import org.esa.snap.idepix.core.util.IdepixUtils;
+import org.esa.snap.idepix.core.util.PathPixels;
 
 import java.awt.Rectangle;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Specific cloud shadow algorithm for OLCI based on fronts, using cloud top height computation based on
@@ -39,6 +40,13 @@ import java.util.List;
  */
 class IdepixOlciCloudShadowFronts {
 
+    // the search for the shadow casting cloud stops where the sun ray has reached this height
+    private static final double CLOUD_HEIGHT_MAX = 12_000;
+    // the geo-positions to estimate the pixel spacing of a rectangle are taken with this step (pixels)
+    private static final int SPACING_SAMPLING_STEP = 32;
+    // margin for a pixel spacing which varies in between the sampled positions and for skewed pixels
+    private static final double SPACING_SAFETY_FACTOR = 0.8;
+
     private final GeoCoding geoCoding;
 
     private final Tile szaTile;
@@ -50,6 +58,8 @@ class IdepixOlciCloudShadowFronts {
     private final Tile[] temperatureProfileTPGTiles;
     private final Tile altTile;
 
+    private final PathPixels pathPixels = new PathPixels();
+
     IdepixOlciCloudShadowFronts(GeoCoding geoCoding,
                                 Tile szaTile, Tile saaTile,
                                 Tile ozaTile, Tile oaaTile,
@@ -73,11 +83,12 @@ class IdepixOlciCloudShadowFronts {
         final int w = targetRectangle.width;
         final int x0 = targetRectangle.x;
         final int y0 = targetRectangle.y;
+        final ShadowGeometry geometry = new ShadowGeometry(sourceFlagTile, targetTile);
         boolean[][] isCloudShadow = new boolean[w][h];
         for (int y = y0; y < y0 + h; y++) {
             for (int x = x0; x < x0 + w; x++) {
-                if (isCloudFree(sourceFlagTile, x, y) && isNotInvalid(sourceFlagTile, x, y)) {
-                    isCloudShadow[x - x0][y - y0] = getCloudShadow(sourceFlagTile, targetTile, x, y);
+                if (geometry.hasShadowPath(x, y)) {
+                    isCloudShadow[x - x0][y - y0] = getCloudShadow(geometry, x, y);
                     if (isCloudShadow[x - x0][y - y0]) {
                         setCloudShadow(targetTile, x, y);
                     }
@@ -108,6 +119,73 @@ class IdepixOlciCloudShadowFronts {
         }
     }
 
+    /**
+     * Provides how far the shadow search from the pixels of a target rectangle reaches, in pixels. The search path
+     * of a pixel ends where the sun ray has reached the maximum cloud height, so it is not longer than given by the
+     * largest sun zenith angle of the rectangle and the smallest pixel spacing, plus the rounding of its end pixel.
+     *
+     * @param geoCoding       - the geo-coding
+     * @param szaTile         - the sun zenith angles, covering the target rectangle
+     * @param targetRectangle - the target rectangle
+     * @param maxExtent       - the extent used if the sun is low, or if the geometry cannot be determined
+     * @return the extent, not larger than maxExtent
+     */
+    static int getShadowSearchExtent(GeoCoding geoCoding, Tile szaTile, Rectangle targetRectangle, int maxExtent) {
+        double szaMax = Double.NaN;
+        for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+            for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                final double sza = szaTile.getSampleDouble(x, y);
+                if (sza > szaMax || Double.isNaN(szaMax)) {
+                    szaMax = sza;
+                }
+            }
+        }
+        final double spacing = getMinPixelSpacing(geoCoding, targetRectangle);
+        if (!(szaMax < 90.0) || !(spacing > 0.0)) {
+            return maxExtent;
+        }
+        final double searchDistance = CLOUD_HEIGHT_MAX / Math.tan(Math.toRadians(90.0 - szaMax));
+        final double extent = Math.ceil(searchDistance / (spacing * SPACING_SAFETY_FACTOR)) + 2;
+        return extent < maxExtent ? (int) extent : maxExtent;
+    }
+
+    // the smallest distance (m) between neighbouring pixels at sampled positions of the rectangle, NaN if unknown
+    private static double getMinPixelSpacing(GeoCoding geoCoding, Rectangle rectangle) {
+        if (rectangle.width < 2 || rectangle.height < 2) {
+            return Double.NaN;
+        }
+        final int xMax = rectangle.x + rectangle.width - 2;
+        final int yMax = rectangle.y + rectangle.height - 2;
+        final PixelPos pixelPos = new PixelPos();
+        final GeoPos geoPos = new GeoPos();
+        final GeoPos geoPosX = new GeoPos();
+        final GeoPos geoPosY = new GeoPos();
+        double minSpacing = Double.NaN;
+        for (int y = rectangle.y; ; y = Math.min(y + SPACING_SAMPLING_STEP, yMax)) {
+            for (int x = rectangle.x; ; x = Math.min(x + SPACING_SAMPLING_STEP, xMax)) {
+                pixelPos.setLocation(x + 0.5, y + 0.5);
+                geoCoding.getGeoPos(pixelPos, geoPos);
+                pixelPos.setLocation(x + 1.5, y + 0.5);
+                geoCoding.getGeoPos(pixelPos, geoPosX);
+                pixelPos.setLocation(x + 0.5, y + 1.5);
+                geoCoding.getGeoPos(pixelPos, geoPosY);
+                final double spacing = Math.min(IdepixUtils.computeDistanceOnEarth(geoPos, geoPosX),
+                                                IdepixUtils.computeDistanceOnEarth(geoPos, geoPosY));
+                if (Double.isNaN(spacing)) {
+                    return Double.NaN;
+                }
+                minSpacing = Double.isNaN(minSpacing) ? spacing : Math.min(minSpacing, spacing);
+                if (x == xMax) {
+                    break;
+                }
+            }
+            if (y == yMax) {
+                break;
+            }
+        }
+        return minSpacing;
+    }
+
     ///////////////////// end of public ///////////////////////////////////////////////////////
 
     private static boolean isPixelSurrounded(int x, int y, Tile sourceFlagTile) {
@@ -124,22 +202,10 @@ class IdepixOlciCloudShadowFronts {
         return (surroundingPixelCount * 1.0 / 9 >= 0.7);  // at least 6 pixel in a 3x3 box
     }
 
-    private boolean isCloudForShadow(Tile sourceFlagTile, Tile targetTile, int x, int y) {
-        if (!targetTile.getRectangle().contains(x, y)) {
-            return sourceFlagTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD);
-        } else {
-            return targetTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD);
-        }
-    }
-
     private boolean isCloudFree(Tile sourceFlagTile, int x, int y) {
         return !sourceFlagTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD);
     }
 
-    private boolean isNotInvalid(Tile sourceFlagTile, int x, int y){
-        return !sourceFlagTile.getSampleBit(x, y, IdepixConstants.IDEPIX_INVALID);
-    }
-
     private boolean isSurroundedByCloud(Tile sourceFlagTile, int x, int y) {
         return isPixelSurrounded(x, y, sourceFlagTile);
     }
@@ -176,77 +242,25 @@ class IdepixOlciCloudShadowFronts {
         }
     }
 
-    private boolean getCloudShadow(Tile sourceFlagTile, Tile targetTile, int x, int y) {
-
-        final Rectangle sourceRectangle = sourceFlagTile.getRectangle();
-        final double sza = szaTile.getSampleDouble(x, y);
-        final double saa = saaTile.getSampleDouble(x, y);
-        final double oza = ozaTile.getSampleDouble(x, y);
-        final double oaa = oaaTile.getSampleDouble(x, y);
-        double alt = 0;
-        if (altTile != null) {
-            alt = altTile.getSampleDouble(x, y);
-            if (alt < 0) {
-                alt = 0; // do NOT use bathimetry
-            }
-        }
-
-        PixelPos pixelPos = new PixelPos(x + 0.5f, y + 0.5f);
-
-        double tanSza = Math.tan(Math.toRadians(90.0 - sza));
-        final double cloudHeightMax = 12_000;
-        final double cloudDistanceMax = cloudHeightMax / tanSza;
-
-        final double saaApparent = IdepixOlciUtils.computeApparentSaa(sza, saa, oza, oaa);
-        final double saaRadApparent = Math.toRadians(saaApparent);
-
-
-        final double azimuthAngleInRadiance = saaRadApparent + Math.PI;
-        final GeoPos geoPos = geoCoding.getGeoPos(pixelPos, null);
-        GeoPos endGeoPoint = CloudShadowFronts.lineWithAngle(geoPos, cloudDistanceMax, azimuthAngleInRadiance);
-        PixelPos endPixPoint = geoCoding.getPixelPos(endGeoPoint, null);
-        int endPointX;
-        int endPointY;
-        if (!endPixPoint.isValid()) {
-            double cloudDistanceMin = 300.0 / tanSza;
-            double i = 1.0;
-            double cloudDistancePath = cloudDistanceMax;
-            while (!endPixPoint.isValid() && cloudDistancePath > 2.0 * cloudDistanceMin) {
-                cloudDistancePath = cloudDistanceMax - i * cloudDistanceMin;
-                endGeoPoint = CloudShadowFronts.lineWithAngle(geoPos, cloudDistancePath, azimuthAngleInRadiance);
-                endPixPoint = geoCoding.getPixelPos(endGeoPoint, null);
-                i += 1.0;
-            }
-
-            if (!endPixPoint.isValid()) {
-                return false;
-            }
-        }
-
-        endPointX = (int) Math.round(endPixPoint.x);
-        endPointY = (int) Math.round(endPixPoint.y);
-
-        List<PixelPos> pathPixels = Bresenham.getPathPixels(x, y, endPointX, endPointY, sourceRectangle);
-
-        double[] temperature = new double[temperatureProfileTPGTiles.length];
+    private boolean getCloudShadow(ShadowGeometry geometry, int x, int y) {
+        final int numPathPixels = Bresenham.getPathPixels(x, y,
+                                                          geometry.getPathEndX(x, y), geometry.getPathEndY(x, y),
+                                                          geometry.sourceRectangle, pathPixels);
+        final double tanSza = geometry.getTanSza(x, y);
+        final double alt = geometry.getAlt(x, y);
+        final GeoPos geoPos = geometry.getGeoPos(x, y, new GeoPos());
 
         GeoPos geoPosCurrent = new GeoPos();
-        for (PixelPos pathPixel : pathPixels) {
+        for (int k = 0; k < numPathPixels; k++) {
 
-            final int xCurrent = (int) pathPixel.getX();
-            final int yCurrent = (int) pathPixel.getY();
+            final int xCurrent = pathPixels.getX(k);
+            final int yCurrent = pathPixels.getY(k);
 
-            if (sourceRectangle.contains(xCurrent, yCurrent)) {
-                if (isCloudForShadow(sourceFlagTile, targetTile, xCurrent, yCurrent)) {
-                    pixelPos.setLocation(xCurrent + 0.5f, yCurrent + 0.5f);
-                    geoCoding.getGeoPos(pixelPos, geoPosCurrent);
+            if (geometry.sourceRectangle.contains(xCurrent, yCurrent)) {
+                if (geometry.isCloudForShadow(xCurrent, yCurrent)) {
+                    geometry.getGeoPos(xCurrent, yCurrent, geoPosCurrent);
                     final double cloudSearchHeight = (IdepixUtils.computeDistanceOnEarth(geoPos, geoPosCurrent) * tanSza) + alt;
-                    final float ctp = ctpTile.getSampleFloat(xCurrent, yCurrent);
-                    final float slp = slpTile.getSampleFloat(xCurrent, yCurrent);
-                    for (int i = 0; i < temperature.length; i++) {
-                        temperature[i] = temperatureProfileTPGTiles[i].getSampleDouble(xCurrent, yCurrent);
-                    }
-                    final float cloudHeight = (float) IdepixOlciUtils.getRefinedHeightFromCtp(ctp, slp, temperature);
+                    final float cloudHeight = geometry.getCloudHeight(xCurrent, yCurrent);
                     if (cloudSearchHeight <= cloudHeight + 300) {
                         // cloud thickness should also be at least 300m (OD, 2012/08/02)
                         float cloudBase = cloudHeight - 300.0f;
@@ -262,4 +276,166 @@ class IdepixOlciCloudShadowFronts {
         return false;
     }
 
+    /**
+     * The geometry of the shadow search for the pixels of a tile, computed in one pass before the search:
+     * the geo-positions of the pixel centres which are needed (target pixels the search starts from, and cloud
+     * pixels it may hit), the cloud top heights of the cloud pixels, and, for the start pixels, the tangent of the
+     * sun elevation, the altitude and the end pixel of the search path towards the apparent sun. The search itself
+     * then only steps through pixels, without any geo-coding calls, and each cloud top height is computed once per
+     * tile, no matter how many paths cross the cloud pixel.
+     */
+    class ShadowGeometry {
+
+        private static final int NO_PATH = Integer.MIN_VALUE;
+
+        private final Rectangle sourceRectangle;
+        private final Rectangle targetRectangle;
+        // source rectangle
+        private final boolean[] cloudForShadow;
+        private final double[] lat;
+        private final double[] lon;
+        private final float[] cloudHeight;
+        // target rectangle
+        private final double[] tanSza;
+        private final double[] alt;
+        private final int[] pathEndX;
+        private final int[] pathEndY;
+
+        ShadowGeometry(Tile sourceFlagTile, Tile targetTile) {
+            sourceRectangle = sourceFlagTile.getRectangle();
+            targetRectangle = targetTile.getRectangle();
+            final int[] sourceFlags = sourceFlagTile.getSamplesInt();
+            final int cloudMask = 1 << IdepixConstants.IDEPIX_CLOUD;
+            final int invalidMask = 1 << IdepixConstants.IDEPIX_INVALID;
+
+            final int targetSize = targetRectangle.width * targetRectangle.height;
+            tanSza = new double[targetSize];
+            alt = new double[targetSize];
+            pathEndX = new int[targetSize];
+            pathEndY = new int[targetSize];
+            Arrays.fill(pathEndX, NO_PATH);
+
+            final int sourceSize = sourceRectangle.width * sourceRectangle.height;
+            cloudForShadow = new boolean[sourceSize];
+            lat = new double[sourceSize];
+            lon = new double[sourceSize];
+            cloudHeight = new float[sourceSize];
+            final double[] temperature = new double[temperatureProfileTPGTiles.length];
+            final PixelPos pixelPos = new PixelPos();
+            final GeoPos geoPos = new GeoPos();
+            int index = 0;
+            for (int y = sourceRectangle.y; y < sourceRectangle.y + sourceRectangle.height; y++) {
+                for (int x = sourceRectangle.x; x < sourceRectangle.x + sourceRectangle.width; x++) {
+                    final boolean inTarget = targetRectangle.contains(x, y);
+                    // within the target tile, the cloud flags may have been changed before
+                    cloudForShadow[index] = inTarget
+                            ? targetTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD)
+                            : (sourceFlags[index] & cloudMask) != 0;
+                    final boolean isSearchStart = inTarget && (sourceFlags[index] & (cloudMask | invalidMask)) == 0;
+                    if (cloudForShadow[index] || isSearchStart) {
+                        pixelPos.setLocation(x + 0.5f, y + 0.5f);
+                        geoCoding.getGeoPos(pixelPos, geoPos);
+                        lat[index] = geoPos.lat;
+                        lon[index] = geoPos.lon;
+                    }
+                    if (cloudForShadow[index]) {
+                        cloudHeight[index] = computeCloudHeight(x, y, temperature);
+                    }
+                    if (isSearchStart) {
+                        setPathEnd(x, y, geoPos);
+                    }
+                    index++;
+                }
+            }
+        }
+
+        boolean hasShadowPath(int x, int y) {
+            return pathEndX[targetIndex(x, y)] != NO_PATH;
+        }
+
+        int getPathEndX(int x, int y) {
+            return pathEndX[targetIndex(x, y)];
+        }
+
+        int getPathEndY(int x, int y) {
+            return pathEndY[targetIndex(x, y)];
+        }
+
+        double getTanSza(int x, int y) {
+            return tanSza[targetIndex(x, y)];
+        }
+
+        double getAlt(int x, int y) {
+            return alt[targetIndex(x, y)];
+        }
+
+        boolean isCloudForShadow(int x, int y) {
+            return cloudForShadow[sourceIndex(x, y)];
+        }
+
+        float getCloudHeight(int x, int y) {
+            return cloudHeight[sourceIndex(x, y)];
+        }
+
+        GeoPos getGeoPos(int x, int y, GeoPos geoPos) {
+            final int index = sourceIndex(x, y);
+            geoPos.setLocation(lat[index], lon[index]);
+            return geoPos;
+        }
+
+        private float computeCloudHeight(int x, int y, double[] temperature) {
+            final float ctp = ctpTile.getSampleFloat(x, y);
+            final float slp = slpTile.getSampleFloat(x, y);
+            for (int i = 0; i < temperature.length; i++) {
+                temperature[i] = temperatureProfileTPGTiles[i].getSampleDouble(x, y);
+            }
+            return (float) IdepixOlciUtils.getRefinedHeightFromCtp(ctp, slp, temperature);
+        }
+
+        private void setPathEnd(int x, int y, GeoPos geoPos) {
+            final int index = targetIndex(x, y);
+            final double sza = szaTile.getSampleDouble(x, y);
+            final double saa = saaTile.getSampleDouble(x, y);
+            final double oza = ozaTile.getSampleDouble(x, y);
+            final double oaa = oaaTile.getSampleDouble(x, y);
+            if (altTile != null) {
+                // do NOT use bathimetry
+                alt[index] = Math.max(0.0, altTile.getSampleDouble(x, y));
+            }
+            tanSza[index] = Math.tan(Math.toRadians(90.0 - sza));
+            final double cloudDistanceMax = CLOUD_HEIGHT_MAX / tanSza[index];
+
+            final double saaApparent = IdepixOlciUtils.computeApparentSaa(sza, saa, oza, oaa);
+            final double azimuthAngleInRadiance = Math.toRadians(saaApparent) + Math.PI;
+
+            GeoPos endGeoPoint = CloudShadowFronts.lineWithAngle(geoPos, cloudDistanceMax, azimuthAngleInRadiance);
+            PixelPos endPixPoint = geoCoding.getPixelPos(endGeoPoint, null);
+            if (!endPixPoint.isValid()) {
+                // shorten the path until its end is within the product
+                double cloudDistanceMin = 300.0 / tanSza[index];
+                double i = 1.0;
+                double cloudDistancePath = cloudDistanceMax;
+                while (!endPixPoint.isValid() && cloudDistancePath > 2.0 * cloudDistanceMin) {
+                    cloudDistancePath = cloudDistanceMax - i * cloudDistanceMin;
+                    endGeoPoint = CloudShadowFronts.lineWithAngle(geoPos, cloudDistancePath, azimuthAngleInRadiance);
+                    endPixPoint = geoCoding.getPixelPos(endGeoPoint, null);
+                    i += 1.0;
+                }
+
+                if (!endPixPoint.isValid()) {
+                    return;
+                }
+            }
+            pathEndX[index] = (int) Math.round(endPixPoint.x);
+            pathEndY[index] = (int) Math.round(endPixPoint.y);
+        }
+
+        private int sourceIndex(int x, int y) {
+            return (y - sourceRectangle.y) * sourceRectangle.width + (x - sourceRectangle.x);
+        }
+
+        private int targetIndex(int x, int y) {
+            return (y - targetRectangle.y) * targetRectangle.width + (x - targetRectangle.x);
+        }
+    }
 }
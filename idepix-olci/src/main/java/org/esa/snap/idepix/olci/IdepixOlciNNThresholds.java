@@ -0,0 +1,62 @@
+package org.esa.snap.idepix.olci;
+
+import com.bc.ceres.binding.ValueRange;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.esa.snap.idepix.olci.IdepixOlciCloudNNInterpreter.NNThreshold;
+
+/**
+ * The value ranges of the OLCI NN output for the classes of {@link NNThreshold}, as read from a thresholds
+ * JSON file. Instances are immutable, so operators with different thresholds can run concurrently.
+ */
+class IdepixOlciNNThresholds {
+
+    private static final ValueRange EMPTY_RANGE = new ValueRange(0.0, 0.0, true, false);
+
+    private final Map<NNThreshold, ValueRange> ranges;
+
+    private IdepixOlciNNThresholds(Map<NNThreshold, ValueRange> ranges) {
+        this.ranges = Collections.unmodifiableMap(new EnumMap<>(ranges));
+    }
+
+    /**
+     * Reads the thresholds from JSON, e.g. <code>{"OPAQUE_CLOUD_BOUNDS": [1.1, 2.75], ...}</code>.
+     * Thresholds missing in the JSON get an empty range.
+     *
+     * @param reader - the reader of the JSON
+     * @return the thresholds
+     * @throws IOException if the JSON cannot be read
+     */
+    static IdepixOlciNNThresholds read(Reader reader) throws IOException {
+        final Object json = JSONValue.parse(reader);
+        if (!(json instanceof JSONObject)) {
+            throw new IOException("NN thresholds must be a JSON object");
+        }
+        final JSONObject m = (JSONObject) json;
+        final Map<NNThreshold, ValueRange> ranges = new EnumMap<>(NNThreshold.class);
+        for (NNThreshold t : NNThreshold.values()) {
+            if (m.containsKey(t.name())) {
+                final JSONArray bounds = (JSONArray) m.get(t.name());
+                ranges.put(t, new ValueRange(((Number) bounds.get(0)).doubleValue(),
+                                             ((Number) bounds.get(1)).doubleValue(),
+                                             true,
+                                             false));
+            } else {
+                ranges.put(t, EMPTY_RANGE);
+            }
+        }
+        return new IdepixOlciNNThresholds(ranges);
+    }
+
+    ValueRange getRange(NNThreshold threshold) {
+        return ranges.get(threshold);
+    }
+}
@@ -14,7 +14,6 @@ import org.esa.snap.idepix.core.IdepixConstants;
 import org.esa.snap.idepix.core.operators.BasisOp;
 import org.esa.snap.idepix.core.util.IdepixIO;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.Polygon;
 
 import java.io.File;
 import java.util.HashMap;
@@ -111,6 +110,11 @@ public class IdepixOlciOp extends BasisOp {
             label = "Path to alternative NN for CTP retrieval")
     private String alternativeCtpNNDir;
 
+    @Parameter(defaultValue = "false",
+            label = " Evaluate CTP neural net in Java",
+            description = " Evaluate the CTP neural net in Java instead of the TensorFlow runtime")
+    private boolean evaluateCtpNNInJava;
+
     @Parameter(defaultValue = "false",
             label = " If cloud shadow is computed, write CTP value to the target product",
             description = " If cloud shadow is computed, write CTP value to the target product ")
@@ -136,6 +140,13 @@ public class IdepixOlciOp extends BasisOp {
                     "Slower, but in general more precise.")
     private boolean useSrtmLandWaterMask;
 
+    @Parameter(defaultValue = "false",
+            label = " Compute reflectances and CTP within the classification",
+            description = "If selected, the TOA reflectances and the CTP are computed in the tiles of the " +
+                    "classification instead of separate operators. The reflectances are then only kept " +
+                    "if they are written to the target product.")
+    private boolean fuseClassificationChain;
+
 
     private Product classificationProduct;
     private Product postProcessingProduct;
@@ -159,13 +170,7 @@ public class IdepixOlciOp extends BasisOp {
 
         final Geometry productGeometry = IdepixOlciUtils.computeProductGeometry(sourceProduct);
         if (productGeometry != null) {
-            final Polygon arcticPolygon =
-                    IdepixOlciUtils.createPolygonFromCoordinateArray(IdepixOlciConstants.ARCTIC_POLYGON_COORDS);
-            final Polygon antarcticaPolygon =
-                    IdepixOlciUtils.createPolygonFromCoordinateArray(IdepixOlciConstants.ANTARCTICA_POLYGON_COORDS);
-            considerCloudsOverSnow =
-                    productGeometry.intersects(arcticPolygon) || productGeometry.intersects(antarcticaPolygon);
-            arcticPolygon.contains(productGeometry);
+            considerCloudsOverSnow = PolarRegions.create().intersects(productGeometry);
         } else {
             throw new OperatorException("Product geometry is null - cannot proceed.");
         }
@@ -235,9 +240,12 @@ public class IdepixOlciOp extends BasisOp {
 
 
     private void preProcess() {
-        rad2reflProduct = IdepixOlciUtils.computeRadiance2ReflectanceProduct(sourceProduct);
+        if (!fuseClassificationChain || outputRad2Refl) {
+            rad2reflProduct = IdepixOlciUtils.computeRadiance2ReflectanceProduct(sourceProduct);
+        }
 
-        if (considerCloudsOverSnow) {
+        // in the fused chain, the CTP is computed by the classification, which needs the O2 product for it
+        if (considerCloudsOverSnow || (fuseClassificationChain && computeCloudShadow)) {
             Map<String, Product> o2corrSourceProducts = new HashMap<>();
             o2corrSourceProducts.put("l1bProduct", sourceProduct);
             final String o2CorrOpName = "OlciO2aHarmonisation";
@@ -250,10 +258,11 @@ public class IdepixOlciOp extends BasisOp {
             o2CorrProduct = GPF.createProduct(o2CorrOpName, o2corrParms, o2corrSourceProducts);
         }
 
-        if (computeCloudShadow) {
+        if (computeCloudShadow && !fuseClassificationChain) {
             ctpProduct = IdepixOlciUtils.computeCloudTopPressureProduct(sourceProduct,
                     o2CorrProduct,
                     alternativeCtpNNDir,
+                    evaluateCtpNNInJava,
                     outputCtp);
         }
 
@@ -267,21 +276,35 @@ public class IdepixOlciOp extends BasisOp {
         classificationParameters.put("alternativeNNThresholdsFile", alternativeNNThresholdsFile);
         classificationParameters.put("useSrtmLandWaterMask", useSrtmLandWaterMask);
         classificationParameters.put("useLakeAndSeaIceClimatology", useLakeAndSeaIceClimatology);
+        if (fuseClassificationChain) {
+            classificationParameters.put("computeReflectances", rad2reflProduct == null);
+            classificationParameters.put("computeCtp", computeCloudShadow);
+            classificationParameters.put("alternativeCtpNNDir", alternativeCtpNNDir);
+            classificationParameters.put("evaluateCtpNNInJava", evaluateCtpNNInJava);
+        }
     }
 
     private void computeCloudProduct() {
         setClassificationParameters();
         classificationProduct = GPF.createProduct(OperatorSpi.getOperatorAlias(IdepixOlciClassificationOp.class),
                 classificationParameters, classificationInputProducts);
+        if (fuseClassificationChain && computeCloudShadow) {
+            ctpProduct = classificationProduct;
+        }
     }
 
     private void setClassificationInputProducts() {
         classificationInputProducts = new HashMap<>();
         classificationInputProducts.put("l1b", sourceProduct);
-        classificationInputProducts.put("rhotoa", rad2reflProduct);
+        if (rad2reflProduct != null) {
+            classificationInputProducts.put("rhotoa", rad2reflProduct);
+        }
         if (considerCloudsOverSnow) {
             classificationInputProducts.put("o2Corr", o2CorrProduct);
         }
+        if (fuseClassificationChain && computeCloudShadow) {
+            classificationInputProducts.put("ctpO2Corr", o2CorrProduct);
+        }
     }
 
     private void postProcess(Product olciIdepixProduct) {
@@ -15,6 +15,8 @@ import org.esa.snap.idepix.core.IdepixConstants;
 import org.esa.snap.idepix.core.operators.CloudBuffer;
 import org.esa.snap.idepix.core.util.IdepixIO;
 import org.esa.snap.idepix.core.util.IdepixUtils;
+import org.esa.snap.idepix.core.util.OperatorTiming;
+import org.esa.snap.idepix.core.util.TileSummary;
 
 import java.awt.*;
 import java.util.HashMap;
@@ -81,6 +83,8 @@ public class IdepixOlciPostProcessOp extends Operator {
     private GeoCoding geoCoding;
 
     private RectangleExtender rectExtender;
+    private Rectangle sceneRectangle;
+    private int cloudShadowExtent;
 
     @Override
     public void initialize() throws OperatorException {
@@ -130,10 +134,11 @@ public class IdepixOlciPostProcessOp extends Operator {
             ctpBand = ctpProduct.getBand("ctp");
         }
 
-        int cloudShadowExtent = l1bProduct.getName().contains("FR____") ? 64 : 16;
-        int extent = computeCloudShadow ? cloudShadowExtent : computeCloudBuffer ? cloudBufferWidth : 0;
-        rectExtender = new RectangleExtender(new Rectangle(l1bProduct.getSceneRasterWidth(),
-                l1bProduct.getSceneRasterHeight()), extent, extent);
+        // the worst case for the shadow search, the extent actually used is derived per tile
+        cloudShadowExtent = l1bProduct.getName().contains("FR____") ? 64 : 16;
+        int extent = computeCloudBuffer ? cloudBufferWidth : 0;
+        sceneRectangle = new Rectangle(l1bProduct.getSceneRasterWidth(), l1bProduct.getSceneRasterHeight());
+        rectExtender = new RectangleExtender(sceneRectangle, extent, extent);
 
         ProductUtils.copyBand(IdepixConstants.CLASSIF_BAND_NAME, olciCloudProduct, postProcessedCloudProduct, false);
         setTargetProduct(postProcessedCloudProduct);
@@ -149,73 +154,103 @@ public class IdepixOlciPostProcessOp extends Operator {
 
     @Override
     public void computeTile(Band targetBand, final Tile targetTile, ProgressMonitor pm) throws OperatorException {
-        Rectangle targetRectangle = targetTile.getRectangle();
-        final Rectangle srcRectangle = rectExtender.extend(targetRectangle);
+        final long startTime = OperatorTiming.start();
+        try {
+            Rectangle targetRectangle = targetTile.getRectangle();
+            final Rectangle srcRectangle = getSourceRectangle(targetRectangle);
 
-        final Tile sourceFlagTile = getSourceTile(origCloudFlagBand, srcRectangle);
+            final Tile sourceFlagTile = getSourceTile(origCloudFlagBand, srcRectangle);
 
-        for (int y = srcRectangle.y; y < srcRectangle.y + srcRectangle.height; y++) {
-            checkForCancellation();
-            for (int x = srcRectangle.x; x < srcRectangle.x + srcRectangle.width; x++) {
-
-                if (targetRectangle.contains(x, y)) {
-                    boolean isCloud = sourceFlagTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD);
-                    combineFlags(x, y, sourceFlagTile, targetTile);
-                    if (isCloud) {
-                        targetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, false);   // necessary??
+            for (int y = srcRectangle.y; y < srcRectangle.y + srcRectangle.height; y++) {
+                checkForCancellation();
+                for (int x = srcRectangle.x; x < srcRectangle.x + srcRectangle.width; x++) {
+
+                    if (targetRectangle.contains(x, y)) {
+                        boolean isCloud = sourceFlagTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD);
+                        combineFlags(x, y, sourceFlagTile, targetTile);
+                        if (isCloud) {
+                            targetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, false);   // necessary??
+                        }
                     }
                 }
             }
-        }
 
-        if (computeCloudBuffer) {
-            CloudBuffer.setCloudBuffer(targetTile, srcRectangle, sourceFlagTile, cloudBufferWidth);
-            for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
-                checkForCancellation();
-                for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
-                    IdepixUtils.consolidateCloudAndBuffer(targetTile, x, y);
+            // without any cloud, there is neither a buffer nor a shadow, and the CTP does not need to be computed
+            final boolean isCloudFree = TileSummary.isCloudFree(sourceFlagTile, srcRectangle);
+
+            if (computeCloudBuffer && !isCloudFree) {
+                CloudBuffer.setCloudBuffer(targetTile, srcRectangle, sourceFlagTile, cloudBufferWidth);
+                for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+                    checkForCancellation();
+                    for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                        IdepixUtils.consolidateCloudAndBuffer(targetTile, x, y);
+                    }
                 }
             }
-        }
 
-        if (computeCloudShadow) {
-            Tile szaTile = getSourceTile(szaTPG, srcRectangle);
-            Tile saaTile = getSourceTile(saaTPG, srcRectangle);
-            Tile ozaTile = getSourceTile(ozaTPG, srcRectangle);
-            Tile oaaTile = getSourceTile(oaaTPG, srcRectangle);
-            Tile ctpTile = getSourceTile(ctpBand, srcRectangle);
-            Tile slpTile = getSourceTile(slpTPG, srcRectangle);
-            Tile altTile = getSourceTile(altBand, targetRectangle);
-
-            Tile[] temperatureProfileTPGTiles = new Tile[temperatureProfileTPGs.length];
-            for (int i = 0; i < temperatureProfileTPGTiles.length; i++) {
-                temperatureProfileTPGTiles[i] = getSourceTile(temperatureProfileTPGs[i], srcRectangle);
-            }
+            if (computeCloudShadow && !isCloudFree) {
+                Tile szaTile = getSourceTile(szaTPG, srcRectangle);
+                Tile saaTile = getSourceTile(saaTPG, srcRectangle);
+                Tile ozaTile = getSourceTile(ozaTPG, srcRectangle);
+                Tile oaaTile = getSourceTile(oaaTPG, srcRectangle);
+                Tile ctpTile = getSourceTile(ctpBand, srcRectangle);
+                Tile slpTile = getSourceTile(slpTPG, srcRectangle);
+                Tile altTile = getSourceTile(altBand, targetRectangle);
+
+                Tile[] temperatureProfileTPGTiles = new Tile[temperatureProfileTPGs.length];
+                for (int i = 0; i < temperatureProfileTPGTiles.length; i++) {
+                    temperatureProfileTPGTiles[i] = getSourceTile(temperatureProfileTPGs[i], srcRectangle);
+                }
 
-            // CloudShadowFronts was modified for OLCI:
-            // - more advanced CTH computation
-            // - use of 'apparent sun azimuth angle
-            IdepixOlciCloudShadowFronts cloudShadowFronts = new IdepixOlciCloudShadowFronts(geoCoding,
-                    szaTile, saaTile,
-                    ozaTile, oaaTile,
-                    ctpTile, slpTile,
-                    temperatureProfileTPGTiles,
-                    altTile);
-            cloudShadowFronts.computeCloudShadow(sourceFlagTile, targetTile);
-        }
+                // CloudShadowFronts was modified for OLCI:
+                // - more advanced CTH computation
+                // - use of 'apparent sun azimuth angle
+                IdepixOlciCloudShadowFronts cloudShadowFronts = new IdepixOlciCloudShadowFronts(geoCoding,
+                        szaTile, saaTile,
+                        ozaTile, oaaTile,
+                        ctpTile, slpTile,
+                        temperatureProfileTPGTiles,
+                        altTile);
+                cloudShadowFronts.computeCloudShadow(sourceFlagTile, targetTile);
+            }
 
-        if (computeMountainShadow) {
-            final Tile mountainShadowFlagTile = getSourceTile(mountainShadowFlagBand, targetRectangle);
-            for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
-                checkForCancellation();
-                for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
-                    final boolean mountainShadow = mountainShadowFlagTile.getSampleInt(x, y) > 0;
-                    targetTile.setSample(x, y, IdepixOlciConstants.IDEPIX_MOUNTAIN_SHADOW, mountainShadow);
+            if (computeMountainShadow) {
+                final Tile mountainShadowFlagTile = getSourceTile(mountainShadowFlagBand, targetRectangle);
+                for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+                    checkForCancellation();
+                    for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                        final boolean mountainShadow = mountainShadowFlagTile.getSampleInt(x, y) > 0;
+                        targetTile.setSample(x, y, IdepixOlciConstants.IDEPIX_MOUNTAIN_SHADOW, mountainShadow);
+                    }
                 }
             }
+        } finally {
+            OperatorTiming.stop(this, targetTile.getRectangle(), startTime);
         }
     }
 
+    private Rectangle getSourceRectangle(Rectangle targetRectangle) {
+        if (!computeCloudShadow) {
+            return rectExtender.extend(targetRectangle);
+        }
+        final Tile szaTile = getSourceTile(szaTPG, targetRectangle);
+        return getShadowSourceRectangle(geoCoding, szaTile, targetRectangle, sceneRectangle,
+                                        cloudShadowExtent, computeCloudBuffer ? cloudBufferWidth : 0);
+    }
+
+    // the source rectangle if the cloud shadow is computed, the cloud buffer needs its full width in any case
+    static Rectangle getShadowSourceRectangle(GeoCoding geoCoding, Tile szaTile, Rectangle targetRectangle,
+                                              Rectangle sceneRectangle, int cloudShadowExtent, int cloudBufferWidth) {
+        // the shadow search does not reach further than the sun geometry of the tile allows
+        final int shadowSearchExtent = IdepixOlciCloudShadowFronts.getShadowSearchExtent(geoCoding, szaTile,
+                                                                                         targetRectangle,
+                                                                                         cloudShadowExtent);
+        final int extent = Math.max(shadowSearchExtent, cloudBufferWidth);
+        final Rectangle srcRectangle = new Rectangle(targetRectangle);
+        srcRectangle.grow(extent, extent);
+        return srcRectangle.intersection(sceneRectangle);
+    }
+
     private void combineFlags(int x, int y, Tile sourceFlagTile, Tile targetTile) {
         int sourceFlags = sourceFlagTile.getSampleInt(x, y);
         int computedFlags = targetTile.getSampleInt(x, y);
@@ -102,12 +102,14 @@ class IdepixOlciUtils {
         return GPF.createProduct(OperatorSpi.getOperatorAlias(Rad2ReflOp.class), params, sourceProduct);
     }
 
-    static Product computeCloudTopPressureProduct(Product sourceProduct, Product o2CorrProduct, String alternativeCtpNNDir, boolean outputCtp) {
+    static Product computeCloudTopPressureProduct(Product sourceProduct, Product o2CorrProduct, String alternativeCtpNNDir,
+                                                  boolean evaluateCtpNNInJava, boolean outputCtp) {
         Map<String, Product> ctpSourceProducts = new HashMap<>();
         ctpSourceProducts.put("sourceProduct", sourceProduct);
         ctpSourceProducts.put("o2CorrProduct", o2CorrProduct);
         Map<String, Object> params = new HashMap<>(2);
         params.put("alternativeCtpNNDir", alternativeCtpNNDir);
+        params.put("evaluateNNInJava", evaluateCtpNNInJava);
         params.put("outputCtp", outputCtp);
         return GPF.createProduct(OperatorSpi.getOperatorAlias(CtpOp.class), params, ctpSourceProducts);
     }
@@ -122,10 +124,6 @@ class IdepixOlciUtils {
         return factory.createPolygon(factory.createLinearRing(coordinates), null);
     }
 
-    static boolean isCoordinateInsideGeometry(Coordinate coord, Geometry g, GeometryFactory gf) {
-        return gf.createPoint(coord).within(g);
-    }
-
     static Geometry computeProductGeometry(Product product) {
         try {
             final GeneralPath[] paths = GeoUtils.createGeoBoundaryPaths(product);
@@ -0,0 +1,35 @@
+package org.esa.snap.idepix.olci;
+
+/**
+ * Evaluates a neural net for the input vectors of all pixels of a tile.
+ */
+interface NNCalculator {
+
+    /**
+     * @return the length of the input vectors of the neural net
+     */
+    int getNumInputs();
+
+    /**
+     * Applies the neural net to vector of pixel band stacks.
+     *
+     * @param nnInput - image vector of band vectors, band vectors are input for neural net
+     * @return float[][] - image vector of output band vector
+     */
+    float[][] calculate(float[][] nnInput);
+
+    /**
+     * Applies the neural net to input vectors which are stored contiguously, as used for the batches of
+     * valid pixels of a tile.
+     *
+     * @param nnInputs   - the input vectors, vector i starts at index i * {@link #getNumInputs()}
+     * @param numVectors - the number of input vectors, the array may be larger
+     * @return float[] - the output vectors, vector i starts at index i * numOutputs
+     */
+    float[] calculate(float[] nnInputs, int numVectors);
+
+    /**
+     * Releases the resources of the neural net.
+     */
+    void dispose();
+}
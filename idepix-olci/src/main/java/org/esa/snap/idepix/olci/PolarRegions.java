@@ -0,0 +1,234 @@
+package org.esa.snap.idepix.olci;
+
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.PixelPos;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+
+import java.awt.Rectangle;
+
+/**
+ * The polar regions (Arctic land, Antarctica) in which the OLCI classification considers clouds over snow.
+ * <p>
+ * Instead of testing each pixel against the polygons with JTS, a tile is classified as a whole first: its
+ * footprint, given by the geo-positions of its boundary pixels, is either completely inside the regions,
+ * completely outside or mixed. Only for mixed tiles, a mask of the tile pixels is rasterized with a plain
+ * point-in-polygon test on the vertices of the polygons.
+ */
+class PolarRegions {
+
+    enum Coverage {
+        INSIDE, OUTSIDE, MIXED
+    }
+
+    private final Polygon[] polygons;
+    private final Geometry regions;
+    // vertices of the closed polygon rings, for the point-in-polygon test
+    private final double[][] ringLons;
+    private final double[][] ringLats;
+
+    PolarRegions(double[][]... polygonCoords) {
+        final GeometryFactory factory = new GeometryFactory();
+        polygons = new Polygon[polygonCoords.length];
+        ringLons = new double[polygonCoords.length][];
+        ringLats = new double[polygonCoords.length][];
+        for (int i = 0; i < polygonCoords.length; i++) {
+            polygons[i] = IdepixOlciUtils.createPolygonFromCoordinateArray(polygonCoords[i]);
+            ringLons[i] = new double[polygonCoords[i].length];
+            ringLats[i] = new double[polygonCoords[i].length];
+            for (int j = 0; j < polygonCoords[i].length; j++) {
+                ringLons[i][j] = polygonCoords[i][j][0];
+                ringLats[i][j] = polygonCoords[i][j][1];
+            }
+        }
+        regions = factory.createMultiPolygon(polygons);
+    }
+
+    /**
+     * @return the Arctic land and Antarctica regions of {@link IdepixOlciConstants}
+     */
+    static PolarRegions create() {
+        return new PolarRegions(IdepixOlciConstants.ARCTIC_POLYGON_COORDS,
+                                IdepixOlciConstants.ANTARCTICA_POLYGON_COORDS);
+    }
+
+    /**
+     * @param geometry - the geometry, e.g. of a product
+     * @return true if the geometry intersects any of the regions
+     */
+    boolean intersects(Geometry geometry) {
+        for (Polygon polygon : polygons) {
+            if (geometry.intersects(polygon)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Point-in-polygon test, equivalent to a JTS 'within' test of the point against the regions except for
+     * points exactly on the boundary.
+     *
+     * @param lon - the longitude
+     * @param lat - the latitude
+     * @return true if the position is inside any of the regions
+     */
+    boolean contains(double lon, double lat) {
+        for (int i = 0; i < ringLons.length; i++) {
+            if (isInsideRing(ringLons[i], ringLats[i], lon, lat)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Classifies a footprint given by the positions of its boundary, in order.
+     *
+     * @param lons - the longitudes of the boundary
+     * @param lats - the latitudes of the boundary
+     * @return the coverage of the footprint by the regions
+     */
+    Coverage getCoverage(double[] lons, double[] lats) {
+        final Coordinate[] coordinates = new Coordinate[lons.length + 1];
+        for (int i = 0; i < lons.length; i++) {
+            if (Double.isNaN(lons[i]) || Double.isNaN(lats[i])) {
+                return Coverage.MIXED;
+            }
+            if (i > 0 && Math.abs(lons[i] - lons[i - 1]) > 180.0) {
+                // the footprint crosses the antimeridian or contains a pole, which is not
+                // represented correctly by a polygon in geographic coordinates
+                return Coverage.MIXED;
+            }
+            coordinates[i] = new Coordinate(lons[i], lats[i]);
+        }
+        if (lons.length < 3 || Math.abs(lons[lons.length - 1] - lons[0]) > 180.0) {
+            return Coverage.MIXED;
+        }
+        coordinates[lons.length] = coordinates[0];
+        final GeometryFactory factory = regions.getFactory();
+        final Geometry footprint = factory.createPolygon(factory.createLinearRing(coordinates), null);
+        if (!footprint.isValid()) {
+            return Coverage.MIXED;
+        }
+        if (!regions.intersects(footprint)) {
+            return Coverage.OUTSIDE;
+        }
+        for (Polygon polygon : polygons) {
+            if (polygon.contains(footprint)) {
+                return Coverage.INSIDE;
+            }
+        }
+        return Coverage.MIXED;
+    }
+
+    /**
+     * Creates the mask of the regions for the pixels of a tile.
+     *
+     * @param geoCoding - the geo-coding of the pixels
+     * @param rectangle - the rectangle of the tile
+     * @return the mask
+     */
+    TileMask createTileMask(GeoCoding geoCoding, Rectangle rectangle) {
+        final double[][] boundary = getBoundaryGeoPositions(geoCoding, rectangle);
+        final Coverage coverage = getCoverage(boundary[0], boundary[1]);
+        if (coverage != Coverage.MIXED) {
+            return new TileMask(rectangle, coverage == Coverage.INSIDE, null);
+        }
+        final boolean[] mask = new boolean[rectangle.width * rectangle.height];
+        final PixelPos pixelPos = new PixelPos();
+        final GeoPos geoPos = new GeoPos();
+        int index = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                pixelPos.setLocation(x, y);
+                geoCoding.getGeoPos(pixelPos, geoPos);
+                mask[index++] = contains(geoPos.lon, geoPos.lat);
+            }
+        }
+        return new TileMask(rectangle, false, mask);
+    }
+
+    // package local for testing
+    static double[][] getBoundaryGeoPositions(GeoCoding geoCoding, Rectangle rectangle) {
+        final int x0 = rectangle.x;
+        final int y0 = rectangle.y;
+        final int x1 = rectangle.x + rectangle.width - 1;
+        final int y1 = rectangle.y + rectangle.height - 1;
+        // clockwise along the pixels of the tile edges, every pixel once
+        final int numPositions = rectangle.width == 1 || rectangle.height == 1 ?
+                rectangle.width * rectangle.height : 2 * (rectangle.width + rectangle.height) - 4;
+        final double[] lons = new double[numPositions];
+        final double[] lats = new double[numPositions];
+        final PixelPos pixelPos = new PixelPos();
+        final GeoPos geoPos = new GeoPos();
+        int index = 0;
+        for (int x = x0; x <= x1 && index < numPositions; x++) {
+            index = addGeoPos(geoCoding, x, y0, pixelPos, geoPos, lons, lats, index);
+        }
+        for (int y = y0 + 1; y <= y1 && index < numPositions; y++) {
+            index = addGeoPos(geoCoding, x1, y, pixelPos, geoPos, lons, lats, index);
+        }
+        for (int x = x1 - 1; x >= x0 && index < numPositions; x--) {
+            index = addGeoPos(geoCoding, x, y1, pixelPos, geoPos, lons, lats, index);
+        }
+        for (int y = y1 - 1; y > y0 && index < numPositions; y--) {
+            index = addGeoPos(geoCoding, x0, y, pixelPos, geoPos, lons, lats, index);
+        }
+        return new double[][]{lons, lats};
+    }
+
+    private static int addGeoPos(GeoCoding geoCoding, int x, int y, PixelPos pixelPos, GeoPos geoPos,
+                                 double[] lons, double[] lats, int index) {
+        pixelPos.setLocation(x, y);
+        geoCoding.getGeoPos(pixelPos, geoPos);
+        lons[index] = geoPos.lon;
+        lats[index] = geoPos.lat;
+        return index + 1;
+    }
+
+    private static boolean isInsideRing(double[] lons, double[] lats, double lon, double lat) {
+        // even-odd rule, the ring is closed (first vertex == last vertex)
+        boolean inside = false;
+        for (int i = 0, j = lons.length - 1; i < lons.length; j = i++) {
+            if ((lats[i] > lat) != (lats[j] > lat) &&
+                    lon < (lons[j] - lons[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lons[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * The mask of the regions for the pixels of a tile.
+     */
+    static class TileMask {
+
+        private final Rectangle rectangle;
+        private final boolean inside;
+        private final boolean[] mask;
+
+        private TileMask(Rectangle rectangle, boolean inside, boolean[] mask) {
+            this.rectangle = rectangle;
+            this.inside = inside;
+            this.mask = mask;
+        }
+
+        /**
+         * @return true if the mask is the same for all pixels of the tile
+         */
+        boolean isUniform() {
+            return mask == null;
+        }
+
+        boolean isInside(int x, int y) {
+            if (mask == null) {
+                return inside;
+            }
+            return mask[(y - rectangle.y) * rectangle.width + (x - rectangle.x)];
+        }
+    }
+}
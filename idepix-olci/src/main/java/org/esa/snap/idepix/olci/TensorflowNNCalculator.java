@@ -9,20 +9,35 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.ByteArrayOutputStream;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Applies a tensorflow model and provides corresponding NN output for given input.
+ * <p>
+ * The calculator holds a pool of sessions, so that several threads can apply the model concurrently. Each
+ * session is used by one thread at a time. Sessions are created on demand, up to the pool size.
  *
  * @author olafd
  */
-class TensorflowNNCalculator {
+class TensorflowNNCalculator implements NNCalculator {
 
     private final String modelDir;
     private final String transformMethod;
 
     private String firstNodeName;
     private String lastNodeName;
+    private final int poolSize;
+    // all models loaded so far, guarded by itself
+    private final List<SavedModelBundle> models;
+    private final BlockingQueue<SavedModelBundle> idleModels;
+
     private SavedModelBundle model;
+    private int numInputs;
 
     /**
      * Provides NN result for given input, applying a neural net which is based on a tensorflow model .
@@ -33,6 +48,20 @@ class TensorflowNNCalculator {
      *                        otherwise this is ignored.
      */
     TensorflowNNCalculator(String modelDir, String transformMethod) {
+        this(modelDir, transformMethod, 1);
+    }
+
+    /**
+     * Provides NN result for given input, applying a neural net which is based on a tensorflow model .
+     *
+     * @param modelDir        - the path of the directory containing the Tensorflow model
+     *                        (e.g. 'nn_training_20190131_I7x24x24x24xO1')
+     * @param transformMethod - the input transformation method. Supported values are 'sqrt' and 'log',
+     *                        otherwise this is ignored.
+     * @param poolSize        - the maximum number of sessions, usually the number of threads computing tiles.
+     *                        If larger than 1, each session uses a single thread for its operations.
+     */
+    TensorflowNNCalculator(String modelDir, String transformMethod, int poolSize) {
         // init of TensorFlow can fail, so we should handle this and give appropriate error message
         try {
             TensorFlow.version(); // triggers init of TensorFlow
@@ -46,6 +75,9 @@ class TensorflowNNCalculator {
 
         this.transformMethod = transformMethod;
         this.modelDir = modelDir;
+        this.poolSize = Math.max(poolSize, 1);
+        this.models = new ArrayList<>();
+        this.idleModels = new LinkedBlockingQueue<>();
         try {
             loadModel();
         } catch (Exception e) {
@@ -65,7 +97,7 @@ class TensorflowNNCalculator {
     }
 
     /**
-     * Getter for the Tensorflow model
+     * Getter for the Tensorflow model, this is the first model of the pool
      *
      * @return model
      */
@@ -91,6 +123,11 @@ class TensorflowNNCalculator {
         return lastNodeName;
     }
 
+    @Override
+    public int getNumInputs() {
+        return numInputs;
+    }
+
 
     // package local for testing
     void setFirstAndLastNodeNameFromTextProtocolBuffer() throws IOException {
@@ -141,9 +178,12 @@ class TensorflowNNCalculator {
 
     private void loadModel() throws Exception {
         // Load a model previously saved by tensorflow Python package
-        model = SavedModelBundle.load(modelDir, "serve");
+        model = createModel();
+        models.add(model);
+        idleModels.add(model);
 //        setFirstAndLastNodeNameFromBinaryProtocolBuffer(model);
         setFirstAndLastNodeNameFromTextProtocolBuffer();
+        numInputs = (int) model.graph().operation(firstNodeName).output(0).shape().size(1);
     }
 
     /**
@@ -169,7 +209,8 @@ class TensorflowNNCalculator {
      * @param nnInput - image vector of band vectors, band vectors are input for neural net
      * @return float[][] - image vector of output band vector (length 1)
      */
-    float[][] calculate(float[][] nnInput) {
+    @Override
+    public float[][] calculate(float[][] nnInput) {
         if (transformMethod.equals("sqrt")) {
             for (int i = 0; i < nnInput.length; i++) {
                 for (int j = 0; j < nnInput[i].length; j++) {
@@ -183,7 +224,8 @@ class TensorflowNNCalculator {
                 }
             }
         }
-        final Session.Runner runner = model.session().runner();
+        final SavedModelBundle pooledModel = acquireModel();
+        final Session.Runner runner = pooledModel.session().runner();
         try (
                 Tensor<?> inputTensor = Tensor.create(nnInput);
                 Tensor<?> outputTensor = runner.feed(firstNodeName, inputTensor).fetch(lastNodeName).run().get(0)
@@ -194,8 +236,108 @@ class TensorflowNNCalculator {
             float[][] m = new float[numPixels][numOutputVars];
             outputTensor.copyTo(m);
             return m;
+        } finally {
+            releaseModel(pooledModel);
         }
     }
 
+    /**
+     * Applies NN to input vectors stored contiguously and returns the output vectors stored contiguously.
+     * Makes sure the Tensors are closed after use.
+     * Requires that loadModel() is run once before.
+     *
+     * @param nnInputs   - the input vectors, vector i starts at index i * {@link #getNumInputs()}
+     * @param numVectors - the number of input vectors, the array may be larger
+     * @return float[] - the output vectors, vector i starts at index i * numOutputs
+     */
+    @Override
+    public float[] calculate(float[] nnInputs, int numVectors) {
+        final int length = numVectors * numInputs;
+        if (transformMethod.equals("sqrt")) {
+            for (int i = 0; i < length; i++) {
+                nnInputs[i] = (float) Math.sqrt(nnInputs[i]);
+            }
+        } else if (transformMethod.equals("log")) {
+            for (int i = 0; i < length; i++) {
+                nnInputs[i] = (float) Math.log10(nnInputs[i]);
+            }
+        }
+        final SavedModelBundle pooledModel = acquireModel();
+        final Session.Runner runner = pooledModel.session().runner();
+        try (
+                Tensor<Float> inputTensor = Tensor.create(new long[]{numVectors, numInputs},
+                                                          FloatBuffer.wrap(nnInputs, 0, length));
+                Tensor<?> outputTensor = runner.feed(firstNodeName, inputTensor).fetch(lastNodeName).run().get(0)
+        ) {
+            final FloatBuffer result = FloatBuffer.allocate(outputTensor.numElements());
+            outputTensor.writeTo(result);
+            return result.array();
+        } finally {
+            releaseModel(pooledModel);
+        }
+    }
 
+    @Override
+    public void dispose() {
+        synchronized (models) {
+            for (SavedModelBundle pooledModel : models) {
+                pooledModel.close();
+            }
+            models.clear();
+            idleModels.clear();
+        }
+    }
+
+    // package local for testing
+    int getNumSessions() {
+        synchronized (models) {
+            return models.size();
+        }
+    }
+
+    // package local for testing
+    SavedModelBundle acquireModel() {
+        SavedModelBundle pooledModel = idleModels.poll();
+        if (pooledModel != null) {
+            return pooledModel;
+        }
+        synchronized (models) {
+            if (models.size() < poolSize) {
+                pooledModel = createModel();
+                models.add(pooledModel);
+                return pooledModel;
+            }
+        }
+        try {
+            return idleModels.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a Tensorflow session.", e);
+        }
+    }
+
+    // package local for testing
+    void releaseModel(SavedModelBundle pooledModel) {
+        idleModels.add(pooledModel);
+    }
+
+    private SavedModelBundle createModel() {
+        final SavedModelBundle.Loader loader = SavedModelBundle.loader(modelDir).withTags("serve");
+        if (poolSize > 1) {
+            // the sessions run in parallel, so a session shall not use several threads itself
+            loader.withConfigProto(createSingleThreadedConfigProto());
+        }
+        return loader.load();
+    }
+
+    private static byte[] createSingleThreadedConfigProto() {
+        // serialized tensorflow.ConfigProto with intra_op_parallelism_threads (field 2) and
+        // inter_op_parallelism_threads (field 5) set to 1
+        final ByteArrayOutputStream configProto = new ByteArrayOutputStream();
+        configProto.write(2 << 3);
+        configProto.write(1);
+        configProto.write(5 << 3);
+        configProto.write(1);
+        return configProto.toByteArray();
+    }
 }
@@ -0,0 +1,170 @@
+package org.esa.snap.idepix.olci;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DenseNeuralNetTest {
+
+    private final static float[] input = new float[]{
+            0.15601175f, 0.57917833f, 0.7634207f, 0.02903139f, 1.7085681f, 0.96827781f, 0.15205044f
+    };
+
+    private String defaultModelDir;
+
+    @Before
+    public void setUp() throws Exception {
+        defaultModelDir = IdepixOlciUtils.installAuxdataNNCtp() + File.separator + CtpOp.DEFAULT_TENSORFLOW_NN_DIR_NAME;
+    }
+
+    @Test
+    public void testCalculate() throws Exception {
+        // same expected results as for the TensorFlow runtime, see TensorflowNNCalculatorTest
+        assertEquals(1.2295055f, calculate(defaultModelDir), 1.E-6);
+        assertEquals(1.3985262f, calculate(getTestModelDir("nn_training_20190131_I7x24x24x24xO1")), 1.E-6);
+        assertEquals(1.60261976f, calculate(getTestModelDir("nn_training_20190131_I7x30x30x30xO1")), 1.E-6);
+        assertEquals(0.9555169f, calculate(getTestModelDir("nn_training_20190131_I7x32x64x64x10xO1")), 1.E-6);
+        assertEquals(1.2884411f, calculate(getTestModelDir("nn_training_20190131_I7x32x64x64x64xO1")), 1.E-6);
+    }
+
+    @Test
+    public void testCalculate_equivalentToTensorflow() throws Exception {
+        final DenseNeuralNet denseNeuralNet = DenseNeuralNet.create(defaultModelDir);
+        final TensorflowNNCalculator tensorflowNNCalculator = new TensorflowNNCalculator(defaultModelDir, "none");
+        try {
+            // input ranges of the CTP retrieval: cos(sza), cos(oza), azimuth difference, refl12, -log(tra13..15)
+            final Random random = new Random(4711);
+            final float[][] nnInputs = new float[1000][];
+            for (int i = 0; i < nnInputs.length; i++) {
+                nnInputs[i] = new float[]{
+                        0.1f + 0.9f * random.nextFloat(), 0.5f + 0.5f * random.nextFloat(),
+                        -1.5f + 3.0f * random.nextFloat(), random.nextFloat(),
+                        2.0f * random.nextFloat(), 1.5f * random.nextFloat(), 0.5f * random.nextFloat()
+                };
+            }
+            final float[] packedNNInputs = pack(nnInputs);
+            final float[][] javaResult = denseNeuralNet.calculate(nnInputs);
+            final float[] packedJavaResult = denseNeuralNet.calculate(packedNNInputs, nnInputs.length);
+            final float[] packedTensorflowResult = tensorflowNNCalculator.calculate(packedNNInputs, nnInputs.length);
+            final float[][] tensorflowResult = tensorflowNNCalculator.calculate(nnInputs);
+
+            assertEquals(tensorflowResult.length, javaResult.length);
+            assertEquals(nnInputs.length, packedJavaResult.length);
+            assertEquals(nnInputs.length, packedTensorflowResult.length);
+            for (int i = 0; i < javaResult.length; i++) {
+                assertEquals(1, javaResult[i].length);
+                assertEquals(tensorflowResult[i][0], javaResult[i][0], 1.E-5);
+                assertEquals(javaResult[i][0], packedJavaResult[i], 0.0f);
+                assertEquals(tensorflowResult[i][0], packedTensorflowResult[i], 0.0f);
+            }
+        } finally {
+            tensorflowNNCalculator.dispose();
+        }
+    }
+
+    @Test
+    public void testCalculate_packedInputsInLargerBuffer() throws Exception {
+        final DenseNeuralNet denseNeuralNet = DenseNeuralNet.create(defaultModelDir);
+        assertEquals(7, denseNeuralNet.getNumInputs());
+
+        // two input vectors, followed by values of a previous, larger batch which must be ignored
+        final float[] nnInputs = new float[4 * 7];
+        Arrays.fill(nnInputs, Float.NaN);
+        System.arraycopy(input, 0, nnInputs, 0, 7);
+        System.arraycopy(input, 0, nnInputs, 7, 7);
+        nnInputs[7] = 0.5f;
+
+        final float[] result = denseNeuralNet.calculate(nnInputs, 2);
+        assertEquals(2, result.length);
+        assertEquals(1.2295055f, result[0], 1.E-6);
+        final float[] secondInput = input.clone();
+        secondInput[0] = 0.5f;
+        assertEquals(denseNeuralNet.calculate(new float[][]{secondInput})[0][0], result[1], 0.0f);
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        final DenseNeuralNet exported = DenseNeuralNetExporter.export(defaultModelDir);
+        final DenseNeuralNet parsed = DenseNeuralNet.create(defaultModelDir);
+
+        assertEquals(7, exported.getNumInputs());
+        assertEquals(1, exported.getNumOutputs());
+        assertArrayEquals(parsed.calculate(new float[][]{input})[0], exported.calculate(new float[][]{input})[0], 0.0f);
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        final DenseNeuralNet denseNeuralNet = DenseNeuralNet.create(defaultModelDir);
+        final StringWriter writer = new StringWriter();
+        denseNeuralNet.write(writer);
+
+        final DenseNeuralNet readNeuralNet = DenseNeuralNet.read(new StringReader(writer.toString()));
+        assertEquals(7, readNeuralNet.getNumInputs());
+        assertEquals(1, readNeuralNet.getNumOutputs());
+        // values are written with full precision
+        assertArrayEquals(denseNeuralNet.calculate(new float[][]{input})[0],
+                          readNeuralNet.calculate(new float[][]{input})[0], 0.0f);
+    }
+
+    @Test
+    public void testReadTextProtocolBuffer_nodesInReverseOrder() throws Exception {
+        final String modelDir = getTestModelDir("nn_training_20190131_I7x24x24x24xO1");
+        final File pbtxtFile = DenseNeuralNet.getTextProtocolBufferFile(modelDir);
+        final List<String> nodes = new ArrayList<>();
+        StringBuilder node = null;
+        for (String line : Files.readAllLines(pbtxtFile.toPath(), StandardCharsets.UTF_8)) {
+            if (line.equals("node {")) {
+                node = new StringBuilder();
+            }
+            if (node != null) {
+                node.append(line).append('\n');
+                if (line.equals("}")) {
+                    nodes.add(node.toString());
+                    node = null;
+                }
+            }
+        }
+        Collections.reverse(nodes);
+
+        // the layers are found along the chain from the input placeholder
+        final DenseNeuralNet reversed = DenseNeuralNet.readTextProtocolBuffer(new StringReader(String.join("", nodes)));
+        assertEquals(7, reversed.getNumInputs());
+        assertEquals(1, reversed.getNumOutputs());
+        assertEquals(1.3985262f, reversed.calculate(new float[][]{input})[0][0], 1.E-6);
+    }
+
+    @Test
+    public void testUnescape() {
+        assertArrayEquals(new byte[]{'a', 0, 10, (byte) 0xff, '\n', '"', '\\', (byte) 0x7f, '1'},
+                          DenseNeuralNet.unescape("a\\000\\012\\377\\n\\\"\\\\\\x7f1"));
+    }
+
+    private static float[] pack(float[][] nnInputs) {
+        final float[] packed = new float[nnInputs.length * nnInputs[0].length];
+        for (int i = 0; i < nnInputs.length; i++) {
+            System.arraycopy(nnInputs[i], 0, packed, i * nnInputs[i].length, nnInputs[i].length);
+        }
+        return packed;
+    }
+
+    private float calculate(String modelDir) throws Exception {
+        return DenseNeuralNet.create(modelDir).calculate(new float[][]{input})[0][0];
+    }
+
+    private String getTestModelDir(String name) {
+        return new File(getClass().getResource(name).getFile()).getAbsolutePath();
+    }
+}
@@ -0,0 +1,196 @@
+package org.esa.snap.idepix.olci;
+
+import eu.esa.opt.processor.rad2refl.Rad2ReflConstants;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.Operator;
+import org.esa.snap.idepix.core.IdepixConstants;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.io.Writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the tile kernel of {@link IdepixOlciClassificationOp} gives the flags of the former pixel by pixel
+ * classification, see {@link IdepixOlciClassificationReference}.
+ */
+public class IdepixOlciClassificationKernelTest {
+
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 16;
+    // pixel corners on exact binary fractions of a degree, so the former and the current sampling of the
+    // geo-position are inside the same 1 degree cell of the sea ice climatology
+    private static final double PIXEL_SIZE = 0.125;
+    private static final double EASTING = 10.0;
+    private static final double NORTHING = 60.0;
+
+    private static final String SNOW_ICE_THRESHOLDS = "{\"CLEAR_SNOW_ICE_BOUNDS\": [-1000, 1000]}";
+
+    private Product l1bProduct;
+    private Product rhotoaProduct;
+    private Product iceMaskProduct;
+
+    @Before
+    public void setUp() throws Exception {
+        l1bProduct = createL1bProduct();
+        rhotoaProduct = createRhotoaProduct();
+        iceMaskProduct = createIceMaskProduct();
+    }
+
+    @Test
+    public void testFlags_sameAsPixelByPixel() {
+        final Operator operator = createOperator(null);
+        try {
+            final IdepixOlciNNThresholds thresholds = ((IdepixOlciClassificationOp) operator).readNNThresholds();
+            assertFlags(new IdepixOlciClassificationReference(l1bProduct, rhotoaProduct, iceMaskProduct, thresholds),
+                        getFlags(operator));
+        } finally {
+            operator.dispose();
+        }
+    }
+
+    @Test
+    public void testSnowIceFlags_sameAsPixelByPixel() throws Exception {
+        final File thresholdsFile = File.createTempFile("olci-nn-", "-thresholds.json");
+        try (Writer writer = new FileWriter(thresholdsFile)) {
+            writer.write(SNOW_ICE_THRESHOLDS);
+        }
+        final Operator operator = createOperator(thresholdsFile);
+        try {
+            final IdepixOlciNNThresholds thresholds = IdepixOlciNNThresholds.read(new StringReader(SNOW_ICE_THRESHOLDS));
+            final Raster flags = getFlags(operator);
+            assertFlags(new IdepixOlciClassificationReference(l1bProduct, rhotoaProduct, iceMaskProduct, thresholds),
+                        flags);
+
+            // water pixels are snow/ice inside the ice cell of the climatology only
+            int numSnowIce = 0;
+            int numNoSnowIce = 0;
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = WIDTH / 2; x < WIDTH; x++) {
+                    final int flag = flags.getSample(x, y, 0);
+                    if ((flag & (1 << IdepixConstants.IDEPIX_INVALID)) == 0) {
+                        final boolean isSnowIce = (flag & (1 << IdepixConstants.IDEPIX_SNOW_ICE)) != 0;
+                        assertEquals("(" + x + ", " + y + ")", isInIceCell(x, y), isSnowIce);
+                        if (isSnowIce) {
+                            numSnowIce++;
+                        } else {
+                            numNoSnowIce++;
+                        }
+                    }
+                }
+            }
+            assertTrue(numSnowIce > 0);
+            assertTrue(numNoSnowIce > 0);
+        } finally {
+            operator.dispose();
+            thresholdsFile.delete();
+        }
+    }
+
+    private Operator createOperator(File thresholdsFile) {
+        final Operator operator = new IdepixOlciClassificationOp.Spi().createOperator();
+        operator.setSourceProduct("l1b", l1bProduct);
+        operator.setSourceProduct("rhotoa", rhotoaProduct);
+        operator.setSourceProduct("iceMask", iceMaskProduct);
+        if (thresholdsFile != null) {
+            operator.setParameter("alternativeNNThresholdsFile", thresholdsFile);
+        }
+        return operator;
+    }
+
+    private static Raster getFlags(Operator operator) {
+        return operator.getTargetProduct().getBand(IdepixConstants.CLASSIF_BAND_NAME).getSourceImage().getData();
+    }
+
+    private static void assertFlags(IdepixOlciClassificationReference reference, Raster flags) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals("(" + x + ", " + y + ")", reference.computeFlag(x, y), flags.getSample(x, y, 0));
+            }
+        }
+    }
+
+    // the upper right 1 degree cell of the scene
+    private static boolean isInIceCell(int x, int y) {
+        return x >= 1.0 / PIXEL_SIZE && y < 1.0 / PIXEL_SIZE;
+    }
+
+    // land to the left, water to the right, with inland water, coastline, glint, bright and invalid pixels
+    private static Product createL1bProduct() throws Exception {
+        final Product product = new Product("l1b", "OL_1_EFR", WIDTH, HEIGHT);
+        product.setStartTime(ProductData.UTC.parse("2023-06-15 10:00:00", "yyyy-MM-dd HH:mm:ss"));
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, WIDTH, HEIGHT, EASTING, NORTHING,
+                                                   PIXEL_SIZE, PIXEL_SIZE, 0.0, 0.0));
+        final int[] qualityFlags = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int flag = 0;
+                if (x < WIDTH / 2) {
+                    flag |= 1 << IdepixOlciConstants.L1_F_LAND;
+                    if (y % 4 == 1) {
+                        flag |= 1 << IdepixOlciConstants.L1_F_FRESH_INLAND_WATER;
+                    }
+                }
+                if (x == WIDTH / 2 - 1) {
+                    flag |= 1 << IdepixOlciConstants.L1_F_COASTLINE;
+                }
+                if (x >= WIDTH / 2 && y % 3 == 0) {
+                    flag |= 1 << IdepixOlciConstants.L1_F_GLINT;
+                }
+                if ((x + y) % 5 == 0) {
+                    flag |= 1 << IdepixOlciConstants.L1_F_BRIGHT;
+                }
+                if (x == WIDTH - 1 && y == HEIGHT - 1) {
+                    flag |= 1 << IdepixOlciConstants.L1_F_INVALID;
+                }
+                qualityFlags[y * WIDTH + x] = flag;
+            }
+        }
+        final Band qualityFlagsBand = new Band(IdepixOlciConstants.OLCI_QUALITY_FLAGS_BAND_NAME,
+                                               ProductData.TYPE_INT32, WIDTH, HEIGHT);
+        qualityFlagsBand.setDataElems(qualityFlags);
+        product.addBand(qualityFlagsBand);
+        return product;
+    }
+
+    // dark to bright reflectances with varying spectral slopes, and one pixel without a valid reflectance
+    private static Product createRhotoaProduct() {
+        final Product product = new Product("rhotoa", "rhotoa", WIDTH, HEIGHT);
+        for (int i = 0; i < Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length; i++) {
+            final float[] reflectances = new float[WIDTH * HEIGHT];
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    final double brightness = 0.02 + 0.9 * ((3 * x + 5 * y) % 16) / 15.0;
+                    final double slope = 1.0 + 0.02 * (y % 4 - 1.5) * i;
+                    reflectances[y * WIDTH + x] = (float) Math.max(0.005, brightness * slope);
+                }
+            }
+            reflectances[WIDTH + 2] = Rad2ReflConstants.RAD_TO_REFL_NODATA;
+            final Band band = new Band(Rad2ReflConstants.OLCI_REFL_BAND_NAMES[i], ProductData.TYPE_FLOAT32, WIDTH, HEIGHT);
+            band.setDataElems(reflectances);
+            product.addBand(band);
+        }
+        return product;
+    }
+
+    // a global 1 degree climatology with ice in the upper right cell of the scene only, which is water
+    private static Product createIceMaskProduct() {
+        final Product product = new Product("iceMask", "iceMask", 360, 180);
+        final float[] iceClimatology = new float[360 * 180];
+        iceClimatology[(int) (90.0 - NORTHING) * 360 + (int) (180.0 + EASTING + 1.0)] = 50.0f;
+        final Band band = new Band("ice_climatology", ProductData.TYPE_FLOAT32, 360, 180);
+        band.setDataElems(iceClimatology);
+        product.addBand(band);
+        return product;
+    }
+}
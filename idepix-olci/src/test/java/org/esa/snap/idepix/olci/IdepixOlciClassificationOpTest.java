@@ -12,8 +12,8 @@ public class IdepixOlciClassificationOpTest extends TestCase {
 
     public void testReadNNThresholds() {
         final IdepixOlciClassificationOp operator = (IdepixOlciClassificationOp) new IdepixOlciClassificationOp.Spi().createOperator();
-        operator.readNNThresholds();
-        assertEquals(0.0, IdepixOlciCloudNNInterpreter.NNThreshold.CLEAR_SNOW_ICE_BOUNDS.range.getMin());
-        assertEquals(4.79, IdepixOlciCloudNNInterpreter.NNThreshold.SPATIAL_MIXED_BOUNDS_LAND.range.getMax());
+        final IdepixOlciNNThresholds thresholds = operator.readNNThresholds();
+        assertEquals(0.0, thresholds.getRange(IdepixOlciCloudNNInterpreter.NNThreshold.CLEAR_SNOW_ICE_BOUNDS).getMin());
+        assertEquals(4.79, thresholds.getRange(IdepixOlciCloudNNInterpreter.NNThreshold.SPATIAL_MIXED_BOUNDS_LAND).getMax());
     }
 }
\ No newline at end of file
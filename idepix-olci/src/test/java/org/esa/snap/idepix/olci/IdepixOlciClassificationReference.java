@@ -0,0 +1,154 @@
+package org.esa.snap.idepix.olci;
+
+import eu.esa.opt.processor.rad2refl.Rad2ReflConstants;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.idepix.core.IdepixConstants;
+import org.esa.snap.idepix.core.seaice.LakeSeaIceAuxdata;
+import org.esa.snap.idepix.core.seaice.LakeSeaIceClassification;
+import org.esa.snap.idepix.core.util.IdepixIO;
+import org.esa.snap.idepix.core.util.IdepixUtils;
+import org.esa.snap.idepix.core.util.SchillerNeuralNetWrapper;
+
+import java.awt.image.Raster;
+import java.util.Calendar;
+
+/**
+ * The pixel classification of {@link IdepixOlciClassificationOp} as it was done before the tile kernel on primitive
+ * arrays: pixel by pixel, with the geo-position of {@code PixelPos(x, y)} for the sea ice climatology. Without the
+ * SRTM mask and the O2 correction product. Kept for testing that the classification flags are unchanged.
+ */
+class IdepixOlciClassificationReference {
+
+    private static final String OLCI_202306_NET_NAME = "class-sequential-i21x42x8x4x2o1-5489.net";
+
+    private static final double THRESH_LAND_MINBRIGHT1 = 0.3;
+    private static final double THRESH_LAND_MINBRIGHT2 = 0.25;
+    private static final double THRESH_WATER_MINBRIGHT1 = 0.2;
+    private static final double THRESH_WATER_MINBRIGHT2 = 0.08;
+    private static final double SEA_ICE_CLIM_THRESHOLD = 10.0;
+
+    private final Product l1bProduct;
+    private final Raster l1Flags;
+    private final Raster[] reflectances;
+    private final SchillerNeuralNetWrapper neuralNet;
+    private final IdepixOlciCloudNNInterpreter nnInterpreter;
+    private final LakeSeaIceClassification lakeSeaIceClassification;
+
+    IdepixOlciClassificationReference(Product l1bProduct, Product rhotoaProduct, Product iceMaskProduct,
+                                      IdepixOlciNNThresholds thresholds) {
+        this.l1bProduct = l1bProduct;
+        l1Flags = l1bProduct.getBand(IdepixOlciConstants.OLCI_QUALITY_FLAGS_BAND_NAME).getSourceImage().getData();
+        reflectances = new Raster[Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length];
+        for (int i = 0; i < reflectances.length; i++) {
+            reflectances[i] = rhotoaProduct.getBand(Rad2ReflConstants.OLCI_REFL_BAND_NAMES[i]).getSourceImage().getData();
+        }
+        neuralNet = SchillerNeuralNetWrapper.create(IdepixOlciClassificationOp.class, OLCI_202306_NET_NAME).get();
+        nnInterpreter = IdepixOlciCloudNNInterpreter.create(thresholds);
+        final int monthIndex = l1bProduct.getStartTime().getAsCalendar().get(Calendar.MONTH);
+        lakeSeaIceClassification = new LakeSeaIceClassification(iceMaskProduct, LakeSeaIceAuxdata.AUXDATA_DIRECTORY,
+                                                                 monthIndex + 1);
+    }
+
+    int computeFlag(int x, int y) {
+        final float[] olciReflectances = new float[reflectances.length];
+        for (int i = 0; i < reflectances.length; i++) {
+            olciReflectances[i] = reflectances[i].getSampleFloat(x, y, 0);
+        }
+
+        int flag = 0;
+        final boolean l1Invalid = isL1FlagSet(x, y, IdepixOlciConstants.L1_F_INVALID);
+        flag = setFlag(flag, IdepixConstants.IDEPIX_INVALID, l1Invalid || !IdepixIO.areAllReflectancesValid(olciReflectances));
+        flag = setFlag(flag, IdepixConstants.IDEPIX_BRIGHT, isL1FlagSet(x, y, IdepixOlciConstants.L1_F_BRIGHT));
+        final boolean isCoastline = isL1FlagSet(x, y, IdepixOlciConstants.L1_F_COASTLINE);
+        flag = setFlag(flag, IdepixConstants.IDEPIX_COASTLINE, isCoastline);
+
+        final boolean isLand = isL1FlagSet(x, y, IdepixOlciConstants.L1_F_LAND) &&
+                !isL1FlagSet(x, y, IdepixOlciConstants.L1_F_FRESH_INLAND_WATER);
+        final boolean isInlandWater = isL1FlagSet(x, y, IdepixOlciConstants.L1_F_LAND) &&
+                isL1FlagSet(x, y, IdepixOlciConstants.L1_F_FRESH_INLAND_WATER);
+        flag = setFlag(flag, IdepixConstants.IDEPIX_LAND, isLand || isCoastline);
+
+        final double nnOutput = getNNOutput(olciReflectances);
+        if ((isLand && !isInlandWater) || isCoastline) {
+            return classifyOverLand(flag, nnOutput, olciReflectances);
+        } else {
+            return classifyOverWater(flag, nnOutput, olciReflectances, x, y, isInlandWater);
+        }
+    }
+
+    private int classifyOverWater(int flag, double nnOutput, float[] olciReflectances, int x, int y,
+                                  boolean isInlandWater) {
+        if (isFlagSet(flag, IdepixConstants.IDEPIX_INVALID)) {
+            return flag;
+        }
+        final boolean isGlint = isL1FlagSet(x, y, IdepixOlciConstants.L1_F_GLINT);
+        final boolean cloudSure = olciReflectances[16] > THRESH_WATER_MINBRIGHT1 && nnInterpreter.isCloudSure(nnOutput);
+        final boolean cloudAmbiguous = olciReflectances[16] > THRESH_WATER_MINBRIGHT2 &&
+                nnInterpreter.isCloudAmbiguous(nnOutput, false, isGlint);
+        flag = setFlag(flag, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, cloudAmbiguous);
+        flag = setFlag(flag, IdepixConstants.IDEPIX_CLOUD_SURE, cloudSure);
+        flag = setFlag(flag, IdepixConstants.IDEPIX_CLOUD, cloudAmbiguous || cloudSure);
+
+        final GeoPos geoPos = IdepixUtils.getGeoPos(l1bProduct.getSceneGeoCoding(), x, y);
+        if (isPixelClassifiedAsLakeSeaIce(geoPos) && nnInterpreter.isSnowIce(nnOutput)) {
+            flag = setFlag(flag, IdepixConstants.IDEPIX_SNOW_ICE, true);
+            flag = setFlag(flag, IdepixConstants.IDEPIX_CLOUD_SURE, false);
+            flag = setFlag(flag, IdepixConstants.IDEPIX_CLOUD, false);
+        }
+
+        if (isInlandWater && cloudAmbiguous) {
+            final double ndvi = (olciReflectances[16] - olciReflectances[7]) / (olciReflectances[16] + olciReflectances[7]);
+            if (ndvi > 0.07) {
+                flag = setFlag(flag, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, false);
+                flag = setFlag(flag, IdepixConstants.IDEPIX_CLOUD, false);
+                flag = setFlag(flag, IdepixConstants.IDEPIX_LAND, true);
+            }
+            if (isL1FlagSet(x, y, IdepixOlciConstants.L1_F_BRIGHT)) {
+                flag = setFlag(flag, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, true);
+                flag = setFlag(flag, IdepixConstants.IDEPIX_CLOUD, true);
+            }
+        }
+        return flag;
+    }
+
+    private int classifyOverLand(int flag, double nnOutput, float[] olciReflectances) {
+        if (isFlagSet(flag, IdepixConstants.IDEPIX_INVALID)) {
+            return flag;
+        }
+        final boolean isCloudSure = olciReflectances[2] > THRESH_LAND_MINBRIGHT1 && nnInterpreter.isCloudSure(nnOutput);
+        final boolean isCloudAmbiguous = olciReflectances[2] > THRESH_LAND_MINBRIGHT2 &&
+                nnInterpreter.isCloudAmbiguous(nnOutput, true, false);
+        flag = setFlag(flag, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, isCloudAmbiguous);
+        flag = setFlag(flag, IdepixConstants.IDEPIX_CLOUD_SURE, isCloudSure);
+        flag = setFlag(flag, IdepixConstants.IDEPIX_CLOUD, isCloudAmbiguous || isCloudSure);
+        flag = setFlag(flag, IdepixConstants.IDEPIX_SNOW_ICE, nnInterpreter.isSnowIce(nnOutput));
+        return flag;
+    }
+
+    private double getNNOutput(float[] olciReflectances) {
+        final double[] nnInput = neuralNet.getInputVector();
+        for (int i = 0; i < nnInput.length; i++) {
+            nnInput[i] = Math.sqrt(olciReflectances[i]);
+        }
+        return neuralNet.calc(nnInput)[0];
+    }
+
+    private boolean isPixelClassifiedAsLakeSeaIce(GeoPos geoPos) {
+        final int lakeSeaIceMaskX = (int) (180.0 + geoPos.lon);
+        final int lakeSeaIceMaskY = (int) (90.0 - geoPos.lat);
+        return lakeSeaIceClassification.getMonthlyMaskValue(lakeSeaIceMaskX, lakeSeaIceMaskY) >= SEA_ICE_CLIM_THRESHOLD;
+    }
+
+    private boolean isL1FlagSet(int x, int y, int bitIndex) {
+        return isFlagSet(l1Flags.getSample(x, y, 0), bitIndex);
+    }
+
+    private static boolean isFlagSet(int flag, int bitIndex) {
+        return (flag & (1 << bitIndex)) != 0;
+    }
+
+    private static int setFlag(int flag, int bitIndex, boolean value) {
+        return value ? flag | (1 << bitIndex) : flag & ~(1 << bitIndex);
+    }
+}
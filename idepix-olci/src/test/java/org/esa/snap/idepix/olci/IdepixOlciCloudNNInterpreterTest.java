@@ -0,0 +1,175 @@
+package org.esa.snap.idepix.olci;
+
+import eu.esa.opt.processor.rad2refl.Rad2ReflConstants;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.Operator;
+import org.esa.snap.idepix.core.IdepixConstants;
+import org.junit.Test;
+
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.esa.snap.idepix.olci.IdepixOlciCloudNNInterpreter.NNThreshold;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IdepixOlciCloudNNInterpreterTest {
+
+    private static final String NN_2018_THRESHOLDS_FILE = "11x10x4x3x2_207.9-thresholds.json";
+    private static final String NN_202306_THRESHOLDS_FILE = "class-sequential-i21x42x8x4x2o1-5489-thresholds.json";
+
+    private static final int WIDTH = 6;
+    private static final int HEIGHT = 4;
+
+    @Test
+    public void testReadThresholds() throws IOException {
+        final IdepixOlciNNThresholds thresholds = IdepixOlciNNThresholds.read(
+                new StringReader("{\"OPAQUE_CLOUD_BOUNDS\": [1.1, 2.75], \"CLEAR_SNOW_ICE_BOUNDS\": [0, 1]}"));
+        assertEquals(1.1, thresholds.getRange(NNThreshold.OPAQUE_CLOUD_BOUNDS).getMin(), 0.0);
+        assertEquals(2.75, thresholds.getRange(NNThreshold.OPAQUE_CLOUD_BOUNDS).getMax(), 0.0);
+        assertEquals(1.0, thresholds.getRange(NNThreshold.CLEAR_SNOW_ICE_BOUNDS).getMax(), 0.0);
+        // missing thresholds get an empty range
+        assertFalse(thresholds.getRange(NNThreshold.SEMI_TRANS_CLOUD_BOUNDS).contains(0.0));
+    }
+
+    @Test
+    public void testInterpreters() throws IOException {
+        final IdepixOlciCloudNNInterpreter nn2018 = IdepixOlciCloudNNInterpreter.create(read(NN_2018_THRESHOLDS_FILE));
+        final IdepixOlciCloudNNInterpreter nn202306 = IdepixOlciCloudNNInterpreter.create(read(NN_202306_THRESHOLDS_FILE));
+
+        assertTrue(nn2018.isCloudSure(1.5));
+        assertFalse(nn2018.isSnowIce(1.5));
+        assertFalse(nn202306.isCloudSure(1.5));
+        assertTrue(nn202306.isSnowIce(1.5));
+
+        assertTrue(nn2018.isCloudAmbiguous(3.8, true, false));
+        assertFalse(nn2018.isCloudAmbiguous(3.8, false, false));
+        assertTrue(nn202306.isCloudAmbiguous(3.8, false, false));
+        assertFalse(nn202306.isCloudAmbiguous(3.8, false, true));
+    }
+
+    @Test
+    public void testClassificationOpsWithDifferentThresholdsConcurrently() throws Exception {
+        // two kinds of classification operators in the same JVM, one classifying every NN value as cloud sure and
+        // the other one as snow/ice, each computing its flags while the other one does the same
+        final File cloudSureThresholdsFile = writeThresholdsFile("{\"OPAQUE_CLOUD_BOUNDS\": [-1000, 1000]}");
+        final File snowIceThresholdsFile = writeThresholdsFile("{\"CLEAR_SNOW_ICE_BOUNDS\": [-1000, 1000]}");
+        final Product l1bProduct = createL1bProduct();
+        final Product rhotoaProduct = createRhotoaProduct();
+        final Product iceMaskProduct = createIceMaskProduct();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Raster>> cloudSureFlags = new ArrayList<>();
+            final List<Future<Raster>> snowIceFlags = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                cloudSureFlags.add(executor.submit(() -> computeClassificationFlags(
+                        l1bProduct, rhotoaProduct, iceMaskProduct, cloudSureThresholdsFile)));
+                snowIceFlags.add(executor.submit(() -> computeClassificationFlags(
+                        l1bProduct, rhotoaProduct, iceMaskProduct, snowIceThresholdsFile)));
+            }
+            for (Future<Raster> flags : cloudSureFlags) {
+                assertFlags(flags.get(), true);
+            }
+            for (Future<Raster> flags : snowIceFlags) {
+                assertFlags(flags.get(), false);
+            }
+        } finally {
+            executor.shutdown();
+            cloudSureThresholdsFile.delete();
+            snowIceThresholdsFile.delete();
+        }
+    }
+
+    private static IdepixOlciNNThresholds read(String resourceName) throws IOException {
+        try (Reader reader = new InputStreamReader(
+                IdepixOlciNNThresholds.class.getResourceAsStream(resourceName))) {
+            return IdepixOlciNNThresholds.read(reader);
+        }
+    }
+
+    private static Raster computeClassificationFlags(Product l1bProduct, Product rhotoaProduct,
+                                                     Product iceMaskProduct, File thresholdsFile) {
+        final Operator operator = new IdepixOlciClassificationOp.Spi().createOperator();
+        operator.setSourceProduct("l1b", l1bProduct);
+        operator.setSourceProduct("rhotoa", rhotoaProduct);
+        operator.setSourceProduct("iceMask", iceMaskProduct);
+        operator.setParameter("alternativeNNThresholdsFile", thresholdsFile);
+        operator.setParameter("useLakeAndSeaIceClimatology", false);
+        try {
+            return operator.getTargetProduct().getBand(IdepixConstants.CLASSIF_BAND_NAME).getSourceImage().getData();
+        } finally {
+            operator.dispose();
+        }
+    }
+
+    private static void assertFlags(Raster flags, boolean isCloudSure) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final int flag = flags.getSample(x, y, 0);
+                assertEquals(isCloudSure, (flag & (1 << IdepixConstants.IDEPIX_CLOUD_SURE)) != 0);
+                assertEquals(isCloudSure, (flag & (1 << IdepixConstants.IDEPIX_CLOUD)) != 0);
+                assertEquals(!isCloudSure, (flag & (1 << IdepixConstants.IDEPIX_SNOW_ICE)) != 0);
+            }
+        }
+    }
+
+    private static File writeThresholdsFile(String json) throws IOException {
+        final File file = File.createTempFile("olci-nn-", "-thresholds.json");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(json);
+        }
+        return file;
+    }
+
+    // land pixels of the L1b product
+    private static Product createL1bProduct() throws ParseException {
+        final Product product = new Product("l1b", "OL_1_EFR", WIDTH, HEIGHT);
+        product.setStartTime(ProductData.UTC.parse("2023-06-15 10:00:00", "yyyy-MM-dd HH:mm:ss"));
+        final Band qualityFlagsBand = new Band(IdepixOlciConstants.OLCI_QUALITY_FLAGS_BAND_NAME,
+                                               ProductData.TYPE_INT32, WIDTH, HEIGHT);
+        final int[] qualityFlags = new int[WIDTH * HEIGHT];
+        Arrays.fill(qualityFlags, 1 << IdepixOlciConstants.L1_F_LAND);
+        qualityFlagsBand.setDataElems(qualityFlags);
+        product.addBand(qualityFlagsBand);
+        return product;
+    }
+
+    // bright TOA reflectances, above the minimum brightness of the land cloud tests
+    private static Product createRhotoaProduct() {
+        final Product product = new Product("rhotoa", "rhotoa", WIDTH, HEIGHT);
+        for (String bandName : Rad2ReflConstants.OLCI_REFL_BAND_NAMES) {
+            final Band band = new Band(bandName, ProductData.TYPE_FLOAT32, WIDTH, HEIGHT);
+            final float[] reflectances = new float[WIDTH * HEIGHT];
+            Arrays.fill(reflectances, 0.5f);
+            band.setDataElems(reflectances);
+            product.addBand(band);
+        }
+        return product;
+    }
+
+    // replaces the default ice climatology, which is not used by the test
+    private static Product createIceMaskProduct() {
+        final Product product = new Product("iceMask", "iceMask", 2, 1);
+        final Band band = new Band("ice_climatology", ProductData.TYPE_FLOAT32, 2, 1);
+        band.setDataElems(new float[2]);
+        product.addBand(band);
+        return product;
+    }
+}
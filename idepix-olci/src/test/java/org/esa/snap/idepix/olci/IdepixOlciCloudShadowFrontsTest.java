@@ -0,0 +1,337 @@
+package org.esa.snap.idepix.olci;
+
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.PixelPos;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.TiePointGeoCoding;
+import org.esa.snap.core.datamodel.TiePointGrid;
+import org.esa.snap.core.gpf.Tile;
+import org.esa.snap.core.gpf.internal.TileImpl;
+import org.esa.snap.idepix.core.CloudShadowFronts;
+import org.esa.snap.idepix.core.IdepixConstants;
+import org.esa.snap.idepix.core.operators.CloudBuffer;
+import org.esa.snap.idepix.core.util.IdepixUtils;
+import org.esa.snap.idepix.core.util.TileSummary;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IdepixOlciCloudShadowFrontsTest {
+
+    // about 300 m pixels, the shadow search paths of the low sun reach beyond the scene
+    private static final int WIDTH = 101;
+    private static final int HEIGHT = 91;
+    private static final int TIE_POINT_SPACING = 10;
+
+    private static final int CLOUD = 1 << IdepixConstants.IDEPIX_CLOUD;
+    private static final int INVALID = 1 << IdepixConstants.IDEPIX_INVALID;
+
+    private Product product;
+    private Rectangle sourceRectangle;
+    private Tile szaTile;
+    private Tile saaTile;
+    private Tile ozaTile;
+    private Tile oaaTile;
+    private Tile ctpTile;
+    private Tile slpTile;
+    private Tile[] temperatureProfileTiles;
+    private Tile altTile;
+    private Tile sourceFlagTile;
+    private int tileCount;
+
+    @Before
+    public void setUp() {
+        product = new Product("scene", "test", WIDTH, HEIGHT);
+        product.setSceneGeoCoding(createGeoCoding());
+        sourceRectangle = new Rectangle(0, 0, WIDTH, HEIGHT);
+
+        final Random random = new Random(4711);
+        szaTile = createTile(random, 55.0, 65.0);
+        saaTile = createTile(random, 140.0, 160.0);
+        ozaTile = createTile(random, 0.0, 40.0);
+        oaaTile = createTile(random, 95.0, 105.0);
+        ctpTile = createTile(random, 250.0, 900.0);
+        slpTile = createTile(random, 1005.0, 1020.0);
+        // negative altitudes are bathymetry
+        altTile = createTile(random, -10.0, 500.0);
+        temperatureProfileTiles = new Tile[IdepixOlciConstants.referencePressureLevels.length];
+        for (int i = 0; i < temperatureProfileTiles.length; i++) {
+            temperatureProfileTiles[i] = createTile(random, 290.0 - 3.2 * i, 291.0 - 3.2 * i);
+        }
+        sourceFlagTile = createSourceFlagTile(random);
+    }
+
+    @Test
+    public void testComputeCloudShadow_sameAsReference() {
+        // a tile inside the scene and tiles at its borders
+        final Rectangle[] targetRectangles = {
+                new Rectangle(15, 12, 30, 25), new Rectangle(0, 0, 20, 16), new Rectangle(81, 71, 20, 20)
+        };
+        int numShadowPixels = 0;
+        int numPixels = 0;
+        for (Rectangle targetRectangle : targetRectangles) {
+            final Tile targetTile = createTargetFlagTile(targetRectangle);
+            final Tile referenceTargetTile = createTargetFlagTile(targetRectangle);
+
+            new IdepixOlciCloudShadowFronts(product.getSceneGeoCoding(), szaTile, saaTile, ozaTile, oaaTile,
+                                            ctpTile, slpTile, temperatureProfileTiles, altTile)
+                    .computeCloudShadow(sourceFlagTile, targetTile);
+            new IdepixOlciCloudShadowFrontsReference(product.getSceneGeoCoding(), szaTile, saaTile, ozaTile, oaaTile,
+                                                     ctpTile, slpTile, temperatureProfileTiles, altTile)
+                    .computeCloudShadow(sourceFlagTile, referenceTargetTile);
+
+            for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+                for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                    assertEquals("pixel " + x + "," + y,
+                                 referenceTargetTile.getSampleInt(x, y), targetTile.getSampleInt(x, y));
+                    if (targetTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD_SHADOW)) {
+                        numShadowPixels++;
+                    }
+                    numPixels++;
+                }
+            }
+        }
+        // the scene has shadows, but is not shadowed everywhere
+        assertTrue(numShadowPixels > 0);
+        assertTrue(numShadowPixels < numPixels / 2);
+    }
+
+    @Test
+    public void testShadowGeometry_cloudHeightsAsPerPixel() {
+        final Rectangle targetRectangle = new Rectangle(15, 12, 30, 25);
+        final Tile targetTile = createTargetFlagTile(targetRectangle);
+        final IdepixOlciCloudShadowFronts cloudShadowFronts =
+                new IdepixOlciCloudShadowFronts(product.getSceneGeoCoding(), szaTile, saaTile, ozaTile, oaaTile,
+                                                ctpTile, slpTile, temperatureProfileTiles, altTile);
+        final IdepixOlciCloudShadowFronts.ShadowGeometry geometry =
+                cloudShadowFronts.new ShadowGeometry(sourceFlagTile, targetTile);
+
+        final double[] temperature = new double[temperatureProfileTiles.length];
+        int numCloudPixels = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final boolean isCloud = targetRectangle.contains(x, y)
+                        ? targetTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD)
+                        : sourceFlagTile.getSampleBit(x, y, IdepixConstants.IDEPIX_CLOUD);
+                assertEquals("pixel " + x + "," + y, isCloud, geometry.isCloudForShadow(x, y));
+                if (isCloud) {
+                    // the height as it was computed for each pixel on each search path
+                    final float ctp = ctpTile.getSampleFloat(x, y);
+                    final float slp = slpTile.getSampleFloat(x, y);
+                    for (int i = 0; i < temperature.length; i++) {
+                        temperature[i] = temperatureProfileTiles[i].getSampleDouble(x, y);
+                    }
+                    final float cloudHeight = (float) IdepixOlciUtils.getRefinedHeightFromCtp(ctp, slp, temperature);
+                    assertEquals("pixel " + x + "," + y, cloudHeight, geometry.getCloudHeight(x, y), 0.0f);
+                    numCloudPixels++;
+                }
+            }
+        }
+        assertTrue(numCloudPixels > 0);
+    }
+
+    @Test
+    public void testGetShadowSearchExtent_boundsShadowPaths() {
+        // a high sun, so that the full search paths end within the scene
+        szaTile = createTile(new Random(815), 20.0, 30.0);
+        final GeoCoding geoCoding = product.getSceneGeoCoding();
+        final Rectangle[] targetRectangles = {new Rectangle(35, 30, 31, 31), new Rectangle(25, 25, 20, 40)};
+        for (Rectangle targetRectangle : targetRectangles) {
+            final int extent = IdepixOlciCloudShadowFronts.getShadowSearchExtent(geoCoding, szaTile,
+                                                                                 targetRectangle, 1000);
+            int maxPathLength = 0;
+            for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+                for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                    // the end of the search path where the sun ray reaches the maximum cloud height
+                    final double sza = szaTile.getSampleDouble(x, y);
+                    final double saaApparent = IdepixOlciUtils.computeApparentSaa(sza, saaTile.getSampleDouble(x, y),
+                                                                                  ozaTile.getSampleDouble(x, y),
+                                                                                  oaaTile.getSampleDouble(x, y));
+                    final GeoPos geoPos = geoCoding.getGeoPos(new PixelPos(x + 0.5, y + 0.5), null);
+                    final double cloudDistanceMax = 12_000 / Math.tan(Math.toRadians(90.0 - sza));
+                    final GeoPos endGeoPos = CloudShadowFronts.lineWithAngle(geoPos, cloudDistanceMax,
+                                                                             Math.toRadians(saaApparent) + Math.PI);
+                    final PixelPos endPixelPos = geoCoding.getPixelPos(endGeoPos, null);
+                    assertTrue(endPixelPos.isValid());
+
+                    final int pathLength = Math.max(Math.abs((int) Math.round(endPixelPos.x) - x),
+                                                    Math.abs((int) Math.round(endPixelPos.y) - y));
+                    assertTrue("pixel " + x + "," + y, pathLength <= extent);
+                    maxPathLength = Math.max(maxPathLength, pathLength);
+                }
+            }
+            // bounded, but not by a wide margin
+            assertTrue(maxPathLength > 10);
+            assertTrue(extent < 2 * maxPathLength);
+        }
+    }
+
+    @Test
+    public void testGetShadowSourceRectangle_sameFlagsAsFixedExtent() {
+        // with these sun zenith angles the derived extent is below the FR extent
+        szaTile = createTile(new Random(42), 30.0, 45.0);
+        final GeoCoding geoCoding = product.getSceneGeoCoding();
+        final int tileWidth = 25;
+        final int tileHeight = 23;
+        int numSmallerSourceRectangles = 0;
+        // the fixed FR and RR extents, without and with cloud buffers, also wider than the derived extent
+        for (int fixedExtent : new int[]{64, 16}) {
+            for (int cloudBufferWidth : new int[]{0, 2, 60}) {
+                if (cloudBufferWidth > fixedExtent) {
+                    // the fixed extent truncated the buffer
+                    continue;
+                }
+                for (int tileY = 0; tileY < HEIGHT; tileY += tileHeight) {
+                    for (int tileX = 0; tileX < WIDTH; tileX += tileWidth) {
+                        final Rectangle targetRectangle = new Rectangle(tileX, tileY, tileWidth, tileHeight)
+                                .intersection(sourceRectangle);
+                        final Rectangle srcRectangle = IdepixOlciPostProcessOp.getShadowSourceRectangle(
+                                geoCoding, szaTile, targetRectangle, sourceRectangle, fixedExtent, cloudBufferWidth);
+                        final Rectangle grownRectangle = new Rectangle(targetRectangle);
+                        grownRectangle.grow(fixedExtent, fixedExtent);
+                        final Rectangle fixedSrcRectangle = grownRectangle.intersection(sourceRectangle);
+                        assertTrue(fixedSrcRectangle.contains(srcRectangle));
+                        if (!srcRectangle.equals(fixedSrcRectangle)) {
+                            numSmallerSourceRectangles++;
+                        }
+
+                        final Tile targetTile = computePostProcessedFlags(targetRectangle, srcRectangle,
+                                                                          cloudBufferWidth);
+                        final Tile fixedTargetTile = computePostProcessedFlags(targetRectangle, fixedSrcRectangle,
+                                                                               cloudBufferWidth);
+                        for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+                            for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                                assertEquals("pixel " + x + "," + y + ", buffer " + cloudBufferWidth,
+                                             fixedTargetTile.getSampleInt(x, y), targetTile.getSampleInt(x, y));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(numSmallerSourceRectangles > 0);
+    }
+
+    // a slightly curved and rotated grid, as from OLCI tie-point grids
+    private static TiePointGeoCoding createGeoCoding() {
+        final int gridWidth = (WIDTH - 1) / TIE_POINT_SPACING + 1;
+        final int gridHeight = (HEIGHT - 1) / TIE_POINT_SPACING + 1;
+        final float[] lats = new float[gridWidth * gridHeight];
+        final float[] lons = new float[gridWidth * gridHeight];
+        int index = 0;
+        for (int j = 0; j < gridHeight; j++) {
+            for (int i = 0; i < gridWidth; i++) {
+                final double x = i * TIE_POINT_SPACING + 0.5;
+                final double y = j * TIE_POINT_SPACING + 0.5;
+                lats[index] = (float) (54.0 - 0.0027 * y - 0.0004 * x + 1.0e-6 * x * x);
+                lons[index] = (float) (9.0 + 0.0045 * x + 0.0005 * y + 2.0e-6 * y * y);
+                index++;
+            }
+        }
+        final TiePointGrid latGrid = new TiePointGrid("latitude", gridWidth, gridHeight, 0.5, 0.5,
+                                                      TIE_POINT_SPACING, TIE_POINT_SPACING, lats);
+        final TiePointGrid lonGrid = new TiePointGrid("longitude", gridWidth, gridHeight, 0.5, 0.5,
+                                                      TIE_POINT_SPACING, TIE_POINT_SPACING, lons);
+        return new TiePointGeoCoding(latGrid, lonGrid);
+    }
+
+    private Tile createTile(Random random, double min, double max) {
+        final Tile tile = createTile(ProductData.TYPE_FLOAT32, DataBuffer.TYPE_FLOAT, sourceRectangle);
+        for (int y = sourceRectangle.y; y < sourceRectangle.y + sourceRectangle.height; y++) {
+            for (int x = sourceRectangle.x; x < sourceRectangle.x + sourceRectangle.width; x++) {
+                tile.setSample(x, y, min + (max - min) * random.nextDouble());
+            }
+        }
+        return tile;
+    }
+
+    // cloud patches of different size, and an invalid corner
+    private Tile createSourceFlagTile(Random random) {
+        final int numClouds = 30;
+        final int[] cloudX = new int[numClouds];
+        final int[] cloudY = new int[numClouds];
+        final int[] cloudRadius = new int[numClouds];
+        for (int i = 0; i < numClouds; i++) {
+            cloudX[i] = random.nextInt(WIDTH);
+            cloudY[i] = random.nextInt(HEIGHT);
+            cloudRadius[i] = 1 + random.nextInt(5);
+        }
+        final Tile tile = createTile(ProductData.TYPE_INT32, DataBuffer.TYPE_INT, sourceRectangle);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int flags = x < 4 && y > HEIGHT - 8 ? INVALID : 0;
+                for (int i = 0; i < numClouds; i++) {
+                    final int dx = x - cloudX[i];
+                    final int dy = y - cloudY[i];
+                    if (dx * dx + dy * dy <= cloudRadius[i] * cloudRadius[i]) {
+                        flags |= CLOUD;
+                    }
+                }
+                tile.setSample(x, y, flags);
+            }
+        }
+        return tile;
+    }
+
+    // the source flags of the target rectangle, with some clouds added as by the preceding cloud buffer step
+    private Tile createTargetFlagTile(Rectangle targetRectangle) {
+        final Tile tile = createTile(ProductData.TYPE_INT32, DataBuffer.TYPE_INT, targetRectangle);
+        for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+            for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                final int flags = sourceFlagTile.getSampleInt(x, y);
+                tile.setSample(x, y, (x + y) % 11 == 0 ? flags | CLOUD : flags);
+            }
+        }
+        return tile;
+    }
+
+    // the cloud buffer and cloud shadow steps of the post-processing, with the source flags read on srcRectangle
+    private Tile computePostProcessedFlags(Rectangle targetRectangle, Rectangle srcRectangle, int cloudBufferWidth) {
+        final Tile srcFlagTile = createTile(ProductData.TYPE_INT32, DataBuffer.TYPE_INT, srcRectangle);
+        for (int y = srcRectangle.y; y < srcRectangle.y + srcRectangle.height; y++) {
+            for (int x = srcRectangle.x; x < srcRectangle.x + srcRectangle.width; x++) {
+                srcFlagTile.setSample(x, y, sourceFlagTile.getSampleInt(x, y));
+            }
+        }
+        final Tile targetTile = createTile(ProductData.TYPE_INT32, DataBuffer.TYPE_INT, targetRectangle);
+        for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+            for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                targetTile.setSample(x, y, srcFlagTile.getSampleInt(x, y));
+            }
+        }
+        if (TileSummary.isCloudFree(srcFlagTile, srcRectangle)) {
+            return targetTile;
+        }
+        if (cloudBufferWidth > 0) {
+            CloudBuffer.setCloudBuffer(targetTile, srcRectangle, srcFlagTile, cloudBufferWidth);
+            for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+                for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                    IdepixUtils.consolidateCloudAndBuffer(targetTile, x, y);
+                }
+            }
+        }
+        new IdepixOlciCloudShadowFronts(product.getSceneGeoCoding(), szaTile, saaTile, ozaTile, oaaTile,
+                                        ctpTile, slpTile, temperatureProfileTiles, altTile)
+                .computeCloudShadow(srcFlagTile, targetTile);
+        return targetTile;
+    }
+
+    private Tile createTile(int productDataType, int dataBufferType, Rectangle rectangle) {
+        final BandedSampleModel sampleModel = new BandedSampleModel(dataBufferType,
+                                                                    rectangle.width, rectangle.height, 1);
+        final WritableRaster raster = Raster.createWritableRaster(sampleModel, new Point(rectangle.x, rectangle.y));
+        return new TileImpl(product.addBand("band_" + tileCount++, productDataType), raster);
+    }
+}
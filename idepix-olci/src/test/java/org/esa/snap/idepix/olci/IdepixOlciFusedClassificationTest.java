@@ -0,0 +1,216 @@
+package org.esa.snap.idepix.olci;
+
+import eu.esa.opt.processor.rad2refl.Rad2ReflConstants;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.FlagCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.TiePointGrid;
+import org.esa.snap.core.gpf.Operator;
+import org.esa.snap.idepix.core.IdepixConstants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.text.ParseException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the fused classification, which computes the TOA reflectances and the CTP within its tile computation,
+ * gives the same results as the chain of Rad2Refl, {@link CtpOp} and the classification of the reflectances.
+ */
+public class IdepixOlciFusedClassificationTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 6;
+
+    private Product l1bProduct;
+    private Product o2CorrProduct;
+    private Product rhotoaProduct;
+    private IdepixOlciClassificationOp fusedOp;
+    private Operator ctpOp;
+    private Operator classificationOp;
+
+    @Before
+    public void setUp() throws ParseException {
+        l1bProduct = createL1bProduct();
+        o2CorrProduct = createO2CorrProduct();
+        rhotoaProduct = IdepixOlciUtils.computeRadiance2ReflectanceProduct(l1bProduct);
+
+        fusedOp = (IdepixOlciClassificationOp) new IdepixOlciClassificationOp.Spi().createOperator();
+        fusedOp.setSourceProduct("l1b", l1bProduct);
+        fusedOp.setSourceProduct("ctpO2Corr", o2CorrProduct);
+        fusedOp.setParameter("computeReflectances", true);
+        fusedOp.setParameter("computeCtp", true);
+        fusedOp.setParameter("evaluateCtpNNInJava", true);
+        fusedOp.setParameter("useLakeAndSeaIceClimatology", false);
+
+        ctpOp = new CtpOp.Spi().createOperator();
+        ctpOp.setSourceProduct("l1bProduct", l1bProduct);
+        ctpOp.setSourceProduct("o2CorrProduct", o2CorrProduct);
+        ctpOp.setParameter("evaluateNNInJava", true);
+
+        classificationOp = new IdepixOlciClassificationOp.Spi().createOperator();
+        classificationOp.setSourceProduct("l1b", l1bProduct);
+        classificationOp.setSourceProduct("rhotoa", rhotoaProduct);
+        classificationOp.setParameter("useLakeAndSeaIceClimatology", false);
+    }
+
+    @After
+    public void tearDown() {
+        fusedOp.dispose();
+        ctpOp.dispose();
+        classificationOp.dispose();
+    }
+
+    @Test
+    public void testReflectances_sameAsRad2Refl() {
+        final Product fusedProduct = fusedOp.getTargetProduct();
+        assertTrue(fusedProduct.containsBand(IdepixConstants.CTP_OUTPUT_BAND_NAME));
+
+        final Rectangle rectangle = new Rectangle(WIDTH, HEIGHT);
+        final int[] l1Flags = l1bProduct.getBand(IdepixOlciConstants.OLCI_QUALITY_FLAGS_BAND_NAME)
+                .getSourceImage().getData().getSamples(0, 0, WIDTH, HEIGHT, 0, (int[]) null);
+        final float[][] reflectances = fusedOp.computeReflectances(rectangle, l1Flags);
+        for (int i = 0; i < Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length; i++) {
+            final String bandName = Rad2ReflConstants.OLCI_REFL_BAND_NAMES[i];
+            final float[] expected = getData(rhotoaProduct, bandName).getSamples(0, 0, WIDTH, HEIGHT, 0, (float[]) null);
+            for (int p = 0; p < WIDTH * HEIGHT; p++) {
+                assertEquals(bandName + " at " + p, expected[p], reflectances[i][p], 1.0e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void testCtpAndFlags_sameAsChain() {
+        final Raster fusedCtp = getData(fusedOp.getTargetProduct(), IdepixConstants.CTP_OUTPUT_BAND_NAME);
+        final Raster fusedFlags = getData(fusedOp.getTargetProduct(), IdepixConstants.CLASSIF_BAND_NAME);
+        final Raster chainCtp = getData(ctpOp.getTargetProduct(), IdepixConstants.CTP_OUTPUT_BAND_NAME);
+        final Raster chainFlags = getData(classificationOp.getTargetProduct(), IdepixConstants.CLASSIF_BAND_NAME);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final String pixel = "(" + x + ", " + y + ")";
+                assertEquals(pixel, chainCtp.getSampleFloat(x, y, 0), fusedCtp.getSampleFloat(x, y, 0), 0.0f);
+                assertEquals(isInvalid(x, y), Float.isNaN(fusedCtp.getSampleFloat(x, y, 0)));
+                assertEquals(pixel, chainFlags.getSample(x, y, 0), fusedFlags.getSample(x, y, 0));
+                final boolean invalid = (fusedFlags.getSample(x, y, 0) & (1 << IdepixConstants.IDEPIX_INVALID)) != 0;
+                assertEquals(pixel, isInvalid(x, y), invalid);
+            }
+        }
+        assertFalse(allFlagsEqual(fusedFlags));
+    }
+
+    private static Raster getData(Product product, String bandName) {
+        return product.getBand(bandName).getSourceImage().getData();
+    }
+
+    private static boolean allFlagsEqual(Raster flags) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (!isInvalid(x, y) && flags.getSample(x, y, 0) != flags.getSample(WIDTH - 1, HEIGHT - 1, 0)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // an invalid corner
+    private static boolean isInvalid(int x, int y) {
+        return x < 2 && y < 2;
+    }
+
+    private static boolean isLand(int x) {
+        return x < WIDTH / 2;
+    }
+
+    // dark and bright pixels over land and water, a slightly varying geometry and solar flux
+    private static Product createL1bProduct() throws ParseException {
+        final Product product = new Product("l1b", "OL_1_EFR", WIDTH, HEIGHT);
+        product.setStartTime(ProductData.UTC.parse("2023-06-15 10:00:00", "yyyy-MM-dd HH:mm:ss"));
+
+        final float[] sza = new float[WIDTH * HEIGHT];
+        final float[] oza = new float[WIDTH * HEIGHT];
+        final float[] saa = new float[WIDTH * HEIGHT];
+        final float[] oaa = new float[WIDTH * HEIGHT];
+        final int[] qualityFlags = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final int p = y * WIDTH + x;
+                sza[p] = 35.0f + 0.5f * y;
+                oza[p] = 2.0f + 3.0f * x;
+                saa[p] = 140.0f + y;
+                oaa[p] = x < WIDTH / 2 ? 100.0f : 280.0f;
+                if (isLand(x)) {
+                    qualityFlags[p] |= 1 << IdepixOlciConstants.L1_F_LAND;
+                }
+                if (isInvalid(x, y)) {
+                    qualityFlags[p] |= 1 << IdepixOlciConstants.L1_F_INVALID;
+                }
+                if (y == HEIGHT - 1) {
+                    qualityFlags[p] |= 1 << IdepixOlciConstants.L1_F_BRIGHT;
+                }
+            }
+        }
+        addTiePointGrid(product, "SZA", sza);
+        addTiePointGrid(product, "OZA", oza);
+        addTiePointGrid(product, "SAA", saa);
+        addTiePointGrid(product, "OAA", oaa);
+
+        for (int i = 0; i < Rad2ReflConstants.OLCI_REFL_BAND_NAMES.length; i++) {
+            final float[] radiances = new float[WIDTH * HEIGHT];
+            final float[] solarFluxes = new float[WIDTH * HEIGHT];
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    final int p = y * WIDTH + x;
+                    // reflectances from 0.03 to 0.87, brighter to the bottom and decreasing with the wavelength
+                    final double reflectance = (0.03 + 0.12 * ((x + 2 * y) % 8)) * (1.0 - 0.01 * i);
+                    solarFluxes[p] = (float) (1800.0 - 40.0 * i + x);
+                    radiances[p] = (float) (reflectance * solarFluxes[p] * Math.cos(Math.toRadians(sza[p])) / Math.PI);
+                }
+            }
+            addBand(product, String.format("Oa%02d_radiance", i + 1), radiances);
+            addBand(product, "solar_flux_band_" + (i + 1), solarFluxes);
+        }
+
+        final Band qualityFlagsBand = new Band(IdepixOlciConstants.OLCI_QUALITY_FLAGS_BAND_NAME,
+                                               ProductData.TYPE_INT32, WIDTH, HEIGHT);
+        qualityFlagsBand.setDataElems(qualityFlags);
+        final FlagCoding flagCoding = new FlagCoding(IdepixOlciConstants.OLCI_QUALITY_FLAGS_BAND_NAME);
+        flagCoding.addFlag("land", 1 << IdepixOlciConstants.L1_F_LAND, null);
+        flagCoding.addFlag("bright", 1 << IdepixOlciConstants.L1_F_BRIGHT, null);
+        flagCoding.addFlag("invalid", 1 << IdepixOlciConstants.L1_F_INVALID, null);
+        qualityFlagsBand.setSampleCoding(flagCoding);
+        product.getFlagCodingGroup().add(flagCoding);
+        product.addBand(qualityFlagsBand);
+        return product;
+    }
+
+    private static Product createO2CorrProduct() {
+        final Product product = new Product("o2Corr", "o2Corr", WIDTH, HEIGHT);
+        for (int band = 13; band <= 15; band++) {
+            final float[] transmissions = new float[WIDTH * HEIGHT];
+            for (int p = 0; p < transmissions.length; p++) {
+                transmissions[p] = (float) (0.35 + 0.05 * (band - 13) + 0.01 * p);
+            }
+            addBand(product, "trans_" + band, transmissions);
+        }
+        return product;
+    }
+
+    private static void addTiePointGrid(Product product, String name, float[] data) {
+        product.addTiePointGrid(new TiePointGrid(name, WIDTH, HEIGHT, 0.5, 0.5, 1, 1, data));
+    }
+
+    private static void addBand(Product product, String name, float[] data) {
+        final Band band = new Band(name, ProductData.TYPE_FLOAT32, WIDTH, HEIGHT);
+        band.setDataElems(data);
+        product.addBand(band);
+    }
+}
@@ -19,8 +19,6 @@ package org.esa.snap.idepix.olci;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
 import org.junit.Test;
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Polygon;
 
 import java.text.ParseException;
@@ -96,64 +94,6 @@ public class IdepixOlciUtilsTest {
         assertEquals(384.2026, heightFromCtp, 1.E-2);
     }
 
-    @Test
-    public void testCoordinateIsInsideArctica() {
-        final Polygon arcticPolygon =
-                IdepixOlciUtils.createPolygonFromCoordinateArray(IdepixOlciConstants.ARCTIC_POLYGON_COORDS);
-        final GeometryFactory gf = new GeometryFactory();
-
-        Coordinate insideCoord = new Coordinate(-45.0, 75.0);
-        assertTrue(IdepixOlciUtils.isCoordinateInsideGeometry(insideCoord, arcticPolygon, gf));
-
-        insideCoord = new Coordinate(-90.0, 89.95);
-        assertTrue(IdepixOlciUtils.isCoordinateInsideGeometry(insideCoord, arcticPolygon, gf));
-
-        insideCoord = new Coordinate(90.0, 89.95);
-        assertTrue(IdepixOlciUtils.isCoordinateInsideGeometry(insideCoord, arcticPolygon, gf));
-
-        Coordinate outsideCoord = new Coordinate(10.0, 20.0);
-        assertFalse(IdepixOlciUtils.isCoordinateInsideGeometry(outsideCoord, arcticPolygon, gf));
-
-        outsideCoord = new Coordinate(10.0, 89.9999);
-        assertFalse(IdepixOlciUtils.isCoordinateInsideGeometry(outsideCoord, arcticPolygon, gf));
-
-        // close to polygon boundary:
-        final Coordinate justInsideCoord = new Coordinate(-57.0, 71.0);
-        assertTrue(IdepixOlciUtils.isCoordinateInsideGeometry(justInsideCoord, arcticPolygon, gf));
-
-        final Coordinate justOutsideCoord = new Coordinate(-58.0, 71.0);
-        assertFalse(IdepixOlciUtils.isCoordinateInsideGeometry(justOutsideCoord, arcticPolygon, gf));
-    }
-
-    @Test
-    public void testCoordinateIsInsideAntarctica() {
-        final Polygon antarcticaPolygon =
-                IdepixOlciUtils.createPolygonFromCoordinateArray(IdepixOlciConstants.ANTARCTICA_POLYGON_COORDS);
-        final GeometryFactory gf = new GeometryFactory();
-
-        Coordinate insideCoord = new Coordinate(-45.0, -75.0);
-        assertTrue(IdepixOlciUtils.isCoordinateInsideGeometry(insideCoord, antarcticaPolygon, gf));
-
-        insideCoord = new Coordinate(-45.0, -89.9);
-        assertTrue(IdepixOlciUtils.isCoordinateInsideGeometry(insideCoord, antarcticaPolygon, gf));
-
-        insideCoord = new Coordinate(45.0, -89.9);
-        assertTrue(IdepixOlciUtils.isCoordinateInsideGeometry(insideCoord, antarcticaPolygon, gf));
-
-        Coordinate outsideCoord = new Coordinate(10.0, 20.0);
-        assertFalse(IdepixOlciUtils.isCoordinateInsideGeometry(outsideCoord, antarcticaPolygon, gf));
-
-        outsideCoord = new Coordinate(10.0, -89.999);
-        assertFalse(IdepixOlciUtils.isCoordinateInsideGeometry(outsideCoord, antarcticaPolygon, gf));
-
-        // close to polygon boundary:
-        final Coordinate justInsideCoord = new Coordinate(-57.0, -61.0);
-        assertTrue(IdepixOlciUtils.isCoordinateInsideGeometry(justInsideCoord, antarcticaPolygon, gf));
-
-        final Coordinate justOutsideCoord = new Coordinate(-57.0, -59.0);
-        assertFalse(IdepixOlciUtils.isCoordinateInsideGeometry(justOutsideCoord, antarcticaPolygon, gf));
-    }
-
     @Test
     public void testGeometryIntersectsWithArctic() {
         final Polygon arcticPolygon =
@@ -0,0 +1,95 @@
+package org.esa.snap.idepix.olci;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PolarRegionsTest {
+
+    private PolarRegions polarRegions;
+
+    @Before
+    public void setUp() {
+        polarRegions = PolarRegions.create();
+    }
+
+    @Test
+    public void testContains_sameAsJts() {
+        final GeometryFactory gf = new GeometryFactory();
+        final Polygon arcticPolygon =
+                IdepixOlciUtils.createPolygonFromCoordinateArray(IdepixOlciConstants.ARCTIC_POLYGON_COORDS);
+        final Polygon antarcticaPolygon =
+                IdepixOlciUtils.createPolygonFromCoordinateArray(IdepixOlciConstants.ANTARCTICA_POLYGON_COORDS);
+
+        final Random random = new Random(42);
+        int numInside = 0;
+        for (int i = 0; i < 100000; i++) {
+            final double lon = -180.0 + 360.0 * random.nextDouble();
+            final double lat = i % 2 == 0 ? 50.0 + 40.0 * random.nextDouble() : -90.0 + 35.0 * random.nextDouble();
+            final Coordinate coord = new Coordinate(lon, lat);
+            final boolean expected = gf.createPoint(coord).within(arcticPolygon) ||
+                    gf.createPoint(coord).within(antarcticaPolygon);
+            assertEquals("lon=" + lon + ", lat=" + lat, expected, polarRegions.contains(lon, lat));
+            if (expected) {
+                numInside++;
+            }
+        }
+        assertTrue(numInside > 10000);
+    }
+
+    @Test
+    public void testGetCoverage() {
+        // Greenland
+        assertEquals(PolarRegions.Coverage.INSIDE, getCoverage(-40.0, 72.0, 2.0, 2.0));
+        // Antarctica
+        assertEquals(PolarRegions.Coverage.INSIDE, getCoverage(100.0, -80.0, 5.0, 5.0));
+        // Europe
+        assertEquals(PolarRegions.Coverage.OUTSIDE, getCoverage(10.0, 40.0, 2.0, 2.0));
+        // southern ocean, north of the Antarctica polygon
+        assertEquals(PolarRegions.Coverage.OUTSIDE, getCoverage(10.0, -59.0, 2.0, 2.0));
+        // across the northern border of the Antarctica polygon
+        assertEquals(PolarRegions.Coverage.MIXED, getCoverage(10.0, -61.0, 2.0, 2.0));
+        // across the antimeridian
+        assertEquals(PolarRegions.Coverage.MIXED,
+                     polarRegions.getCoverage(new double[]{179.0, -179.0, -179.0, 179.0},
+                                              new double[]{40.0, 40.0, 38.0, 38.0}));
+        // invalid geo-positions
+        assertEquals(PolarRegions.Coverage.MIXED,
+                     polarRegions.getCoverage(new double[]{10.0, 12.0, Double.NaN, 10.0},
+                                              new double[]{40.0, 40.0, 38.0, 38.0}));
+    }
+
+    @Test
+    public void testIntersects() {
+        final double[][] insideCoords = {{-40.0, 72.0}, {-38.0, 72.0}, {-38.0, 74.0}, {-40.0, 74.0}, {-40.0, 72.0}};
+        final double[][] outsideCoords = {{10.0, 40.0}, {12.0, 40.0}, {12.0, 42.0}, {10.0, 42.0}, {10.0, 40.0}};
+        assertTrue(polarRegions.intersects(IdepixOlciUtils.createPolygonFromCoordinateArray(insideCoords)));
+        assertFalse(polarRegions.intersects(IdepixOlciUtils.createPolygonFromCoordinateArray(outsideCoords)));
+    }
+
+    private PolarRegions.Coverage getCoverage(double lon, double lat, double width, double height) {
+        // footprint boundary with several positions per edge, clockwise
+        final int n = 10;
+        final double[] lons = new double[4 * n];
+        final double[] lats = new double[4 * n];
+        for (int i = 0; i < n; i++) {
+            lons[i] = lon + width * i / n;
+            lats[i] = lat + height;
+            lons[n + i] = lon + width;
+            lats[n + i] = lat + height - height * i / n;
+            lons[2 * n + i] = lon + width - width * i / n;
+            lats[2 * n + i] = lat;
+            lons[3 * n + i] = lon;
+            lats[3 * n + i] = lat + height * i / n;
+        }
+        return polarRegions.getCoverage(lons, lats);
+    }
+}
@@ -18,10 +18,21 @@ package org.esa.snap.idepix.olci;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.tensorflow.SavedModelBundle;
 
 import java.io.File;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class TensorflowNNCalculatorTest {
@@ -156,4 +167,63 @@ public class TensorflowNNCalculatorTest {
             fail();
         }
     }
+
+    @Test
+    public void testCalculate_concurrently() throws Exception {
+        String modelDir = auxdataPath + File.separator + CtpOp.DEFAULT_TENSORFLOW_NN_DIR_NAME;
+        final int poolSize = 4;
+        final TensorflowNNCalculator nntest = new TensorflowNNCalculator(modelDir, "none", poolSize);
+        final ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            // the sessions are held at the same time, so that the pool has to create more than one
+            final CountDownLatch allAcquired = new CountDownLatch(poolSize);
+            final List<Future<?>> acquisitions = new ArrayList<>();
+            for (int i = 0; i < poolSize; i++) {
+                acquisitions.add(executorService.submit(() -> {
+                    final SavedModelBundle model = nntest.acquireModel();
+                    try {
+                        allAcquired.countDown();
+                        assertTrue(allAcquired.await(60, TimeUnit.SECONDS));
+                    } finally {
+                        nntest.releaseModel(model);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> acquisition : acquisitions) {
+                acquisition.get();
+            }
+            assertEquals(poolSize, nntest.getNumSessions());
+
+            final Random random = new Random(123);
+            final int numBatches = 64;
+            final float[][] batches = new float[numBatches][];
+            final float[][] expectedResults = new float[numBatches][];
+            for (int i = 0; i < numBatches; i++) {
+                final int numVectors = 100 + random.nextInt(400);
+                batches[i] = new float[numVectors * input.length];
+                for (int j = 0; j < batches[i].length; j++) {
+                    batches[i][j] = input[j % input.length] * (0.5f + random.nextFloat());
+                }
+                expectedResults[i] = nntest.calculate(batches[i].clone(), numVectors);
+            }
+
+            final List<Future<float[]>> futures = new ArrayList<>();
+            for (int run = 0; run < 4; run++) {
+                for (int i = 0; i < numBatches; i++) {
+                    final float[] batch = batches[i];
+                    futures.add(executorService.submit(() -> nntest.calculate(batch.clone(),
+                                                                                 batch.length / input.length)));
+                }
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertArrayEquals(expectedResults[i % numBatches], futures.get(i).get(), 0.0f);
+            }
+            assertTrue(nntest.getNumSessions() > 1);
+            assertEquals(poolSize, nntest.getNumSessions());
+        } finally {
+            executorService.shutdown();
+            nntest.dispose();
+        }
+    }
 }
@@ -4,7 +4,9 @@ import com.bc.ceres.core.ProgressMonitor;
 import org.esa.snap.idepix.core.IdepixConstants;
 import org.esa.snap.idepix.core.pixel.AbstractPixelProperties;
 import org.esa.snap.idepix.core.util.IdepixIO;
-import org.esa.snap.idepix.core.util.SchillerNeuralNetWrapper;
+import org.esa.snap.idepix.core.util.SchillerNeuralNet;
+import org.esa.snap.idepix.core.util.SchillerNeuralNetBatch;
+import org.esa.snap.idepix.core.util.SchillerNeuralNetCache;
 import org.esa.snap.core.datamodel.*;
 import org.esa.snap.core.dataop.dem.ElevationModel;
 import org.esa.snap.core.dataop.dem.ElevationModelDescriptor;
@@ -22,8 +24,6 @@ import org.esa.snap.core.util.ProductUtils;
 import org.esa.snap.watermask.operator.WatermaskClassifier;
 
 import java.awt.*;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.Map;
 
 /**
@@ -130,7 +130,7 @@ public class ProbaVClassificationOp extends Operator {
 
 
     private static final String VGT_NET_NAME = "3x2x2_341.8.net";
-    private ThreadLocal<SchillerNeuralNetWrapper> vgtNeuralNet;
+    private ThreadLocal<SchillerNeuralNetBatch> vgtNeuralNetBatch;
 
 
     @Override
@@ -177,9 +177,18 @@ public class ProbaVClassificationOp extends Operator {
         final Tile nnTargetTile = targetTiles.get(nnTargetBand);
 
         try {
+            double[] nnOutputs = null;
+            int numNNOutputs = 0;
+            if (applySchillerNN) {
+                final SchillerNeuralNetBatch nnBatch = vgtNeuralNetBatch.get();
+                nnOutputs = computeNNOutputs(nnBatch, smFlagTile, probavReflectanceTiles, rectangle);
+                numNNOutputs = nnBatch.getNeuralNet().getNumOutputs();
+            }
+
+            int pixelIndex = 0;
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
                 checkForCancellation();
-                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, pixelIndex++) {
 
                     byte waterMaskFraction = WatermaskClassifier.INVALID_VALUE;
                     if (!useL1bLandWaterFlag) {
@@ -195,31 +204,31 @@ public class ProbaVClassificationOp extends Operator {
                     setCloudFlag(cloudFlagTargetTile, y, x, probaVAlgorithm);
 
                     // apply improvement from NN approach...
-                    final double[] nnOutput = probaVAlgorithm.getNnOutput();
                     if (applySchillerNN) {
+                        final double nnOutput = nnOutputs[pixelIndex * numNNOutputs];
                         if (!cloudFlagTargetTile.getSampleBit(x, y, IdepixConstants.IDEPIX_INVALID)) {
                             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, false);
                             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, false);
                             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, false);
                             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, false);
-                            if (nnOutput[0] > schillerNNCloudAmbiguousLowerBoundaryValue &&
-                                    nnOutput[0] <= schillerNNCloudAmbiguousSureSeparationValue) {
+                            if (nnOutput > schillerNNCloudAmbiguousLowerBoundaryValue &&
+                                    nnOutput <= schillerNNCloudAmbiguousSureSeparationValue) {
                                 // this would be as 'CLOUD_AMBIGUOUS'...
                                 cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, true);
                                 cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, true);
                             }
-                            if (nnOutput[0] > schillerNNCloudAmbiguousSureSeparationValue &&
-                                    nnOutput[0] <= schillerNNCloudSureSnowSeparationValue) {
+                            if (nnOutput > schillerNNCloudAmbiguousSureSeparationValue &&
+                                    nnOutput <= schillerNNCloudSureSnowSeparationValue) {
                                 // this would be as 'CLOUD_SURE'...
                                 cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, true);
                                 cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, true);
                             }
-                            if (nnOutput[0] > schillerNNCloudSureSnowSeparationValue) {
+                            if (nnOutput > schillerNNCloudSureSnowSeparationValue) {
                                 // this would be as 'SNOW/ICE'...
                                 cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, true);
                             }
                         }
-                        nnTargetTile.setSample(x, y, nnOutput[0]);
+                        nnTargetTile.setSample(x, y, nnOutput);
                     }
 
                     for (Band band : targetProduct.getBands()) {
@@ -291,13 +300,6 @@ public class ProbaVClassificationOp extends Operator {
         checkProbavReflectanceQuality(probaVAlgorithm, probavReflectance, smFlagTile, x, y);
         probaVAlgorithm.setRefl(probavReflectance);
 
-        SchillerNeuralNetWrapper nnWrapper = vgtNeuralNet.get();
-        double[] inputVector = nnWrapper.getInputVector();
-        for (int i = 0; i < inputVector.length; i++) {
-            inputVector[i] = Math.sqrt(probavReflectance[i]);
-        }
-        probaVAlgorithm.setNnOutput(nnWrapper.getNeuralNet().calc(inputVector));
-
         if (useL1bLandWaterFlag) {
             final boolean isLand = smFlagTile.getSampleBit(x, y, SM_F_LAND);
             probaVAlgorithm.setL1bLand(isLand);
@@ -312,12 +314,28 @@ public class ProbaVClassificationOp extends Operator {
         return probaVAlgorithm;
     }
 
-    private void readSchillerNeuralNets() {
-        try (InputStream vgtLandIS = getClass().getResourceAsStream(VGT_NET_NAME)) {
-            vgtNeuralNet = SchillerNeuralNetWrapper.create(vgtLandIS);
-        } catch (IOException e) {
-            throw new OperatorException("Cannot read Neural Nets: " + e.getMessage());
+    // evaluates the neural net at once for all pixels of the tile
+    private static double[] computeNNOutputs(SchillerNeuralNetBatch nnBatch, Tile smFlagTile,
+                                             Tile[] probavReflectanceTiles, Rectangle rectangle) {
+        final int numNNInputs = nnBatch.getNeuralNet().getNumInputs();
+        final double[] nnInputs = nnBatch.getInputs(rectangle.width * rectangle.height);
+        int inputOffset = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, inputOffset += numNNInputs) {
+                final boolean isReflectanceGood = isReflectanceGood(smFlagTile, x, y);
+                for (int i = 0; i < numNNInputs; i++) {
+                    final float reflectance = isReflectanceGood ?
+                            probavReflectanceTiles[i].getSampleFloat(x, y) : Float.NaN;
+                    nnInputs[inputOffset + i] = Math.sqrt(reflectance);
+                }
+            }
         }
+        return nnBatch.calc(rectangle.width * rectangle.height);
+    }
+
+    private void readSchillerNeuralNets() {
+        final SchillerNeuralNet vgtNeuralNet = SchillerNeuralNetCache.get(getClass(), VGT_NET_NAME);
+        vgtNeuralNetBatch = ThreadLocal.withInitial(() -> new SchillerNeuralNetBatch(vgtNeuralNet));
     }
 
     private void createTargetProduct() throws OperatorException {
@@ -451,7 +469,7 @@ public class ProbaVClassificationOp extends Operator {
         probaVAlgorithm.setIsSwirGood(isSwirGood);
         probaVAlgorithm.setProcessingLand(isProcessingLand);
 
-        if (!isBlueGood || !isRedGood || !isNirGood || !isSwirGood || !isProcessingLand) {
+        if (!isReflectanceGood(smFlagTile, x, y)) {
             for (int i = 0; i < probavReflectance.length; i++) {
                 probavReflectance[i] = Float.NaN;
             }
@@ -459,6 +477,12 @@ public class ProbaVClassificationOp extends Operator {
     }
 
 
+    private static boolean isReflectanceGood(Tile smFlagTile, int x, int y) {
+        return smFlagTile.getSampleBit(x, y, SM_F_BLUE_GOOD) && smFlagTile.getSampleBit(x, y, SM_F_RED_GOOD) &&
+                smFlagTile.getSampleBit(x, y, SM_F_NIR_GOOD) && smFlagTile.getSampleBit(x, y, SM_F_SWIR_GOOD) &&
+                smFlagTile.getSampleBit(x, y, SM_F_LAND);
+    }
+
     /**
      * The Service Provider Interface (SPI) for the operator.
      * It provides operator meta-data and is a factory for new operator instances.
@@ -3,10 +3,7 @@ package org.esa.snap.idepix.s2msi;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.FlagCoding;
-import org.esa.snap.core.datamodel.GeoCoding;
-import org.esa.snap.core.datamodel.GeoPos;
 import org.esa.snap.core.datamodel.Mask;
-import org.esa.snap.core.datamodel.PixelPos;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
 import org.esa.snap.core.gpf.Operator;
@@ -18,9 +15,11 @@ import org.esa.snap.core.gpf.annotations.Parameter;
 import org.esa.snap.core.gpf.annotations.SourceProduct;
 import org.esa.snap.core.gpf.annotations.TargetProduct;
 import org.esa.snap.core.util.ProductUtils;
+import org.esa.snap.idepix.core.util.GeoLocationGrid;
+import org.esa.snap.idepix.core.util.LandWaterMaskProvider;
+import org.esa.snap.idepix.core.util.TileSummary;
 import org.esa.snap.idepix.s2msi.util.S2IdepixConstants;
 import org.esa.snap.idepix.s2msi.util.S2IdepixUtils;
-import org.esa.snap.watermask.operator.WatermaskClassifier;
 
 import java.awt.Color;
 import java.awt.Rectangle;
@@ -121,11 +120,12 @@ public class S2IdepixClassificationOp extends Operator {
     Band tc4CirrusBand;
     Band ndwiBand;
 
-    private WatermaskClassifier watermaskClassifier;
+    private LandWaterMaskProvider landWaterMaskProvider;
 
     @Override
     public void initialize() throws OperatorException {
-        skipInvalidTiles = Boolean.getBoolean(S2IdepixUtils.INVALID_TILES_PROPERTIES);
+        skipInvalidTiles = Boolean.getBoolean(S2IdepixUtils.INVALID_TILES_PROPERTIES) ||
+                TileSummary.isSkipInvalidTiles();
 
         validateInputBandsExist(S2IdepixConstants.S2_MSI_REFLECTANCE_BAND_NAMES);
         validateInputBandsExist(S2IdepixConstants.S2_MSI_ANNOTATION_BAND_NAMES);
@@ -143,7 +143,7 @@ public class S2IdepixClassificationOp extends Operator {
                 && sourceProduct.getBand("B2").getGeoCoding().getMapCRS().getName().toString().contains("UTM")
                 && sourceProduct.getBand("B2").getImageToModelTransform().getScaleX() < LAND_WATER_MASK_RESOLUTION;
         try {
-            watermaskClassifier = new WatermaskClassifier(LAND_WATER_MASK_RESOLUTION,
+            landWaterMaskProvider = new LandWaterMaskProvider(LAND_WATER_MASK_RESOLUTION,
                     isHigherResolutionInput ? 1 : OVERSAMPLING_FACTOR_X,
                     isHigherResolutionInput ? 1 : OVERSAMPLING_FACTOR_Y);
         } catch (IOException e) {
@@ -165,16 +165,21 @@ public class S2IdepixClassificationOp extends Operator {
     @Override
     public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle rectangle, ProgressMonitor pm) throws OperatorException {
 
+        final Band cloudFlagTargetBand = targetProduct.getBand(S2IdepixConstants.IDEPIX_CLASSIF_FLAGS);
+        final Tile cloudFlagTargetTile = targetTiles.get(cloudFlagTargetBand);
+        final Tile validPixelTile = getSourceTile(validPixelMask, rectangle);
+        if (skipInvalidTiles && TileSummary.isValueEverywhere(validPixelTile, rectangle, 0)) {
+            // same result as skipping the invalid pixels one by one, without requesting the other sources
+            TileSummary.fill(cloudFlagTargetTile, 1 << S2IdepixConstants.IDEPIX_INVALID);
+            return;
+        }
+
         Tile[] s2ReflectanceTiles = new Tile[S2IdepixConstants.S2_MSI_REFLECTANCE_BAND_NAMES.length];
         float[] s2MsiReflectance = new float[S2IdepixConstants.S2_MSI_REFLECTANCE_BAND_NAMES.length];
         for (int i = 0; i < S2IdepixConstants.S2_MSI_REFLECTANCE_BAND_NAMES.length; i++) {
             s2ReflectanceTiles[i] = getSourceTile(s2MsiReflBands[i], rectangle);
         }
 
-
-        final Band cloudFlagTargetBand = targetProduct.getBand(S2IdepixConstants.IDEPIX_CLASSIF_FLAGS);
-        final Tile cloudFlagTargetTile = targetTiles.get(cloudFlagTargetBand);
-
         final Tile szaTile = getSourceTile(szaBand, rectangle);
         final Tile vzaTile = getSourceTile(vzaBand, rectangle);
         final Tile saaTile = getSourceTile(saaBand, rectangle);
@@ -182,7 +187,10 @@ public class S2IdepixClassificationOp extends Operator {
 
         final Band elevationBand = targetProduct.getBand(S2IdepixConstants.ELEVATION_BAND_NAME);
         final Tile elevationTile = getSourceTile(elevationBand, rectangle);
-        final Tile validPixelTile = getSourceTile(validPixelMask, rectangle);
+        // the grid of the water fractions covers the rectangle and serves the latitudes as well
+        final GeoLocationGrid geoLocationGrid = GeoLocationGrid.create(sourceProduct,
+                LandWaterMaskProvider.getGridRectangle(sourceProduct, rectangle));
+        final byte[] waterFractions = landWaterMaskProvider.getWaterFractions(geoLocationGrid, rectangle);
 
 
         try {
@@ -202,8 +210,9 @@ public class S2IdepixClassificationOp extends Operator {
                             szaTile, vzaTile, saaTile, vaaTile,
                             elevationTile,
                             validPixelTile,
-                            watermaskClassifier,
+                            waterFractions[(y - rectangle.y) * rectangle.width + (x - rectangle.x)],
                             s2MsiReflectance,
+                            geoLocationGrid.getLat(x, y),
                             y,
                             x);
 
@@ -265,7 +274,8 @@ public class S2IdepixClassificationOp extends Operator {
                                                    Tile szaTile, Tile vzaTile, Tile saaTile, Tile vaaTile,
                                                    Tile elevationTile,
                                                    Tile validPixelTile,
-                                                   WatermaskClassifier classifier, float[] s2MsiReflectances,
+                                                   byte waterFraction, float[] s2MsiReflectances,
+                                                   float lat,
                                                    int y,
                                                    int x) {
         S2IdepixAlgorithm s2MsiAlgorithm = new S2IdepixAlgorithm();
@@ -275,16 +285,14 @@ public class S2IdepixClassificationOp extends Operator {
         }
         s2MsiAlgorithm.setRefl(s2MsiReflectances);
 
-        final byte waterFraction = classifier.getWaterMaskFraction(sourceProduct.getSceneGeoCoding(), x, y);
-
-        boolean isLand = isLandPixel(x, y, waterFraction, s2MsiAlgorithm);
+        boolean isLand = isLandPixel(lat, waterFraction, s2MsiAlgorithm);
         s2MsiAlgorithm.setIsLand(isLand);
 
         final double sza = szaTile.getSampleDouble(x, y);
         final double vza = vzaTile.getSampleDouble(x, y);
         final double saa = saaTile.getSampleDouble(x, y);
         final double vaa = vaaTile.getSampleDouble(x, y);
-        s2MsiAlgorithm.setLat(getGeoPos(x, y).lat);
+        s2MsiAlgorithm.setLat(lat);
         final double elevation = elevationTile.getSampleDouble(x, y);
         s2MsiAlgorithm.setElevation(elevation);
         final double rhoToa442Thresh = calcRhoToa442ThresholdTerm(sza, vza, saa, vaa);
@@ -300,8 +308,8 @@ public class S2IdepixClassificationOp extends Operator {
         return s2MsiAlgorithm;
     }
 
-    private boolean isLandPixel(int x, int y, int waterFraction, S2IdepixAlgorithm s2MsiAlgorithm) {
-        if (getGeoPos(x, y).lat > WATER_MASK_SOUTH_BOUND) {
+    private boolean isLandPixel(float lat, int waterFraction, S2IdepixAlgorithm s2MsiAlgorithm) {
+        if (lat > WATER_MASK_SOUTH_BOUND) {
             // values bigger than 100 indicate no data
             if (waterFraction <= 100) {
                 // todo: this does not work if we have a PixelGeocoding. In that case, waterFraction
@@ -315,14 +323,6 @@ public class S2IdepixClassificationOp extends Operator {
         }
     }
 
-    private GeoPos getGeoPos(int x, int y) {
-        final GeoPos geoPos = new GeoPos();
-        final GeoCoding geoCoding = sourceProduct.getSceneGeoCoding();
-        final PixelPos pixelPos = new PixelPos(x, y);
-        geoCoding.getGeoPos(pixelPos, geoPos);
-        return geoPos;
-    }
-
     private double calcRhoToa442ThresholdTerm(double sza, double vza, double saa, double vaa) {
         final double cosThetaScatt = S2IdepixUtils.calcScatteringCos(sza, vza, saa, vaa);
         return RHO_TOA_442_THRESHOLD + DELTA_RHO_TOA_442_THRESHOLD * cosThetaScatt * cosThetaScatt;
@@ -58,39 +58,10 @@ public class S2IdepixPostProcessOp extends Operator {
     @Parameter(defaultValue = "true", label = "Compute cloud shadow", description = "Compute cloud shadow")
     private boolean computeCloudShadow;
 
-    @Parameter(defaultValue = "true", label = " Compute a cloud buffer")
-    private boolean computeCloudBuffer;
-
-    @Parameter(defaultValue = "true", label = " Compute a cloud buffer also for cloud ambiguous pixels")
-    private boolean computeCloudBufferForCloudAmbiguous;
-
-    @Parameter(defaultValue = "2", interval = "[0,100]",
-            label = " Width of cloud buffer (# of pixels)",
-            description = " The width of the 'safety buffer' around a pixel identified as cloudy.")
-    private int cloudBufferWidth;
-
     @Parameter(description = "The mode by which clouds are detected. There are three options: Land/Water, Multiple Bands" +
             "or Single Band", valueSet = {"LandWater", "MultiBand", "SingleBand"}, defaultValue = "LandWater")
     private String mode;
 
-    @Parameter(defaultValue = "0.01",
-            label = " Threshold CW_THRESH",
-            description = " Threshold CW_THRESH")
-    private double cwThresh;
-
-    @Parameter(defaultValue = "-0.11",
-            label = " Threshold GCL_THRESH",
-            description = " Threshold GCL_THRESH")
-    private double gclThresh;
-
-    @Parameter(defaultValue = "0.01",
-            label = " Threshold CL_THRESH",
-            description = " Threshold CL_THRESH")
-    private double clThresh;
-
-    @Parameter(description = "The digital elevation model.", defaultValue = "SRTM 3Sec", label = "Digital Elevation Model")
-    private String demName = "SRTM 3Sec";
-
     private Band cloudBufferFlagBand;
     private Band mountainShadowFlagBand;
     private Band cloudShadowFlagBand;
@@ -125,14 +96,7 @@ public class S2IdepixPostProcessOp extends Operator {
             //      - add || computeMountainShadow to the condition above
             //      - consider the flag results in computeTile
             params.put("computeMountainShadow", false);
-            params.put("computeCloudBuffer", computeCloudBuffer);
-            params.put("cloudBufferWidth", cloudBufferWidth);
-            params.put("computeCloudBufferForCloudAmbiguous", computeCloudBufferForCloudAmbiguous);
             params.put("mode", mode);
-            params.put("cwThresh", cwThresh);
-            params.put("gclThresh", gclThresh);
-            params.put("clThresh", clThresh);
-            params.put("demName", demName);
             final Product cloudShadowProduct = GPF.createProduct(OperatorSpi.getOperatorAlias(S2IdepixCloudShadowOp.class),
                     params, input);
             cloudShadowFlagBand = cloudShadowProduct.getBand(S2IdepixCloudShadowOp.BAND_NAME_CLOUD_SHADOW);
@@ -30,6 +30,7 @@ import org.esa.snap.core.gpf.annotations.SourceProduct;
 import org.esa.snap.core.util.BitSetter;
 import org.esa.snap.core.util.ProductUtils;
 import org.esa.snap.core.util.RectangleExtender;
+import org.esa.snap.idepix.core.operators.MaskDilation;
 import org.esa.snap.idepix.s2msi.util.S2IdepixUtils;
 
 import java.awt.Rectangle;
@@ -73,7 +74,6 @@ public class S2IdepixCloudPostProcessOp extends Operator {
     private final int cdiStddevContextRadius = cdiStddevContextSize / 2;
     private int contextSize;
     private int contextRadius;
-    private int cloudBufferSize;
 
 
     private RectangleExtender pixelStateRectCalculator;
@@ -119,8 +119,7 @@ public class S2IdepixCloudPostProcessOp extends Operator {
         landWaterContextSize = (int) Math.floor((2 * COAST_BUFFER_SIZE) / resolution);   // TODO shall this be odd?
         contextSize = Math.max(landWaterContextSize, Math.max(urbanContextSize, cdiStddevContextSize));
         contextRadius = contextSize / 2;
-        cloudBufferSize = 2 * cloudBufferWidth + 1;
-        
+
         pixelStateRectCalculator = createRectCalculator(contextRadius + cloudBufferWidth);
         int urbanContextRadius = urbanContextSize / 2;
         urbanRectCalculator = createRectCalculator(urbanContextRadius + cloudBufferWidth);
@@ -151,14 +150,14 @@ public class S2IdepixCloudPostProcessOp extends Operator {
      * * waterNearby 33x33 (60m), 100x100 (20m), 200x200 (10m)
      * * clearNearby 11x11
      * * sum, square sum, and count of two band ratio expressions for the CDI
-     * * cloudBuffer 5x5 (cloudBufferWidth=2)
-     * For simplicity all the accus except cloudBuffer use the maximum number of lines that
+     * For simplicity all the accus use the maximum number of lines that
      * occurs (contextSize). This does not change the logic, just the buffer line used.</p>
      *
-     * <p>Cloud buffer shall be determined based on the corrected cloud flags. It memorises
-     * the flag value to be written into the target image and delays its writing by cloud
-     * buffer width lines and columns. The flag may get updated by cloud pixels showing up
-     * one or two lines later.</p>
+     * <p>Cloud buffer shall be determined based on the corrected cloud flags. The corrected
+     * flags of the target tile and a mask of the cloud pixels to be buffered are memorised
+     * during the single pass. The mask is dilated by the cloud buffer width with
+     * {@link MaskDilation} afterwards, and the buffer is added to clear pixels before
+     * the flags are written into the target image.</p>
      *
      * @param targetBand The target band, pixel_classif_flags.
      * @param targetTile The current tile associated with the target band to be computed.
@@ -196,8 +195,9 @@ public class S2IdepixCloudPostProcessOp extends Operator {
         final double[][] m8 = new double[contextSize][cloudBufferRectangle.width];
         final double[][] c8 = new double[contextSize][cloudBufferRectangle.width];
         final short[][] n78 = new short[contextSize][cloudBufferRectangle.width];
-        // the accu for pixelClassifFlags can be smaller because we only read it within the target tile
-        final int[][] cloudBufferAccu = new int[cloudBufferSize][targetRectangle.width];
+        // corrected pixelClassifFlags of the target tile and the cloud pixels to be buffered
+        final int[] correctedFlags = new int[targetRectangle.width * targetRectangle.height];
+        final boolean[] cloudForBufferMask = new boolean[cloudBufferRectangle.width * cloudBufferRectangle.height];
 
         // loop over extended source tile
         // y/x run from target tile y/x - context radius - cloud buffer width to ...
@@ -233,16 +233,12 @@ public class S2IdepixCloudPostProcessOp extends Operator {
                                         m7, c7, m8, c8, n78,
                                         sourceFlagTile, b2Tile, b8Tile, b11Tile,
                                         cloudBufferRectangle, targetRectangle,
-                                        cloudBufferAccu);
-                }
-                // yb/xb is the target pixel where we have seen just the last pixel of some possible cloud buffer
-                final int yb = yt - cloudBufferWidth;
-                final int xb = xt - cloudBufferWidth;
-                if (targetRectangle.contains(xb, yb)) {
-                    writeFlagsOfPixel(yb, xb, cloudBufferAccu, targetRectangle, targetTile);
+                                        correctedFlags, cloudForBufferMask);
                 }
             }
         }
+
+        writeFlags(targetTile, cloudBufferRectangle, correctedFlags, cloudForBufferMask);
     }
 
     private void correctFlagsOfPixel(int yt, int xt,
@@ -250,7 +246,7 @@ public class S2IdepixCloudPostProcessOp extends Operator {
                                      double[][] m7, double[][] c7, double[][] m8, double[][] c8, short[][] n78,
                                      Tile sourceFlagTile, Tile b2Tile, Tile b8Tile, Tile b11Tile,
                                      Rectangle cloudBufferRectangle, Rectangle targetRectangle,
-                                     int[][] cloudBufferAccu) {
+                                     int[] correctedFlags, boolean[] cloudForBufferMask) {
         // land/water/urban accu pixel position
         final int jt = (yt - cloudBufferRectangle.y) % contextSize;
         final int it = xt - cloudBufferRectangle.x;
@@ -263,22 +259,15 @@ public class S2IdepixCloudPostProcessOp extends Operator {
             pixelClassifFlags = urbanCloudDistinction(jt, it, clearNearbyAccu,
                                                       m7, m8, c7, c8, n78,
                                                       pixelClassifFlags);
-            // patch cloud buffer into accu
+            // mark cloud pixel for the cloud buffer
             if (computeCloudBuffer && isCloudForBuffer(pixelClassifFlags)) {
-                addCloudBufferInAccu(yt, xt, targetRectangle, cloudBufferWidth, cloudBufferAccu);
+                cloudForBufferMask[(yt - cloudBufferRectangle.y) * cloudBufferRectangle.width
+                        + xt - cloudBufferRectangle.x] = true;
             }
         }
-        // add cloud buffer flag from accu to pixelClassifFlags
-        // memorize p.c.f. in accu for later updates of cloud buffer flag and final writing
+        // memorize p.c.f. for adding the cloud buffer and final writing
         if (targetRectangle.contains(xt, yt)) {
-            final int jb = (yt - targetRectangle.y) % cloudBufferSize;
-            final int ib = xt - targetRectangle.x;
-            // read cloud buffer from accu (for clouds in upper left direction seen before)
-            if (isCloudBuffer(cloudBufferAccu[jb][ib]) && isClear(pixelClassifFlags)) {
-                pixelClassifFlags |= (1 << IDEPIX_CLOUD_BUFFER);
-            }
-            // write corrected pixel classif flags to accu
-            cloudBufferAccu[jb][ib] = pixelClassifFlags;
+            correctedFlags[(yt - targetRectangle.y) * targetRectangle.width + xt - targetRectangle.x] = pixelClassifFlags;
         }
         // reset accu for re-use
         landAccu[jt][it] = false;
@@ -291,13 +280,26 @@ public class S2IdepixCloudPostProcessOp extends Operator {
         n78[jt][it] = 0;
     }
 
-    private void writeFlagsOfPixel(int yb, int xb, int[][] cloudBufferAccu, Rectangle targetRectangle, Tile targetTile) {
-        // transfer accu to target
-        final int jb = (yb - targetRectangle.y) % cloudBufferSize;
-        final int ib = xb - targetRectangle.x;
-        targetTile.setSample(xb, yb, cloudBufferAccu[jb][ib]);
-        // clear accu for re-use
-        cloudBufferAccu[jb][ib] = 0;
+    private void writeFlags(Tile targetTile, Rectangle cloudBufferRectangle,
+                            int[] correctedFlags, boolean[] cloudForBufferMask) {
+        final Rectangle targetRectangle = targetTile.getRectangle();
+        boolean[] cloudBufferMask = null;
+        if (computeCloudBuffer) {
+            cloudBufferMask = MaskDilation.dilate(cloudForBufferMask,
+                                                  cloudBufferRectangle.width, cloudBufferRectangle.height,
+                                                  cloudBufferWidth);
+        }
+        int index = 0;
+        for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+            final int bufferRowOffset = (y - cloudBufferRectangle.y) * cloudBufferRectangle.width - cloudBufferRectangle.x;
+            for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                int pixelClassifFlags = correctedFlags[index++];
+                if (cloudBufferMask != null && cloudBufferMask[bufferRowOffset + x] && isClear(pixelClassifFlags)) {
+                    pixelClassifFlags |= (1 << IDEPIX_CLOUD_BUFFER);
+                }
+                targetTile.setSample(x, y, pixelClassifFlags);
+            }
+        }
     }
 
     private static int coastalCloudDistinction(int yt, int xt, int jt, int it,
@@ -415,24 +417,6 @@ public class S2IdepixCloudPostProcessOp extends Operator {
         }
     }
 
-    private void addCloudBufferInAccu(int y, int x, Rectangle targetRectangle, int halfWidth,
-                                      int[][] cloudBufferAccu) {
-        // reduce patch to part overlapping with target image
-        final int jMin = Math.max(y - targetRectangle.y - halfWidth, 0);
-        final int jMax = Math.min(y - targetRectangle.y + 1 + halfWidth, targetRectangle.height);
-        final int iMin = Math.max(x - targetRectangle.x - halfWidth, 0);
-        final int iMax = Math.min(x - targetRectangle.x + 1 + halfWidth, targetRectangle.width);
-        for (int j = jMin; j < jMax; ++j) {
-            final int jj = j % cloudBufferSize;
-            for (int i = iMin; i < iMax; ++i) {
-                if (isClear(cloudBufferAccu[jj][i])) {
-                    cloudBufferAccu[jj][i] |= (1 << IDEPIX_CLOUD_BUFFER);
-                }
-            }
-        }
-    }
-
-
     private RectangleExtender createRectCalculator(int extend) {
         return new RectangleExtender(new Rectangle(classifiedProduct.getSceneRasterWidth(),
                                                    classifiedProduct.getSceneRasterHeight()),
@@ -465,10 +449,6 @@ public class S2IdepixCloudPostProcessOp extends Operator {
         return (pixelClassifFlags & (1 << IDEPIX_CLOUD_AMBIGUOUS | 1 << IDEPIX_CLOUD_SURE)) != 0;
     }
 
-    private static boolean isCloudBuffer(int pixelClassifFlags) {
-        return (pixelClassifFlags & 1 << IDEPIX_CLOUD_BUFFER) != 0;
-    }
-
     private static boolean isClear(int pixelClassifFlags) {
         return (pixelClassifFlags
                 & (1 << IDEPIX_CLOUD_AMBIGUOUS | 1 << IDEPIX_CLOUD_SURE
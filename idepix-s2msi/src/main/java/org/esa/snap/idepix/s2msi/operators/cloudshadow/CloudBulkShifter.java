@@ -5,8 +5,6 @@ import java.awt.geom.Point2D;
 
 class CloudBulkShifter {
 
-    private double[] sumValue;
-    private int[] N;
     private int NCloudLand;
     private int NCloudWater;
     private int NValidPixel;
@@ -31,76 +29,77 @@ class CloudBulkShifter {
             yOffset = targetRectangle.y - sourceRectangle.y;
         }
 
-        meanValuesPath = new double[3][cloudPath.length];
-
-        sumValue = new double[3]; // Positions: 0: all, 1: only land, 2: only water
-        N = new int[3];
-        NCloudLand = 0;
-        NCloudWater = 0;
-        NValidPixel = 0;
-
-        for (int path_i = 1; path_i < cloudPath.length; path_i++) {
-            //collect index per cloudID and cloudpath step.
-            // - setup index of water or land pixels at cloud path step.
-            // just like identifyPotentialCloudShadow, but without cloudPath iteration. This is fixed to the path_i step.
-            for (int x0 = xOffset; x0 < sourceWidth; x0++) {
-                for (int y0 = yOffset; y0 < sourceHeight; y0++) {
-                    //each pixel needs to be tested, whether it is cloud or not.
-                    //based on identifyPotentialCloudShadow()
-                    simpleShiftedCloudMask_and_meanRefl_alongPath(x0, y0, sourceHeight, sourceWidth, cloudPath, path_i,
-                            flagArray, sourceBands[1]);
+        // the cloud pixels of the search rectangle are collected once, in the order in which they are shifted.
+        final int searchLength = Math.max(sourceWidth - xOffset, 0) * Math.max(sourceHeight - yOffset, 0);
+        final int[] cloudX = new int[searchLength];
+        final int[] cloudY = new int[searchLength];
+        int cloudCount = 0;
+        int validCount = 0;
+        int cloudLandCount = 0;
+        int cloudWaterCount = 0;
+        for (int x0 = xOffset; x0 < sourceWidth; x0++) {
+            for (int y0 = yOffset; y0 < sourceHeight; y0++) {
+                int flag = flagArray[y0 * sourceWidth + x0];
+                if (!((flag & PreparationMaskBand.INVALID_FLAG) == PreparationMaskBand.INVALID_FLAG)) {
+                    validCount++;
+                }
+                if ((flag & PreparationMaskBand.CLOUD_FLAG) == PreparationMaskBand.CLOUD_FLAG) {
+                    cloudX[cloudCount] = x0;
+                    cloudY[cloudCount] = y0;
+                    cloudCount++;
+                    if ((flag & PreparationMaskBand.LAND_FLAG) == PreparationMaskBand.LAND_FLAG) {
+                        cloudLandCount++;
+                    }
+                    if ((flag & PreparationMaskBand.WATER_FLAG) == PreparationMaskBand.WATER_FLAG) {
+                        cloudWaterCount++;
+                    }
                 }
-            }
-            for (int j = 0; j < 3; j++) {
-                meanValuesPath[j][path_i] = sumValue[j] / N[j];
             }
         }
-    }
+        // the pixels are counted once for each step along the cloud path
+        final int stepCount = Math.max(cloudPath.length - 1, 0);
+        NValidPixel = validCount * stepCount;
+        NCloudLand = cloudLandCount * stepCount;
+        NCloudWater = cloudWaterCount * stepCount;
 
-    private void simpleShiftedCloudMask_and_meanRefl_alongPath(int x0, int y0, int height, int width,
-                                                               Point2D[] cloudPath, int end_path_i,
-                                                               int[] flagArray, float[] sourceBand) {
-        int index0 = y0 * width + x0;
-        //start from a cloud pixel, otherwise stop.
-        if (!((flagArray[index0] & PreparationMaskBand.INVALID_FLAG) == PreparationMaskBand.INVALID_FLAG)) {
-            NValidPixel++;
-        }
-        if (!((flagArray[index0] & PreparationMaskBand.CLOUD_FLAG) == PreparationMaskBand.CLOUD_FLAG)) {
-            return;
-        }
-        if (((flagArray[index0] & PreparationMaskBand.CLOUD_FLAG) == PreparationMaskBand.CLOUD_FLAG)) {
-            if (((flagArray[index0] & PreparationMaskBand.LAND_FLAG) == PreparationMaskBand.LAND_FLAG)) {
-                NCloudLand++;
-            }
-            if (((flagArray[index0] & PreparationMaskBand.WATER_FLAG) == PreparationMaskBand.WATER_FLAG)) {
-                NCloudWater++;
-            }
-        }
-        for (int i = end_path_i; i < end_path_i + 1; i++) {
-            int x1 = x0 + (int) cloudPath[i].getX();
-            int y1 = y0 + (int) cloudPath[i].getY();
-            if (x1 >= width || y1 >= height || x1 < 0 || y1 < 0) {
-                break;
-            }
-            int index1 = y1 * width + x1;
-            if (!((flagArray[index1] & PreparationMaskBand.CLOUD_FLAG) == PreparationMaskBand.CLOUD_FLAG) &&
-                    !((flagArray[index1] & PreparationMaskBand.INVALID_FLAG) == PreparationMaskBand.INVALID_FLAG)) {
+        final float[] sourceBand = sourceBands[1];
+        meanValuesPath = new double[3][cloudPath.length];
+        final double[] sumValue = new double[3]; // Positions: 0: all, 1: only land, 2: only water
+        final int[] N = new int[3];
 
-                if (!((flagArray[index1] & PreparationMaskBand.POTENTIAL_CLOUD_SHADOW_FLAG) == PreparationMaskBand.POTENTIAL_CLOUD_SHADOW_FLAG)) {
+        for (int path_i = 1; path_i < cloudPath.length; path_i++) {
+            // the shadow footprint of each cloud pixel at this step along the cloud path.
+            // A pixel contributes to the mean reflectance at the first step it is reached.
+            final int pathX = (int) cloudPath[path_i].getX();
+            final int pathY = (int) cloudPath[path_i].getY();
+            for (int k = 0; k < cloudCount; k++) {
+                int x1 = cloudX[k] + pathX;
+                int y1 = cloudY[k] + pathY;
+                if (x1 >= sourceWidth || y1 >= sourceHeight || x1 < 0 || y1 < 0) {
+                    continue;
+                }
+                int index1 = y1 * sourceWidth + x1;
+                int flag = flagArray[index1];
+                if (!((flag & PreparationMaskBand.CLOUD_FLAG) == PreparationMaskBand.CLOUD_FLAG) &&
+                        !((flag & PreparationMaskBand.INVALID_FLAG) == PreparationMaskBand.INVALID_FLAG) &&
+                        !((flag & PreparationMaskBand.POTENTIAL_CLOUD_SHADOW_FLAG) == PreparationMaskBand.POTENTIAL_CLOUD_SHADOW_FLAG)) {
                     flagArray[index1] += PreparationMaskBand.POTENTIAL_CLOUD_SHADOW_FLAG;
-                    this.sumValue[0] += sourceBand[index1];
-                    this.N[0] += 1;
+                    sumValue[0] += sourceBand[index1];
+                    N[0] += 1;
 
-                    if (((flagArray[index1] & PreparationMaskBand.LAND_FLAG) == PreparationMaskBand.LAND_FLAG)) {
-                        this.sumValue[1] += sourceBand[index1];
-                        this.N[1] += 1;
+                    if ((flag & PreparationMaskBand.LAND_FLAG) == PreparationMaskBand.LAND_FLAG) {
+                        sumValue[1] += sourceBand[index1];
+                        N[1] += 1;
                     }
-                    if (((flagArray[index1] & PreparationMaskBand.WATER_FLAG) == PreparationMaskBand.WATER_FLAG)) {
-                        this.sumValue[2] += sourceBand[index1];
-                        this.N[2] += 1;
+                    if ((flag & PreparationMaskBand.WATER_FLAG) == PreparationMaskBand.WATER_FLAG) {
+                        sumValue[2] += sourceBand[index1];
+                        N[2] += 1;
                     }
                 }
             }
+            for (int j = 0; j < 3; j++) {
+                meanValuesPath[j][path_i] = sumValue[j] / N[j];
+            }
         }
     }
 
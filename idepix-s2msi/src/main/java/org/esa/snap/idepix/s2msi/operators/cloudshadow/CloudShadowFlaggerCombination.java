@@ -25,7 +25,7 @@ class CloudShadowFlaggerCombination {
 
     private double meanReflShift;
     private int cloudSize;
-    private List<Integer> cloud;
+    private int[] cloud;
     private Point2D[] cloudPath;
 
     // for testing, which cluster to use: the one, which mean distance is closer to the shift, which has been calculated before...
@@ -34,7 +34,7 @@ class CloudShadowFlaggerCombination {
     private final static int CLUSTER_COUNT = S2IdepixPostCloudShadowOp.clusterCountDefine;
 
     void flagCloudShadowAreas(float[][] sourceBands, int[] flagArray, Map<Integer, List<Integer>> potentialShadowPositions,
-                              Map<Integer, List<Integer>> offsetAtPotentialShadow, Map<Integer, List<Integer>> cloudList,
+                              Map<Integer, List<Integer>> offsetAtPotentialShadow, ContinuousAreas cloudAreas,
                               int bestOffset, Mode mode, int sourceWidth, int sourceHeight, int[] shadowIDArray, Point2D[] cloudPath) {
 
         this.flagArray = flagArray;
@@ -80,8 +80,8 @@ class CloudShadowFlaggerCombination {
             }
 
             //caution! the cloud list has a different length!
-            this.cloud = cloudList.get(key);
-            this.cloudSize = cloud.size();
+            this.cloud = cloudAreas.getPixelIndices(key);
+            this.cloudSize = cloud.length;
             this.meanReflShift = computeMeanRefl(cloud, bestOffset, sourceBands[1], cloudPath);
 
 
@@ -114,14 +114,14 @@ class CloudShadowFlaggerCombination {
                 }
             }
             FindContinuousAreas testContinuousShadow = new FindContinuousAreas(test);
-            Map<Integer, List<Integer>> clusteredShadowTileID = testContinuousShadow.computeAreaID(width, height, shadowIDArray, false);
+            ContinuousAreas clusteredShadowAreas = testContinuousShadow.computeAreaID(width, height, shadowIDArray, false);
 
-            setCombinedCloudShadowFlagOnTile(clusteredShadowTileID);
+            setCombinedCloudShadowFlagOnTile(clusteredShadowAreas);
         }
 
     }
 
-    private double computeMeanRefl(List<Integer> cloud, int bestOffset, float[] sourceBand, Point2D[] cloudPath) {
+    private double computeMeanRefl(int[] cloud, int bestOffset, float[] sourceBand, Point2D[] cloudPath) {
         int N = 0;
         double refl = 0.;
 
@@ -160,7 +160,7 @@ class CloudShadowFlaggerCombination {
         return out;
     }
 
-    private void switchOffShiftedCloudShadowFlag(List<Integer> cloud, int Offset, Point2D[] cloudPath) {
+    private void switchOffShiftedCloudShadowFlag(int[] cloud, int Offset, Point2D[] cloudPath) {
         int cloudPathOffsetX = (int) cloudPath[Offset].getX();
         int cloudPathOffsetY = (int) cloudPath[Offset].getY();
         for (int index : cloud) {
@@ -180,7 +180,7 @@ class CloudShadowFlaggerCombination {
         }
     }
 
-    private void setShiftedCloudShadowFlag(List<Integer> cloud, int Offset, Point2D[] cloudPath) {
+    private void setShiftedCloudShadowFlag(int[] cloud, int Offset, Point2D[] cloudPath) {
         int cloudPathOffsetX = (int) cloudPath[Offset].getX();
         int cloudPathOffsetY = (int) cloudPath[Offset].getY();
         for (int index : cloud) {
@@ -203,16 +203,14 @@ class CloudShadowFlaggerCombination {
         }
     }
 
-    private void setCombinedCloudShadowFlagOnTile(Map<Integer, List<Integer>> clusteredShadowTileID) {
+    private void setCombinedCloudShadowFlagOnTile(ContinuousAreas clusteredShadowAreas) {
         //if a continuous clustered shadow coincides with a shifted (adjusted) shadow, keep it.
 
         List<Integer> coincideKey = new ArrayList<>();
 
-        for (int key : clusteredShadowTileID.keySet()) {
-            List<Integer> positions = clusteredShadowTileID.get(key);
-
-            for (Integer position : positions) {
-                int ind = position;
+        for (int key = 1; key <= clusteredShadowAreas.size(); key++) {
+            for (int position = clusteredShadowAreas.getStart(key); position < clusteredShadowAreas.getEnd(key); position++) {
+                int ind = clusteredShadowAreas.getPixelIndex(position);
                 if (((flagArray[ind] & PreparationMaskBand.SHIFTED_CLOUD_SHADOW_FLAG) == PreparationMaskBand.SHIFTED_CLOUD_SHADOW_FLAG)) {
                     coincideKey.add(key);
                     break;
@@ -222,9 +220,8 @@ class CloudShadowFlaggerCombination {
 
         if (coincideKey.size() > 0) {
             for (int key : coincideKey) {
-                List<Integer> positions = clusteredShadowTileID.get(key);
-
-                for (int index1 : positions) {
+                for (int position = clusteredShadowAreas.getStart(key); position < clusteredShadowAreas.getEnd(key); position++) {
+                    int index1 = clusteredShadowAreas.getPixelIndex(position);
                     int flag = flagArray[index1];
                     if (!((flag & PreparationMaskBand.CLOUD_SHADOW_COMB_FLAG) == PreparationMaskBand.CLOUD_SHADOW_COMB_FLAG) &&
                             !((flag & PreparationMaskBand.CLOUD_FLAG) == PreparationMaskBand.CLOUD_FLAG) &&
@@ -239,7 +236,7 @@ class CloudShadowFlaggerCombination {
 
     }
 
-    private void setANDTestCombinedCloudShadowFlag(List<Integer> cloud, int Offset, int indexForOffset, Point2D[] cloudPath, Map<Integer, List<Integer>> ListShadowID) {
+    private void setANDTestCombinedCloudShadowFlag(int[] cloud, int Offset, int indexForOffset, Point2D[] cloudPath, ContinuousAreas ListShadowID) {
 
         List<Integer> indexShiftedCloud = new ArrayList<>();
         if (Offset == 0) {
@@ -271,8 +268,8 @@ class CloudShadowFlaggerCombination {
 
         //coinciding pixels between cluster and shift?
         List<Integer> coincideKey = new ArrayList<>();
-        for (int key : ListShadowID.keySet()) {
-            List<Integer> positions = ListShadowID.get(key);
+        for (int key = 1; key <= ListShadowID.size(); key++) {
+            int[] positions = ListShadowID.getPixelIndices(key);
             int[] test = new int[flagArray.length];
             for (int ind : positions) {
                 if (ind < test.length) {
@@ -294,7 +291,7 @@ class CloudShadowFlaggerCombination {
 
         if (noduplCoincideKey.size() > 0) {
             for (int key : noduplCoincideKey) {
-                List<Integer> positions = ListShadowID.get(key);
+                int[] positions = ListShadowID.getPixelIndices(key);
 
                 for (int index1 : positions) {
                     if (!((flagArray[index1] & PreparationMaskBand.CLOUD_SHADOW_COMB_FLAG) == PreparationMaskBand.CLOUD_SHADOW_COMB_FLAG) &&
@@ -626,14 +623,14 @@ class CloudShadowFlaggerCombination {
             //find continuous cluster
 
             FindContinuousAreas testContinuousShadow = new FindContinuousAreas(test);
-            Map<Integer, List<Integer>> listShadowID = testContinuousShadow.computeAreaID(width, height, shadowIDArray, false);
+            ContinuousAreas listShadowID = testContinuousShadow.computeAreaID(width, height, shadowIDArray, false);
             if (listShadowID.size() > 1) {
                 Map<Integer, Integer> meanOffsetClust = new HashMap<>();
 
                 //calculate mean offset and mean Refl for each of the continuous shadow areas from the clustering
-                for (int i : listShadowID.keySet()) {
+                for (int i = 1; i <= listShadowID.size(); i++) {
 
-                    List<Integer> pos = listShadowID.get(i);
+                    int[] pos = listShadowID.getPixelIndices(i);
 //                    double meanShadowRefl = 0.;
                     int meanOffset = 0;
                     int N = 0;
@@ -8,7 +8,6 @@ import org.jblas.DoubleMatrix;
 import java.awt.*;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.Map;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -18,17 +17,16 @@ class CloudShadowFlaggerShiftInCloudGaps {
 
     private int[] flagArray;
 
-    void setShiftedCloudInCloudGaps(Rectangle sourceRectangle, int[] flagArray, Map<Integer, List<Integer>> cloudList,
+    void setShiftedCloudInCloudGaps(Rectangle sourceRectangle, int[] flagArray, ContinuousAreas cloudAreas,
                                            double[] cloudTestArray, double spatialResolution) {
         int sourceWidth = sourceRectangle.width;
         int sourceHeight = sourceRectangle.height;
         this.flagArray = flagArray;
-        if (cloudList.size() > 0) {
+        if (cloudAreas.size() > 0) {
             DoubleMatrix cloudFlag = DoubleMatrix.zeros(sourceWidth, sourceHeight);
-            for (int key : cloudList.keySet()) {
-                List<Integer> positions = cloudList.get(key);
-                for (int index : positions) {
-                    cloudFlag.put(index, 1.);
+            for (int areaId = 1; areaId <= cloudAreas.size(); areaId++) {
+                for (int position = cloudAreas.getStart(areaId); position < cloudAreas.getEnd(areaId); position++) {
+                    cloudFlag.put(cloudAreas.getPixelIndex(position), 1.);
                 }
             }
             ComplexDoubleMatrix complexCloudFlag = new ComplexDoubleMatrix(cloudFlag);
@@ -60,24 +58,23 @@ class CloudShadowFlaggerShiftInCloudGaps {
             }
             FindContinuousAreas testContinuousShadow = new FindContinuousAreas(shifted);
             int[] shadowIDArray = new int[sourceWidth * sourceHeight];
-            Map<Integer, List<Integer>> shiftedShadowTileID =
+            ContinuousAreas shiftedShadowAreas =
                     testContinuousShadow.computeAreaID(sourceWidth, sourceHeight, shadowIDArray, false);
 
-            setCoincidingShiftedCloudShadowWithCloudGaps(shiftedShadowTileID, cloudTestArray);
+            setCoincidingShiftedCloudShadowWithCloudGaps(shiftedShadowAreas, cloudTestArray);
 
         }
 
     }
 
 
-    private void setCoincidingShiftedCloudShadowWithCloudGaps(Map<Integer, List<Integer>> shiftedShadowTileID, double[] cloudGaps) {
+    private void setCoincidingShiftedCloudShadowWithCloudGaps(ContinuousAreas shiftedShadowAreas, double[] cloudGaps) {
         //if a continuous shifted shadow coincides with a cloud gap, keep it.
         List<Integer> coincideKey = new ArrayList<>();
-        if (shiftedShadowTileID.size() > 0) {
-            for (int key : shiftedShadowTileID.keySet()) {
-                List<Integer> positions = shiftedShadowTileID.get(key);
-                for (Integer position : positions) {
-                    int ind = position;
+        if (shiftedShadowAreas.size() > 0) {
+            for (int key = 1; key <= shiftedShadowAreas.size(); key++) {
+                for (int position = shiftedShadowAreas.getStart(key); position < shiftedShadowAreas.getEnd(key); position++) {
+                    int ind = shiftedShadowAreas.getPixelIndex(position);
                     if (((flagArray[ind] & PreparationMaskBand.SHIFTED_CLOUD_SHADOW_FLAG) == PreparationMaskBand.SHIFTED_CLOUD_SHADOW_FLAG)
                             && (cloudGaps[ind] < -0.1)) {
                         coincideKey.add(key);
@@ -87,8 +84,8 @@ class CloudShadowFlaggerShiftInCloudGaps {
             }
             if (coincideKey.size() > 0) {
                 for (int key : coincideKey) {
-                    List<Integer> positions = shiftedShadowTileID.get(key);
-                    for (int index1 : positions) {
+                    for (int position = shiftedShadowAreas.getStart(key); position < shiftedShadowAreas.getEnd(key); position++) {
+                        int index1 = shiftedShadowAreas.getPixelIndex(position);
                         if (!((flagArray[index1] & PreparationMaskBand.SHIFTED_CLOUD_SHADOW_GAPS_FLAG) == PreparationMaskBand.SHIFTED_CLOUD_SHADOW_GAPS_FLAG) &&
                                 !((flagArray[index1] & PreparationMaskBand.CLOUD_FLAG) == PreparationMaskBand.CLOUD_FLAG) &&
                                 !((flagArray[index1] & PreparationMaskBand.INVALID_FLAG) == PreparationMaskBand.INVALID_FLAG)) {
@@ -3,6 +3,7 @@ package org.esa.snap.idepix.s2msi.operators.cloudshadow;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.gpf.Tile;
 import org.esa.snap.core.util.ShapeRasterizer;
+import org.esa.snap.idepix.core.util.TileSummary;
 import org.esa.snap.idepix.s2msi.util.S2IdepixConstants;
 
 import java.awt.Rectangle;
@@ -167,13 +168,7 @@ public class CloudShadowUtils {
     }
 
     static boolean isCompletelyInvalid(Tile sourceTileFlag1) {
-        int invalid_byte = (int) Math.pow(2, S2IdepixConstants.IDEPIX_INVALID);
-        int[] classifData = sourceTileFlag1.getSamplesInt();
-        for (int i=0; i<classifData.length; ++i) {
-            if ((classifData[i] & invalid_byte) == 0) {
-                return false;
-            }
-        }
-        return true;
+        return TileSummary.isFlagSetEverywhere(sourceTileFlag1, sourceTileFlag1.getRectangle(),
+                                               1 << S2IdepixConstants.IDEPIX_INVALID);
     }
 }
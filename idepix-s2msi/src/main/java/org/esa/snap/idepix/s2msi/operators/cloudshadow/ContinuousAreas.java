@@ -0,0 +1,66 @@
+package org.esa.snap.idepix.s2msi.operators.cloudshadow;
+
+import java.util.Arrays;
+
+/**
+ * The continuous areas found by {@link FindContinuousAreas}, in a compact representation: the pixel indices of all
+ * areas are stored in a single array, ordered by area, and the areas are given by their offsets into this array.
+ * The areas have the ids 1 to {@link #size()}, the pixel indices of an area are in ascending order.
+ */
+class ContinuousAreas {
+
+    private final int[] offsets;
+    private final int[] pixelIndices;
+
+    ContinuousAreas(int[] offsets, int[] pixelIndices) {
+        this.offsets = offsets;
+        this.pixelIndices = pixelIndices;
+    }
+
+    /**
+     * @return the number of areas
+     */
+    int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @param areaId - the id of the area, from 1 to size()
+     * @return the position of the first pixel of the area in the pixel indices
+     */
+    int getStart(int areaId) {
+        return offsets[areaId - 1];
+    }
+
+    /**
+     * @param areaId - the id of the area, from 1 to size()
+     * @return the position after the last pixel of the area in the pixel indices
+     */
+    int getEnd(int areaId) {
+        return offsets[areaId];
+    }
+
+    /**
+     * @param position - a position between getStart(areaId) and getEnd(areaId) of an area
+     * @return the index of the pixel at this position
+     */
+    int getPixelIndex(int position) {
+        return pixelIndices[position];
+    }
+
+    /**
+     * @param areaId - the id of the area, from 1 to size()
+     * @return the number of pixels of the area
+     */
+    int getPixelCount(int areaId) {
+        return offsets[areaId] - offsets[areaId - 1];
+    }
+
+    /**
+     * @param areaId - the id of the area, from 1 to size()
+     * @return a copy of the pixel indices of the area
+     */
+    int[] getPixelIndices(int areaId) {
+        return Arrays.copyOfRange(pixelIndices, offsets[areaId - 1], offsets[areaId]);
+    }
+}
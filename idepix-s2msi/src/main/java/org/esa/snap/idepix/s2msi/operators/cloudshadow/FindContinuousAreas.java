@@ -1,331 +1,116 @@
 package org.esa.snap.idepix.s2msi.operators.cloudshadow;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
- * todo: add comment
+ * Labels the continuous areas of target pixels (4-connected) with a two-pass union-find algorithm: the first pass
+ * assigns provisional labels and records which of them belong together, the second pass resolves them to the final
+ * area ids, numbered in the order in which the areas are first met when scanning the rows from the top.
  */
 class FindContinuousAreas {
 
+    private static final int INITIAL_LABEL_CAPACITY = 256;
+
     private final int[] flagArray;
 
     FindContinuousAreas(int[] flagArray) {
         this.flagArray = flagArray;
     }
 
-    Map<Integer, List<Integer>> computeAreaID(int sourceWidth, int sourceHeight, int[] cloudIdArray, boolean useFlagBand) {
-
-        int id = 0;
-        Map<Integer, List<Integer>> output = new TreeMap<>();
-
-        //first pixel (top left)
-        if (isTarget(0, useFlagBand)) {
-            cloudIdArray[0] = ++id;
-        }
-
-        // first row (top row)
-        for (int i = 1; i < sourceWidth; i++) {
-            if (isTarget(i, useFlagBand)) {
-                if (cloudIdArray[i - 1] != 0) {
-                    cloudIdArray[i] = cloudIdArray[i - 1];
-                } else {
-                    cloudIdArray[i] = ++id;
-                }
-            }
-        }
-
-        for (int j = 1; j < sourceHeight; j++) {
+    /**
+     * Finds the continuous areas of target pixels.
+     *
+     * @param sourceWidth  - the width of the flag array
+     * @param sourceHeight - the height of the flag array
+     * @param areaIdArray  - receives the area id of each target pixel, other pixels are not changed
+     * @param useFlagBand  - if true, target pixels are valid cloud pixels of the preparation mask, else pixels of value 1
+     * @return the areas
+     */
+    ContinuousAreas computeAreaID(int sourceWidth, int sourceHeight, int[] areaIdArray, boolean useFlagBand) {
+        final int numPixels = sourceWidth * sourceHeight;
+        final int[] labels = new int[numPixels];
+        int[] parents = new int[INITIAL_LABEL_CAPACITY];
+        int labelCount = 0;
+
+        // first pass: provisional labels from the left and upper neighbours, equivalences in the union-find forest
+        for (int j = 0; j < sourceHeight; j++) {
             for (int i = 0; i < sourceWidth; i++) {
-                int index = j * (sourceWidth) + i;
-                if (isTarget(index, useFlagBand)) {
-                    int leftNeighbour = cloudIdArray[index - 1];
-                    int upperNeighbour = cloudIdArray[index - sourceWidth];
-                    if (i == 0) {
-                        if (upperNeighbour == 0) {
-                            cloudIdArray[index] = ++id;
-                        } else {
-                            cloudIdArray[index] = upperNeighbour;
-                        }
-                    } else if (leftNeighbour == 0 && upperNeighbour == 0) {
-                        cloudIdArray[index] = ++id;
-                    } else if (upperNeighbour == 0 || leftNeighbour == upperNeighbour) {
-                        cloudIdArray[index] = leftNeighbour;
-                    } else if (leftNeighbour == 0) {
-                        cloudIdArray[index] = upperNeighbour;
-                    } else {
-                        cloudIdArray[index] = upperNeighbour;
-                    }
+                int index = j * sourceWidth + i;
+                if (!isTarget(index, useFlagBand)) {
+                    continue;
                 }
-            }
-        }
-        //adjusting the numbering by using the other direction (from bottom upwards).
-        for (int j = sourceHeight - 2; j >= 0; j--) {
-            for (int i = sourceWidth - 2; i >= 0; i--) {
-                int index = j * (sourceWidth) + i;
-
-                if (isTarget(index, useFlagBand)) {
-                    int rightNeighbour = cloudIdArray[index + 1];
-
-                    if (rightNeighbour > 0) {
-                        cloudIdArray[index] = rightNeighbour;
+                int leftLabel = i > 0 ? labels[index - 1] : 0;
+                int upperLabel = j > 0 ? labels[index - sourceWidth] : 0;
+                if (leftLabel == 0 && upperLabel == 0) {
+                    labelCount++;
+                    if (labelCount == parents.length) {
+                        parents = Arrays.copyOf(parents, 2 * parents.length);
                     }
-
-                }
-            }
-        }
-
-        int count = 1;
-        int k = 0;
-
-        //reverting directions during the search repeatedly allows to identify spiraling areas as continuous areas.
-        while (count > 0 && k < 10) {    //test in all four next neighbours, from bottom right to top left
-            count = 0;
-            for (int j = sourceHeight - 2; j > 0; j--) {
-                for (int i = sourceWidth - 2; i > 0; i--) {
-                    int index = j * (sourceWidth) + i;
-
-                    if (isTarget(index, useFlagBand)) {
-                        int lowerNeighbour = cloudIdArray[index + sourceWidth];
-                        int upperNeighbour = cloudIdArray[index - sourceWidth];
-                        int leftNeighbour = cloudIdArray[index - 1];
-                        int rightNeighbour = cloudIdArray[index + 1];
-                        int center = cloudIdArray[index];
-
-                        int thisMax = lowerNeighbour;
-                        if (leftNeighbour > thisMax) thisMax = leftNeighbour;
-                        if (rightNeighbour > thisMax) thisMax = rightNeighbour;
-                        if (upperNeighbour > thisMax) thisMax = upperNeighbour;
-                        if (center > thisMax) thisMax = center;
-
-                        if (center < thisMax) {
-                            cloudIdArray[index] = thisMax;
-                            count++;
-                        } else if (lowerNeighbour > 0 && lowerNeighbour < thisMax) {
-                            cloudIdArray[index + sourceWidth] = thisMax;
-                            count++;
-                        } else if (upperNeighbour > 0 && upperNeighbour < thisMax) {
-                            cloudIdArray[index - sourceWidth] = thisMax;
-                            count++;
-                        } else if (leftNeighbour > 0 && leftNeighbour < thisMax) {
-                            cloudIdArray[index - 1] = thisMax;
-                            count++;
-                        } else if (rightNeighbour > 0 && rightNeighbour < thisMax) {
-                            cloudIdArray[index + 1] = thisMax;
-                            count++;
-                        }
+                    parents[labelCount] = labelCount;
+                    labels[index] = labelCount;
+                } else if (leftLabel == 0) {
+                    labels[index] = upperLabel;
+                } else {
+                    labels[index] = leftLabel;
+                    if (upperLabel != 0 && upperLabel != leftLabel) {
+                        union(parents, leftLabel, upperLabel);
                     }
                 }
             }
-            //test in all four next neighbours, from top left to bottom right (reversed to the iterations before)
-            for (int j = 1; j < sourceHeight - 2; j++) {
-                for (int i = 1; i < sourceWidth - 2; i++) {
-                    int index = j * (sourceWidth) + i;
-                    if (isTarget(index, useFlagBand)) {
-                        int lowerNeighbour = cloudIdArray[index + sourceWidth];
-                        int upperNeighbour = cloudIdArray[index - sourceWidth];
-                        int leftNeighbour = cloudIdArray[index - 1];
-                        int rightNeighbour = cloudIdArray[index + 1];
-
-                        int thisMax = lowerNeighbour;
-                        if (leftNeighbour > thisMax) thisMax = leftNeighbour;
-                        if (rightNeighbour > thisMax) thisMax = rightNeighbour;
-                        if (upperNeighbour > thisMax) thisMax = upperNeighbour;
-                        int center = cloudIdArray[index];
+        }
 
-                        if (center < thisMax) {
-                            cloudIdArray[index] = thisMax;
-                            count++;
-                        } else if (lowerNeighbour > 0 && lowerNeighbour < thisMax) {
-                            cloudIdArray[index + sourceWidth] = thisMax;
-                            count++;
-                        } else if (upperNeighbour > 0 && upperNeighbour < thisMax) {
-                            cloudIdArray[index - sourceWidth] = thisMax;
-                            count++;
-                        } else if (leftNeighbour > 0 && leftNeighbour < thisMax) {
-                            cloudIdArray[index - 1] = thisMax;
-                            count++;
-                        } else if (rightNeighbour > 0 && rightNeighbour < thisMax) {
-                            cloudIdArray[index + 1] = thisMax;
-                            count++;
-                        }
-                    }
-                }
+        // the root of a set is its smallest label, so the area ids follow the order of the first pixels
+        final int[] areaIds = new int[labelCount + 1];
+        int areaCount = 0;
+        for (int label = 1; label <= labelCount; label++) {
+            int root = findRoot(parents, label);
+            if (root == label) {
+                areaIds[label] = ++areaCount;
+            } else {
+                areaIds[label] = areaIds[root];
             }
-            //correct edges; at i=0 and i=sourceWidth-1
-            for (int j = 0; j < sourceHeight; j++) {
-                int index1 = j * (sourceWidth);
-                int index2 = j * (sourceWidth) + sourceWidth - 1;
-                if (isTarget(index1, useFlagBand)) {
-
-                    int rightNeighbour = cloudIdArray[index1 + 1];
-                    int center = cloudIdArray[index1];
-
-                    if (sourceHeight == 1) {
-                        int thisMax = rightNeighbour;
-                        if (center > thisMax) thisMax = center;
-                        if (center < thisMax) {
-                            cloudIdArray[index1] = thisMax;
-                            count++;
-                        } else if (rightNeighbour > 0 && rightNeighbour < thisMax) {
-                            cloudIdArray[index1 + 1] = thisMax;
-                            count++;
-                        }
-                    } else if (j == 0 && sourceHeight > 1) {
-                        int lowerNeighbour = cloudIdArray[index1 + sourceWidth];
-
-                        int thisMax = lowerNeighbour;
-                        if (rightNeighbour > thisMax) thisMax = rightNeighbour;
-                        if (center > thisMax) thisMax = center;
-
-                        if (center < thisMax) {
-                            cloudIdArray[index1] = thisMax;
-                            count++;
-                        } else if (rightNeighbour > 0 && rightNeighbour < thisMax) {
-                            cloudIdArray[index1 + 1] = thisMax;
-                            count++;
-                        } else if (lowerNeighbour > 0 && lowerNeighbour < thisMax) {
-                            cloudIdArray[index1 + sourceWidth] = thisMax;
-                            count++;
-                        }
-                    } else if (j == sourceHeight - 1 && sourceHeight > 1) {
-                        int upperNeighbour = cloudIdArray[index1 - sourceWidth];
-
-                        int thisMax = upperNeighbour;
-                        if (rightNeighbour > thisMax) thisMax = rightNeighbour;
-                        if (center > thisMax) thisMax = center;
-
-                        if (center < thisMax) {
-                            cloudIdArray[index1] = thisMax;
-                            count++;
-                        } else if (rightNeighbour > 0 && rightNeighbour < thisMax) {
-                            cloudIdArray[index1 + 1] = thisMax;
-                            count++;
-                        } else if (upperNeighbour > 0 && upperNeighbour < thisMax) {
-                            cloudIdArray[index1 - sourceWidth] = thisMax;
-                            count++;
-                        }
-                    } else {
-                        int lowerNeighbour = cloudIdArray[index1 + sourceWidth];
-                        int upperNeighbour = cloudIdArray[index1 - sourceWidth];
-
-                        int thisMax = lowerNeighbour;
-                        if (rightNeighbour > thisMax) thisMax = rightNeighbour;
-                        if (upperNeighbour > thisMax) thisMax = upperNeighbour;
-                        if (center > thisMax) thisMax = center;
-
-                        if (center < thisMax) {
-                            cloudIdArray[index1] = thisMax;
-                            count++;
-                        } else if (rightNeighbour > 0 && rightNeighbour < thisMax) {
-                            cloudIdArray[index1 + 1] = thisMax;
-                            count++;
-                        } else if (lowerNeighbour > 0 && lowerNeighbour < thisMax) {
-                            cloudIdArray[index1 + sourceWidth] = thisMax;
-                            count++;
-                        } else if (upperNeighbour > 0 && upperNeighbour < thisMax) {
-                            cloudIdArray[index1 - sourceWidth] = thisMax;
-                            count++;
-                        }
-                    }
-                }
-                if (isTarget(index2, useFlagBand)) {
-                    int leftNeighbour = cloudIdArray[index2 - 1];
-                    int center = cloudIdArray[index2];
-                    if (sourceHeight == 1) {
-                        int thisMax = leftNeighbour;
-                        if (center > thisMax) thisMax = center;
-                        if (center < thisMax) {
-                            cloudIdArray[index2] = thisMax;
-                            count++;
-                        } else if (leftNeighbour > 0 && leftNeighbour < thisMax) {
-                            cloudIdArray[index2 - 1] = thisMax;
-                            count++;
-                        }
-                    } else if (j == 0) {
-                        int lowerNeighbour = cloudIdArray[index2 + sourceWidth];
-
-                        int thisMax = lowerNeighbour;
-                        if (leftNeighbour > thisMax) thisMax = leftNeighbour;
-                        if (center > thisMax) thisMax = center;
-
-                        if (center < thisMax) {
-                            cloudIdArray[index2] = thisMax;
-                            count++;
-                        } else if (leftNeighbour > 0 && leftNeighbour < thisMax) {
-                            cloudIdArray[index2 - 1] = thisMax;
-                            count++;
-                        } else if (lowerNeighbour > 0 && lowerNeighbour < thisMax) {
-                            cloudIdArray[index2 + sourceWidth] = thisMax;
-                            count++;
-                        }
-                    } else if (j == sourceHeight - 1) {
-                        int upperNeighbour = cloudIdArray[index2 - sourceWidth];
-
-                        int thisMax = upperNeighbour;
-                        if (leftNeighbour > thisMax) thisMax = leftNeighbour;
-                        if (center > thisMax) thisMax = center;
-
-                        if (center < thisMax) {
-                            cloudIdArray[index2] = thisMax;
-                            count++;
-                        } else if (leftNeighbour > 0 && leftNeighbour < thisMax) {
-                            cloudIdArray[index2 - 1] = thisMax;
-                            count++;
-                        } else if (upperNeighbour > 0 && upperNeighbour < thisMax) {
-                            cloudIdArray[index2 - sourceWidth] = thisMax;
-                            count++;
-                        }
-                    } else {
-                        int lowerNeighbour = cloudIdArray[index2 + sourceWidth];
-                        int upperNeighbour = cloudIdArray[index2 - sourceWidth];
-
-                        int thisMax = lowerNeighbour;
-                        if (leftNeighbour > thisMax) thisMax = leftNeighbour;
-                        if (upperNeighbour > thisMax) thisMax = upperNeighbour;
-                        if (center > thisMax) thisMax = center;
+        }
 
-                        if (center < thisMax) {
-                            cloudIdArray[index2] = thisMax;
-                            count++;
-                        } else if (leftNeighbour > 0 && leftNeighbour < thisMax) {
-                            cloudIdArray[index2 - 1] = thisMax;
-                            count++;
-                        } else if (lowerNeighbour > 0 && lowerNeighbour < thisMax) {
-                            cloudIdArray[index2 + sourceWidth] = thisMax;
-                            count++;
-                        } else if (upperNeighbour > 0 && upperNeighbour < thisMax) {
-                            cloudIdArray[index2 - sourceWidth] = thisMax;
-                            count++;
-                        }
-                    }
-                }
+        // second pass: final ids and the pixel count per area
+        final int[] offsets = new int[areaCount + 1];
+        for (int index = 0; index < numPixels; index++) {
+            if (labels[index] > 0) {
+                int areaId = areaIds[labels[index]];
+                labels[index] = areaId;
+                areaIdArray[index] = areaId;
+                offsets[areaId]++;
             }
-            k++;
         }
-        // setting up the output list.
-        for (int j = 0; j < sourceHeight; j++) {
-            for (int i = 0; i < sourceWidth; i++) {
-                int index = j * (sourceWidth) + i;
-                List<Integer> positions;
-                int currentCloudId = cloudIdArray[index];
-                if (currentCloudId > 0) {
-                    if (output.containsKey(currentCloudId)) {
-                        positions = output.get(currentCloudId);
-                    } else {
-                        positions = new ArrayList<>();
-                        output.put(currentCloudId, positions);
-                    }
-                    positions.add(index);
-                }
+        for (int areaId = 1; areaId <= areaCount; areaId++) {
+            offsets[areaId] += offsets[areaId - 1];
+        }
+        final int[] pixelIndices = new int[offsets[areaCount]];
+        final int[] nextPositions = Arrays.copyOf(offsets, areaCount);
+        for (int index = 0; index < numPixels; index++) {
+            if (labels[index] > 0) {
+                pixelIndices[nextPositions[labels[index] - 1]++] = index;
             }
         }
+        return new ContinuousAreas(offsets, pixelIndices);
+    }
 
-        return output;
+    private static int findRoot(int[] parents, int label) {
+        while (parents[label] != label) {
+            parents[label] = parents[parents[label]];
+            label = parents[label];
+        }
+        return label;
     }
 
+    private static void union(int[] parents, int label1, int label2) {
+        int root1 = findRoot(parents, label1);
+        int root2 = findRoot(parents, label2);
+        if (root1 < root2) {
+            parents[root2] = root1;
+        } else if (root2 < root1) {
+            parents[root1] = root2;
+        }
+    }
 
     private boolean isTarget(int index, boolean usePreparationBand) {
         if (usePreparationBand) {
@@ -335,5 +120,3 @@ class FindContinuousAreas {
 
     }
 }
-
-
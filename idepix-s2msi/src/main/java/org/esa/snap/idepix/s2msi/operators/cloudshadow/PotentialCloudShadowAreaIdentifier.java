@@ -20,14 +20,13 @@ class PotentialCloudShadowAreaIdentifier {
 
     private static final Logger LOGGER = SystemUtils.LOG;
 
-    private static final double MAXCLOUD_TOP = S2IdepixPreCloudShadowOp.maxcloudTop;
-    private static final double MINCLOUD_BASE = S2IdepixPreCloudShadowOp.mincloudBase;
+    private static final double MINCLOUD_BASE = S2IdepixPreCloudShadowOp.MIN_CLOUD_BASE;
 
     static IdentifiedPcs identifyPotentialCloudShadowsPLUS(Rectangle sourceRectangle, Rectangle targetRectangle,
                                                            float sourceSunZenith, float sourceSunAzimuth,
                                                            float[] sourceLatitude, float[] sourceLongitude,
                                                            float[] sourceAltitude, int[] flagArray, int[] cloudIDArray,
-                                                           Point2D[] cloudPath) {
+                                                           Point2D[] cloudPath, double maxCloudTop) {
         double sunZenithCloudRad = (double) sourceSunZenith * MathUtils.DTOR;
         // cannot switch to TreeMap here; Test PotentialCloudShadowAreaIdentifierTest needs the order of HashMaps.
         final Map<Integer, List<Integer>> indexToPositions = new HashMap<>();
@@ -57,7 +56,7 @@ class PotentialCloudShadowAreaIdentifier {
                 for (int j = yOffset; j < sourceHeight; j++) {
                     identifyPotentialCloudShadowPLUS(i, j, sourceHeight, sourceWidth, cloudPath, sourceLongitude,
                                                      sourceLatitude, sourceAltitude, flagArray, sunZenithCloudRad,
-                                                     cloudIDArray, indexToPositions, offsetAtPositions);
+                                                     cloudIDArray, indexToPositions, offsetAtPositions, maxCloudTop);
                 }
             }
         }
@@ -121,7 +120,8 @@ class PotentialCloudShadowAreaIdentifier {
                                                          float[] longitude, float[] latitude, float[] altitude,
                                                          int[] flagArray, double sunZenithRad, int[] cloudIDArray,
                                                          Map<Integer, List<Integer>> indexToPositions,
-                                                         Map<Integer, List<Integer>> offsetAtPositions) {
+                                                         Map<Integer, List<Integer>> offsetAtPositions,
+                                                         double maxCloudTop) {
         int index0 = y0 * width + x0;
         //start from a cloud pixel, otherwise stop.
         if (!((flagArray[index0] & PreparationMaskBand.CLOUD_FLAG) == PreparationMaskBand.CLOUD_FLAG)) {
@@ -178,7 +178,7 @@ class PotentialCloudShadowAreaIdentifier {
                     cloudSearchPointHeight = cloudSearchPointHeight + (altitude[index1] - minAltitude);
                 }
                 // Dagmar: flag is set only, if not already potential_cloud_shadow. Otherwise, it gets turned off.
-                if (MINCLOUD_BASE <= cloudSearchPointHeight && cloudSearchPointHeight <= MAXCLOUD_TOP) {
+                if (MINCLOUD_BASE <= cloudSearchPointHeight && cloudSearchPointHeight <= maxCloudTop) {
                     if (!((flagArray[index1] & PreparationMaskBand.POTENTIAL_CLOUD_SHADOW_FLAG) == PreparationMaskBand.POTENTIAL_CLOUD_SHADOW_FLAG)) {
                         flagArray[index1] += PreparationMaskBand.POTENTIAL_CLOUD_SHADOW_FLAG;
                     }
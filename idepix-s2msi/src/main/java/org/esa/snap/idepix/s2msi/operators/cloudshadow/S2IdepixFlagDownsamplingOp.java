@@ -0,0 +1,163 @@
+package org.esa.snap.idepix.s2msi.operators.cloudshadow;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.FlagCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.Operator;
+import org.esa.snap.core.gpf.OperatorException;
+import org.esa.snap.core.gpf.OperatorSpi;
+import org.esa.snap.core.gpf.Tile;
+import org.esa.snap.core.gpf.annotations.OperatorMetadata;
+import org.esa.snap.core.gpf.annotations.SourceProduct;
+import org.esa.snap.core.gpf.annotations.TargetProduct;
+import org.esa.snap.core.util.BitSetter;
+import org.esa.snap.core.util.ProductUtils;
+import org.esa.snap.idepix.s2msi.util.S2IdepixUtils;
+
+import java.awt.Rectangle;
+
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CIRRUS_AMBIGUOUS;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CIRRUS_SURE;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CLASSIF_FLAGS;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CLEAR_LAND;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CLEAR_WATER;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CLOUD;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CLOUD_BUFFER;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CLOUD_SURE;
+
+/**
+ * Downsamples the pixel classification flags of a 10 m or 20 m product to the grid of a coarser reference product,
+ * so that the cloud shadow detection does not need a second classification at 60 m.
+ * Each target pixel aggregates the block of source pixels it covers: cloud and cirrus flags (including the cloud
+ * buffer) are set if any source pixel has them, all other flags are set if the majority of the source pixels has
+ * them. The clear land and clear water flags are dropped for pixels which are cloudy after the aggregation.
+ */
+@OperatorMetadata(alias = "Idepix.S2.CloudShadow.FlagDownsampling",
+        category = "Optical",
+        authors = "Grit Kirches, Michael Paperin, Olaf Danne, Tonio Fincke, Dagmar Müller",
+        copyright = "(c) Brockmann Consult GmbH",
+        version = "2.0",
+        internal = true,
+        description = "Downsamples the pixel classification flags for the cloud shadow detection.")
+public class S2IdepixFlagDownsamplingOp extends Operator {
+
+    @SourceProduct(description = "The classification product from which to take the classification band.")
+    private Product s2ClassifProduct;
+
+    @SourceProduct(description = "The product defining the target grid, at a multiple of the source resolution.")
+    private Product referenceProduct;
+
+    @TargetProduct
+    private Product targetProduct;
+
+    static final int ANY_FLAGS_MASK = BitSetter.setFlag(0, IDEPIX_CLOUD) |
+            BitSetter.setFlag(0, IDEPIX_CLOUD_AMBIGUOUS) |
+            BitSetter.setFlag(0, IDEPIX_CLOUD_SURE) |
+            BitSetter.setFlag(0, IDEPIX_CLOUD_BUFFER) |
+            BitSetter.setFlag(0, IDEPIX_CIRRUS_SURE) |
+            BitSetter.setFlag(0, IDEPIX_CIRRUS_AMBIGUOUS);
+    private static final int CLEAR_FLAGS_MASK = BitSetter.setFlag(0, IDEPIX_CLEAR_LAND) |
+            BitSetter.setFlag(0, IDEPIX_CLEAR_WATER);
+
+    private Band sourceFlagBand;
+    private int factor;
+
+    @Override
+    public void initialize() throws OperatorException {
+        final int sourceResolution = S2IdepixUtils.determineResolution(s2ClassifProduct);
+        final int targetResolution = S2IdepixUtils.determineResolution(referenceProduct);
+        if (sourceResolution <= 0 || targetResolution % sourceResolution != 0) {
+            throw new OperatorException("Target resolution " + targetResolution +
+                                                " m is not a multiple of the source resolution " + sourceResolution + " m.");
+        }
+        factor = targetResolution / sourceResolution;
+
+        sourceFlagBand = s2ClassifProduct.getBand(IDEPIX_CLASSIF_FLAGS);
+        if (sourceFlagBand == null) {
+            throw new OperatorException("Source product does not contain band " + IDEPIX_CLASSIF_FLAGS);
+        }
+
+        targetProduct = new Product(s2ClassifProduct.getName(), s2ClassifProduct.getProductType(),
+                referenceProduct.getSceneRasterWidth(), referenceProduct.getSceneRasterHeight());
+        ProductUtils.copyGeoCoding(referenceProduct, targetProduct);
+        targetProduct.setStartTime(s2ClassifProduct.getStartTime());
+        targetProduct.setEndTime(s2ClassifProduct.getEndTime());
+
+        final Band targetFlagBand = targetProduct.addBand(IDEPIX_CLASSIF_FLAGS, ProductData.TYPE_INT32);
+        FlagCoding flagCoding = S2IdepixUtils.createIdepixFlagCoding(IDEPIX_CLASSIF_FLAGS);
+        targetFlagBand.setSampleCoding(flagCoding);
+        targetProduct.getFlagCodingGroup().add(flagCoding);
+    }
+
+    @Override
+    public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
+        final Rectangle targetRectangle = targetTile.getRectangle();
+        final Rectangle sourceRectangle = new Rectangle(targetRectangle.x * factor, targetRectangle.y * factor,
+                targetRectangle.width * factor, targetRectangle.height * factor).
+                intersection(new Rectangle(s2ClassifProduct.getSceneRasterWidth(),
+                        s2ClassifProduct.getSceneRasterHeight()));
+        final Tile sourceTile = getSourceTile(sourceFlagBand, sourceRectangle);
+
+        final int[] blockFlags = new int[factor * factor];
+        for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
+            checkForCancellation();
+            final int sourceMinY = y * factor;
+            final int sourceMaxY = Math.min(sourceMinY + factor, sourceRectangle.y + sourceRectangle.height);
+            for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
+                final int sourceMinX = x * factor;
+                final int sourceMaxX = Math.min(sourceMinX + factor, sourceRectangle.x + sourceRectangle.width);
+                int count = 0;
+                for (int sourceY = sourceMinY; sourceY < sourceMaxY; sourceY++) {
+                    for (int sourceX = sourceMinX; sourceX < sourceMaxX; sourceX++) {
+                        blockFlags[count++] = sourceTile.getSampleInt(sourceX, sourceY);
+                    }
+                }
+                targetTile.setSample(x, y, aggregateFlags(blockFlags, count));
+            }
+        }
+    }
+
+    /**
+     * Aggregates the flags of a block of source pixels to the flags of a single target pixel.
+     *
+     * @param flags - the flags of the source pixels
+     * @param count - the number of valid entries in flags
+     * @return the aggregated flags
+     */
+    static int aggregateFlags(int[] flags, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        final int[] bitCounts = new int[Integer.SIZE];
+        int anyFlags = 0;
+        for (int i = 0; i < count; i++) {
+            anyFlags |= flags[i];
+            int remainingFlags = flags[i];
+            while (remainingFlags != 0) {
+                bitCounts[Integer.numberOfTrailingZeros(remainingFlags)]++;
+                remainingFlags &= remainingFlags - 1;
+            }
+        }
+        int majorityFlags = 0;
+        for (int bit = 0; bit < Integer.SIZE; bit++) {
+            if (2 * bitCounts[bit] > count) {
+                majorityFlags = BitSetter.setFlag(majorityFlags, bit);
+            }
+        }
+        int aggregatedFlags = (anyFlags & ANY_FLAGS_MASK) | (majorityFlags & ~ANY_FLAGS_MASK);
+        if ((aggregatedFlags & ANY_FLAGS_MASK) != 0) {
+            aggregatedFlags &= ~CLEAR_FLAGS_MASK;
+        }
+        return aggregatedFlags;
+    }
+
+    public static class Spi extends OperatorSpi {
+
+        public Spi() {
+            super(S2IdepixFlagDownsamplingOp.class);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.esa.snap.core.gpf.annotations.TargetProduct;
 import org.esa.snap.core.util.BitSetter;
 import org.esa.snap.core.util.ProductUtils;
 import org.esa.snap.core.util.math.MathUtils;
+import org.esa.snap.idepix.core.util.TileSummary;
 import org.esa.snap.idepix.s2msi.util.S2IdepixConstants;
 import org.esa.snap.idepix.s2msi.util.S2IdepixUtils;
 
@@ -66,6 +67,9 @@ public class S2IdepixPostCloudShadowOp extends Operator {
     @Parameter(description = "Offset along cloud path to minimum reflectance (over all tiles)", defaultValue = "0")
     private int bestOffset;
 
+    // if set, replaces the bestOffset parameter, the estimation runs when the first tiles are computed
+    private S2IdepixPreCloudShadowOp bestOffsetEstimation;
+
     // hidden parameter, may be set to true for mosaics with larger invalid areas
     private boolean skipInvalidTiles;
 
@@ -90,12 +94,12 @@ public class S2IdepixPostCloudShadowOp extends Operator {
     private Band targetBandShadowID;
     private Band targetBandCloudTest;
 
-    private static int maxcloudTop = 10000;
+    private int maxcloudTop = S2IdepixPreCloudShadowOp.DEFAULT_MAX_CLOUD_TOP;
     //for calculating a single cloud path
     private float minAltitude = 0;
 
-    private static double spatialResolution;  //[m]
-    static int clusterCountDefine = 4;
+    private double spatialResolution;  //[m]
+    static final int clusterCountDefine = 4;
     private static final String sourceBandNameClusterA = "B8A";
     private static final String sourceBandNameClusterB = "B3";
     private static final String sourceFlagName1 = "pixel_classif_flags";
@@ -136,7 +140,8 @@ public class S2IdepixPostCloudShadowOp extends Operator {
 
     @Override
     public void initialize() throws OperatorException {
-        skipInvalidTiles = Boolean.getBoolean(S2IdepixUtils.INVALID_TILES_PROPERTIES);
+        skipInvalidTiles = Boolean.getBoolean(S2IdepixUtils.INVALID_TILES_PROPERTIES) ||
+                TileSummary.isSkipInvalidTiles();
 
         targetProduct = new Product(s2BandsProduct.getName(), s2BandsProduct.getProductType(),
                 s2BandsProduct.getSceneRasterWidth(), s2BandsProduct.getSceneRasterHeight());
@@ -181,6 +186,23 @@ public class S2IdepixPostCloudShadowOp extends Operator {
         }
     }
 
+    /**
+     * Lets the best offset be estimated from the statistics of all tiles when it is needed for the first time,
+     * instead of taking it from the parameter.
+     *
+     * @param bestOffsetEstimation - the pre-processing operator which estimates the offset
+     */
+    void setBestOffsetEstimation(S2IdepixPreCloudShadowOp bestOffsetEstimation) {
+        this.bestOffsetEstimation = bestOffsetEstimation;
+    }
+
+    private int getBestOffset() {
+        if (bestOffsetEstimation != null) {
+            return bestOffsetEstimation.computeBestOffset(this::checkForCancellation);
+        }
+        return bestOffset;
+    }
+
     private int setCloudTopHeigh(double lat) {
         return (int) Math.ceil(0.5 * Math.pow(90. - Math.abs(lat), 2.) + (90. - Math.abs(lat)) * 25 + 5000);
     }
@@ -282,6 +304,7 @@ public class S2IdepixPostCloudShadowOp extends Operator {
 
     @Override
     public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle targetRectangle, ProgressMonitor pm) throws OperatorException {
+        final int bestOffset = getBestOffset();
         final float[] targetAltitude = getSamples(sourceAltitude, targetRectangle);
         final List<Float> altitudes = Arrays.asList(ArrayUtils.toObject(targetAltitude));
         final Point2D[] cloudShadowRelativePath = CloudShadowUtils.getRelativePath(
@@ -344,14 +367,14 @@ public class S2IdepixPostCloudShadowOp extends Operator {
                 maxAltitude = 0;
             }
             MountainShadowFlagger.flagMountainShadowArea(sourceRectangle, sunZenithMean, altitude, flagArray,
-                    minAltitude, maxAltitude, cloudShadowRelativePath);
+                    minAltitude, maxAltitude, cloudShadowRelativePath, spatialResolution);
         }
 
         final FindContinuousAreas cloudIdentifier = new FindContinuousAreas(flagArray);
-        Map<Integer, List<Integer>> cloudList =
+        final ContinuousAreas cloudAreas =
                 cloudIdentifier.computeAreaID(sourceWidth, sourceHeight, cloudIDArray, true);
 
-        if (cloudList.size() > 0) {
+        if (cloudAreas.size() > 0) {
             /*
             /   Clustering can be separated: potential cloud shadow over water, and over land.
             /   potentialShadowPositions: Collection of List of integers, which hold the index of potential cloud shadow pixels for each cloudID.
@@ -359,7 +382,7 @@ public class S2IdepixPostCloudShadowOp extends Operator {
             */
             final IdentifiedPcs identifiedPcs = PotentialCloudShadowAreaIdentifier.identifyPotentialCloudShadowsPLUS(
                     sourceRectangle, targetRectangle, sunZenithMean, sunAzimuthMean, sourceLatitudes, sourceLongitudes,
-                    altitude, flagArray, cloudIDArray, cloudShadowRelativePath);
+                    altitude, flagArray, cloudIDArray, cloudShadowRelativePath, maxcloudTop);
             final Map<Integer, List<Integer>> potentialShadowPositions = identifiedPcs.indexToPositions;
             final Map<Integer, List<Integer>> offsetAtPotentialShadow = identifiedPcs.offsetAtPositions;
 
@@ -375,7 +398,7 @@ public class S2IdepixPostCloudShadowOp extends Operator {
             // shifting the shadow is done before and a correction is included, if bestOffset > 0
             final CloudShadowFlaggerCombination cloudShadowFlagger = new CloudShadowFlaggerCombination();
             cloudShadowFlagger.flagCloudShadowAreas(clusterData, flagArray, potentialShadowPositions,
-                    offsetAtPotentialShadow, cloudList, bestOffset, analysisMode, sourceWidth, sourceHeight,
+                    offsetAtPotentialShadow, cloudAreas, bestOffset, analysisMode, sourceWidth, sourceHeight,
                     shadowIDArray, cloudShadowRelativePath);
 
             // shifted cloud mask in cloud gaps.
@@ -384,7 +407,7 @@ public class S2IdepixPostCloudShadowOp extends Operator {
             int blockSize = 2 * (int) Math.ceil(kernelRadius / spatialResolution) + 1;
             if (bestOffset > 0 && blockSize < Math.min(sourceHeight, sourceWidth)) {
                 final CloudShadowFlaggerShiftInCloudGaps test = new CloudShadowFlaggerShiftInCloudGaps();
-                test.setShiftedCloudInCloudGaps(sourceRectangle, flagArray, cloudList, cloudTestArray, spatialResolution);
+                test.setShiftedCloudInCloudGaps(sourceRectangle, flagArray, cloudAreas, cloudTestArray, spatialResolution);
 
             }
             RecommendedCloudShadowFlagger.setRecommendedCloudShadowFlag(bestOffset, flagArray, sourceRectangle);
@@ -1,13 +1,8 @@
 package org.esa.snap.idepix.s2msi.operators.cloudshadow;
 
-import com.bc.ceres.core.ProgressMonitor;
 import org.esa.snap.core.datamodel.Band;
-import org.esa.snap.core.datamodel.CrsGeoCoding;
-import org.esa.snap.core.datamodel.FlagCoding;
 import org.esa.snap.core.datamodel.GeoPos;
-import org.esa.snap.core.datamodel.Mask;
 import org.esa.snap.core.datamodel.Product;
-import org.esa.snap.core.datamodel.ProductData;
 import org.esa.snap.core.datamodel.RasterDataNode;
 import org.esa.snap.core.gpf.Operator;
 import org.esa.snap.core.gpf.OperatorException;
@@ -17,17 +12,24 @@ import org.esa.snap.core.gpf.annotations.OperatorMetadata;
 import org.esa.snap.core.gpf.annotations.Parameter;
 import org.esa.snap.core.gpf.annotations.SourceProduct;
 import org.esa.snap.core.gpf.annotations.TargetProduct;
-import org.esa.snap.core.util.BitSetter;
 import org.esa.snap.core.util.ProductUtils;
+import org.esa.snap.core.util.SystemUtils;
 import org.esa.snap.core.util.math.MathUtils;
+import org.esa.snap.idepix.core.util.TileSummary;
 import org.esa.snap.idepix.s2msi.util.S2IdepixUtils;
 
 import javax.media.jai.BorderExtenderConstant;
-import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.geom.Point2D;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 /**
  * @author Tonio Fincke, Dagmar Müller
@@ -42,6 +44,8 @@ import java.util.Map;
 
 public class S2IdepixPreCloudShadowOp extends Operator {
 
+    private static final Logger LOGGER = SystemUtils.LOG;
+
     @SourceProduct(description = "The classification product from which to take the classification band.")
     private Product s2ClassifProduct;
 
@@ -67,41 +71,25 @@ public class S2IdepixPreCloudShadowOp extends Operator {
 
     private Band sourceBandFlag1;
 
-    static int mincloudBase = 100;
-    static int maxcloudTop = 10000;
+    static final int MIN_CLOUD_BASE = 100;
+    static final int DEFAULT_MAX_CLOUD_TOP = 10000;
+    private int maxcloudTop = DEFAULT_MAX_CLOUD_TOP;
     //for calculating a single cloud path
     private float minAltitude = 0;
 
-    //map for the different tiles: meanReflectance per offset.
-    private final Map<Integer, double[][]> meanReflPerTile = new HashMap<>();
-    private final Map<Integer, Integer> NCloudOverLand = new HashMap<>();
-    private final Map<Integer, Integer> NCloudOverWater = new HashMap<>();
-    private final Map<Integer, Integer> NValidPixelTile = new HashMap<>();
+    // the statistics pass over the tiles of the target product grid, shared by all threads needing the offset
+    private Rectangle[] statisticsTileRectangles;
+    private TileStatistics[] statisticsPerTile;
+    private final AtomicInteger nextStatisticsTile = new AtomicInteger();
+    private CountDownLatch statisticsComputed;
+    private volatile OperatorException statisticsFailure;
+    private volatile Integer bestOffset;
 
-    static double spatialResolution;  //[m]
-    static int clusterCountDefine = 4;
-    static double OUTLIER_THRESHOLD = 0.94;
-    static int searchBorderRadius;
+    private double spatialResolution;  //[m]
+    static final double OUTLIER_THRESHOLD = 0.94;
     private static final String sourceBandNameClusterA = "B8A";
     private static final String sourceBandNameClusterB = "B3";
     private static final String sourceFlagName1 = "pixel_classif_flags";
-    private final static String BAND_NAME_CLOUD_SHADOW = "FlagBand";
-
-    private static final String F_INVALID_DESCR_TEXT = "Invalid pixels";
-    private static final String F_CLOUD_DESCR_TEXT = "Cloud pixels";
-    private static final String F_MOUNTAIN_SHADOW_DESCR_TEXT = "Mountain shadow pixels";
-    private static final String F_CLOUD_SHADOW_DESCR_TEXT = "Cloud shadow pixels";
-    private static final String F_LAND_DESCR_TEXT = "Land pixels";
-    private static final String F_WATER_DESCR_TEXT = "Water pixels";
-    private static final String F_HAZE_DESCR_TEXT = "Potential haze/semitransparent cloud pixels";
-    private static final String F_POTENTIAL_CLOUD_SHADOW_DESCR_TEXT = "Potential cloud shadow pixels";
-    private static final String F_SHIFTED_CLOUD_SHADOW_DESCR_TEXT = "Shifted cloud mask as shadow pixels";
-    private static final String F_CLOUD_SHADOW_COMB_DESCR_TEXT = "cloud mask (combination)";
-    // todo: why is the cloud buffer description not used?
-    private static final String F_CLOUD_BUFFER_DESCR_TEXT = "Cloud buffer";
-    private static final String F_SHIFTED_CLOUD_SHADOW_GAPS_DESCR_TEXT = "shifted cloud mask in cloud gap";
-    private static final String F_RECOMMENDED_CLOUD_SHADOW_DESCR_TEXT = "combination of shifted cloud mask in cloud gap + cloud-shadow_comb, or if bestOffset=0: clustered";
-
     public static final int F_WATER = 0;
     public static final int F_LAND = 1;
     public static final int F_CLOUD = 2;
@@ -118,7 +106,8 @@ public class S2IdepixPreCloudShadowOp extends Operator {
 
     @Override
     public void initialize() throws OperatorException {
-        skipInvalidTiles = Boolean.getBoolean(S2IdepixUtils.INVALID_TILES_PROPERTIES);
+        skipInvalidTiles = Boolean.getBoolean(S2IdepixUtils.INVALID_TILES_PROPERTIES) ||
+                TileSummary.isSkipInvalidTiles();
         targetProduct = new Product(s2BandsProduct.getName(), s2BandsProduct.getProductType(),
                 s2BandsProduct.getSceneRasterWidth(), s2BandsProduct.getSceneRasterHeight());
 
@@ -135,14 +124,101 @@ public class S2IdepixPreCloudShadowOp extends Operator {
         minAltitude = 0;
         sourceBandFlag1 = s2ClassifProduct.getBand(sourceFlagName1);
 
-        Band targetBandCloudShadow = targetProduct.addBand(BAND_NAME_CLOUD_SHADOW, ProductData.TYPE_INT32);
-        attachFlagCoding(targetBandCloudShadow);
-        setupBitmasks(targetProduct);
-
         spatialResolution = S2IdepixUtils.determineResolution(getSourceProduct());
+    }
+
+    /**
+     * Estimates the offset along the cloud path to the minimum reflectance, in two steps: first, the mean
+     * reflectances along the cloud path and the cloud pixel counts are computed for all tiles of the scene. Only
+     * these statistics are kept, there are no target bands. Then, the statistics are reduced to the offset for all
+     * pixels, for land and for water, from which the best offset is chosen.
+     * <p>
+     * The statistics are computed by the threads calling this method: each one takes the next tile which is not
+     * computed yet, until all tiles are taken, and then waits for the tiles the other threads are still computing.
+     *
+     * @param cancellationCheck - called before the statistics of a tile are computed, shall throw an
+     *                          {@link OperatorException} if the computation has been cancelled
+     * @return the best offset, 0 if there is none
+     */
+    int computeBestOffset(Runnable cancellationCheck) {
+        if (bestOffset != null) {
+            return bestOffset;
+        }
+        final Rectangle[] tileRectangles = getStatisticsTileRectangles();
+        int tileIndex;
+        while ((tileIndex = nextStatisticsTile.getAndIncrement()) < tileRectangles.length) {
+            try {
+                if (statisticsFailure == null) {
+                    cancellationCheck.run();
+                    statisticsPerTile[tileIndex] = computeTileStatistics(tileRectangles[tileIndex]);
+                }
+            } catch (OperatorException e) {
+                statisticsFailure = e;
+            } catch (RuntimeException e) {
+                statisticsFailure = new OperatorException(e.getMessage(), e);
+            } finally {
+                statisticsComputed.countDown();
+            }
+        }
+        try {
+            statisticsComputed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperatorException("Computation of the cloud shadow statistics was interrupted", e);
+        }
+        if (statisticsFailure != null) {
+            throw statisticsFailure;
+        }
+        return reduceStatistics();
+    }
+
+    private synchronized Rectangle[] getStatisticsTileRectangles() {
+        if (statisticsTileRectangles == null) {
+            LOGGER.info("Computing cloud shadow statistics");
+            final Dimension tileSize = targetProduct.getPreferredTileSize();
+            final int width = targetProduct.getSceneRasterWidth();
+            final int height = targetProduct.getSceneRasterHeight();
+            final int numXTiles = (width + tileSize.width - 1) / tileSize.width;
+            final int numYTiles = (height + tileSize.height - 1) / tileSize.height;
+            final Rectangle[] tileRectangles = new Rectangle[numXTiles * numYTiles];
+            for (int tileY = 0; tileY < numYTiles; tileY++) {
+                for (int tileX = 0; tileX < numXTiles; tileX++) {
+                    tileRectangles[tileY * numXTiles + tileX] =
+                            new Rectangle(tileX * tileSize.width, tileY * tileSize.height,
+                                          tileSize.width, tileSize.height).intersection(new Rectangle(width, height));
+                }
+            }
+            statisticsPerTile = new TileStatistics[tileRectangles.length];
+            statisticsComputed = new CountDownLatch(tileRectangles.length);
+            statisticsTileRectangles = tileRectangles;
+        }
+        return statisticsTileRectangles;
+    }
 
-        int cacheSize = Integer.parseInt(System.getProperty(S2IdepixUtils.TILECACHE_2_PROPERTY, "600"));
-        targetProduct = S2IdepixUtils.computeTileCacheProduct(targetProduct, cacheSize);
+    private synchronized int reduceStatistics() {
+        if (bestOffset == null) {
+            // the statistics are keyed by the tile ids of S2IdepixUtils, where the ids of the last tiles of
+            // the rows collide, the tile coming later in the grid replaces the earlier one
+            final Map<Integer, double[][]> meanReflPerTile = new TreeMap<>();
+            final Map<Integer, Integer> nCloudOverLand = new TreeMap<>();
+            final Map<Integer, Integer> nCloudOverWater = new TreeMap<>();
+            for (int i = 0; i < statisticsTileRectangles.length; i++) {
+                final TileStatistics tileStatistics = statisticsPerTile[i];
+                if (tileStatistics != null) {
+                    final int tileId = S2IdepixUtils.calculateTileId(statisticsTileRectangles[i], targetProduct);
+                    meanReflPerTile.put(tileId, tileStatistics.meanReflectanceAlongPath);
+                    nCloudOverLand.put(tileId, tileStatistics.nCloudOverLand);
+                    nCloudOverWater.put(tileId, tileStatistics.nCloudOverWater);
+                }
+            }
+            final int[] bestOffsets = findOverallMinimumReflectance(meanReflPerTile);
+            bestOffset = chooseBestOffset(bestOffsets, nCloudOverLand, nCloudOverWater);
+            LOGGER.fine("bestOffset all " + bestOffsets[0]);
+            LOGGER.fine("bestOffset land " + bestOffsets[1]);
+            LOGGER.fine("bestOffset water " + bestOffsets[2]);
+            LOGGER.fine("chosen Offset " + bestOffset);
+        }
+        return bestOffset;
     }
 
     double determineSearchBorderRadius(double spatialResolution, double maxSunZenith) {
@@ -159,8 +235,7 @@ public class S2IdepixPreCloudShadowOp extends Operator {
         return (int) Math.ceil(0.5 * Math.pow(90. - Math.abs(lat), 2.) + (90. - Math.abs(lat)) * 25 + 5000);
     }
 
-    @Override
-    public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle targetRectangle, ProgressMonitor pm) throws OperatorException {
+    private TileStatistics computeTileStatistics(Rectangle targetRectangle) {
         //here: cloud path is calculated for center pixel sunZenith and sunAzimuth. sunAzimuth is corrected with view geometry.
         final Point2D[] cloudShadowRelativePath = CloudShadowUtils.getRelativePath(
                 minAltitude, sunZenithMean * MathUtils.DTOR, sunAzimuthMean * MathUtils.DTOR, maxcloudTop,
@@ -170,7 +245,7 @@ public class S2IdepixPreCloudShadowOp extends Operator {
         final Rectangle sourceRectangle = CloudShadowUtils.getSourceRectangle(getSourceProduct(), targetRectangle, cloudShadowRelativePath);
         Tile sourceTileFlag1 = getSourceTile(sourceBandFlag1, sourceRectangle, new BorderExtenderConstant(new double[]{Double.NaN}));
         if (skipInvalidTiles && CloudShadowUtils.isCompletelyInvalid(sourceTileFlag1)) {
-            return;
+            return null;
         }
 
         int sourceLength = sourceRectangle.width * sourceRectangle.height;
@@ -180,27 +255,6 @@ public class S2IdepixPreCloudShadowOp extends Operator {
         final float[][] clusterData = {getSamples(sourceBandClusterA, sourceRectangle),
                 getSamples(sourceBandClusterB, sourceRectangle)};
 
-        float[] sourceLatitudes = new float[sourceLength];
-        float[] sourceLongitudes = new float[sourceLength];
-        if (getSourceProduct().getSceneGeoCoding() instanceof CrsGeoCoding) {
-            ((CrsGeoCoding) getSourceProduct().getSceneGeoCoding()).
-                    getPixels((int) sourceRectangle.getMinX(),
-                (int) sourceRectangle.getMinY(),
-                (int) sourceRectangle.getWidth(),
-                (int) sourceRectangle.getHeight(),
-                sourceLatitudes,
-                sourceLongitudes);
-        } else {
-            S2IdepixUtils.
-                    getPixels(getSourceProduct().getSceneGeoCoding(),
-                              (int) sourceRectangle.getMinX(),
-                              (int) sourceRectangle.getMinY(),
-                              (int) sourceRectangle.getWidth(),
-                              (int) sourceRectangle.getHeight(),
-                              sourceLatitudes,
-                              sourceLongitudes);
-        }
-
         FlagDetector flagDetector = new FlagDetector(sourceTileFlag1, sourceRectangle);
 
         PreparationMaskBand.prepareMaskBand(s2ClassifProduct.getSceneRasterWidth(),
@@ -209,96 +263,142 @@ public class S2IdepixPreCloudShadowOp extends Operator {
         final CloudBulkShifter cloudBulkShifter = new CloudBulkShifter();
         cloudBulkShifter.shiftCloudBulkAlongCloudPathType(sourceRectangle, targetRectangle, sunAzimuthMean,
                 clusterData, flagArray, cloudShadowRelativePath);
-        int tileId = S2IdepixUtils.calculateTileId(targetRectangle, targetProduct);
-        meanReflPerTile.put(tileId, cloudBulkShifter.getMeanReflectanceAlongPath());
-        NCloudOverLand.put(tileId, cloudBulkShifter.getNCloudOverLand());
-        NCloudOverWater.put(tileId, cloudBulkShifter.getNCloudOverWater());
-        NValidPixelTile.put(tileId, cloudBulkShifter.getNValidPixel());
-
+        return new TileStatistics(cloudBulkShifter.getMeanReflectanceAlongPath(),
+                                  cloudBulkShifter.getNCloudOverLand(), cloudBulkShifter.getNCloudOverWater());
     }
 
-    Map<Integer, double[][]> getMeanReflPerTile() {
-        return meanReflPerTile;
+    static int chooseBestOffset(int[] bestOffset, Map<Integer, Integer> NCloudOverLand,
+                                Map<Integer, Integer> NCloudOverWater) {
+        int NCloudWater = 0;
+        int NCloudLand = 0;
+        int out;
+        if (NCloudOverWater.size() > 0) {
+            for (int index : NCloudOverWater.keySet()) {
+                NCloudWater += NCloudOverWater.get(index);
+            }
+        }
+        if (NCloudOverLand.size() > 0) {
+            for (int index : NCloudOverLand.keySet()) {
+                NCloudLand += NCloudOverLand.get(index);
+            }
+        }
+        int Nall = NCloudLand + NCloudWater;
+        float relCloudLand = (float) NCloudLand / Nall;
+        float relCloudWater = (float) NCloudWater / Nall;
+        if (relCloudLand > 2 * relCloudWater) {
+            out = bestOffset[1];
+        } else if (relCloudWater > 2 * relCloudLand) {
+            out = bestOffset[2];
+        } else out = bestOffset[0];
+        return out;
     }
 
-    Map<Integer, Integer> getNCloudOverLandPerTile() {
-        return NCloudOverLand;
+    static int[] findOverallMinimumReflectance(Map<Integer, double[][]> meanReflPerTile) {
+        // catch cases of tiles completely invalid are skipped
+        if (meanReflPerTile.keySet().size() == 0) {
+            return new int[3];
+        }
+        // we need to account for that not all mean values in meanReflPerTile are of the same length
+        int pathLength = 0;
+        for (double[][] meanRefls : meanReflPerTile.values()) {
+            pathLength = Math.max(pathLength, meanRefls[0].length);
+        }
+        double[][] scaledTotalReflectance = new double[3][pathLength];
+        for (int j = 0; j < 3; j++) {
+            /*Checking the meanReflPerTile:
+                - if it has no relative minimum other than the first or the last value, it is excluded.
+                - if it contains NaNs, it is excluded.
+                Exclusion works by setting values to NaN.
+            */
+            for (int key : meanReflPerTile.keySet()) {
+                double[][] meanValues = meanReflPerTile.get(key);
+                boolean exclude = false;
+                List<Integer> relativeMinimum = indecesRelativMaxInArray(meanValues[j]);
+                if (relativeMinimum.contains(0)) relativeMinimum.remove(relativeMinimum.indexOf(0));
+                if (relativeMinimum.contains(meanValues[j].length - 1))
+                    relativeMinimum.remove(relativeMinimum.indexOf(meanValues[j].length - 1));
+
+                //smallest relative minimum is in second part of the path -> exclude
+                if (relativeMinimum.indexOf(0) > meanValues[j].length / 2.) exclude = true;
+                if (relativeMinimum.size() == 0) exclude = true;
+                if (exclude) {
+                    Arrays.fill(meanValues[j], Double.NaN);
+                }
+            }
+            //Finding the minimum in brightness in the scaled mean function.
+            for (int key : meanReflPerTile.keySet()) {
+                double[][] meanValues = meanReflPerTile.get(key);
+                double[] maxValue = new double[3];
+                for (int i = 0; i < meanValues[j].length; i++) {
+                    if (!Double.isNaN(meanValues[j][i])) {
+                        if (meanValues[j][i] > maxValue[j]) {
+                            maxValue[j] = meanValues[j][i];
+                        }
+                    }
+                }
+                for (int i = 0; i < meanValues[j].length; i++) {
+                    if (!Double.isNaN(meanValues[j][i]) && maxValue[j] > 0) {
+                        scaledTotalReflectance[j][i] += meanValues[j][i] / maxValue[j];
+                    }
+                }
+            }
+        }
+        int[] offset = new int[3];
+        for (int j = 0; j < 3; j++) {
+            List<Integer> test = indecesRelativMaxInArray(scaledTotalReflectance[j]);
+            if (test.contains(0)) test.remove(test.indexOf(0));
+            if (test.contains(scaledTotalReflectance[j].length - 1))
+                test.remove(test.indexOf(scaledTotalReflectance[j].length - 1));
+
+            if (test.size() > 0) {
+                offset[j] = test.get(0);
+            }
+        }
+        return offset;
     }
 
-    Map<Integer, Integer> getNCloudOverWaterPerTile() {
-        return NCloudOverWater;
-    }
+    private static List<Integer> indecesRelativMaxInArray(double[] x) {
+        int lx = x.length;
+        List<Integer> ID = new ArrayList<>();
+        boolean valid = true;
+        int i = 0;
+        while (i < lx && valid) {
+            if (Double.isNaN(x[i])) valid = false;
+            i++;
+        }
+        if (lx == 0) {
+            LOGGER.fine("indecesRelativMaxInArray x.length=" + lx);
+        } else if (lx == 1) {
+            LOGGER.fine("indecesRelativMaxInArray x.length=" + lx);
+            ID.add(0);
+        } else if (valid) {
+            double fac = -1.;
+
+            if (fac * x[0] > fac * x[1]) ID.add(0);
+            if (fac * x[lx - 1] > fac * x[lx - 2]) ID.add(lx - 1);
+
+            for (i = 1; i < lx - 1; i++) {
+                if (fac * x[i] > fac * x[i - 1] && fac * x[i] > fac * x[i + 1]) ID.add(i);
+            }
+        } else {
+            ID.add(0);
+            ID.add(lx - 1);
+        }
 
-    // todo - if this is not used we can stop computing it
-    Map<Integer, Integer> getNValidPixelTile() {
-        return NValidPixelTile;
+        return ID;
     }
 
-    private void attachFlagCoding(Band targetBandCloudShadow) {
-        FlagCoding cloudCoding = new FlagCoding("cloudCoding");
-        cloudCoding.addFlag("water", BitSetter.setFlag(0, F_WATER), F_WATER_DESCR_TEXT);
-        cloudCoding.addFlag("land", BitSetter.setFlag(0, F_LAND), F_LAND_DESCR_TEXT);
-        cloudCoding.addFlag("cloud", BitSetter.setFlag(0, F_CLOUD), F_CLOUD_DESCR_TEXT);
-        cloudCoding.addFlag("pot_haze", BitSetter.setFlag(0, F_HAZE), F_HAZE_DESCR_TEXT);
-        cloudCoding.addFlag("cloudShadow", BitSetter.setFlag(0, F_CLOUD_SHADOW), F_CLOUD_SHADOW_DESCR_TEXT);
-        cloudCoding.addFlag("mountain_shadow", BitSetter.setFlag(0, F_MOUNTAIN_SHADOW), F_MOUNTAIN_SHADOW_DESCR_TEXT);
-        cloudCoding.addFlag("invalid", BitSetter.setFlag(0, F_INVALID), F_INVALID_DESCR_TEXT);
-        cloudCoding.addFlag("potential_cloud_shadow", BitSetter.setFlag(0, F_POTENTIAL_CLOUD_SHADOW),
-                F_POTENTIAL_CLOUD_SHADOW_DESCR_TEXT);
-        cloudCoding.addFlag("shifted_cloud_shadow", BitSetter.setFlag(0, F_SHIFTED_CLOUD_SHADOW),
-                F_SHIFTED_CLOUD_SHADOW_DESCR_TEXT);
-        cloudCoding.addFlag("cloud_shadow_comb", BitSetter.setFlag(0, F_CLOUD_SHADOW_COMB),
-                F_CLOUD_SHADOW_COMB_DESCR_TEXT);
-        cloudCoding.addFlag("shifted_cloud_shadow_gaps", BitSetter.setFlag(0, F_SHIFTED_CLOUD_SHADOW_GAPS),
-                F_SHIFTED_CLOUD_SHADOW_GAPS_DESCR_TEXT);
-        cloudCoding.addFlag("recommended_cloud_shadow", BitSetter.setFlag(0, F_RECOMMENDED_CLOUD_SHADOW),
-                F_RECOMMENDED_CLOUD_SHADOW_DESCR_TEXT);
-        targetBandCloudShadow.setSampleCoding(cloudCoding);
-        targetBandCloudShadow.getProduct().getFlagCodingGroup().add(cloudCoding);
-    }
+    private static class TileStatistics {
 
-    private static void setupBitmasks(Product targetProduct) {
-
-        int index = 0;
-        int w = targetProduct.getSceneRasterWidth();
-        int h = targetProduct.getSceneRasterHeight();
-        Mask mask;
-        mask = Mask.BandMathsType.create("invalid", F_INVALID_DESCR_TEXT, w, h,
-                "FlagBand.invalid", Color.DARK_GRAY, 0.5f);
-        targetProduct.getMaskGroup().add(index++, mask);
-        mask = Mask.BandMathsType.create("land", F_LAND_DESCR_TEXT, w, h,
-                "FlagBand.land", Color.GREEN, 0.5f);
-        targetProduct.getMaskGroup().add(index++, mask);
-        mask = Mask.BandMathsType.create("water", F_WATER_DESCR_TEXT, w, h,
-                "FlagBand.water", Color.BLUE, 0.5f);
-        targetProduct.getMaskGroup().add(index++, mask);
-        mask = Mask.BandMathsType.create("cloud", F_CLOUD_DESCR_TEXT, w, h,
-                "FlagBand.cloud", Color.YELLOW, 0.5f);
-        targetProduct.getMaskGroup().add(index++, mask);
-        mask = Mask.BandMathsType.create("haze/semitransparent cloud", F_HAZE_DESCR_TEXT, w, h,
-                " FlagBand.pot_haze", Color.CYAN, 0.5f);
-        targetProduct.getMaskGroup().add(index++, mask);
-        mask = Mask.BandMathsType.create("cloud_shadow", F_CLOUD_SHADOW_DESCR_TEXT, w, h,
-                "FlagBand.cloudShadow", Color.RED, 0.5f);
-        targetProduct.getMaskGroup().add(index++, mask);
-        mask = Mask.BandMathsType.create("mountain_shadow", F_MOUNTAIN_SHADOW_DESCR_TEXT, w, h,
-                "FlagBand.mountain_shadow", Color.PINK, 0.5f);
-        targetProduct.getMaskGroup().add(index++, mask);
-        mask = Mask.BandMathsType.create("potential_cloud_shadow", F_POTENTIAL_CLOUD_SHADOW_DESCR_TEXT, w, h,
-                "FlagBand.potential_cloud_shadow", Color.ORANGE, 0.5f);
-        targetProduct.getMaskGroup().add(index++, mask);
-        mask = Mask.BandMathsType.create("shifted_cloud_shadow", F_SHIFTED_CLOUD_SHADOW_DESCR_TEXT, w, h,
-                "FlagBand.shifted_cloud_shadow", Color.MAGENTA, 0.5f);
-        targetProduct.getMaskGroup().add(index, mask);
-        mask = Mask.BandMathsType.create("cloud_shadow_comb", F_CLOUD_SHADOW_COMB_DESCR_TEXT, w, h,
-                "FlagBand.cloud_shadow_comb", Color.BLUE, 0.5f);
-        targetProduct.getMaskGroup().add(index, mask);
-        mask = Mask.BandMathsType.create("shifted_cloud_shadow_gaps", F_SHIFTED_CLOUD_SHADOW_GAPS_DESCR_TEXT, w, h,
-                "FlagBand.shifted_cloud_shadow_gaps", Color.BLUE, 0.5f);
-        targetProduct.getMaskGroup().add(index, mask);
-        mask = Mask.BandMathsType.create("recommended_cloud_shadow", F_RECOMMENDED_CLOUD_SHADOW_DESCR_TEXT, w, h,
-                "FlagBand.recommended_cloud_shadow", Color.BLUE, 0.5f);
-        targetProduct.getMaskGroup().add(index, mask);
+        private final double[][] meanReflectanceAlongPath;
+        private final int nCloudOverLand;
+        private final int nCloudOverWater;
+
+        private TileStatistics(double[][] meanReflectanceAlongPath, int nCloudOverLand, int nCloudOverWater) {
+            this.meanReflectanceAlongPath = meanReflectanceAlongPath;
+            this.nCloudOverLand = nCloudOverLand;
+            this.nCloudOverWater = nCloudOverWater;
+        }
     }
 
     public static class Spi extends OperatorSpi {
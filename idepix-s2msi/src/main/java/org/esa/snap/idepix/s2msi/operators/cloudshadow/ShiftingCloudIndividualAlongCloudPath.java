@@ -5,13 +5,9 @@ import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 public class ShiftingCloudIndividualAlongCloudPath {
 
-    private static final double MAXCLOUD_TOP = S2IdepixPreCloudShadowOp.maxcloudTop;
-    private static final double MINCLOUD_BASE = S2IdepixPreCloudShadowOp.mincloudBase;
-
     private double[] sumValue;
     private int[] N;
 
@@ -20,13 +16,13 @@ public class ShiftingCloudIndividualAlongCloudPath {
     public void ShiftingCloudIndividualAlongCloudPath(Rectangle sourceRectangle,
                                                       Rectangle targetRectangle,
                                                       float[][] sourceBands,
-                                                      int[] flagArray, Point2D[] cloudPath, Map<Integer, List<Integer>> cloudList) {
+                                                      int[] flagArray, Point2D[] cloudPath, ContinuousAreas cloudAreas) {
         int sourceWidth = sourceRectangle.width;
         int sourceHeight = sourceRectangle.height;
 
 
-        for (int key : cloudList.keySet()) {
-            List<Integer> cloud = cloudList.get(key);
+        for (int key = 1; key <= cloudAreas.size(); key++) {
+            int[] cloud = cloudAreas.getPixelIndices(key);
 
             meanValuesPath = new double[3][cloudPath.length];
             //int[] NPath = new int[cloudPath.length];
@@ -118,7 +114,7 @@ public class ShiftingCloudIndividualAlongCloudPath {
     }
 
     private void setTileShiftedCloudIndividual(Rectangle sourceRectangle,
-                                               int[] flagArray, Point2D[] cloudPath, int darkIndex, List<Integer> cloud) {
+                                               int[] flagArray, Point2D[] cloudPath, int darkIndex, int[] cloud) {
         int sourceWidth = sourceRectangle.width;
         int sourceHeight = sourceRectangle.height;
 
@@ -0,0 +1,68 @@
+package org.esa.snap.idepix.s2msi.operators.cloudshadow;
+
+import org.junit.Test;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CloudBulkShifterTest {
+
+    private static final int CLOUD = PreparationMaskBand.CLOUD_FLAG;
+    private static final int LAND = PreparationMaskBand.LAND_FLAG;
+    private static final int WATER = PreparationMaskBand.WATER_FLAG;
+    private static final int INVALID = PreparationMaskBand.INVALID_FLAG;
+    private static final int POTENTIAL = PreparationMaskBand.POTENTIAL_CLOUD_SHADOW_FLAG;
+
+    @Test
+    public void testShiftCloudBulkAlongCloudPathType() {
+        final int[] flagArray = {CLOUD | LAND, LAND, WATER, INVALID | LAND, LAND};
+        final float[] band = {0.9f, 0.1f, 0.3f, 0.5f, 0.7f};
+        final Rectangle rectangle = new Rectangle(0, 0, 5, 1);
+
+        final CloudBulkShifter cloudBulkShifter = new CloudBulkShifter();
+        cloudBulkShifter.shiftCloudBulkAlongCloudPathType(rectangle, rectangle, 45f, new float[][]{band, band},
+                flagArray, createPath(5));
+
+        final double[][] meanReflectance = cloudBulkShifter.getMeanReflectanceAlongPath();
+        assertArrayEquals(new double[]{0.0, 0.1, 0.2, 0.2, 1.1 / 3}, meanReflectance[0], 1e-6);
+        assertArrayEquals(new double[]{0.0, 0.1, 0.1, 0.1, 0.4}, meanReflectance[1], 1e-6);
+        assertEquals(Double.NaN, meanReflectance[2][1], 0.0);
+        assertArrayEquals(new double[]{0.3, 0.3, 0.3}, new double[]{
+                meanReflectance[2][2], meanReflectance[2][3], meanReflectance[2][4]}, 1e-6);
+        assertArrayEquals(new int[]{CLOUD | LAND, LAND | POTENTIAL, WATER | POTENTIAL, INVALID | LAND,
+                LAND | POTENTIAL}, flagArray);
+        // the pixels are counted for each of the 4 steps along the path
+        assertEquals(16, cloudBulkShifter.getNValidPixel());
+        assertEquals(4, cloudBulkShifter.getNCloudOverLand());
+        assertEquals(0, cloudBulkShifter.getNCloudOverWater());
+    }
+
+    @Test
+    public void testShiftCloudBulkAlongCloudPathType_pixelReachedTwice() {
+        // the third pixel is reached by the second cloud pixel at step 1 and by the first one at step 2
+        final int[] flagArray = {CLOUD | WATER, CLOUD | WATER, WATER, WATER};
+        final float[] band = {0.9f, 0.9f, 0.2f, 0.6f};
+        final Rectangle rectangle = new Rectangle(0, 0, 4, 1);
+
+        final CloudBulkShifter cloudBulkShifter = new CloudBulkShifter();
+        cloudBulkShifter.shiftCloudBulkAlongCloudPathType(rectangle, rectangle, 45f, new float[][]{band, band},
+                flagArray, createPath(3));
+
+        final double[][] meanReflectance = cloudBulkShifter.getMeanReflectanceAlongPath();
+        assertArrayEquals(new double[]{0.0, 0.2, 0.4}, meanReflectance[0], 1e-6);
+        assertArrayEquals(new double[]{0.0, 0.2, 0.4}, meanReflectance[2], 1e-6);
+        assertArrayEquals(new int[]{CLOUD | WATER, CLOUD | WATER, WATER | POTENTIAL, WATER | POTENTIAL}, flagArray);
+    }
+
+    private static Point2D[] createPath(int length) {
+        final Point2D[] path = new Point2D[length];
+        for (int i = 0; i < length; i++) {
+            path[i] = new Point(i, 0);
+        }
+        return path;
+    }
+}
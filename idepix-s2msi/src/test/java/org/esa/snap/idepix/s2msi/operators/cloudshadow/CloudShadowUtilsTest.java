@@ -13,6 +13,8 @@ import static org.junit.Assert.assertEquals;
 
 public class CloudShadowUtilsTest {
 
+    private static final double SPATIAL_RESOLUTION = 60;
+
     @Test
     public void testGetRelativePath_45() throws Exception {
         final List<Point> list = new LinkedList<>();
@@ -41,16 +43,14 @@ public class CloudShadowUtilsTest {
 
 
     private void testRelativePath(float saa, Point2D[] expectedPath) {
-        S2IdepixPreCloudShadowOp.searchBorderRadius = 5;
-        S2IdepixPreCloudShadowOp.spatialResolution = 60;
         final Rectangle targetRectangle = new Rectangle(5, 5, 10, 10);
         float minAltitude = 0;
         float sunZenithMean = 19.7446f;
 
         final Point2D[] cloudShadowRelativePath = CloudShadowUtils.getRelativePath(
                 minAltitude, sunZenithMean * MathUtils.DTOR, saa * MathUtils.DTOR,
-                S2IdepixPreCloudShadowOp.maxcloudTop, targetRectangle, targetRectangle, 20,
-                20, S2IdepixPreCloudShadowOp.spatialResolution, true, false);
+                S2IdepixPreCloudShadowOp.DEFAULT_MAX_CLOUD_TOP, targetRectangle, targetRectangle, 20,
+                20, SPATIAL_RESOLUTION, true, false);
         assertEquals(expectedPath.length, cloudShadowRelativePath.length);
         for (int i = 0; i < expectedPath.length; i++) {
             assertEquals(expectedPath[i].getX(), cloudShadowRelativePath[i].getX(), 1.0e-6);
@@ -1,6 +1,5 @@
 package org.esa.snap.idepix.s2msi.operators.cloudshadow;
 
-import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertArrayEquals;
@@ -43,11 +42,6 @@ public class ClusteringKMeansTest {
             0.0897, 0.0968, 0.1007, 0.0897, 0.0848, 0.0974, 0.1069, 0.1033, 0.0968, 0.0977, 0.1069, 0.0947, 0.0948,
             0.0961};
 
-    @Before
-    public void setUp() {
-        S2IdepixPreCloudShadowOp.clusterCountDefine = 3;
-    }
-
     @Test
     public void computedKMeansCluster_singleBand() {
         double[] expectedDoubles = new double[]{0.027628395223507175, 0.26682499796152115, 0.1585571425301688};
@@ -0,0 +1,182 @@
+package org.esa.snap.idepix.s2msi.operators.cloudshadow;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FindContinuousAreasTest {
+
+    @Test
+    public void testComputeAreaID_separateAreas() {
+        final int[] flags = {
+                1, 1, 0, 0, 1,
+                0, 1, 0, 1, 1,
+                0, 0, 1, 0, 0,
+                1, 0, 0, 0, 0};
+        final int[] areaIdArray = new int[flags.length];
+
+        final ContinuousAreas areas = new FindContinuousAreas(flags).computeAreaID(5, 4, areaIdArray, false);
+
+        // diagonal neighbours do not belong to the same area
+        assertEquals(4, areas.size());
+        assertArrayEquals(new int[]{
+                1, 1, 0, 0, 2,
+                0, 1, 0, 2, 2,
+                0, 0, 3, 0, 0,
+                4, 0, 0, 0, 0}, areaIdArray);
+        assertArrayEquals(new int[]{0, 1, 6}, areas.getPixelIndices(1));
+        assertArrayEquals(new int[]{4, 8, 9}, areas.getPixelIndices(2));
+        assertArrayEquals(new int[]{12}, areas.getPixelIndices(3));
+        assertArrayEquals(new int[]{15}, areas.getPixelIndices(4));
+        assertEquals(3, areas.getPixelCount(2));
+        assertEquals(3, areas.getStart(2));
+        assertEquals(6, areas.getEnd(2));
+        assertEquals(8, areas.getPixelIndex(4));
+    }
+
+    @Test
+    public void testComputeAreaID_concave() {
+        // a comb, its teeth are only connected at the bottom row
+        final int[] flags = {
+                1, 0, 1, 0, 1, 0, 1,
+                1, 0, 1, 0, 1, 0, 1,
+                1, 0, 1, 0, 1, 0, 1,
+                1, 1, 1, 1, 1, 1, 1,
+                0, 0, 0, 0, 0, 0, 0};
+        final int[] areaIdArray = new int[flags.length];
+
+        final ContinuousAreas areas = new FindContinuousAreas(flags).computeAreaID(7, 5, areaIdArray, false);
+
+        assertEquals(1, areas.size());
+        assertEquals(19, areas.getPixelCount(1));
+        assertLabelledAs(flags, areaIdArray, 1);
+    }
+
+    @Test
+    public void testComputeAreaID_spiral() {
+        // a spiral needs many sweeps of a neighbour propagation, much more than 10
+        final int size = 61;
+        final int[] flags = createSpiral(size);
+        final int[] areaIdArray = new int[flags.length];
+
+        final ContinuousAreas areas = new FindContinuousAreas(flags).computeAreaID(size, size, areaIdArray, false);
+
+        assertEquals(1, areas.size());
+        assertEquals(countTargets(flags), areas.getPixelCount(1));
+        assertLabelledAs(flags, areaIdArray, 1);
+    }
+
+    @Test
+    public void testComputeAreaID_spiralInFrame() {
+        final int size = 41;
+        final int width = size + 4;
+        final int[] spiral = createSpiral(size);
+        final int[] flags = new int[width * width];
+        final int[] expectedIds = new int[flags.length];
+        for (int j = 0; j < width; j++) {
+            for (int i = 0; i < width; i++) {
+                // a frame around the spiral, which keeps a distance of one pixel to it
+                if (i == 0 || j == 0 || i == width - 1 || j == width - 1) {
+                    flags[j * width + i] = 1;
+                    expectedIds[j * width + i] = 1;
+                }
+            }
+        }
+        for (int j = 0; j < size; j++) {
+            for (int i = 0; i < size; i++) {
+                if (spiral[j * size + i] == 1) {
+                    flags[(j + 2) * width + i + 2] = 1;
+                    expectedIds[(j + 2) * width + i + 2] = 2;
+                }
+            }
+        }
+        final int[] areaIdArray = new int[flags.length];
+
+        final ContinuousAreas areas = new FindContinuousAreas(flags).computeAreaID(width, width, areaIdArray, false);
+
+        assertEquals(2, areas.size());
+        assertArrayEquals(expectedIds, areaIdArray);
+    }
+
+    @Test
+    public void testComputeAreaID_usePreparationMask() {
+        final int cloud = PreparationMaskBand.CLOUD_FLAG;
+        final int invalidCloud = PreparationMaskBand.CLOUD_FLAG | PreparationMaskBand.INVALID_FLAG;
+        final int land = PreparationMaskBand.LAND_FLAG;
+        final int[] flags = {
+                cloud, cloud, land,
+                invalidCloud, land, cloud,
+                cloud, land, cloud};
+        final int[] areaIdArray = new int[flags.length];
+
+        final ContinuousAreas areas = new FindContinuousAreas(flags).computeAreaID(3, 3, areaIdArray, true);
+
+        assertEquals(3, areas.size());
+        assertArrayEquals(new int[]{
+                1, 1, 0,
+                0, 0, 2,
+                3, 0, 2}, areaIdArray);
+    }
+
+    @Test
+    public void testComputeAreaID_otherPixelsUnchanged() {
+        final int[] flags = {
+                1, 0,
+                0, 1};
+        final int[] areaIdArray = {7, 7, 7, 7};
+
+        final ContinuousAreas areas = new FindContinuousAreas(flags).computeAreaID(2, 2, areaIdArray, false);
+
+        assertEquals(2, areas.size());
+        assertArrayEquals(new int[]{1, 7, 7, 2}, areaIdArray);
+    }
+
+    @Test
+    public void testComputeAreaID_noTargets() {
+        final int[] areaIdArray = new int[6];
+
+        final ContinuousAreas areas = new FindContinuousAreas(new int[6]).computeAreaID(3, 2, areaIdArray, false);
+
+        assertEquals(0, areas.size());
+        assertArrayEquals(new int[6], areaIdArray);
+    }
+
+    private static int[] createSpiral(int size) {
+        final int[] flags = new int[size * size];
+        final int[][] directions = {{1, 0}, {0, 1}, {-1, 0}, {0, -1}};
+        int x = 0;
+        int y = 0;
+        flags[0] = 1;
+        int length = size - 1;
+        int segment = 0;
+        while (length > 0) {
+            int[] direction = directions[segment % 4];
+            for (int k = 0; k < length; k++) {
+                x += direction[0];
+                y += direction[1];
+                flags[y * size + x] = 1;
+            }
+            segment++;
+            // the arms of the spiral keep a distance of one pixel
+            if (segment >= 3 && segment % 2 == 1) {
+                length -= 2;
+            }
+        }
+        return flags;
+    }
+
+    private static int countTargets(int[] flags) {
+        int count = 0;
+        for (int flag : flags) {
+            count += flag;
+        }
+        return count;
+    }
+
+    private static void assertLabelledAs(int[] flags, int[] areaIdArray, int areaId) {
+        for (int i = 0; i < flags.length; i++) {
+            assertEquals(flags[i] == 1 ? areaId : 0, areaIdArray[i]);
+        }
+    }
+}
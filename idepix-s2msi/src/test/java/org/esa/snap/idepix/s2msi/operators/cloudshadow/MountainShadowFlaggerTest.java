@@ -17,6 +17,8 @@ import static org.junit.Assert.*;
  */
 public class MountainShadowFlaggerTest {
 
+    private static final double SPATIAL_RESOLUTION = 60;
+
     @Test
     public void testGetRelativeMinMountainHeights() {
         Point2D[] relativePath = new Point2D[]{new Point2D.Double(0.0, 1.0), new Point2D.Double(1.0, 1.0),
@@ -240,8 +242,6 @@ public class MountainShadowFlaggerTest {
     }
 
     private void testMountainShadowArea(float saa, int[] expectedFlagArray) {
-        S2IdepixPreCloudShadowOp.searchBorderRadius = 5;
-        S2IdepixPreCloudShadowOp.spatialResolution = 60;
         final Rectangle sourceRectangle = new Rectangle(20, 20);
         final Rectangle targetRectangle = new Rectangle(5, 5, 10, 10);
         final float[] sunZenith = createSmoothGrid(19.7446f, 19.6652f, 19.6997f, 19.6202f, 20, 20);
@@ -259,12 +259,12 @@ public class MountainShadowFlaggerTest {
         float sunZenithMean = sunZenith[0];
 
         final Point2D[] cloudShadowRelativePath = CloudShadowUtils.getRelativePath(
-                minAltitude, sunZenithMean * MathUtils.DTOR, saa * MathUtils.DTOR, S2IdepixPreCloudShadowOp.maxcloudTop,
+                minAltitude, sunZenithMean * MathUtils.DTOR, saa * MathUtils.DTOR, S2IdepixPreCloudShadowOp.DEFAULT_MAX_CLOUD_TOP,
                 targetRectangle, targetRectangle, 20,
-                20, S2IdepixPreCloudShadowOp.spatialResolution, true, false);
+                20, SPATIAL_RESOLUTION, true, false);
 
         MountainShadowFlagger.flagMountainShadowArea(sourceRectangle, sunZenithDegree, elevation, flagArray,
-                minAltitude, maxAltitude, cloudShadowRelativePath);
+                minAltitude, maxAltitude, cloudShadowRelativePath, SPATIAL_RESOLUTION);
 
         assertArrayEquals(expectedFlagArray, flagArray);
     }
@@ -19,6 +19,8 @@ import static org.junit.Assert.assertEquals;
  */
 public class PotentialCloudShadowAreaIdentifierTest {
 
+    private static final double SPATIAL_RESOLUTION = 60;
+
     @Test
     public void testGetRelativePath_saa_305_corner() {
         final Rectangle sourceRectangle = new Rectangle(20, 20);
@@ -370,8 +372,6 @@ public class PotentialCloudShadowAreaIdentifierTest {
     }
 
     private Point2D[] getCloudPath(float saa, Rectangle sourceRectangle, Rectangle targetRectangle) {
-        S2IdepixPreCloudShadowOp.searchBorderRadius = 10;
-        S2IdepixPreCloudShadowOp.spatialResolution = 60;
         final float[] sunZenith = createSmoothGrid(19.7446f, 19.6652f, 19.6997f, 19.6202f, 20, 20);
         final float[] sunAzimuth = createSmoothGrid(saa, saa, saa, saa, 20, 20);
         final float[] elevation = createSmoothGrid(800, 850, 900, 950, 20, 20);
@@ -381,14 +381,12 @@ public class PotentialCloudShadowAreaIdentifierTest {
         final List<Float> altitudes = Arrays.asList(ArrayUtils.toObject(elevation));
         float minAltitude = Collections.min(altitudes);
         return CloudShadowUtils.getRelativePath(minAltitude, sunZenithMean * MathUtils.DTOR, sunAzimuthMean * MathUtils.DTOR,
-                                                S2IdepixPreCloudShadowOp.maxcloudTop, sourceRectangle, targetRectangle, 20, 20,
-                                                S2IdepixPreCloudShadowOp.spatialResolution, true, false);
+                                                S2IdepixPreCloudShadowOp.DEFAULT_MAX_CLOUD_TOP, sourceRectangle, targetRectangle, 20, 20,
+                                                SPATIAL_RESOLUTION, true, false);
     }
 
     private void testPotentialCloudShadowArea(float saa, Rectangle sourceRectangle, Rectangle targetRectangle,
                                               int[][] expectedPotentialShadowPositions) {
-        S2IdepixPreCloudShadowOp.searchBorderRadius = 10;
-        S2IdepixPreCloudShadowOp.spatialResolution = 60;
         final float[] sunZenith = createSmoothGrid(19.7446f, 19.6652f, 19.6997f, 19.6202f, 20, 20);
         final float[] sunAzimuth = createSmoothGrid(saa, saa, saa, saa, 20, 20);
         final float[] latitude = createSmoothGrid(31.630919f, 31.630814f, 31.620094f, 31.619989f, 20, 20);
@@ -417,7 +415,8 @@ public class PotentialCloudShadowAreaIdentifierTest {
 
         final IdentifiedPcs identifiedPcs = identifyPotentialCloudShadowsPLUS(sourceRectangle, targetRectangle,
                                                                               sunZenithMean, sunAzimuthMean, latitude, longitude,
-                                                                              elevation, flagArray, cloudIdArea, cloudPath);
+                                                                              elevation, flagArray, cloudIdArea, cloudPath,
+                                                                              S2IdepixPreCloudShadowOp.DEFAULT_MAX_CLOUD_TOP);
 
         final Map<Integer, List<Integer>> potentialShadowPositions = identifiedPcs.indexToPositions;
 
@@ -0,0 +1,195 @@
+package org.esa.snap.idepix.s2msi.operators.cloudshadow;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.gpf.internal.TileImpl;
+import org.esa.snap.core.util.math.MathUtils;
+import org.esa.snap.idepix.s2msi.util.S2IdepixUtils;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The estimation of the best cloud shadow offset as it was done before the statistics pass of
+ * {@link S2IdepixPreCloudShadowOp}: the statistics are computed tile by tile of the pre-processing target product,
+ * put into maps by the tile id of {@link S2IdepixUtils#calculateTileId}, and reduced in the cloud shadow operator.
+ * Kept for testing that the estimated offset is unchanged.
+ */
+class S2IdepixCloudShadowOffsetReference {
+
+    private final Map<Integer, double[][]> meanReflPerTile = new HashMap<>();
+    private final Map<Integer, Integer> NCloudOverLand = new HashMap<>();
+    private final Map<Integer, Integer> NCloudOverWater = new HashMap<>();
+
+    int computeBestOffset(Product s2ClassifProduct, Product s2BandsProduct, Product targetProduct,
+                          float sunZenithMean, float sunAzimuthMean) {
+        final Dimension tileSize = targetProduct.getPreferredTileSize();
+        final int width = targetProduct.getSceneRasterWidth();
+        final int height = targetProduct.getSceneRasterHeight();
+        for (int y = 0; y < height; y += tileSize.height) {
+            for (int x = 0; x < width; x += tileSize.width) {
+                final Rectangle targetRectangle =
+                        new Rectangle(x, y, tileSize.width, tileSize.height).intersection(new Rectangle(width, height));
+                computeTile(s2ClassifProduct, s2BandsProduct, targetProduct, targetRectangle,
+                            sunZenithMean, sunAzimuthMean);
+            }
+        }
+        return chooseBestOffset(findOverallMinimumReflectance());
+    }
+
+    private void computeTile(Product s2ClassifProduct, Product s2BandsProduct, Product targetProduct,
+                             Rectangle targetRectangle, float sunZenithMean, float sunAzimuthMean) {
+        final double lat = S2IdepixUtils.getCenterGeoPos(s2BandsProduct).getLat();
+        final int maxcloudTop = (int) Math.ceil(0.5 * Math.pow(90. - Math.abs(lat), 2.) +
+                                                        (90. - Math.abs(lat)) * 25 + 5000);
+        final double spatialResolution = S2IdepixUtils.determineResolution(s2ClassifProduct);
+        final Point2D[] cloudShadowRelativePath = CloudShadowUtils.getRelativePath(
+                0, sunZenithMean * MathUtils.DTOR, sunAzimuthMean * MathUtils.DTOR, maxcloudTop,
+                targetRectangle, targetRectangle, s2ClassifProduct.getSceneRasterHeight(),
+                s2ClassifProduct.getSceneRasterWidth(), spatialResolution, true, false);
+
+        final Rectangle sourceRectangle =
+                CloudShadowUtils.getSourceRectangle(s2ClassifProduct, targetRectangle, cloudShadowRelativePath);
+        final Band flagBand = s2ClassifProduct.getBand("pixel_classif_flags");
+        final TileImpl sourceTileFlag1 = new TileImpl(flagBand, flagBand.getSourceImage().getData(sourceRectangle));
+
+        final int[] flagArray = new int[sourceRectangle.width * sourceRectangle.height];
+        final float[][] clusterData = {getSamples(s2BandsProduct.getBand("B8A"), sourceRectangle),
+                getSamples(s2BandsProduct.getBand("B3"), sourceRectangle)};
+
+        final FlagDetector flagDetector = new FlagDetector(sourceTileFlag1, sourceRectangle);
+        PreparationMaskBand.prepareMaskBand(s2ClassifProduct.getSceneRasterWidth(),
+                s2ClassifProduct.getSceneRasterHeight(), sourceRectangle, flagArray, flagDetector);
+
+        final CloudBulkShifter cloudBulkShifter = new CloudBulkShifter();
+        cloudBulkShifter.shiftCloudBulkAlongCloudPathType(sourceRectangle, targetRectangle, sunAzimuthMean,
+                clusterData, flagArray, cloudShadowRelativePath);
+        int tileId = S2IdepixUtils.calculateTileId(targetRectangle, targetProduct);
+        meanReflPerTile.put(tileId, cloudBulkShifter.getMeanReflectanceAlongPath());
+        NCloudOverLand.put(tileId, cloudBulkShifter.getNCloudOverLand());
+        NCloudOverWater.put(tileId, cloudBulkShifter.getNCloudOverWater());
+    }
+
+    private static float[] getSamples(Band band, Rectangle rectangle) {
+        return band.getSourceImage().getData(rectangle).getSamples(rectangle.x, rectangle.y, rectangle.width,
+                                                                   rectangle.height, 0, (float[]) null);
+    }
+
+    private int chooseBestOffset(int[] bestOffset) {
+        int NCloudWater = 0;
+        int NCloudLand = 0;
+        int out;
+        if (NCloudOverWater.size() > 0) {
+            for (int index : NCloudOverWater.keySet()) {
+                NCloudWater += NCloudOverWater.get(index);
+            }
+        }
+        if (NCloudOverLand.size() > 0) {
+            for (int index : NCloudOverLand.keySet()) {
+                NCloudLand += NCloudOverLand.get(index);
+            }
+        }
+        int Nall = NCloudLand + NCloudWater;
+        float relCloudLand = (float) NCloudLand / Nall;
+        float relCloudWater = (float) NCloudWater / Nall;
+        if (relCloudLand > 2 * relCloudWater) {
+            out = bestOffset[1];
+        } else if (relCloudWater > 2 * relCloudLand) {
+            out = bestOffset[2];
+        } else out = bestOffset[0];
+        return out;
+    }
+
+    private int[] findOverallMinimumReflectance() {
+        // catch cases of tiles completely invalid are skipped
+        if (meanReflPerTile.keySet().size() == 0) {
+            return new int[3];
+        }
+        // we need to account for that not all mean values in meanReflPerTile are of the same length
+        int pathLength = 0;
+        for (double[][] meanRefls : meanReflPerTile.values()) {
+            pathLength = Math.max(pathLength, meanRefls[0].length);
+        }
+        double[][] scaledTotalReflectance = new double[3][pathLength];
+        for (int j = 0; j < 3; j++) {
+            for (int key : meanReflPerTile.keySet()) {
+                double[][] meanValues = meanReflPerTile.get(key);
+                boolean exclude = false;
+                List<Integer> relativeMinimum = indecesRelativMaxInArray(meanValues[j]);
+                if (relativeMinimum.contains(0)) relativeMinimum.remove(relativeMinimum.indexOf(0));
+                if (relativeMinimum.contains(meanValues[j].length - 1))
+                    relativeMinimum.remove(relativeMinimum.indexOf(meanValues[j].length - 1));
+
+                //smallest relative minimum is in second part of the path -> exclude
+                if (relativeMinimum.indexOf(0) > meanValues[j].length / 2.) exclude = true;
+                if (relativeMinimum.size() == 0) exclude = true;
+                if (exclude) {
+                    Arrays.fill(meanValues[j], Double.NaN);
+                }
+            }
+            //Finding the minimum in brightness in the scaled mean function.
+            for (int key : meanReflPerTile.keySet()) {
+                double[][] meanValues = meanReflPerTile.get(key);
+                double[] maxValue = new double[3];
+                for (int i = 0; i < meanValues[j].length; i++) {
+                    if (!Double.isNaN(meanValues[j][i])) {
+                        if (meanValues[j][i] > maxValue[j]) {
+                            maxValue[j] = meanValues[j][i];
+                        }
+                    }
+                }
+                for (int i = 0; i < meanValues[j].length; i++) {
+                    if (!Double.isNaN(meanValues[j][i]) && maxValue[j] > 0) {
+                        scaledTotalReflectance[j][i] += meanValues[j][i] / maxValue[j];
+                    }
+                }
+            }
+        }
+        int[] offset = new int[3];
+        for (int j = 0; j < 3; j++) {
+            List<Integer> test = indecesRelativMaxInArray(scaledTotalReflectance[j]);
+            if (test.contains(0)) test.remove(test.indexOf(0));
+            if (test.contains(scaledTotalReflectance[j].length - 1))
+                test.remove(test.indexOf(scaledTotalReflectance[j].length - 1));
+
+            if (test.size() > 0) {
+                offset[j] = test.get(0);
+            }
+        }
+        return offset;
+    }
+
+    private static List<Integer> indecesRelativMaxInArray(double[] x) {
+        int lx = x.length;
+        List<Integer> ID = new ArrayList<>();
+        boolean valid = true;
+        int i = 0;
+        while (i < lx && valid) {
+            if (Double.isNaN(x[i])) valid = false;
+            i++;
+        }
+        if (lx == 1) {
+            ID.add(0);
+        } else if (lx > 1 && valid) {
+            double fac = -1.;
+
+            if (fac * x[0] > fac * x[1]) ID.add(0);
+            if (fac * x[lx - 1] > fac * x[lx - 2]) ID.add(lx - 1);
+
+            for (i = 1; i < lx - 1; i++) {
+                if (fac * x[i] > fac * x[i - 1] && fac * x[i] > fac * x[i + 1]) ID.add(i);
+            }
+        } else if (lx > 1) {
+            ID.add(0);
+            ID.add(lx - 1);
+        }
+
+        return ID;
+    }
+}
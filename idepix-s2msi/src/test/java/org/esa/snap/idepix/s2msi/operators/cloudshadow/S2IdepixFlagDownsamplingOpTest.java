@@ -0,0 +1,163 @@
+package org.esa.snap.idepix.s2msi.operators.cloudshadow;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.internal.TileImpl;
+import org.esa.snap.core.util.BitSetter;
+import org.geotools.referencing.CRS;
+import org.junit.Test;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.operation.TransformException;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CLASSIF_FLAGS;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CLEAR_LAND;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CLOUD;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_CLOUD_SURE;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_INVALID;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_LAND;
+import static org.esa.snap.idepix.s2msi.util.S2IdepixConstants.IDEPIX_WATER;
+import static org.junit.Assert.assertEquals;
+
+public class S2IdepixFlagDownsamplingOpTest {
+
+    private static final int CLOUD = BitSetter.setFlag(0, IDEPIX_CLOUD) | BitSetter.setFlag(0, IDEPIX_CLOUD_SURE);
+    private static final int LAND = BitSetter.setFlag(0, IDEPIX_LAND);
+    private static final int CLEAR_LAND = LAND | BitSetter.setFlag(0, IDEPIX_CLEAR_LAND);
+    private static final int WATER = BitSetter.setFlag(0, IDEPIX_WATER);
+    private static final int INVALID = BitSetter.setFlag(0, IDEPIX_INVALID);
+
+    // a 20 m source whose size is not a multiple of the 60 m blocks: the last column of blocks is 2 pixels wide,
+    // the last row of blocks 1 pixel high
+    private static final int SOURCE_WIDTH = 11;
+    private static final int SOURCE_HEIGHT = 7;
+    private static final int TARGET_WIDTH = 4;
+    private static final int TARGET_HEIGHT = 3;
+
+    @Test
+    public void testAggregateFlags_anyCloud() {
+        final int[] flags = {LAND, LAND, LAND, LAND, LAND | CLOUD, LAND, LAND, LAND, LAND};
+
+        assertEquals(LAND | CLOUD, S2IdepixFlagDownsamplingOp.aggregateFlags(flags, flags.length));
+    }
+
+    @Test
+    public void testAggregateFlags_majority() {
+        final int[] flags = {LAND, LAND, WATER, LAND, WATER, WATER, LAND, WATER, LAND};
+
+        assertEquals(LAND, S2IdepixFlagDownsamplingOp.aggregateFlags(flags, flags.length));
+    }
+
+    @Test
+    public void testAggregateFlags_majorityNeedsMoreThanHalf() {
+        final int[] flags = {INVALID, INVALID, LAND, LAND};
+
+        assertEquals(0, S2IdepixFlagDownsamplingOp.aggregateFlags(flags, flags.length));
+    }
+
+    @Test
+    public void testAggregateFlags_clearDroppedForCloud() {
+        final int[] flags = {CLEAR_LAND, CLEAR_LAND, CLEAR_LAND, LAND | CLOUD};
+
+        assertEquals(LAND | CLOUD, S2IdepixFlagDownsamplingOp.aggregateFlags(flags, flags.length));
+    }
+
+    @Test
+    public void testAggregateFlags_partialBlock() {
+        final int[] flags = {WATER, WATER, LAND | CLOUD, 0, 0, 0, 0, 0, 0};
+
+        assertEquals(WATER, S2IdepixFlagDownsamplingOp.aggregateFlags(flags, 2));
+        assertEquals(WATER | CLOUD, S2IdepixFlagDownsamplingOp.aggregateFlags(flags, 3));
+        assertEquals(0, S2IdepixFlagDownsamplingOp.aggregateFlags(flags, 0));
+    }
+
+    @Test
+    public void testComputeTile_edgeBlocks() throws Exception {
+        final S2IdepixFlagDownsamplingOp operator = createOperator();
+        final Band targetBand = operator.getTargetProduct().getBand(IDEPIX_CLASSIF_FLAGS);
+
+        // a tile at the lower right corner, not starting at the origin
+        final TileImpl targetTile = createTargetTile(targetBand, new Rectangle(2, 1, 2, 2));
+        operator.computeTile(targetBand, targetTile, ProgressMonitor.NULL);
+
+        // the 2 x 3 block of source pixels x = 9..10, y = 3..5, with land in 4 of its 6 pixels
+        assertEquals(LAND, targetTile.getSampleInt(3, 1));
+        // the 2 x 1 block of source pixels x = 9..10, y = 6, with the cloud of the corner pixel
+        assertEquals(WATER | CLOUD, targetTile.getSampleInt(3, 2));
+        // the 3 x 1 block of source pixels x = 6..8, y = 6
+        assertEquals(WATER, targetTile.getSampleInt(2, 2));
+        // the full 3 x 3 block of source pixels x = 6..8, y = 3..5
+        assertEquals(LAND, targetTile.getSampleInt(2, 1));
+    }
+
+    @Test
+    public void testComputeTile_sameAsBlockAggregation() throws Exception {
+        final S2IdepixFlagDownsamplingOp operator = createOperator();
+        final Band targetBand = operator.getTargetProduct().getBand(IDEPIX_CLASSIF_FLAGS);
+
+        final TileImpl targetTile = createTargetTile(targetBand, new Rectangle(TARGET_WIDTH, TARGET_HEIGHT));
+        operator.computeTile(targetBand, targetTile, ProgressMonitor.NULL);
+
+        for (int y = 0; y < TARGET_HEIGHT; y++) {
+            for (int x = 0; x < TARGET_WIDTH; x++) {
+                final int[] blockFlags = new int[9];
+                int count = 0;
+                for (int sourceY = 3 * y; sourceY < Math.min(3 * y + 3, SOURCE_HEIGHT); sourceY++) {
+                    for (int sourceX = 3 * x; sourceX < Math.min(3 * x + 3, SOURCE_WIDTH); sourceX++) {
+                        blockFlags[count++] = getSourceFlag(sourceX, sourceY);
+                    }
+                }
+                assertEquals("(" + x + ", " + y + ")", S2IdepixFlagDownsamplingOp.aggregateFlags(blockFlags, count),
+                             targetTile.getSampleInt(x, y));
+            }
+        }
+    }
+
+    private static S2IdepixFlagDownsamplingOp createOperator() throws FactoryException, TransformException {
+        final Product sourceProduct = createProduct("classif", SOURCE_WIDTH, SOURCE_HEIGHT, 20.0);
+        final int[] sourceFlags = new int[SOURCE_WIDTH * SOURCE_HEIGHT];
+        for (int y = 0; y < SOURCE_HEIGHT; y++) {
+            for (int x = 0; x < SOURCE_WIDTH; x++) {
+                sourceFlags[y * SOURCE_WIDTH + x] = getSourceFlag(x, y);
+            }
+        }
+        final Band flagBand = new Band(IDEPIX_CLASSIF_FLAGS, ProductData.TYPE_INT32, SOURCE_WIDTH, SOURCE_HEIGHT);
+        flagBand.setDataElems(sourceFlags);
+        sourceProduct.addBand(flagBand);
+
+        final S2IdepixFlagDownsamplingOp operator = new S2IdepixFlagDownsamplingOp();
+        operator.setSourceProduct("s2ClassifProduct", sourceProduct);
+        operator.setSourceProduct("referenceProduct", createProduct("reference", TARGET_WIDTH, TARGET_HEIGHT, 60.0));
+        return operator;
+    }
+
+    // land in the upper rows, water in the last row and the lower part of the last column,
+    // a cloud in the lower right corner
+    private static int getSourceFlag(int x, int y) {
+        if (x == SOURCE_WIDTH - 1 && y == SOURCE_HEIGHT - 1) {
+            return WATER | CLOUD;
+        }
+        return y < SOURCE_HEIGHT - 1 && (x < SOURCE_WIDTH - 1 || y < 4) ? LAND : WATER;
+    }
+
+    private static Product createProduct(String name, int width, int height, double resolution)
+            throws FactoryException, TransformException {
+        final Product product = new Product(name, "test", width, height);
+        product.setSceneGeoCoding(new CrsGeoCoding(CRS.decode("EPSG:32650"), width, height,
+                                                   699960.0, 4000020.0, resolution, resolution, 0.0, 0.0));
+        return product;
+    }
+
+    private static TileImpl createTargetTile(Band targetBand, Rectangle rectangle) {
+        return new TileImpl(targetBand, Raster.createBandedRaster(DataBuffer.TYPE_INT, rectangle.width,
+                                                                  rectangle.height, 1,
+                                                                  new Point(rectangle.x, rectangle.y)));
+    }
+}
@@ -1,13 +1,30 @@
 package org.esa.snap.idepix.s2msi.operators.cloudshadow;
 
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
 import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.OperatorException;
+import org.esa.snap.core.util.BitSetter;
+import org.esa.snap.idepix.s2msi.util.S2IdepixConstants;
+import org.geotools.referencing.CRS;
 import org.junit.Before;
 import org.junit.Test;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.operation.TransformException;
 
 import java.awt.Rectangle;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 
 /**
@@ -15,6 +32,11 @@ import static org.junit.Assert.assertEquals;
  */
 public class S2IdepixPreCloudShadowOpTest {
 
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 90;
+    private static final float SUN_ZENITH = 40.0f;
+    private static final float SUN_AZIMUTH = 150.0f;
+
     private S2IdepixPreCloudShadowOp cloudShadowOp;
 
     @Before
@@ -115,4 +137,130 @@ public class S2IdepixPreCloudShadowOpTest {
         assertEquals(expectedSourceRectangle, sourceRectangle);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testComputeBestOffset_sameAsReference() throws Exception {
+        final Product classifProduct = createClassifProduct();
+        final Product bandsProduct = createBandsProduct();
+        final S2IdepixPreCloudShadowOp preCloudShadowOp = createPreCloudShadowOp(classifProduct, bandsProduct);
+
+        final int expectedOffset = new S2IdepixCloudShadowOffsetReference().computeBestOffset(
+                classifProduct, bandsProduct, preCloudShadowOp.getTargetProduct(), SUN_ZENITH, SUN_AZIMUTH);
+
+        assertEquals(expectedOffset, preCloudShadowOp.computeBestOffset(() -> {}));
+        // the offset is estimated once
+        assertEquals(expectedOffset, preCloudShadowOp.computeBestOffset(() -> fail("estimated again")));
+    }
+
+    @Test
+    public void testComputeBestOffset_concurrently() throws Exception {
+        final Product classifProduct = createClassifProduct();
+        final Product bandsProduct = createBandsProduct();
+        final int expectedOffset = createPreCloudShadowOp(classifProduct, bandsProduct).computeBestOffset(() -> {});
+
+        final S2IdepixPreCloudShadowOp preCloudShadowOp = createPreCloudShadowOp(classifProduct, bandsProduct);
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            final List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                tasks.add(() -> preCloudShadowOp.computeBestOffset(() -> {}));
+            }
+            for (Future<Integer> future : executorService.invokeAll(tasks)) {
+                assertEquals(expectedOffset, (int) future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testComputeBestOffset_cancelled() throws Exception {
+        final S2IdepixPreCloudShadowOp preCloudShadowOp =
+                createPreCloudShadowOp(createClassifProduct(), createBandsProduct());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                preCloudShadowOp.computeBestOffset(() -> {
+                    throw new OperatorException("cancelled");
+                });
+                fail("OperatorException expected");
+            } catch (OperatorException expected) {
+                assertEquals("cancelled", expected.getMessage());
+            }
+        }
+    }
+
+    private static S2IdepixPreCloudShadowOp createPreCloudShadowOp(Product classifProduct, Product bandsProduct) {
+        final S2IdepixPreCloudShadowOp preCloudShadowOp = new S2IdepixPreCloudShadowOp();
+        preCloudShadowOp.setParameterDefaultValues();
+        preCloudShadowOp.setSourceProduct("s2ClassifProduct", classifProduct);
+        preCloudShadowOp.setSourceProduct("s2BandsProduct", bandsProduct);
+        preCloudShadowOp.setParameter("sunZenithMean", SUN_ZENITH);
+        preCloudShadowOp.setParameter("sunAzimuthMean", SUN_AZIMUTH);
+        preCloudShadowOp.getTargetProduct();
+        return preCloudShadowOp;
+    }
+
+    // 60 m pixels, clouds over land in the left and over water in the right part of the scene,
+    // the scene width is not a multiple of the tile width, so that the tile ids of the last tiles of the rows collide
+    private static Product createClassifProduct() throws FactoryException, TransformException {
+        final Product product = createProduct("classif");
+        final int land = BitSetter.setFlag(0, S2IdepixConstants.IDEPIX_LAND);
+        final int cloud = BitSetter.setFlag(0, S2IdepixConstants.IDEPIX_CLOUD) |
+                BitSetter.setFlag(0, S2IdepixConstants.IDEPIX_CLOUD_SURE);
+        final int[] flags = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final int flag = x < 60 ? land : 0;
+                flags[y * WIDTH + x] = isCloud(x, y) ? flag | cloud : flag;
+            }
+        }
+        final Band band = new Band("pixel_classif_flags", ProductData.TYPE_INT32, WIDTH, HEIGHT);
+        band.setDataElems(flags);
+        product.addBand(band);
+        return product;
+    }
+
+    private static Product createBandsProduct() throws FactoryException, TransformException {
+        final Product product = createProduct("bands");
+        final Random random = new Random(4711);
+        final float[] b8a = new float[WIDTH * HEIGHT];
+        final float[] b3 = new float[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final int i = y * WIDTH + x;
+                final float surface = x < 60 ? 0.25f : 0.05f;
+                if (isCloud(x, y)) {
+                    b8a[i] = 0.6f + 0.1f * random.nextFloat();
+                    b3[i] = 0.6f + 0.1f * random.nextFloat();
+                } else if (isCloud(x + 3, y + 7)) {
+                    // the shadows are cast away from the sun
+                    b8a[i] = 0.3f * surface + 0.01f * random.nextFloat();
+                    b3[i] = 0.3f * surface + 0.01f * random.nextFloat();
+                } else {
+                    b8a[i] = surface + 0.05f * random.nextFloat();
+                    b3[i] = 0.8f * surface + 0.05f * random.nextFloat();
+                }
+            }
+        }
+        final Band b8aBand = new Band("B8A", ProductData.TYPE_FLOAT32, WIDTH, HEIGHT);
+        b8aBand.setDataElems(b8a);
+        product.addBand(b8aBand);
+        final Band b3Band = new Band("B3", ProductData.TYPE_FLOAT32, WIDTH, HEIGHT);
+        b3Band.setDataElems(b3);
+        product.addBand(b3Band);
+        return product;
+    }
+
+    private static boolean isCloud(int x, int y) {
+        return (x % 25 < 6 && y % 30 < 5 && x < 95) || (x > 70 && x < 76 && y > 40 && y < 47);
+    }
+
+    private static Product createProduct(String name) throws FactoryException, TransformException {
+        final Product product = new Product(name, "test", WIDTH, HEIGHT);
+        product.setSceneGeoCoding(new CrsGeoCoding(CRS.decode("EPSG:32650"), WIDTH, HEIGHT,
+                                                   699960.0, 4000020.0, 60.0, 60.0, 0.0, 0.0));
+        product.setPreferredTileSize(32, 32);
+        return product;
+    }
+
+}
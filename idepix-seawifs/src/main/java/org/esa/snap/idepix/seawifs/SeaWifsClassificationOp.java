@@ -9,10 +9,9 @@ import org.esa.snap.core.gpf.annotations.SourceProduct;
 import org.esa.snap.core.gpf.pointop.*;
 import org.esa.snap.core.util.math.MathUtils;
 import org.esa.snap.idepix.core.IdepixConstants;
+import org.esa.snap.idepix.core.util.GeoLocationGridCache;
 import org.esa.snap.idepix.core.util.SchillerNeuralNetWrapper;
 
-import java.io.IOException;
-import java.io.InputStream;
 
 /**
  * SeaWiFS pixel classification operator.
@@ -54,6 +53,8 @@ public class SeaWifsClassificationOp extends PixelOperator {
 
     private ThreadLocal<SchillerNeuralNetWrapper> seawifsNeuralNet;
 
+    private GeoLocationGridCache geoLocationGridCache;
+
     @Override
     public Product getSourceProduct() {
         // this is the source product for the ProductConfigurer
@@ -63,6 +64,7 @@ public class SeaWifsClassificationOp extends PixelOperator {
     @Override
     protected void prepareInputs() throws OperatorException {
         readSchillerNets();
+        geoLocationGridCache = new GeoLocationGridCache(reflProduct, this);
     }
 
     @Override
@@ -114,11 +116,7 @@ public class SeaWifsClassificationOp extends PixelOperator {
     }
 
     private void readSchillerNets() {
-        try (InputStream isSW = getClass().getResourceAsStream(SEAWIFS_NET_NAME)) {
-            seawifsNeuralNet = SchillerNeuralNetWrapper.create(isSW);
-        } catch (IOException e) {
-            throw new OperatorException("Cannot read Schiller neural nets: " + e.getMessage());
-        }
+        seawifsNeuralNet = SchillerNeuralNetWrapper.create(getClass(), SEAWIFS_NET_NAME);
     }
 
     private void setClassifFlag(WritableSample[] targetSamples, SeaWifsAlgorithm algorithm) {
@@ -142,7 +140,8 @@ public class SeaWifsClassificationOp extends PixelOperator {
         float waterFraction = Float.NaN;
 
         SeaWifsAlgorithm occciAlgorithm = new SeaWifsAlgorithm();
-        double[] seawifsNeuralNetInput = seawifsNeuralNet.get().getInputVector();
+        final SchillerNeuralNetWrapper seawifsNeuralNetWrapper = seawifsNeuralNet.get();
+        double[] seawifsNeuralNetInput = seawifsNeuralNetWrapper.getInputVector();
         final float sza = sourceSamples[SeaWifsConstants.SRC_SZA].getFloat();
         for (int i = 0; i < SeaWifsConstants.SEAWIFS_L1B_NUM_SPECTRAL_BANDS; i++) {
             reflectance[i] = sourceSamples[SeaWifsConstants.SEAWIFS_SRC_RAD_OFFSET+ i].getFloat();
@@ -153,13 +152,13 @@ public class SeaWifsClassificationOp extends PixelOperator {
         }
         occciAlgorithm.setRefl(reflectance);
         // the water mask ends at 59 Degree south, stop earlier to avoid artefacts
-        if (getGeoPos(x, y).lat > -58f) {
+        if (geoLocationGridCache.getLat(x, y) > -58f) {
             waterFraction = sourceSamples[SeaWifsConstants.SEAWIFS_SRC_RAD_OFFSET +
                             SeaWifsConstants.SEAWIFS_L1B_NUM_SPECTRAL_BANDS + 1].getFloat();
         }
         occciAlgorithm.setWaterFraction(waterFraction);
 
-        neuralNetOutput = seawifsNeuralNet.get().getNeuralNet().calc(seawifsNeuralNetInput);
+        neuralNetOutput = seawifsNeuralNetWrapper.calc(seawifsNeuralNetInput);
 
         occciAlgorithm.setNnOutput(neuralNetOutput);
         targetSamples[1].set(neuralNetOutput[0]);
@@ -191,16 +190,6 @@ public class SeaWifsClassificationOp extends PixelOperator {
         }
     }
 
-
-
-    private GeoPos getGeoPos(int x, int y) {
-        final GeoPos geoPos = new GeoPos();
-        final GeoCoding geoCoding = reflProduct.getSceneGeoCoding();
-        final PixelPos pixelPos = new PixelPos(x, y);
-        geoCoding.getGeoPos(pixelPos, geoPos);
-        return geoPos;
-    }
-
     /**
      * The Service Provider Interface (SPI) for the operator.
      * It provides operator meta-data and is a factory for new operator instances.
@@ -3,9 +3,12 @@ package org.esa.snap.idepix.spotvgt;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.snap.idepix.core.IdepixConstants;
 import org.esa.snap.idepix.core.pixel.AbstractPixelProperties;
+import org.esa.snap.idepix.core.util.GeoLocationGrid;
 import org.esa.snap.idepix.core.util.IdepixIO;
 import org.esa.snap.idepix.core.util.IdepixUtils;
-import org.esa.snap.idepix.core.util.SchillerNeuralNetWrapper;
+import org.esa.snap.idepix.core.util.SchillerNeuralNet;
+import org.esa.snap.idepix.core.util.SchillerNeuralNetBatch;
+import org.esa.snap.idepix.core.util.SchillerNeuralNetCache;
 import org.esa.snap.core.datamodel.*;
 import org.esa.snap.core.gpf.Operator;
 import org.esa.snap.core.gpf.OperatorException;
@@ -19,8 +22,6 @@ import org.esa.snap.core.util.ProductUtils;
 import org.esa.snap.watermask.operator.WatermaskClassifier;
 
 import java.awt.*;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.Map;
 
 /**
@@ -119,7 +120,7 @@ public class VgtClassificationOp extends Operator {
 
 
     private static final String VGT_NET_NAME = "3x2x2_341.8.net";
-    private ThreadLocal<SchillerNeuralNetWrapper> vgtNeuralNet;
+    private ThreadLocal<SchillerNeuralNetBatch> vgtNeuralNetBatch;
 
     private Band landWaterBand;
 
@@ -143,7 +144,6 @@ public class VgtClassificationOp extends Operator {
         Tile waterFractionTile = getSourceTile(landWaterBand, rectangle);
 
         Tile[] vgtReflectanceTiles = new Tile[IdepixConstants.VGT_REFLECTANCE_BAND_NAMES.length];
-        float[] vgtReflectance = new float[IdepixConstants.VGT_REFLECTANCE_BAND_NAMES.length];
         for (int i = 0; i < IdepixConstants.VGT_REFLECTANCE_BAND_NAMES.length; i++) {
             vgtReflectanceTiles[i] = getSourceTile(vgtReflectanceBands[i], rectangle);
         }
@@ -158,10 +158,23 @@ public class VgtClassificationOp extends Operator {
             nnTargetTile = targetTiles.get(nnTargetBand);
         }
 
+        // latitudes are only needed for the coastline check with the water mask
+        final GeoLocationGrid geoLocationGrid =
+                useL1bLandWaterFlag ? null : GeoLocationGrid.create(sourceProduct, rectangle);
+
         try {
+            final int numBands = IdepixConstants.VGT_REFLECTANCE_BAND_NAMES.length;
+            // the corrected reflectances of pixel i start at i * numBands, its NN outputs at i * numNnOutputs
+            final float[] correctedReflectances = new float[rectangle.width * rectangle.height * numBands];
+            final double[] nnOutputs = computeNnOutputs(smFlagTile, vgtReflectanceTiles, rectangle,
+                                                        correctedReflectances);
+            final int numNnOutputs = vgtNeuralNetBatch.get().getNeuralNet().getNumOutputs();
+            // reused for all pixels, the algorithm of a pixel is only used while the pixel is processed
+            final float[] pixelReflectance = new float[numBands];
+            int pixelIndex = 0;
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
                 checkForCancellation();
-                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, pixelIndex++) {
 
                     byte waterMaskFraction = WatermaskClassifier.INVALID_VALUE;
                     if (!useL1bLandWaterFlag) {
@@ -169,39 +182,41 @@ public class VgtClassificationOp extends Operator {
                     }
 
                     // set up pixel properties for given instruments...
-                    VgtAlgorithm vgtAlgorithm = createVgtAlgorithm(smFlagTile, vgtReflectanceTiles,
-                                                                   vgtReflectance,
+                    System.arraycopy(correctedReflectances, pixelIndex * numBands, pixelReflectance, 0, numBands);
+                    VgtAlgorithm vgtAlgorithm = createVgtAlgorithm(smFlagTile,
+                                                                   pixelReflectance,
                                                                    waterMaskFraction,
+                                                                   geoLocationGrid,
                                                                    y, x);
 
                     setCloudFlag(cloudFlagTargetTile, y, x, vgtAlgorithm);
 
                     // apply improvement from NN approach...
-                    final double[] nnOutput = vgtAlgorithm.getNnOutput();
+                    final double nnOutput = nnOutputs[pixelIndex * numNnOutputs];
                     if (!cloudFlagTargetTile.getSampleBit(x, y, IdepixConstants.IDEPIX_INVALID)) {
                         cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, false);
                         cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, false);
                         cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, false);
                         cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, false);
-                        if (nnOutput[0] > nnCloudAmbiguousLowerBoundaryValue &&
-                                nnOutput[0] <= nnCloudAmbiguousSureSeparationValue) {
+                        if (nnOutput > nnCloudAmbiguousLowerBoundaryValue &&
+                                nnOutput <= nnCloudAmbiguousSureSeparationValue) {
                             // this would be as 'CLOUD_AMBIGUOUS'...
                             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_AMBIGUOUS, true);
                             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, true);
                         }
-                        if (nnOutput[0] > nnCloudAmbiguousSureSeparationValue &&
-                                nnOutput[0] <= nnCloudSureSnowSeparationValue) {
+                        if (nnOutput > nnCloudAmbiguousSureSeparationValue &&
+                                nnOutput <= nnCloudSureSnowSeparationValue) {
                             // this would be as 'CLOUD_SURE'...
                             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD_SURE, true);
                             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_CLOUD, true);
                         }
-                        if (nnOutput[0] > nnCloudSureSnowSeparationValue) {
+                        if (nnOutput > nnCloudSureSnowSeparationValue) {
                             // this would be as 'SNOW/ICE'...
                             cloudFlagTargetTile.setSample(x, y, IdepixConstants.IDEPIX_SNOW_ICE, true);
                         }
                     }
                     if (outputSchillerNNValue && nnTargetTile != null) {
-                        nnTargetTile.setSample(x, y, nnOutput[0]);
+                        nnTargetTile.setSample(x, y, nnOutput);
                     }
 
                     for (Band band : targetProduct.getBands()) {
@@ -263,11 +278,8 @@ public class VgtClassificationOp extends Operator {
 
 
     private void readSchillerNeuralNets() {
-        try (InputStream vgtLandIS = getClass().getResourceAsStream(VGT_NET_NAME)) {
-            vgtNeuralNet = SchillerNeuralNetWrapper.create(vgtLandIS);
-        } catch (IOException e) {
-            throw new OperatorException("Cannot read Neural Nets: " + e.getMessage());
-        }
+        final SchillerNeuralNet vgtNeuralNet = SchillerNeuralNetCache.get(getClass(), VGT_NET_NAME);
+        vgtNeuralNetBatch = ThreadLocal.withInitial(() -> new SchillerNeuralNetBatch(vgtNeuralNet));
     }
 
 
@@ -350,29 +362,45 @@ public class VgtClassificationOp extends Operator {
         }
     }
 
-    private VgtAlgorithm createVgtAlgorithm(Tile smFlagTile, Tile[] vgtReflectanceTiles,
-                                            float[] vgtReflectance,
-                                            byte watermaskFraction,
-                                            int y, int x) {
+    // reads and corrects the reflectances of all pixels of the tile and evaluates the neural net for all of them
+    private double[] computeNnOutputs(Tile smFlagTile, Tile[] vgtReflectanceTiles,
+                                      Rectangle rectangle, float[] correctedReflectances) {
+        final SchillerNeuralNetBatch nnBatch = vgtNeuralNetBatch.get();
+        final int numNnInputs = nnBatch.getNeuralNet().getNumInputs();
+        final int numBands = IdepixConstants.VGT_REFLECTANCE_BAND_NAMES.length;
+        final int numPixels = rectangle.width * rectangle.height;
+        final double[] nnInputs = nnBatch.getInputs(numPixels);
+        final float[] vgtReflectance = new float[numBands];
+        int pixelIndex = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, pixelIndex++) {
+                for (int i = 0; i < numBands; i++) {
+                    vgtReflectance[i] = vgtReflectanceTiles[i].getSampleFloat(x, y);
+                }
 
-        VgtAlgorithm vgtAlgorithm = new VgtAlgorithm();
+                if (!isProcessingForC3SLot5) {
+                    checkVgtReflectanceQuality(vgtReflectance, smFlagTile, x, y);
+                }
+                final int reflectanceOffset = pixelIndex * numBands;
+                IdepixUtils.correctSaturatedReflectances(vgtReflectance, correctedReflectances, reflectanceOffset);
 
-        for (int i = 0; i < IdepixConstants.VGT_REFLECTANCE_BAND_NAMES.length; i++) {
-            vgtReflectance[i] = vgtReflectanceTiles[i].getSampleFloat(x, y);
+                final int inputOffset = pixelIndex * numNnInputs;
+                for (int i = 0; i < numNnInputs; i++) {
+                    nnInputs[inputOffset + i] = Math.sqrt(correctedReflectances[reflectanceOffset + i]);
+                }
+            }
         }
+        return nnBatch.calc(numPixels);
+    }
 
-        if (!isProcessingForC3SLot5) {
-            checkVgtReflectanceQuality(vgtReflectance, smFlagTile, x, y);
-        }
-        float[] vgtReflectanceSaturationCorrected = IdepixUtils.correctSaturatedReflectances(vgtReflectance);
-        vgtAlgorithm.setRefl(vgtReflectanceSaturationCorrected);
+    private VgtAlgorithm createVgtAlgorithm(Tile smFlagTile,
+                                            float[] vgtReflectanceSaturationCorrected,
+                                            byte watermaskFraction,
+                                            GeoLocationGrid geoLocationGrid,
+                                            int y, int x) {
 
-        SchillerNeuralNetWrapper nnWrapper = vgtNeuralNet.get();
-        double[] inputVector = nnWrapper.getInputVector();
-        for (int i = 0; i < inputVector.length; i++) {
-            inputVector[i] = Math.sqrt(vgtReflectanceSaturationCorrected[i]);
-        }
-        vgtAlgorithm.setNnOutput(nnWrapper.getNeuralNet().calc(inputVector));
+        VgtAlgorithm vgtAlgorithm = new VgtAlgorithm();
+        vgtAlgorithm.setRefl(vgtReflectanceSaturationCorrected);
 
         if (useL1bLandWaterFlag) {
             final boolean isLand = smFlagTile.getSampleBit(x, y, SM_F_LAND);
@@ -384,7 +412,7 @@ public class VgtClassificationOp extends Operator {
                     watermaskFraction < WATERMASK_FRACTION_THRESH;
             vgtAlgorithm.setSmLand(isLand);
             setIsWaterByFraction(watermaskFraction, vgtAlgorithm);
-            final boolean isCoastline = isCoastlinePixel(x, y, watermaskFraction);
+            final boolean isCoastline = isCoastlinePixel(geoLocationGrid.getLat(x, y), watermaskFraction);
             vgtAlgorithm.setIsCoastline(isCoastline);
         }
 
@@ -402,20 +430,12 @@ public class VgtClassificationOp extends Operator {
         pixelProperties.setIsWater(isWater);
     }
 
-    private boolean isCoastlinePixel(int x, int y, int waterFraction) {
+    private boolean isCoastlinePixel(float lat, int waterFraction) {
         // the water mask ends at 59 Degree south, stop earlier to avoid artefacts
         // values bigger than 100 indicate no data
         // todo: this does not work if we have a PixelGeocoding. In that case, waterFraction
         // is always 0 or 100!! (TS, OD, 20140502)
-        return getGeoPos(x, y).lat > -58f && waterFraction < 100 && waterFraction > 0;
-    }
-
-    private GeoPos getGeoPos(int x, int y) {
-        final GeoPos geoPos = new GeoPos();
-        final GeoCoding geoCoding = getSourceProduct().getSceneGeoCoding();
-        final PixelPos pixelPos = new PixelPos(x, y);
-        geoCoding.getGeoPos(pixelPos, geoPos);
-        return geoPos;
+        return lat > -58f && waterFraction < 100 && waterFraction > 0;
     }
 
     private void checkVgtReflectanceQuality(float[] vgtReflectance, Tile smFlagTile, int x, int y) {
@@ -1,6 +1,7 @@
 package org.esa.snap.idepix.viirs;
 
 import org.esa.snap.idepix.core.IdepixConstants;
+import org.esa.snap.idepix.core.util.GeoLocationGridCache;
 import org.esa.snap.idepix.core.util.SchillerNeuralNetWrapper;
 import org.esa.snap.core.datamodel.*;
 import org.esa.snap.core.gpf.OperatorException;
@@ -10,8 +11,6 @@ import org.esa.snap.core.gpf.annotations.Parameter;
 import org.esa.snap.core.gpf.annotations.SourceProduct;
 import org.esa.snap.core.gpf.pointop.*;
 
-import java.io.IOException;
-import java.io.InputStream;
 
 /**
  * VIIRS pixel classification operator.
@@ -47,6 +46,8 @@ public class ViirsClassificationOp extends PixelOperator {
     private static final String VIIRS_NET_NAME = "6x5x4x3x2_204.8.net";
     private ThreadLocal<SchillerNeuralNetWrapper> viirsNeuralNet;
 
+    private GeoLocationGridCache geoLocationGridCache;
+
 
     @Override
     public Product getSourceProduct() {
@@ -57,6 +58,7 @@ public class ViirsClassificationOp extends PixelOperator {
     @Override
     protected void prepareInputs() throws OperatorException {
         readSchillerNet();
+        geoLocationGridCache = new GeoLocationGridCache(reflProduct, this);
     }
 
     @Override
@@ -127,11 +129,7 @@ public class ViirsClassificationOp extends PixelOperator {
     }
 
     private void readSchillerNet() {
-        try (InputStream isV = getClass().getResourceAsStream(VIIRS_NET_NAME)) {
-            viirsNeuralNet = SchillerNeuralNetWrapper.create(isV);
-        } catch (IOException e) {
-            throw new OperatorException("Cannot read Neural Nets: " + e.getMessage());
-        }
+        viirsNeuralNet = SchillerNeuralNetWrapper.create(getClass(), VIIRS_NET_NAME);
     }
 
     private void setClassifFlag(WritableSample[] targetSamples, ViirsAlgorithm algorithm) {
@@ -164,18 +162,19 @@ public class ViirsClassificationOp extends PixelOperator {
         }
         viirsAlgorithm.setRefl(reflectance);
         // the water mask ends at 59 Degree south, stop earlier to avoid artefacts
-        if (getGeoPos(x, y).lat > -58f) {
+        if (geoLocationGridCache.getLat(x, y) > -58f) {
             waterFraction =
                     sourceSamples[ViirsConstants.VIIRS_L1B_NUM_SPECTRAL_BANDS + 1].getFloat();
         }
         viirsAlgorithm.setWaterFraction(waterFraction);
 
-        double[] viirsNeuralNetInput = viirsNeuralNet.get().getInputVector();
+        final SchillerNeuralNetWrapper viirsNeuralNetWrapper = viirsNeuralNet.get();
+        double[] viirsNeuralNetInput = viirsNeuralNetWrapper.getInputVector();
         for (int i = 0; i < viirsNeuralNetInput.length; i++) {
             viirsNeuralNetInput[i] = Math.sqrt(sourceSamples[i].getFloat());
         }
 
-        neuralNetOutput = viirsNeuralNet.get().getNeuralNet().calc(viirsNeuralNetInput);
+        neuralNetOutput = viirsNeuralNetWrapper.calc(viirsNeuralNetInput);
 
         viirsAlgorithm.setNnOutput(neuralNetOutput);
 
@@ -185,15 +184,6 @@ public class ViirsClassificationOp extends PixelOperator {
         return viirsAlgorithm;
     }
 
-    private GeoPos getGeoPos(int x, int y) {
-        final GeoPos geoPos = new GeoPos();
-        final GeoCoding geoCoding = reflProduct.getSceneGeoCoding();
-        final PixelPos pixelPos = new PixelPos(x, y);
-        geoCoding.getGeoPos(pixelPos, geoPos);
-        return geoPos;
-    }
-
-
     /**
      * The Service Provider Interface (SPI) for the operator.
      * It provides operator meta-data and is a factory for new operator instances.